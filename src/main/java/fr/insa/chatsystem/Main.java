@@ -2,11 +2,20 @@ package fr.insa.chatsystem;
 
 import fr.insa.chatsystem.model.contact.Contact;
 import fr.insa.chatsystem.model.logger.message.InfoMessages;
+import fr.insa.chatsystem.model.repository.ConnectionManager;
+import fr.insa.chatsystem.model.repository.MessageRepository;
+import fr.insa.chatsystem.model.repository.MessageStore;
+import fr.insa.chatsystem.model.repository.MessageSearchRepository;
+import fr.insa.chatsystem.model.service.ContactCache;
+import fr.insa.chatsystem.model.service.ConversationCache;
+import fr.insa.chatsystem.model.service.DatabaseExecutor;
+import fr.insa.chatsystem.model.service.MaintenanceScheduler;
+import fr.insa.chatsystem.model.service.MessageArchiver;
 import fr.insa.chatsystem.view.View;
-import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.logging.log4j.core.config.Configurator;
+
+import java.util.List;
 
 /**
  * The main class of the ChatSystem application responsible for initializing and managing the program flow.
@@ -15,18 +24,49 @@ import org.apache.logging.log4j.core.config.Configurator;
 public class Main {
     private static final Logger LOGGER = LogManager.getLogger(Main.class);
     public static final int RECEIVE_PORT = 9377;
+    public static final int FILE_TRANSFER_PORT = 9378;
     public static Contact self = new Contact();
 
+    /**
+     * Command-line argument rebuilding the full-text search index of the database, then exiting.
+     */
+    public static final String REBUILD_SEARCH_INDEX_ARGUMENT = "--rebuild-search-index";
+
     /**
      * The main method that initializes and runs the ChatSystem application.
-     * It configures the logging level, logs the start message, and initializes the main view of the program.
+     * It logs the start message and initializes the main view of the program.
+     * The logging level comes from log4j2.xml and can be overridden with the "chatsystem.log.level" system property.
      *
-     * @param args Command-line arguments (not used).
+     * @param args Command-line arguments, {@value #REBUILD_SEARCH_INDEX_ARGUMENT} to rebuild the full-text search index
+     *             of the database instead of starting the application.
      */
     public static void main(String[] args) {
-        Configurator.setRootLevel(Level.TRACE);
         LOGGER.info(InfoMessages.START_MESSAGE);
 
+        // Let the maintenance, the archiver and the database tasks of the interface finish, commit the queued messages,
+        // then close the message log and the database connections kept open by the repositories
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            MaintenanceScheduler.getInstance().shutdown();
+            MessageArchiver.getInstance().shutdown();
+            DatabaseExecutor.getInstance().shutdown();
+            MessageStore messageStore = MessageStore.getInstance();
+            if (messageStore != MessageRepository.getInstance()) {
+                messageStore.shutdown();
+            }
+            MessageRepository.getInstance().shutdown();
+            ConnectionManager.getInstance().shutdown();
+            ContactCache contactCache = ContactCache.getInstance();
+            LOGGER.info(InfoMessages.CONTACT_CACHE_STATISTICS, contactCache.getHits(), contactCache.getMisses(),
+                    String.format("%.1f", 100 * contactCache.getHitRate()));
+            ConversationCache conversationCache = ConversationCache.getInstance();
+            LOGGER.info(InfoMessages.CONVERSATION_CACHE_STATISTICS, conversationCache.getHits(), conversationCache.getMisses());
+        }));
+
+        if (List.of(args).contains(REBUILD_SEARCH_INDEX_ARGUMENT)) {
+            new MessageSearchRepository().rebuildIndex();
+            return;
+        }
+
         // Initialize the main view of the ChatSystem program
         View.initialize();
     }
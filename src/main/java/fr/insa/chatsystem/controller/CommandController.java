@@ -5,15 +5,23 @@ import fr.insa.chatsystem.model.contact.ContactList;
 import fr.insa.chatsystem.model.exception.ContactDoesNotExistException;
 import fr.insa.chatsystem.model.logger.message.ErrorMessages;
 import fr.insa.chatsystem.model.logger.message.InfoMessages;
+import fr.insa.chatsystem.model.message.DeliveryStatus;
 import fr.insa.chatsystem.model.network.UDPListener;
+import fr.insa.chatsystem.model.repository.ConnectionManager;
 import fr.insa.chatsystem.model.repository.ContactRepository;
 import fr.insa.chatsystem.model.repository.MessageRepository;
+import fr.insa.chatsystem.model.repository.MessageStore;
 import fr.insa.chatsystem.model.service.ContactService;
+import fr.insa.chatsystem.model.service.DatabaseExecutor;
+import fr.insa.chatsystem.model.service.MaintenanceScheduler;
+import fr.insa.chatsystem.model.service.MessageArchiver;
 import fr.insa.chatsystem.model.service.MessageService;
+import fr.insa.chatsystem.model.transfer.FileTransferManager;
 import fr.insa.chatsystem.view.View;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import javax.swing.SwingUtilities;
 import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
@@ -22,15 +30,24 @@ import java.net.UnknownHostException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static fr.insa.chatsystem.Main.FILE_TRANSFER_PORT;
 import static fr.insa.chatsystem.Main.RECEIVE_PORT;
 import static fr.insa.chatsystem.Main.self;
 import static fr.insa.chatsystem.model.network.UDPSenderWrapper.*;
 
 /**
  * Controller class responsible for managing user commands.
+ * The commands are called on the Swing event dispatch thread, so their database work is submitted to the
+ * DatabaseExecutor and the rest of the command continues once it is done, on the database thread, or on the event
+ * dispatch thread when it publishes the logged-in user.
  */
 public class CommandController implements View.Observer {
 
@@ -65,6 +82,8 @@ public class CommandController implements View.Observer {
      * Handles the connection process. Sends a connect message and waits for responses.
      * If the database file does not exist, it creates it.
      * If the self user already exists in the database, it fetches it and sends a set username message.
+     * It waits for the responses, so the View calls it on a thread of its own rather than on the event dispatch thread.
+     * Only its database work is submitted to the DatabaseExecutor, which stays free for the other reads meanwhile.
      */
     @Override
     public void connectButtonClicked() {
@@ -74,15 +93,16 @@ public class CommandController implements View.Observer {
         findMyAddress();
         self.setIsMe(true);
 
-        boolean tablesInitialized = contactService.tableContactsExists() && messageService.tableMessagesExists();
+        DatabaseExecutor database = DatabaseExecutor.getInstance();
+        boolean tablesInitialized = database.supply(() -> contactService.tableContactsExists() && messageService.tableMessagesExists()).join();
         if (!tablesInitialized) {
-            initializeTables();
+            database.run(this::initializeTables).join();
         }
 
         try {
             if (udpListener == null) {
                 udpListener = new UDPListener(RECEIVE_PORT);
-                udpListener.addObserver(new NetworkController(new ContactService(new ContactRepository()), new MessageService(MessageRepository.getInstance())));
+                udpListener.addObserver(new NetworkController(new ContactService(new ContactRepository()), new MessageService(MessageRepository.getInstance(), MessageStore.getInstance())));
                 udpListener.start();
             } else {
                 udpListener.startRunning();
@@ -92,6 +112,15 @@ public class CommandController implements View.Observer {
             System.exit(1);
         }
 
+        try {
+            FileTransferManager.getInstance().start(FILE_TRANSFER_PORT);
+        } catch (IOException e) {
+            LOGGER.error(ErrorMessages.FILE_TRANSFER_ERROR + e.getMessage());
+        }
+
+        MessageArchiver.getInstance().start();
+        MaintenanceScheduler.getInstance().start();
+
         sendConnectMessage();
 
         try {
@@ -99,7 +128,7 @@ public class CommandController implements View.Observer {
         } catch (InterruptedException ignored) {
         }
 
-        boolean selfExists = contactService.tableContactsExists() && contactService.getSelf().isPresent();
+        boolean selfExists = database.supply(() -> contactService.tableContactsExists() && contactService.getSelf().isPresent()).join();
         if (selfExists) {
 
             fetchSelfFromDatabase();
@@ -118,44 +147,59 @@ public class CommandController implements View.Observer {
     /**
      * Handles the event when a new username is set.
      * Checks if the selected username is available and creates the user accordingly.
+     * The user is inserted on the database thread, then published and its username announced on the event dispatch
+     * thread. A user that could not be inserted is not announced.
      *
      * @param username The selected username.
+     * @return A future completed once the username is announced, or exceptionally if the user could not be inserted.
      */
     @Override
-    public void usernameSet(String username) {
+    public CompletableFuture<Void> usernameSet(String username) {
         self.setUsername(username);
         self.setIsMe(true);
         InetAddress address = self.getAddress();
 
-        Optional<Contact> insertedSelf = contactService.insertContact(self);
-        insertedSelf.ifPresent(contact -> self = contact);
+        return contactService.insertContactAsync(self).thenAcceptAsync(insertedSelf -> {
+            self = insertedSelf.orElseThrow(() -> new CompletionException(
+                    new IllegalStateException(String.format(ErrorMessages.SELF_NOT_STORED, username))));
 
-        self.setAddress(address);
-        sendSetUsernameMessage();
-        LOGGER.info(InfoMessages.CONNECTED_INFO + self.getAddress());
+            self.setAddress(address);
+            sendSetUsernameMessage();
+            LOGGER.info(InfoMessages.CONNECTED_INFO + self.getAddress());
+        }, SwingUtilities::invokeLater).whenCompleteAsync((announced, failure) -> logFailure(failure), SwingUtilities::invokeLater);
     }
 
     /**
      * Handles the event when the username is changed.
      * Checks if the selected username is available and updates the user accordingly.
+     * The user is updated on the database thread, then published and the change announced on the event dispatch
+     * thread. A user that could not be updated keeps its previous username and the change is not announced.
      *
      * @param username The selected username.
+     * @return A future completed once the change is announced, or exceptionally if the user could not be updated.
      */
     @Override
-    public void usernameChanged(String username) {
+    public CompletableFuture<Void> usernameChanged(String username) {
 
         String previousUsername = self.getUsername();
         self.setUsername(username);
         InetAddress address = self.getAddress();
 
-        Optional<Contact> updatedSelf = contactService.updateContact(self);
-        updatedSelf.ifPresent(contact -> self = contact);
+        return contactService.updateContactAsync(self).thenAcceptAsync(updatedSelf -> {
+            self = updatedSelf.orElseThrow(() -> new CompletionException(
+                    new IllegalStateException(String.format(ErrorMessages.SELF_NOT_STORED, username))));
 
-        self.setPreviousUsername(previousUsername);
-        self.setAddress(address);
+            self.setPreviousUsername(previousUsername);
+            self.setAddress(address);
 
-        sendChangeUsernameMessage();
-        LOGGER.info(InfoMessages.CONNECTED_INFO + self.getAddress());
+            sendChangeUsernameMessage();
+            LOGGER.info(InfoMessages.CONNECTED_INFO + self.getAddress());
+        }, SwingUtilities::invokeLater).whenCompleteAsync((announced, failure) -> {
+            if (failure != null) {
+                self.setUsername(previousUsername);
+                logFailure(failure);
+            }
+        }, SwingUtilities::invokeLater);
 
     }
 
@@ -168,23 +212,91 @@ public class CommandController implements View.Observer {
         if (udpListener != null) {
             udpListener.stopRunning();
         }
+        FileTransferManager.getInstance().stop();
     }
 
     /**
      * Handles the message sending process.
+     * The message is sent once the receiver is read from the database. A receiver that is not in the database or
+     * not connected ends the program, from the event dispatch thread so that the shutdown hook does not wait for
+     * the database thread.
      */
     @Override
     public void sendButtonClicked(String message, String username) {
-        Optional<Contact> databaseContact = contactService.getContactByUsername(username);
-        ContactList activeContacts = ContactList.getInstance();
-        Contact activeContact = activeContacts.getContactByUsernameIfExists(username);
-        if (databaseContact.isEmpty() || activeContact == null) {
+        contactService.getContactByUsernameAsync(username).thenAccept(databaseContact -> {
+            ContactList activeContacts = ContactList.getInstance();
+            Contact activeContact = activeContacts.getContactByUsernameIfExists(username);
+            if (databaseContact.isEmpty() || activeContact == null) {
+                throw new CompletionException(new ContactDoesNotExistException(String.format(ErrorMessages.CONTACT_DOES_NOT_EXIST_USERNAME, username)));
+            }
+            Contact contact = databaseContact.get();
+            contact.setAddress(activeContact.getAddress());
+            messageService.sendChatMessage(contact, message);
+        }).whenCompleteAsync((sent, failure) -> {
+            if (failure == null) {
+                return;
+            }
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+            if (cause instanceof ContactDoesNotExistException) {
+                System.exit(1);
+            }
+            LOGGER.error(ErrorMessages.INTERFACE_TASK_FAILED, cause.toString());
+        }, SwingUtilities::invokeLater);
+    }
+
+    /**
+     * Handles the file sending process.
+     * The file is sent in the background, its progress is reported to the observers of the FileTransferManager.
+     */
+    @Override
+    public void sendFileButtonClicked(Path file, String username) {
+        Contact activeContact = ContactList.getInstance().getContactByUsernameIfExists(username);
+        if (activeContact == null) {
             LOGGER.error(String.format(ErrorMessages.CONTACT_DOES_NOT_EXIST_USERNAME, username));
-            System.exit(1);
+            return;
+        }
+        try {
+            FileTransferManager.getInstance().sendFile(file, activeContact);
+        } catch (IOException e) {
+            LOGGER.error(ErrorMessages.FILE_TRANSFER_ERROR + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles sending one message to several contacts.
+     * Contacts that are not connected are still recorded as receivers, with an OFFLINE delivery status.
+     *
+     * @param message   The message to be sent.
+     * @param usernames The usernames of the receivers.
+     * @return The delivery status of the message for each receiver.
+     */
+    public Map<Contact, DeliveryStatus> sendGroupMessage(String message, List<String> usernames) {
+        ContactList activeContacts = ContactList.getInstance();
+        List<Contact> receivers = new ArrayList<>();
+        for (String username : usernames) {
+            Optional<Contact> databaseContact = contactService.getContactByUsername(username);
+            if (databaseContact.isEmpty()) {
+                LOGGER.error(String.format(ErrorMessages.CONTACT_DOES_NOT_EXIST_USERNAME, username));
+                continue;
+            }
+            Contact contact = databaseContact.get();
+            Contact activeContact = activeContacts.getContactByUsernameIfExists(username);
+            contact.setAddress(activeContact == null ? null : activeContact.getAddress());
+            receivers.add(contact);
+        }
+        return messageService.sendGroupChatMessage(receivers, message);
+    }
+
+    /**
+     * Logs the failure of a command, if any.
+     *
+     * @param failure The failure the command completed with, or null.
+     */
+    private void logFailure(Throwable failure) {
+        if (failure != null) {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+            LOGGER.error(ErrorMessages.INTERFACE_TASK_FAILED, cause.toString());
         }
-        Contact contact = databaseContact.get();
-        contact.setAddress(activeContact.getAddress());
-        messageService.sendChatMessage(contact, message);
     }
 
     /**
@@ -215,20 +327,24 @@ public class CommandController implements View.Observer {
     }
 
     /**
-     * Retrieves the current user's username from the database and sets its IP address.
+     * Retrieves the current user's username from the database, on the database thread, and sets its IP address.
      */
     private void fetchSelfFromDatabase() {
         try {
             InetAddress address = self.getAddress();
-            self = contactService.getSelf()
+            self = DatabaseExecutor.getInstance().supply(contactService::getSelf).join()
                     .orElseThrow(() -> new ContactDoesNotExistException(String.format(ErrorMessages.CONTACT_DOES_NOT_EXIST_ID, self.getContactId())));
             self.setAddress(address);
         } catch (ContactDoesNotExistException e) {
             LOGGER.error(ErrorMessages.DATABASE_CORRUPTION);
 
-            Path path = Paths.get("database-" + self.getAddress().getHostAddress() + ".db");
+            String databasePath = ConnectionManager.getInstance().getDatabasePath();
+            ConnectionManager.getInstance().shutdown();
             try {
-                Files.deleteIfExists(path);
+                // the write-ahead log and its index belong to the corrupt database too
+                Files.deleteIfExists(Paths.get(databasePath));
+                Files.deleteIfExists(Paths.get(databasePath + "-wal"));
+                Files.deleteIfExists(Paths.get(databasePath + "-shm"));
             } catch (IOException ex) {
                 LOGGER.error(ErrorMessages.UNABLE_TO_DELETE_DATABASE);
             }
@@ -79,6 +79,10 @@ public class NetworkController implements UDPListener.Observer {
             Contact sender = contactService.getContactByUsername(udpMessage.getSenderUsername())
                     .orElseThrow(() -> new ContactDoesNotExistRuntimeException(String.format(ErrorMessages.CONTACT_DOES_NOT_EXIST_USERNAME, udpMessage.getSenderPreviousUsername())));
             Message message = new Message(sender, self, udpMessage.getContent());
+            // A message received again, retransmitted or duplicated on the way, has the same uid and is stored once
+            if (udpMessage.getMessageUid() != null) {
+                message.setUid(udpMessage.getMessageUid());
+            }
             messageService.insertMessage(message);
         }
     }
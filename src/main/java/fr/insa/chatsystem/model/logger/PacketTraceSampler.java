@@ -0,0 +1,44 @@
+package fr.insa.chatsystem.model.logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The PacketTraceSampler class decides which packets of the network hot path get a trace log entry.
+ * Only one packet out of every N is traced, N being read from the "chatsystem.trace.sample" system property.
+ * Sent and received packets are counted apart, so each direction is sampled at that rate whatever the traffic
+ * in the other one.
+ * Errors are not sampled and must always be logged by the caller.
+ */
+public class PacketTraceSampler {
+
+    /**
+     * Default number of packets between two traced packets.
+     */
+    public static final int DEFAULT_SAMPLE_RATE = 100;
+
+    private static final int SAMPLE_RATE = Math.max(1, Integer.getInteger("chatsystem.trace.sample", DEFAULT_SAMPLE_RATE));
+    private static final AtomicLong SENT_COUNTER = new AtomicLong();
+    private static final AtomicLong RECEIVED_COUNTER = new AtomicLong();
+
+    private PacketTraceSampler() {
+    }
+
+    /**
+     * Counts a sent packet and checks if it should be traced.
+     *
+     * @return True for one sent packet out of every N, otherwise false.
+     */
+    public static boolean sampleSent() {
+        return SENT_COUNTER.getAndIncrement() % SAMPLE_RATE == 0;
+    }
+
+    /**
+     * Counts a received packet and checks if it should be traced.
+     *
+     * @return True for one received packet out of every N, otherwise false.
+     */
+    public static boolean sampleReceived() {
+        return RECEIVED_COUNTER.getAndIncrement() % SAMPLE_RATE == 0;
+    }
+
+}
@@ -59,4 +59,169 @@ public class ErrorMessages {
      */
     public static final String UNABLE_TO_DELETE_DATABASE = "Unable to delete corrupt database. Please delete it manually.";
 
+    /**
+     * Error message for packets dropped by the kernel because the socket receive buffer was full.
+     * Placeholders {} will be replaced with the number of new drops and the receive statistics.
+     */
+    public static final String PACKETS_DROPPED_BY_KERNEL = "Kernel dropped {} packets: {}.";
+
+    /**
+     * Error message for a packet dropped because the application receive queue was full.
+     * Placeholder {} will be replaced with the address of the sender.
+     */
+    public static final String PACKET_DROPPED_BY_APPLICATION = "Receive queue full, dropped packet from address: {}.";
+
+    /**
+     * Error message for a file transfer error.
+     */
+    public static final String FILE_TRANSFER_ERROR = "File transfer error: ";
+
+    /**
+     * Error message for a failed file transfer.
+     * Placeholders {} will be replaced with the transfer and the reason of the failure.
+     */
+    public static final String FILE_TRANSFER_FAILED = "File transfer {} failed: {}.";
+
+    /**
+     * Reason of a failed file transfer, when the receiver never accepted the offer.
+     */
+    public static final String FILE_TRANSFER_NOT_ACCEPTED = "the receiver did not accept the file";
+
+    /**
+     * Reason of a failed file transfer, when one of the participants cancelled it.
+     */
+    public static final String FILE_TRANSFER_CANCELLED = "the transfer was cancelled";
+
+    /**
+     * Reason of a failed file transfer, when the other participant stopped responding.
+     */
+    public static final String FILE_TRANSFER_TIMEOUT = "the other participant stopped responding";
+
+    /**
+     * Error message for a file that is too large to be transferred.
+     * Placeholder %s will be replaced with the path of the file.
+     */
+    public static final String FILE_TOO_LARGE = "File %s is too large to be transferred.";
+
+    /**
+     * Error message for a failed schema migration.
+     * Placeholders {} will be replaced with the target version and the error.
+     */
+    public static final String SCHEMA_MIGRATION_FAILED = "Database schema migration to version {} failed: {}.";
+
+    /**
+     * Error message when the segments of the message log can not be opened, extended or closed.
+     * Placeholders {} will be replaced with the path of the log or segment and the cause.
+     */
+    public static final String MESSAGE_LOG_ERROR = "Message log {} failed: {}.";
+
+    /**
+     * Error message when an archive file can not be written or read.
+     * Placeholders {} will be replaced with the path of the archive file and the cause.
+     */
+    public static final String MESSAGE_ARCHIVE_ERROR = "Message archive {} failed: {}.";
+
+    /**
+     * Error message when a background run of the message archiver fails.
+     * Placeholder {} will be replaced with the cause.
+     */
+    public static final String MESSAGE_ARCHIVER_FAILED = "Message archiver run failed: {}.";
+
+    /**
+     * Error message when a background run of the database maintenance fails.
+     * Placeholder {} will be replaced with the cause.
+     */
+    public static final String MAINTENANCE_FAILED = "Database maintenance run failed: {}.";
+
+    /**
+     * Error message when a task run on the database thread fails.
+     * Placeholder {} will be replaced with the cause.
+     */
+    public static final String DATABASE_TASK_FAILED = "Database task failed: {}.";
+
+    /**
+     * Error message when an observer fails to handle a received UDP message, which is then skipped by it.
+     * Placeholders {} will be replaced with the message type, the address of the sender and the cause.
+     */
+    public static final String UDP_OBSERVER_FAILED = "Handling of message of type: {} from address: {} failed: {}.";
+
+    /**
+     * Error message when a system property holds an invalid value, the default value is used instead.
+     * Placeholders {} will be replaced with the name of the property, its value and the default value.
+     */
+    public static final String INVALID_PROPERTY = "Invalid value of {}: {}, using {}.";
+
+    /**
+     * Error message when a file offer is refused.
+     * Placeholders {} will be replaced with the name of the offered file, the address of the sender and the reason.
+     */
+    public static final String FILE_OFFER_REJECTED = "Rejected offer of file {} from address {}: {}.";
+
+    /**
+     * Reason of a refused file offer whose sender is not a connected contact at the address of the offer.
+     */
+    public static final String FILE_OFFER_UNKNOWN_SENDER = "the sender is not a connected contact";
+
+    /**
+     * Reason of a refused file offer whose file name can not be saved in the download directory.
+     */
+    public static final String FILE_OFFER_INVALID_NAME = "the file name is not valid";
+
+    /**
+     * Reason of a refused file offer whose chunk size or file size is not valid or over the limit.
+     */
+    public static final String FILE_OFFER_INVALID_SIZE = "the size of the file or of its chunks is not accepted";
+
+    /**
+     * Error message when a file is sent before the file transfers are started.
+     */
+    public static final String FILE_TRANSFER_NOT_STARTED = "File transfers are not started.";
+
+    /**
+     * Error message when a received file would be saved outside the download directory.
+     * Placeholder %s will be replaced with the path of the file.
+     */
+    public static final String FILE_OUTSIDE_DOWNLOAD_DIRECTORY = "File %s is outside the download directory.";
+
+    /**
+     * Error message when there is not enough disk space to receive a file.
+     * Placeholder %s will be replaced with the path of the file.
+     */
+    public static final String FILE_NO_SPACE = "Not enough disk space to receive file %s.";
+
+    /**
+     * Error message when a transaction is rolled back because a statement that joined it failed.
+     */
+    public static final String TRANSACTION_ROLLBACK_ONLY = "Transaction rolled back because one of its statements failed.";
+
+    /**
+     * Error message when a batch of messages can not be written in one transaction.
+     * Placeholders {} will be replaced with the number of messages and the error.
+     */
+    public static final String MESSAGE_BATCH_NOT_WRITTEN = "Batch of {} messages could not be written in one transaction: {}";
+
+    /**
+     * Error message when a message can not be stored and is lost.
+     * Placeholders {} will be replaced with the uid of the message and the error.
+     */
+    public static final String MESSAGE_NOT_WRITTEN = "Message {} could not be written: {}";
+
+    /**
+     * Error message when a committed message can not be handed over to its observers.
+     * Placeholders {} will be replaced with the uid of the message and the error.
+     */
+    public static final String COMMITTED_MESSAGE_NOT_HANDLED = "Committed message {} could not be handed over: {}";
+
+    /**
+     * Error message when the work started by the user interface fails.
+     * Placeholder {} will be replaced with the error.
+     */
+    public static final String INTERFACE_TASK_FAILED = "Task of the user interface failed: {}.";
+
+    /**
+     * Error message when the logged-in user can not be written to the database.
+     * Placeholder %s will be replaced with the username.
+     */
+    public static final String SELF_NOT_STORED = "User with username: %s could not be stored.";
+
 }
@@ -20,4 +20,83 @@ public class InfoMessages {
      */
     public static final String CONNECTED_INFO = "Connected on address: ";
 
+    /**
+     * Information message indicating the size of the UDP receive buffer.
+     * Placeholders {} will be replaced with the requested and the granted size.
+     */
+    public static final String RECEIVE_BUFFER_SIZE = "UDP receive buffer size requested: {} bytes, granted: {} bytes.";
+
+    /**
+     * Information message indicating that socket drops can not be monitored on this system.
+     * Placeholder {} will be replaced with the path of the kernel statistics file.
+     */
+    public static final String SOCKET_DROP_MONITOR_UNAVAILABLE = "Socket drop monitoring disabled, {} is not readable.";
+
+    /**
+     * Information message indicating the completion of a file transfer.
+     * Placeholder {} will be replaced with the transfer.
+     */
+    public static final String FILE_TRANSFER_COMPLETED = "File transfer {} completed.";
+
+    /**
+     * Information message with the counters of the prepared statement caches.
+     * Placeholders {} will be replaced with the number of hits, misses and evictions.
+     */
+    public static final String STATEMENT_CACHE_STATISTICS = "Statement cache: {} hits, {} misses, {} evictions.";
+
+    /**
+     * Information message indicating that a schema migration was applied.
+     * Placeholder {} will be replaced with the new version of the schema.
+     */
+    public static final String SCHEMA_MIGRATED = "Database schema migrated to version {}.";
+
+    /**
+     * Information message indicating that the full-text search index was rebuilt.
+     * Placeholder {} will be replaced with the time taken in milliseconds.
+     */
+    public static final String SEARCH_INDEX_REBUILT = "Full-text search index rebuilt in {} ms.";
+
+    /**
+     * Information message with the counters of the contact cache.
+     * Placeholders {} will be replaced with the number of hits and misses and the hit rate in percent.
+     */
+    public static final String CONTACT_CACHE_STATISTICS = "Contact cache: {} hits, {} misses, {}% hit rate.";
+
+    /**
+     * Information message with the counters of the conversation cache.
+     * Placeholders {} will be replaced with the number of hits and misses.
+     */
+    public static final String CONVERSATION_CACHE_STATISTICS = "Conversation cache: {} hits, {} misses.";
+
+    /**
+     * Information message when the message log is opened.
+     * Placeholders {} will be replaced with the path of the log, the number of messages and segments and the time
+     * taken in milliseconds to scan them.
+     */
+    public static final String MESSAGE_LOG_OPENED = "Message log {} opened: {} messages in {} segments, scanned in {} ms.";
+
+    /**
+     * Information message after old messages are archived.
+     * Placeholders {} will be replaced with the number of messages and conversations and the time taken in milliseconds.
+     */
+    public static final String MESSAGES_ARCHIVED = "Archived {} messages of {} conversations in {} ms.";
+
+    /**
+     * Information message after the retention rules deleted messages.
+     * Placeholders {} will be replaced with the number of messages and the time taken in milliseconds.
+     */
+    public static final String RETENTION_ENFORCED = "Retention rules deleted {} messages in {} ms.";
+
+    /**
+     * Information message after free pages of the database are given back to the file system.
+     * Placeholders {} will be replaced with the number of pages and the time taken in milliseconds.
+     */
+    public static final String DATABASE_COMPACTED = "Released {} free pages of the database in {} ms.";
+
+    /**
+     * Information message after a database created before incremental vacuum is converted.
+     * Placeholder {} will be replaced with the time taken in milliseconds.
+     */
+    public static final String INCREMENTAL_VACUUM_ENABLED = "Database converted to incremental vacuum in {} ms.";
+
 }
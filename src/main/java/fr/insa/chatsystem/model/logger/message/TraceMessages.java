@@ -2,25 +2,38 @@ package fr.insa.chatsystem.model.logger.message;
 
 /**
  * Class containing static trace messages used in the logging system.
+ * The messages use parameterized {} placeholders, so they are only formatted when the trace level is enabled.
  */
 public class TraceMessages {
 
     /**
      * Trace message indicating the reception of a message.
-     * Placeholders %s will be replaced with the message type and address.
+     * Placeholders {} will be replaced with the message type and address.
      */
-    public static final String MESSAGE_RECEIVED = "Received message of type: %s from address: %s.";
+    public static final String MESSAGE_RECEIVED = "Received message of type: {} from address: {}.";
 
     /**
      * Trace message indicating the sending of a message.
-     * Placeholders %s will be replaced with the message type and address.
+     * Placeholders {} will be replaced with the message type and address.
      */
-    public static final String MESSAGE_SENT = "Sent message of type: %s to address: %s.";
+    public static final String MESSAGE_SENT = "Sent message of type: {} to address: {}.";
 
     /**
      * Trace message indicating the broadcast of a message to all addresses.
-     * Placeholder %s will be replaced with the message type.
+     * Placeholder {} will be replaced with the message type.
      */
-    public static final String MESSAGE_BROADCAST = "Sent message of type: %s to all addresses.";
+    public static final String MESSAGE_BROADCAST = "Sent message of type: {} to all addresses.";
+
+    /**
+     * Trace message reporting the counters of the UDP receive path.
+     * Placeholder {} will be replaced with the receive statistics.
+     */
+    public static final String RECEIVE_STATISTICS = "Receive statistics: {}.";
+
+    /**
+     * Trace message indicating that a message already stored was received again and ignored.
+     * Placeholders {} will be replaced with the uid and the message_id of the stored message.
+     */
+    public static final String DUPLICATE_MESSAGE_IGNORED = "Ignored duplicate of message {} stored as message_id {}.";
 
 }
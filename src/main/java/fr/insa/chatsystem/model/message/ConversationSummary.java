@@ -0,0 +1,105 @@
+package fr.insa.chatsystem.model.message;
+
+import fr.insa.chatsystem.model.contact.Contact;
+
+/**
+ * Represents the summary of a direct conversation, as listed before the conversation is opened: its last message,
+ * its number of messages and its number of unread messages.
+ */
+public class ConversationSummary {
+
+    private final Contact contact;
+    private final Integer lastMessageId;
+    private final Integer lastSenderContactId;
+    private final String preview;
+    private final long lastTimestamp;
+    private final int messageCount;
+    private final int unreadCount;
+
+    /**
+     * Constructor for creating a ConversationSummary.
+     *
+     * @param contact             The other participant in the conversation.
+     * @param lastMessageId       The message_id of the last message, or null if every message is archived.
+     * @param lastSenderContactId The contact_id of the sender of the last message, or null if every message is archived.
+     * @param preview             The beginning of the content of the last message, or null if every message is archived.
+     * @param lastTimestamp       The timestamp of the last message, in milliseconds since the epoch.
+     * @param messageCount        The number of messages of the conversation, archived ones included.
+     * @param unreadCount         The number of messages received since the conversation was last read.
+     */
+    public ConversationSummary(Contact contact, Integer lastMessageId, Integer lastSenderContactId, String preview,
+                               long lastTimestamp, int messageCount, int unreadCount) {
+        this.contact = contact;
+        this.lastMessageId = lastMessageId;
+        this.lastSenderContactId = lastSenderContactId;
+        this.preview = preview;
+        this.lastTimestamp = lastTimestamp;
+        this.messageCount = messageCount;
+        this.unreadCount = unreadCount;
+    }
+
+    /**
+     * Getter method for retrieving the contact.
+     *
+     * @return The other participant in the conversation.
+     */
+    public Contact getContact() {
+        return contact;
+    }
+
+    /**
+     * Getter method for retrieving the message_id of the last message.
+     *
+     * @return The message_id of the last message, or null if every message is archived.
+     */
+    public Integer getLastMessageId() {
+        return lastMessageId;
+    }
+
+    /**
+     * Getter method for retrieving the sender of the last message.
+     *
+     * @return The contact_id of the sender of the last message, or null if every message is archived.
+     */
+    public Integer getLastSenderContactId() {
+        return lastSenderContactId;
+    }
+
+    /**
+     * Getter method for retrieving the preview.
+     *
+     * @return The first {@code ConversationSummaryRepository.PREVIEW_LENGTH} characters of the last message,
+     * or null if every message is archived.
+     */
+    public String getPreview() {
+        return preview;
+    }
+
+    /**
+     * Getter method for retrieving the timestamp of the last message.
+     *
+     * @return The timestamp of the last message, in milliseconds since the epoch.
+     */
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Getter method for retrieving the number of messages.
+     *
+     * @return The number of messages of the conversation, archived ones included.
+     */
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * Getter method for retrieving the number of unread messages.
+     *
+     * @return The number of messages received since the conversation was last read.
+     */
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+
+}
@@ -0,0 +1,19 @@
+package fr.insa.chatsystem.model.message;
+
+/**
+ * Enum representing the outcome of sending a message to one recipient of a group message.
+ */
+public enum DeliveryStatus {
+    /**
+     * The datagram was handed to the network.
+     */
+    SENT,
+    /**
+     * Sending the datagram failed.
+     */
+    FAILED,
+    /**
+     * The recipient is not connected, nothing was sent.
+     */
+    OFFLINE
+}
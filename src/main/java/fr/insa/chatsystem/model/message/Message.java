@@ -11,6 +11,8 @@ public class Message {
     private Contact senderContact;
     private Contact receiverContact;
     private final String content;
+    private long timestamp;
+    private String uid;
 
     /**
      * Constructor for creating a Message with a specified messageId and content.
@@ -25,6 +27,9 @@ public class Message {
 
     /**
      * Constructor for creating a Message with specified senderContact, receiverContact, and content.
+     * The timestamp of the message is the current time: the time it is sent for the sender,
+     * the time it is received for the receiver. The message gets a new uid, which the receiver replaces with
+     * the uid chosen by the sender.
      *
      * @param senderContact   The contact who sent the message.
      * @param receiverContact The contact who will receive the message.
@@ -34,6 +39,8 @@ public class Message {
         this.senderContact = senderContact;
         this.receiverContact = receiverContact;
         this.content = content;
+        this.timestamp = System.currentTimeMillis();
+        this.uid = MessageUid.generate();
     }
 
     /**
@@ -45,6 +52,15 @@ public class Message {
         return messageId;
     }
 
+    /**
+     * Setter method for setting the messageId, once the message is stored.
+     *
+     * @param messageId The messageId given to the message by the database.
+     */
+    public void setMessageId(Integer messageId) {
+        this.messageId = messageId;
+    }
+
     /**
      * Getter method for retrieving the senderContact.
      *
@@ -90,4 +106,40 @@ public class Message {
         return content;
     }
 
+    /**
+     * Getter method for retrieving the timestamp.
+     *
+     * @return The time the message was sent or received, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Setter method for setting the timestamp, when the message is read from the database.
+     *
+     * @param timestamp The time the message was sent or received, in milliseconds since the epoch.
+     */
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Getter method for retrieving the uid.
+     *
+     * @return The globally unique identifier chosen by the sender, or null if the message was read from the database.
+     */
+    public String getUid() {
+        return uid;
+    }
+
+    /**
+     * Setter method for setting the uid, to the one chosen by the sender when the message is received.
+     *
+     * @param uid The globally unique identifier of the message.
+     */
+    public void setUid(String uid) {
+        this.uid = uid;
+    }
+
 }
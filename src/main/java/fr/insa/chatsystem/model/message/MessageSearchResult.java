@@ -0,0 +1,52 @@
+package fr.insa.chatsystem.model.message;
+
+/**
+ * Represents a message found by a full-text search, with the part of its content that matched.
+ */
+public class MessageSearchResult {
+
+    private final Message message;
+    private final String snippet;
+    private final double rank;
+
+    /**
+     * Constructor for creating a MessageSearchResult.
+     *
+     * @param message The message found.
+     * @param snippet The part of the content around the matched terms, which are enclosed in brackets.
+     * @param rank    The relevance of the message, lower is more relevant.
+     */
+    public MessageSearchResult(Message message, String snippet, double rank) {
+        this.message = message;
+        this.snippet = snippet;
+        this.rank = rank;
+    }
+
+    /**
+     * Getter method for retrieving the message.
+     *
+     * @return The message found.
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * Getter method for retrieving the snippet.
+     *
+     * @return The part of the content around the matched terms, which are enclosed in brackets.
+     */
+    public String getSnippet() {
+        return snippet;
+    }
+
+    /**
+     * Getter method for retrieving the rank.
+     *
+     * @return The BM25 relevance of the message, lower is more relevant.
+     */
+    public double getRank() {
+        return rank;
+    }
+
+}
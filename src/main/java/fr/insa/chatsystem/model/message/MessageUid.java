@@ -0,0 +1,42 @@
+package fr.insa.chatsystem.model.message;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MessageUid class generates the globally unique identifiers of the messages.
+ * <p>
+ * The identifier is chosen by the sender, sent with the message and stored by both sides, so a message received
+ * twice is recognized and stored once. It is a time-ordered UUID, version 7: the first 48 bits are the time of
+ * creation in milliseconds, the next 12 bits count the identifiers generated in the same millisecond and the others
+ * are random. The identifiers generated by a node therefore sort in creation order, as strings too, and the unique
+ * index over them is appended to at its end like the message_ids.
+ */
+public final class MessageUid {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * The time in milliseconds and the counter of the last identifier, as time << 12 | counter. A counter overflowing
+     * borrows the next millisecond.
+     */
+    private static final AtomicLong LAST_STAMP = new AtomicLong();
+
+    private MessageUid() {
+    }
+
+    /**
+     * Generates a new identifier.
+     *
+     * @return A time-ordered UUID, in its 36 characters string form.
+     */
+    public static String generate() {
+        long now = System.currentTimeMillis() << 12;
+        long stamp = LAST_STAMP.updateAndGet(last -> Math.max(last + 1, now));
+        long mostSigBits = (stamp >>> 12) << 16 | 0x7000L | stamp & 0xFFFL;
+        long leastSigBits = RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits).toString();
+    }
+
+}
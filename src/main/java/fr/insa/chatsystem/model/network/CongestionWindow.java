@@ -0,0 +1,73 @@
+package fr.insa.chatsystem.model.network;
+
+/**
+ * The CongestionWindow class sizes the number of unacknowledged packets of one bulk flow, using the AIMD scheme of TCP.
+ * <p>
+ * The window starts small and doubles every round trip (slow start) until the first loss, then grows by one packet per
+ * round trip. A loss halves the window, at most once per retransmission timeout, since the packets lost in one burst
+ * are all detected together. The window is never smaller than 2 packets nor larger than its maximum.
+ * <p>
+ * A CongestionWindow belongs to the thread of its flow and is not thread-safe.
+ */
+public class CongestionWindow {
+
+    private static final int MINIMUM_WINDOW = 2;
+    private static final int INITIAL_WINDOW = 4;
+
+    private final int maximumWindow;
+    private final long lossIntervalNanos;
+    private double window;
+    private double slowStartThreshold;
+    private long lastReductionNanos;
+    private boolean reduced;
+
+    /**
+     * Constructs a new CongestionWindow.
+     *
+     * @param maximumWindow     The largest number of unacknowledged packets.
+     * @param lossIntervalNanos The retransmission timeout of the flow, the shortest interval between two reductions.
+     */
+    public CongestionWindow(int maximumWindow, long lossIntervalNanos) {
+        this.maximumWindow = Math.max(MINIMUM_WINDOW, maximumWindow);
+        this.lossIntervalNanos = lossIntervalNanos;
+        this.slowStartThreshold = this.maximumWindow;
+        this.window = Math.min(INITIAL_WINDOW, this.maximumWindow);
+    }
+
+    /**
+     * Gets the number of packets that may be unacknowledged.
+     *
+     * @return The current size of the window.
+     */
+    public int getWindow() {
+        return (int) window;
+    }
+
+    /**
+     * Grows the window after a packet was acknowledged.
+     */
+    public void packetAcknowledged() {
+        if (window < slowStartThreshold) {
+            window += 1;
+        } else {
+            window += 1 / window;
+        }
+        window = Math.min(window, maximumWindow);
+    }
+
+    /**
+     * Halves the window after a packet was lost, unless it was already halved during the last retransmission timeout.
+     *
+     * @param nowNanos The time at which the loss was detected, from System.nanoTime().
+     */
+    public void packetLost(long nowNanos) {
+        if (reduced && nowNanos - lastReductionNanos < lossIntervalNanos) {
+            return;
+        }
+        slowStartThreshold = Math.max(MINIMUM_WINDOW, window / 2);
+        window = slowStartThreshold;
+        lastReductionNanos = nowNanos;
+        reduced = true;
+    }
+
+}
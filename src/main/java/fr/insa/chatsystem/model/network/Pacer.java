@@ -0,0 +1,116 @@
+package fr.insa.chatsystem.model.network;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * The Pacer class limits the rate at which bulk traffic leaves this node, with a token bucket shared by every
+ * bulk sender (group fan-out and file transfers). Interactive messages are not paced.
+ * <p>
+ * The bucket is refilled at "chatsystem.pacer.rate" bytes per second and holds at most "chatsystem.pacer.burst" bytes,
+ * so a sender that was idle can send one burst at full speed before being paced. A rate of 0 disables pacing.
+ */
+public class Pacer {
+
+    /**
+     * Default rate ceiling in bytes per second, a bit below the capacity of a gigabit link.
+     */
+    public static final long DEFAULT_RATE = 100_000_000L;
+
+    /**
+     * Default size of the token bucket in bytes.
+     */
+    public static final long DEFAULT_BURST = 256 * 1024;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final Pacer INSTANCE = new Pacer(Long.getLong("chatsystem.pacer.rate", DEFAULT_RATE),
+            Long.getLong("chatsystem.pacer.burst", DEFAULT_BURST));
+
+    private final long rate;
+    private final long burst;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Returns the singleton instance of Pacer.
+     *
+     * @return The singleton instance of Pacer.
+     */
+    public static Pacer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Constructs a new Pacer with a full bucket.
+     *
+     * @param rate  The rate ceiling in bytes per second, 0 to disable pacing.
+     * @param burst The size of the token bucket in bytes.
+     */
+    Pacer(long rate, long burst) {
+        this(rate, burst, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new Pacer with a full bucket, refilled from a specified clock.
+     *
+     * @param rate      The rate ceiling in bytes per second, 0 to disable pacing.
+     * @param burst     The size of the token bucket in bytes.
+     * @param nanoClock The clock giving the current time in nanoseconds, like System.nanoTime().
+     */
+    Pacer(long rate, long burst, LongSupplier nanoClock) {
+        this.rate = rate;
+        this.burst = burst;
+        this.nanoClock = nanoClock;
+        this.tokens = burst;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes the tokens needed to send a packet if they are available.
+     *
+     * @param bytes The size of the packet.
+     * @return 0 if the packet may be sent now, otherwise the number of nanoseconds after which to try again.
+     */
+    public synchronized long tryAcquire(int bytes) {
+        if (rate <= 0) {
+            return 0;
+        }
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(burst, tokens + (double) (now - lastRefillNanos) * rate / NANOS_PER_SECOND);
+        lastRefillNanos = now;
+
+        // a packet larger than the bucket is let through once the bucket is full
+        double needed = Math.min(bytes, burst);
+        if (tokens >= needed) {
+            tokens -= bytes;
+            return 0;
+        }
+        return Math.max(1, (long) ((needed - tokens) * NANOS_PER_SECOND / rate));
+    }
+
+    /**
+     * Gives back the tokens taken for a packet that could not be sent, so that they are not lost for the other senders.
+     *
+     * @param bytes The size of the packet, as given to {@link #tryAcquire(int)} or {@link #acquire(int)}.
+     */
+    public synchronized void release(int bytes) {
+        if (rate <= 0) {
+            return;
+        }
+        tokens = Math.min(burst, tokens + bytes);
+    }
+
+    /**
+     * Waits until a packet may be sent, then takes its tokens.
+     *
+     * @param bytes The size of the packet.
+     */
+    public void acquire(int bytes) {
+        long waitNanos;
+        while ((waitNanos = tryAcquire(bytes)) > 0) {
+            LockSupport.parkNanos(waitNanos);
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package fr.insa.chatsystem.model.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * The ReceiveStatistics class holds the counters of the UDP receive path.
+ * Kernel side counters (socket drops and queued bytes) are updated by the SocketDropMonitor,
+ * application side counters (received packets, dropped packets and queue depth) by the UDPListener.
+ * Comparing both sides tells if packets are lost in the kernel or in the application.
+ */
+public class ReceiveStatistics {
+
+    private final AtomicLong receivedPackets = new AtomicLong();
+    private final AtomicLong applicationDrops = new AtomicLong();
+    private final AtomicLong kernelDrops = new AtomicLong(-1);
+    private final AtomicLong kernelQueuedBytes = new AtomicLong(-1);
+    private final IntSupplier queueDepth;
+    private volatile int receiveBufferSize;
+
+    /**
+     * Constructs a new ReceiveStatistics instance.
+     *
+     * @param queueDepth Supplier of the current number of packets waiting in the application receive queue.
+     */
+    public ReceiveStatistics(IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    void packetReceived() {
+        receivedPackets.incrementAndGet();
+    }
+
+    void packetDroppedByApplication() {
+        applicationDrops.incrementAndGet();
+    }
+
+    void setKernelCounters(long drops, long queuedBytes) {
+        kernelDrops.set(drops);
+        kernelQueuedBytes.set(queuedBytes);
+    }
+
+    void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * @return The number of packets received from the socket.
+     */
+    public long getReceivedPackets() {
+        return receivedPackets.get();
+    }
+
+    /**
+     * @return The number of packets dropped because the application receive queue was full.
+     */
+    public long getApplicationDrops() {
+        return applicationDrops.get();
+    }
+
+    /**
+     * @return The drop counter of the socket as reported by the kernel, or -1 if it is not available.
+     */
+    public long getKernelDrops() {
+        return kernelDrops.get();
+    }
+
+    /**
+     * @return The number of bytes waiting in the kernel receive buffer, or -1 if it is not available.
+     */
+    public long getKernelQueuedBytes() {
+        return kernelQueuedBytes.get();
+    }
+
+    /**
+     * @return The number of packets waiting in the application receive queue.
+     */
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    /**
+     * @return The receive buffer size actually granted by the kernel.
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Returns a string representation of the statistics, used for logging.
+     *
+     * @return a string representation of the statistics
+     */
+    @Override
+    public String toString() {
+        return "received=" + getReceivedPackets()
+                + " queueDepth=" + getQueueDepth()
+                + " applicationDrops=" + getApplicationDrops()
+                + " kernelQueuedBytes=" + getKernelQueuedBytes()
+                + " kernelDrops=" + getKernelDrops()
+                + " receiveBuffer=" + getReceiveBufferSize();
+    }
+
+}
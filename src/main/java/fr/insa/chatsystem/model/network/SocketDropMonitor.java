@@ -0,0 +1,139 @@
+package fr.insa.chatsystem.model.network;
+
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import fr.insa.chatsystem.model.logger.message.InfoMessages;
+import fr.insa.chatsystem.model.logger.message.TraceMessages;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SocketDropMonitor class periodically reads the kernel statistics of the listening UDP socket
+ * from /proc/net/udp and /proc/net/udp6, and stores its drop counter and queued bytes in the ReceiveStatistics.
+ * An error is logged each time the kernel drop counter grows.
+ * <p>
+ * The monitor is only active on Linux, on other systems it logs that monitoring is unavailable and does nothing.
+ */
+public class SocketDropMonitor {
+
+    private static final Logger LOGGER = LogManager.getLogger(SocketDropMonitor.class);
+
+    /**
+     * Default number of seconds between two reads of the kernel statistics.
+     */
+    public static final int DEFAULT_PERIOD_SECONDS = 10;
+
+    private static final List<Path> KERNEL_STATISTICS_FILES = List.of(Paths.get("/proc/net/udp"), Paths.get("/proc/net/udp6"));
+
+    // column indexes of a /proc/net/udp line, see Documentation/networking/proc_net_udp in the kernel sources
+    private static final int LOCAL_ADDRESS_COLUMN = 1;
+    private static final int QUEUE_COLUMN = 4;
+    private static final int DROPS_COLUMN = 12;
+
+    private final int port;
+    private final ReceiveStatistics statistics;
+    private ScheduledExecutorService scheduler;
+    private long lastKernelDrops = -1;
+
+    /**
+     * Constructs a new SocketDropMonitor for the socket bound to the specified port.
+     *
+     * @param port       The local port of the monitored socket.
+     * @param statistics The statistics updated with the kernel counters.
+     */
+    public SocketDropMonitor(int port, ReceiveStatistics statistics) {
+        this.port = port;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Starts reading the kernel statistics every "chatsystem.udp.dropcheck.seconds" seconds.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        if (KERNEL_STATISTICS_FILES.stream().noneMatch(Files::isReadable)) {
+            LOGGER.info(InfoMessages.SOCKET_DROP_MONITOR_UNAVAILABLE, KERNEL_STATISTICS_FILES.get(0));
+            return;
+        }
+
+        int period = Math.max(1, Integer.getInteger("chatsystem.udp.dropcheck.seconds", DEFAULT_PERIOD_SECONDS));
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "socket-drop-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::poll, 0, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic reads.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Reads the kernel counters once, updates the statistics and logs new drops.
+     */
+    void poll() {
+        long drops = 0;
+        long queuedBytes = 0;
+        boolean found = false;
+
+        for (Path file : KERNEL_STATISTICS_FILES) {
+            if (!Files.isReadable(file)) {
+                continue;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(file)) {
+                reader.readLine();   // header
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] columns = line.trim().split("\\s+");
+                    if (columns.length <= DROPS_COLUMN || localPort(columns[LOCAL_ADDRESS_COLUMN]) != port) {
+                        continue;
+                    }
+                    String queues = columns[QUEUE_COLUMN];
+                    queuedBytes += Long.parseLong(queues.substring(queues.indexOf(':') + 1), 16);
+                    drops += Long.parseLong(columns[DROPS_COLUMN]);
+                    found = true;
+                }
+            } catch (IOException | NumberFormatException e) {
+                LOGGER.error(ErrorMessages.BASIC_ERROR + e.getMessage());
+                return;
+            }
+        }
+
+        if (!found) {
+            return;
+        }
+
+        statistics.setKernelCounters(drops, queuedBytes);
+        if (lastKernelDrops >= 0 && drops > lastKernelDrops) {
+            LOGGER.error(ErrorMessages.PACKETS_DROPPED_BY_KERNEL, drops - lastKernelDrops, statistics);
+        }
+        lastKernelDrops = drops;
+        LOGGER.trace(TraceMessages.RECEIVE_STATISTICS, statistics);
+    }
+
+    /**
+     * Extracts the port of a hexadecimal "address:port" column.
+     */
+    private static int localPort(String localAddress) {
+        return Integer.parseInt(localAddress.substring(localAddress.indexOf(':') + 1), 16);
+    }
+
+}
@@ -1,7 +1,9 @@
 package fr.insa.chatsystem.model.network;
 
 import fr.insa.chatsystem.Main;
+import fr.insa.chatsystem.model.logger.PacketTraceSampler;
 import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import fr.insa.chatsystem.model.logger.message.InfoMessages;
 import fr.insa.chatsystem.model.logger.message.TraceMessages;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,13 +12,20 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.SocketException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * UDPListener is a threaded class responsible for listening to incoming UDP messages on a specified port.
  * It implements a simple observer pattern to notify registered observers when a new message is received.
  * <p>
+ * Received messages are put in a bounded receive queue and handed to the observers by a separate dispatcher thread,
+ * so slow observers do not keep the socket from being drained. The size of the kernel receive buffer
+ * ("chatsystem.udp.rcvbuf") and of the receive queue ("chatsystem.udp.queue") are configurable, and
+ * the receive path counters are available through {@link #getStatistics()}.
+ * <p>
  * Usage:
  * To use this class, create an instance by providing the port number to listen on. Register observers
  * using the addObserver method. Start the listener by calling the start() method.
@@ -24,17 +33,64 @@ import java.util.List;
 public class UDPListener extends Thread {
 
     private static final Logger LOGGER = LogManager.getLogger(UDPListener.class);
-    private boolean running;
+
+    /**
+     * Default size in bytes requested for the kernel receive buffer of the socket.
+     */
+    public static final int DEFAULT_RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Default capacity of the application receive queue, in packets.
+     */
+    public static final int DEFAULT_RECEIVE_QUEUE_CAPACITY = 1024;
+
+    private static final int MAX_PACKET_SIZE = 1024;
+
+    private volatile boolean running;
     private final DatagramSocket receiveSocket;
+    private final BlockingQueue<UDPMessage> receiveQueue;
+    private final ReceiveStatistics statistics;
+    private final SocketDropMonitor socketDropMonitor;
+    private final Thread dispatcher;
 
     /**
-     * Constructs a new UDPListener instance that listens on the specified port.
+     * Constructs a new UDPListener instance that listens on the specified port,
+     * with the receive buffer size read from the "chatsystem.udp.rcvbuf" system property.
      *
      * @param port The port number to listen on.
      * @throws SocketException If an error occurs while creating the DatagramSocket.
      */
     public UDPListener(int port) throws SocketException {
+        this(port, Integer.getInteger("chatsystem.udp.rcvbuf", DEFAULT_RECEIVE_BUFFER_SIZE));
+    }
+
+    /**
+     * Constructs a new UDPListener instance that listens on the specified port.
+     * The kernel may grant a smaller receive buffer than requested (net.core.rmem_max on Linux),
+     * the size actually granted is logged and stored in the statistics.
+     *
+     * @param port              The port number to listen on.
+     * @param receiveBufferSize The requested size of the kernel receive buffer in bytes.
+     * @throws SocketException If an error occurs while creating the DatagramSocket.
+     */
+    public UDPListener(int port, int receiveBufferSize) throws SocketException {
+        super("udp-listener");
         receiveSocket = new DatagramSocket(port);
+        receiveSocket.setReceiveBufferSize(receiveBufferSize);
+
+        int queueCapacity = Integer.getInteger("chatsystem.udp.queue", DEFAULT_RECEIVE_QUEUE_CAPACITY);
+        if (queueCapacity <= 0) {
+            LOGGER.error(ErrorMessages.INVALID_PROPERTY, "chatsystem.udp.queue", queueCapacity, DEFAULT_RECEIVE_QUEUE_CAPACITY);
+            queueCapacity = DEFAULT_RECEIVE_QUEUE_CAPACITY;
+        }
+        receiveQueue = new ArrayBlockingQueue<>(queueCapacity);
+        statistics = new ReceiveStatistics(receiveQueue::size);
+        statistics.setReceiveBufferSize(receiveSocket.getReceiveBufferSize());
+        LOGGER.info(InfoMessages.RECEIVE_BUFFER_SIZE, receiveBufferSize, statistics.getReceiveBufferSize());
+
+        socketDropMonitor = new SocketDropMonitor(port, statistics);
+        dispatcher = new Thread(this::dispatch, "udp-dispatcher");
+        dispatcher.setDaemon(true);
         running = true;
     }
 
@@ -52,6 +108,16 @@ public class UDPListener extends Thread {
         running = true;
     }
 
+    /**
+     * Gets the counters of the receive path: packets received and dropped by the application,
+     * receive queue depth, and the drop counter of the socket reported by the kernel.
+     *
+     * @return The receive statistics of this listener.
+     */
+    public ReceiveStatistics getStatistics() {
+        return statistics;
+    }
+
     /**
      * Interface for classes that want to observe incoming UDP messages.
      */
@@ -59,55 +125,76 @@ public class UDPListener extends Thread {
         void messageReceived(UDPMessage message);
     }
 
-    private final List<Observer> observers = new ArrayList<>();
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
 
     /**
      * Adds an observer to the list of observers.
      *
      * @param observer The observer to be added.
      */
-    public synchronized void addObserver(Observer observer) {
+    public void addObserver(Observer observer) {
         this.observers.add(observer);
     }
 
     /**
      * Runs the UDP listener in a loop, continuously listening for incoming UDP messages.
-     * When a message is received, it notifies all registered observers.
+     * When a message is received, it is put in the receive queue for the dispatcher thread.
+     * If the queue is full the message is dropped and counted.
      * Exits the system in case of an IOException.
      */
     @Override
-    public synchronized void run() {
+    public void run() {
+        dispatcher.start();
+        socketDropMonitor.start();
+
+        byte[] buffer = new byte[MAX_PACKET_SIZE];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
         try {
             while (running) {
-                DatagramPacket packet = receiveMessage();
+                packet.setLength(buffer.length);
+                receiveSocket.receive(packet);
+                statistics.packetReceived();
+
                 String packetData = new String(packet.getData(), 0, packet.getLength());
                 UDPMessage udpMessage = new UDPMessage(packet.getAddress(), packetData);
 
-                for (Observer observer : this.observers) {
-                    observer.messageReceived(udpMessage);
-                }
-
-                if (!udpMessage.getSenderAddress().equals(Main.self.getAddress())) {
-                    LOGGER.trace(String.format(TraceMessages.MESSAGE_RECEIVED, udpMessage.getType(), udpMessage.getSenderAddress()));
+                if (!receiveQueue.offer(udpMessage)) {
+                    statistics.packetDroppedByApplication();
+                    LOGGER.error(ErrorMessages.PACKET_DROPPED_BY_APPLICATION, udpMessage.getSenderAddress());
                 }
             }
         } catch (IOException e) {
             LOGGER.error(ErrorMessages.BASIC_ERROR + e.getMessage());
             System.exit(1);
+        } finally {
+            socketDropMonitor.stop();
         }
     }
 
     /**
-     * Receives a DatagramPacket containing incoming UDP message data.
-     *
-     * @return The received DatagramPacket.
-     * @throws IOException If an error occurs while receiving the packet.
+     * Takes the messages out of the receive queue and notifies all registered observers.
+     * An observer failing on a message is logged and does not stop the dispatch of the following messages.
      */
-    private DatagramPacket receiveMessage() throws IOException {
-        byte[] buffer = new byte[1024];
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-        receiveSocket.receive(packet);
-        return packet;
+    private void dispatch() {
+        try {
+            while (true) {
+                UDPMessage udpMessage = receiveQueue.take();
+
+                for (Observer observer : this.observers) {
+                    try {
+                        observer.messageReceived(udpMessage);
+                    } catch (RuntimeException e) {
+                        LOGGER.error(ErrorMessages.UDP_OBSERVER_FAILED, udpMessage.getType(), udpMessage.getSenderAddress(), e.toString());
+                    }
+                }
+
+                if (LOGGER.isTraceEnabled() && PacketTraceSampler.sampleReceived() && !udpMessage.getSenderAddress().equals(Main.self.getAddress())) {
+                    LOGGER.trace(TraceMessages.MESSAGE_RECEIVED, udpMessage.getType(), udpMessage.getSenderAddress());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
 }
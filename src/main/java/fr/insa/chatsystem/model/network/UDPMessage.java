@@ -14,6 +14,7 @@ public class UDPMessage {
     private final UDPMessageType type;
     private final String content;
     private String senderPreviousUsername;
+    private String messageUid;
 
     /**
      * Constructs a UDPMessage object with specified parameters.
@@ -47,6 +48,20 @@ public class UDPMessage {
         this.senderPreviousUsername = senderPreviousUsername;
     }
 
+    /**
+     * Constructs a chat UDPMessage object carrying the unique identifier of the chat message.
+     *
+     * @param senderAddress  the InetAddress of the message sender
+     * @param senderUsername the username of the message sender
+     * @param type           the type of the UDP message, CHAT_MESSAGE
+     * @param content        the content of the message
+     * @param messageUid     the globally unique identifier of the chat message, chosen by the sender
+     */
+    public UDPMessage(InetAddress senderAddress, String senderUsername, UDPMessageType type, String content, String messageUid) {
+        this(senderAddress, senderUsername, type, content);
+        this.messageUid = messageUid;
+    }
+
     /**
      * Constructs a UDPMessage object from packet data received in string format.
      *
@@ -61,6 +76,7 @@ public class UDPMessage {
         this.type = udpMessage.type;
         this.content = udpMessage.content;
         this.senderPreviousUsername = udpMessage.senderPreviousUsername;
+        this.messageUid = udpMessage.messageUid;
     }
 
     /**
@@ -118,4 +134,14 @@ public class UDPMessage {
         return senderPreviousUsername;
     }
 
+    /**
+     * Gets the unique identifier of the chat message.
+     *
+     * @return the identifier chosen by the sender, or null if the message is not a chat message or comes from a
+     * version that did not send one
+     */
+    public String getMessageUid() {
+        return messageUid;
+    }
+
 }
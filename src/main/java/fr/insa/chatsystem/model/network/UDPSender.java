@@ -1,5 +1,7 @@
 package fr.insa.chatsystem.model.network;
 
+import fr.insa.chatsystem.model.logger.PacketTraceSampler;
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
 import fr.insa.chatsystem.model.logger.message.TraceMessages;
 import com.google.gson.Gson;
 import org.apache.logging.log4j.LogManager;
@@ -8,14 +10,22 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The UDPSender class provides static methods for sending UDP messages.
  * It includes methods for sending messages to specific addresses and broadcasting messages to all available addresses.
+ * Messages sent to a single address are interactive and are not paced.
  */
 public class UDPSender {
 
     private static final Logger LOGGER = LogManager.getLogger(UDPSender.class);
+    private static final Gson GSON = new Gson();
 
     /**
      * Sends a UDP message to a specific address.
@@ -31,7 +41,9 @@ public class UDPSender {
 
         sendMessage(sendSocket, udpMessage, receiveAddress, receivePort);
 
-        LOGGER.trace(String.format(TraceMessages.MESSAGE_SENT, udpMessage.getType(), udpMessage.getSenderAddress()));
+        if (LOGGER.isTraceEnabled() && PacketTraceSampler.sampleSent()) {
+            LOGGER.trace(TraceMessages.MESSAGE_SENT, udpMessage.getType(), receiveAddress);
+        }
     }
 
     /**
@@ -48,7 +60,47 @@ public class UDPSender {
 
         sendMessage(sendSocket, udpMessage, broadcastAddress, receivePort);
 
-        LOGGER.trace(String.format(TraceMessages.MESSAGE_BROADCAST, udpMessage.getType()));
+        if (LOGGER.isTraceEnabled() && PacketTraceSampler.sampleSent()) {
+            LOGGER.trace(TraceMessages.MESSAGE_BROADCAST, udpMessage.getType());
+        }
+    }
+
+    /**
+     * Sends the same UDP message to several addresses.
+     * The message is serialized once and every datagram is sent from a single channel,
+     * so the cost per recipient is one send call.
+     * The datagrams are bulk traffic and go through the Pacer.
+     *
+     * @param udpMessage       The UDP message to be sent.
+     * @param receiveAddresses The addresses to which the message will be sent.
+     * @param receivePort      The port to which the message will be sent.
+     * @return For each address, true if the datagram was sent, false if sending failed.
+     * @throws IOException If the channel can not be opened.
+     */
+    public static Map<InetAddress, Boolean> sendFanOutMessage(UDPMessage udpMessage, List<InetAddress> receiveAddresses, int receivePort) throws IOException {
+        Map<InetAddress, Boolean> outcomes = new LinkedHashMap<>();
+        ByteBuffer payload = ByteBuffer.wrap(GSON.toJson(udpMessage).getBytes());
+        Pacer pacer = Pacer.getInstance();
+
+        try (DatagramChannel sendChannel = DatagramChannel.open()) {
+            for (InetAddress receiveAddress : receiveAddresses) {
+                payload.rewind();
+                pacer.acquire(payload.remaining());
+                try {
+                    sendChannel.send(payload, new InetSocketAddress(receiveAddress, receivePort));
+                    outcomes.put(receiveAddress, true);
+                    if (LOGGER.isTraceEnabled() && PacketTraceSampler.sampleSent()) {
+                        LOGGER.trace(TraceMessages.MESSAGE_SENT, udpMessage.getType(), receiveAddress);
+                    }
+                } catch (IOException e) {
+                    pacer.release(payload.capacity());
+                    LOGGER.error(String.format(ErrorMessages.SEND_MESSAGE_ERROR, udpMessage.getType(), e.getMessage()));
+                    outcomes.put(receiveAddress, false);
+                }
+            }
+        }
+
+        return outcomes;
     }
 
     /**
@@ -61,8 +113,7 @@ public class UDPSender {
      * @throws IOException    If an I/O error occurs while sending the message.
      */
     private static void sendMessage(DatagramSocket sendSocket, UDPMessage udpMessage, InetAddress receiveAddress, int receivePort) throws IOException {
-        Gson gson = new Gson();
-        String packetData = gson.toJson(udpMessage);
+        String packetData = GSON.toJson(udpMessage);
         byte[] buffer = packetData.getBytes();
         DatagramPacket packet = new DatagramPacket(buffer, buffer.length, receiveAddress, receivePort);
         sendSocket.send(packet);
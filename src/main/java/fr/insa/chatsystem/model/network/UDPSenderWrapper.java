@@ -1,12 +1,19 @@
 package fr.insa.chatsystem.model.network;
 
 import fr.insa.chatsystem.Main;
+import fr.insa.chatsystem.model.contact.Contact;
 import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import fr.insa.chatsystem.model.message.DeliveryStatus;
 import fr.insa.chatsystem.model.message.Message;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import static fr.insa.chatsystem.Main.self;
 
@@ -103,7 +110,8 @@ public class UDPSenderWrapper {
      * @param message The chat message to be sent.
      */
     public static void sendChatMessage(Message message) {
-        UDPMessage chatMessage = new UDPMessage(self.getAddress(), self.getUsername(), UDPMessageType.CHAT_MESSAGE, message.getContent());
+        UDPMessage chatMessage = new UDPMessage(self.getAddress(), self.getUsername(), UDPMessageType.CHAT_MESSAGE, message.getContent(),
+                message.getUid());
         try {
             UDPSender.sendMessage(chatMessage, message.getReceiverContact().getAddress(), Main.RECEIVE_PORT);
         } catch (IOException e) {
@@ -112,4 +120,40 @@ public class UDPSenderWrapper {
         }
     }
 
+    /**
+     * Sends one chat message to several receivers.
+     * The method creates a single CHAT_MESSAGE type UDPMessage and fans it out to the addresses of the receivers
+     * using UDPSender. Receivers without an address are not connected and are reported as OFFLINE.
+     * Unlike the other methods, a failure is reported per receiver instead of exiting the system.
+     *
+     * @param message   The chat message to be sent.
+     * @param receivers The contacts that should receive the message.
+     * @return The delivery status of the message for each receiver.
+     */
+    public static Map<Contact, DeliveryStatus> sendGroupChatMessage(Message message, List<Contact> receivers) {
+        Map<Contact, DeliveryStatus> outcomes = new LinkedHashMap<>();
+        List<InetAddress> addresses = receivers.stream().map(Contact::getAddress).filter(Objects::nonNull).distinct().toList();
+
+        UDPMessage chatMessage = new UDPMessage(self.getAddress(), self.getUsername(), UDPMessageType.CHAT_MESSAGE, message.getContent(),
+                message.getUid());
+        Map<InetAddress, Boolean> sent;
+        try {
+            sent = UDPSender.sendFanOutMessage(chatMessage, addresses, Main.RECEIVE_PORT);
+        } catch (IOException e) {
+            LOGGER.error(String.format(ErrorMessages.SEND_MESSAGE_ERROR, UDPMessageType.CHAT_MESSAGE, e.getMessage()));
+            sent = Map.of();
+        }
+
+        for (Contact receiver : receivers) {
+            if (receiver.getAddress() == null) {
+                outcomes.put(receiver, DeliveryStatus.OFFLINE);
+            } else if (sent.getOrDefault(receiver.getAddress(), false)) {
+                outcomes.put(receiver, DeliveryStatus.SENT);
+            } else {
+                outcomes.put(receiver, DeliveryStatus.FAILED);
+            }
+        }
+        return outcomes;
+    }
+
 }
@@ -0,0 +1,256 @@
+package fr.insa.chatsystem.model.repository;
+
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import fr.insa.chatsystem.model.logger.message.InfoMessages;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static fr.insa.chatsystem.Main.self;
+
+/**
+ * The ConnectionManager class keeps the SQLite connections open for the lifetime of the application.
+ * <p>
+ * Reads use a connection per thread, opened on first use and reused by every following read of that thread,
+ * so connections are never shared between the UDP listener, the file transfer threads and the Swing thread.
+ * The connection of a thread that has ended is closed the next time a connection is opened.
+ * Writes use a single writer connection, which callers may only use while holding the write lock of the
+ * SQLiteConnector, so there is exactly one writer at a time and writers never get SQLITE_BUSY from each other.
+ * A connection is reopened if it was closed or if the database file changed (the file name depends on the address of
+ * the logged-in user). Handing out a connection costs no round trip to the database: a connection is only validated
+ * after a statement failed on it, and closed if it is no longer valid so that the next access reopens it.
+ * The JDBC driver is loaded once.
+ * Every connection comes with its own StatementCache and is configured with the selected DatabaseProfile.
+ * The first time a database is opened, its schema is brought up to date by the SchemaMigrator.
+ */
+public class ConnectionManager {
+
+    private static final Logger LOGGER = LogManager.getLogger(ConnectionManager.class);
+    private static final ConnectionManager INSTANCE = new ConnectionManager();
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    /**
+     * Returns the singleton instance of ConnectionManager.
+     *
+     * @return The singleton instance of ConnectionManager.
+     */
+    public static ConnectionManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * A connection, the URL of the database it was opened on, its prepared statements and the thread it is confined
+     * to, null for the writer connection.
+     */
+    private record ThreadConnection(String databaseUrl, Connection connection, StatementCache statementCache, Thread owner) {
+    }
+
+    private final ThreadLocal<ThreadConnection> threadConnections = new ThreadLocal<>();
+    private final Set<ThreadConnection> openConnections = ConcurrentHashMap.newKeySet();
+    private ThreadConnection writerConnection;
+    private final Set<String> migratedDatabases = ConcurrentHashMap.newKeySet();
+
+    private ConnectionManager() {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            LOGGER.error(ErrorMessages.DATABASE_CONNECTION_MESSAGE_ERROR + e.getMessage());
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Returns the path of the database file of the logged-in user, "database-[ip].db" unless the
+     * "chatsystem.db.path" system property is set.
+     *
+     * @return The path of the database file.
+     */
+    public String getDatabasePath() {
+        String databasePath = System.getProperty("chatsystem.db.path");
+        if (databasePath != null) {
+            return databasePath;
+        }
+        return "database-" + self.getAddress().getHostAddress() + ".db";
+    }
+
+    /**
+     * Returns the URL of the database of the logged-in user.
+     *
+     * @return The JDBC URL of the database.
+     */
+    public String getDatabaseUrl() {
+        return "jdbc:sqlite:" + getDatabasePath();
+    }
+
+    /**
+     * Returns the connection of the calling thread, opening it if the thread has none or if it is no longer valid.
+     *
+     * @return An open connection confined to the calling thread.
+     * @throws SQLException If the connection can not be opened.
+     */
+    public Connection getConnection() throws SQLException {
+        return getStatementCache().getConnection();
+    }
+
+    /**
+     * Returns the statement cache of the connection of the calling thread, opening the connection if needed.
+     *
+     * @return The statement cache of a connection confined to the calling thread.
+     * @throws SQLException If the connection can not be opened.
+     */
+    public StatementCache getStatementCache() throws SQLException {
+        ThreadConnection threadConnection = validOrOpen(threadConnections.get(), Thread.currentThread());
+        threadConnections.set(threadConnection);
+        return threadConnection.statementCache();
+    }
+
+    /**
+     * Returns the single writer connection, opening it if needed.
+     * The caller must hold the write lock until it is done with the connection.
+     *
+     * @return The open writer connection.
+     * @throws SQLException If the connection can not be opened.
+     */
+    public Connection getWriterConnection() throws SQLException {
+        return getWriterStatementCache().getConnection();
+    }
+
+    /**
+     * Returns the statement cache of the writer connection, opening the connection if needed.
+     * The caller must hold the write lock until it is done with the statements.
+     *
+     * @return The statement cache of the writer connection.
+     * @throws SQLException If the connection can not be opened.
+     */
+    public synchronized StatementCache getWriterStatementCache() throws SQLException {
+        writerConnection = validOrOpen(writerConnection, null);
+        return writerConnection.statementCache();
+    }
+
+    /**
+     * Validates the connection of the calling thread after a statement failed on it, and closes it if it is no longer
+     * valid, so that the next access opens a new connection.
+     *
+     * @param writer True if the statement ran on the writer connection, which the caller must hold the write lock for.
+     */
+    public void revalidate(boolean writer) {
+        if (writer) {
+            synchronized (this) {
+                if (writerConnection != null && !isValid(writerConnection)) {
+                    close(writerConnection);
+                    writerConnection = null;
+                }
+            }
+        } else {
+            ThreadConnection threadConnection = threadConnections.get();
+            if (threadConnection != null && !isValid(threadConnection)) {
+                close(threadConnection);
+                threadConnections.remove();
+            }
+        }
+    }
+
+    /**
+     * Closes the writer connection, which rolls back its open transaction. The next write opens a new connection.
+     * The caller must hold the write lock.
+     */
+    public synchronized void discardWriterConnection() {
+        if (writerConnection != null) {
+            close(writerConnection);
+            writerConnection = null;
+        }
+    }
+
+    private boolean isValid(ThreadConnection threadConnection) {
+        try {
+            return threadConnection.connection().isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the given connection if it is still open on the current database, otherwise a new one confined to the
+     * given thread. Opening a connection first closes the connections of the threads that have ended.
+     */
+    private ThreadConnection validOrOpen(ThreadConnection threadConnection, Thread owner) throws SQLException {
+        String databaseUrl = getDatabaseUrl();
+        if (threadConnection != null) {
+            if (threadConnection.databaseUrl().equals(databaseUrl) && !threadConnection.connection().isClosed()) {
+                return threadConnection;
+            }
+            close(threadConnection);
+        }
+        closeEndedThreadConnections();
+
+        Connection connection = DriverManager.getConnection(databaseUrl);
+        DatabaseProfile.current().apply(connection);
+        if (!migratedDatabases.contains(databaseUrl)) {
+            migrate(databaseUrl, connection);
+        }
+        ThreadConnection opened = new ThreadConnection(databaseUrl, connection, new StatementCache(connection), owner);
+        openConnections.add(opened);
+        return opened;
+    }
+
+    /**
+     * Closes the connections of the threads that have ended, such as the threads of a background service that was
+     * restarted, which nothing else would close before the shutdown.
+     */
+    private void closeEndedThreadConnections() {
+        for (ThreadConnection threadConnection : openConnections) {
+            if (threadConnection.owner() != null && !threadConnection.owner().isAlive()) {
+                close(threadConnection);
+            }
+        }
+    }
+
+    /**
+     * Migrates a database once, other threads opening the same database wait for the migration.
+     */
+    private void migrate(String databaseUrl, Connection connection) throws SQLException {
+        synchronized (migratedDatabases) {
+            if (!migratedDatabases.contains(databaseUrl)) {
+                try {
+                    SchemaMigrator.migrate(connection);
+                } catch (SQLException e) {
+                    connection.close();
+                    throw e;
+                }
+                migratedDatabases.add(databaseUrl);
+            }
+        }
+    }
+
+    /**
+     * Closes every open connection. A thread that uses the database afterwards opens a new connection.
+     */
+    public void shutdown() {
+        for (ThreadConnection threadConnection : openConnections) {
+            close(threadConnection);
+        }
+        LOGGER.info(InfoMessages.STATEMENT_CACHE_STATISTICS, StatementCache.getHits(), StatementCache.getMisses(),
+                StatementCache.getEvictions());
+    }
+
+    /**
+     * Closes a connection, once: a connection already closed by another thread is left alone.
+     */
+    private void close(ThreadConnection threadConnection) {
+        if (!openConnections.remove(threadConnection)) {
+            return;
+        }
+        try {
+            threadConnection.statementCache().clear();
+            threadConnection.connection().close();
+        } catch (SQLException e) {
+            LOGGER.error(ErrorMessages.DATABASE_CONNECTION_MESSAGE_ERROR + e.getMessage());
+        }
+    }
+
+}
@@ -1,13 +1,7 @@
 package fr.insa.chatsystem.model.repository;
 
 import fr.insa.chatsystem.model.contact.Contact;
-import fr.insa.chatsystem.model.logger.message.ErrorMessages;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,26 +11,29 @@ import java.util.Optional;
  */
 public class ContactRepository extends Repository {
 
-    private static final Logger LOGGER = LogManager.getLogger(ContactRepository.class);
+    /**
+     * Maps a row of the 'contacts' table to a Contact.
+     */
+    static final SQLiteConnector.RowMapper<Contact> CONTACT_ROW_MAPPER =
+            rs -> new Contact(rs.getInt("contact_id"), rs.getString("username"), rs.getInt("is_me"));
+
+    /**
+     * Statement creating the 'contacts' table, also used by the first schema migration.
+     */
+    static final String CREATE_CONTACTS_TABLE = """
+            CREATE TABLE IF NOT EXISTS contacts (
+            contact_id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+            username TEXT NOT NULL,
+            is_me INTEGER NOT NULL)
+            """;
 
     /**
      * Creates the 'contacts' table in the SQLite database to store contact information.
      * The table includes columns for contact_id (auto-incremented primary key) and username.
+     * The SchemaMigrator creates it when the database is opened, this method is kept for databases managed by hand.
      */
     public void createContactsTable() {
-        sqLiteConnector.connectDatabase();
-        sqLiteConnector.createStatement();
-
-        String query = """
-                CREATE TABLE contacts (
-                contact_id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
-                username TEXT NOT NULL,
-                is_me INTEGER NOT NULL)
-                """;
-
-        sqLiteConnector.statementExecuteUpdate(query);
-        sqLiteConnector.closeStatement();
-        sqLiteConnector.disconnectDatabase();
+        sqLiteConnector.execute(CREATE_CONTACTS_TABLE);
     }
 
     /**
@@ -46,19 +43,13 @@ public class ContactRepository extends Repository {
      * @return The Contact object representing the newly inserted contact.
      */
     public Optional<Contact> insertContact(Contact contact) {
-        sqLiteConnector.connectDatabase();
-
         String query = """
                 INSERT INTO contacts(username, is_me) VALUES(?, ?);
                 """;
-        sqLiteConnector.createPreparedStatement(query);
-        sqLiteConnector.preparedStatementSetString(1, contact.getUsername());
-        sqLiteConnector.preparedStatementSetString(2, contact.getIsMe().toString());
-
-        sqLiteConnector.preparedStatementExecuteUpdate();
-        sqLiteConnector.closePreparedStatement();
-
-        sqLiteConnector.disconnectDatabase();
+        sqLiteConnector.insert(query, ps -> {
+            ps.setString(1, contact.getUsername());
+            ps.setInt(2, contact.getIsMe());
+        });
 
         return getContactByUsername(contact.getUsername());
     }
@@ -70,18 +61,13 @@ public class ContactRepository extends Repository {
      * @return The Contact object representing the updated contact.
      */
     public Optional<Contact> updateContact(Contact contact) {
-        sqLiteConnector.connectDatabase();
-
         String query = """
                 UPDATE contacts SET username = ? WHERE contact_id = ?
                 """;
-        sqLiteConnector.createPreparedStatement(query);
-        sqLiteConnector.preparedStatementSetString(1, contact.getUsername());
-        sqLiteConnector.preparedStatementSetString(2, contact.getContactId().toString());
-
-        sqLiteConnector.preparedStatementExecuteUpdate();
-        sqLiteConnector.closePreparedStatement();
-        sqLiteConnector.disconnectDatabase();
+        sqLiteConnector.update(query, ps -> {
+            ps.setString(1, contact.getUsername());
+            ps.setInt(2, contact.getContactId());
+        });
 
         return getContactByContactId(contact.getContactId());
     }
@@ -92,29 +78,31 @@ public class ContactRepository extends Repository {
      * @return A List of Contact objects representing all contacts.
      */
     public List<Contact> getAllContacts() {
-        List<Contact> databaseContacts = new ArrayList<>();
-
-        try {
-            sqLiteConnector.connectDatabase();
-            sqLiteConnector.createStatement();
-
-            String query = "SELECT * FROM contacts";
-            ResultSet rs = sqLiteConnector.statementExecuteQuery(query);
-
-            while (rs.next()) {
-                Contact contact = new Contact(rs.getInt("contact_id"), rs.getString("username"), rs.getInt("is_me"));
-                databaseContacts.add(contact);
-            }
-
-            rs.close();
-            sqLiteConnector.closeStatement();
-            sqLiteConnector.disconnectDatabase();
+        String query = "SELECT * FROM contacts";
+        return sqLiteConnector.query(query, SQLiteConnector.NO_PARAMETERS, CONTACT_ROW_MAPPER);
+    }
 
-        } catch (SQLException | NullPointerException e) {
-            LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
-        }
+    /**
+     * Retrieves the usernames of the contacts from the 'contacts' table, read from the index on username.
+     *
+     * @param limit The maximum number of usernames.
+     * @return A List of at most limit usernames.
+     */
+    public List<String> getUsernames(int limit) {
+        String query = "SELECT username FROM contacts LIMIT ?";
+        return sqLiteConnector.query(query, ps -> ps.setInt(1, limit), rs -> rs.getString("username"));
+    }
 
-        return databaseContacts;
+    /**
+     * Checks if a contact with a given username exists in the 'contacts' table, with a lookup in the index on username.
+     *
+     * @param username The username to check.
+     * @return True if a contact has this username, otherwise false.
+     */
+    public boolean contactExistsByUsername(String username) {
+        String query = "SELECT EXISTS(SELECT 1 FROM contacts WHERE username = ?) AS found";
+        return sqLiteConnector.queryForObject(query, ps -> ps.setString(1, username), rs -> rs.getBoolean("found"))
+                .orElse(false);
     }
 
     /**
@@ -124,34 +112,10 @@ public class ContactRepository extends Repository {
      * @return An Optional containing the Contact object if found, otherwise an empty Optional.
      */
     public Optional<Contact> getContactByContactId(Integer contactId) {
-        Contact contact = null;
-
-        try {
-            sqLiteConnector.connectDatabase();
-
-            String query = """
-                    SELECT * FROM contacts WHERE contact_id == ?
-                    """;
-            sqLiteConnector.createPreparedStatement(query);
-            sqLiteConnector.preparedStatementSetString(1, contactId.toString());
-
-            ResultSet rs = sqLiteConnector.preparedStatementExecuteQuery();
-            while (rs.next()) {
-                contact = new Contact(rs.getInt("contact_id"), rs.getString("username"), rs.getInt("is_me"));
-            }
-            rs.close();
-
-            sqLiteConnector.closePreparedStatement();
-            sqLiteConnector.disconnectDatabase();
-        } catch (SQLException | NullPointerException e) {
-            LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
-        }
-
-        if (contact == null) {
-            return Optional.empty();
-        }
-
-        return Optional.of(contact);
+        String query = """
+                SELECT * FROM contacts WHERE contact_id == ?
+                """;
+        return sqLiteConnector.queryForObject(query, ps -> ps.setInt(1, contactId), CONTACT_ROW_MAPPER);
     }
 
     /**
@@ -161,34 +125,10 @@ public class ContactRepository extends Repository {
      * @return An Optional containing the Contact object if found, otherwise an empty Optional.
      */
     public Optional<Contact> getContactByUsername(String username) {
-        Contact contact = null;
-
-        try {
-            sqLiteConnector.connectDatabase();
-
-            String query = """
-                    SELECT * FROM contacts WHERE username == ?
-                    """;
-            sqLiteConnector.createPreparedStatement(query);
-            sqLiteConnector.preparedStatementSetString(1, username);
-
-            ResultSet rs = sqLiteConnector.preparedStatementExecuteQuery();
-            while (rs.next()) {
-                contact = new Contact(rs.getInt("contact_id"), rs.getString("username"), rs.getInt("is_me"));
-            }
-            rs.close();
-
-            sqLiteConnector.closePreparedStatement();
-            sqLiteConnector.disconnectDatabase();
-        } catch (SQLException | NullPointerException e) {
-            LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
-        }
-
-        if (contact == null) {
-            return Optional.empty();
-        }
-
-        return Optional.of(contact);
+        String query = """
+                SELECT * FROM contacts WHERE username == ?
+                """;
+        return sqLiteConnector.queryForObject(query, ps -> ps.setString(1, username), CONTACT_ROW_MAPPER);
     }
 
     /**
@@ -198,32 +138,8 @@ public class ContactRepository extends Repository {
      * @return An Optional containing the Contact object if found, otherwise an empty Optional.
      */
     public Optional<Contact> getSelf() {
-        Contact contact = null;
-
-        try {
-            sqLiteConnector.connectDatabase();
-
-            String query = "SELECT * FROM contacts WHERE is_me = ?";
-            sqLiteConnector.createPreparedStatement(query);
-            sqLiteConnector.preparedStatementSetString(1, String.valueOf(1));
-
-            ResultSet rs = sqLiteConnector.preparedStatementExecuteQuery();
-            while (rs.next()) {
-                contact = new Contact(rs.getInt("contact_id"), rs.getString("username"), rs.getInt("is_me"));
-            }
-
-            rs.close();
-            sqLiteConnector.closePreparedStatement();
-            sqLiteConnector.disconnectDatabase();
-        } catch (SQLException | NullPointerException e) {
-            LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
-        }
-
-        if (contact == null) {
-            return Optional.empty();
-        }
-
-        return Optional.of(contact);
+        String query = "SELECT * FROM contacts WHERE is_me = ?";
+        return sqLiteConnector.queryForObject(query, ps -> ps.setInt(1, 1), CONTACT_ROW_MAPPER);
     }
 
     /**
@@ -232,13 +148,8 @@ public class ContactRepository extends Repository {
      * @param contactId The id of the contact to be deleted.
      */
     public void deleteContact(Integer contactId) {
-        sqLiteConnector.connectDatabase();
-
         String query = "DELETE FROM contacts WHERE contact_id = ?";
-        sqLiteConnector.createPreparedStatement(query);
-        sqLiteConnector.preparedStatementSetString(1, contactId.toString());
-
-        sqLiteConnector.preparedStatementExecuteUpdate();
+        sqLiteConnector.update(query, ps -> ps.setInt(1, contactId));
     }
 
 }
@@ -0,0 +1,195 @@
+package fr.insa.chatsystem.model.repository;
+
+import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.message.ConversationSummary;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The ConversationSummaryRepository class reads the summary of every direct conversation without reading its messages.
+ * <p>
+ * The 'conversation_summary' table holds one row per conversation, by contact_id of its other participant: its last
+ * message, its number of messages and its number of unread messages. Triggers on 'messages' update the row in the
+ * transaction of every insert and delete, whether the message comes from the MessageWriter, a group message or the
+ * retention rules, so the summaries never drift from the messages. Archiving messages leaves the summaries as they
+ * are, since archived messages still belong to the conversation; the MessageArchiveRepository updates them when it
+ * deletes archived messages. Group messages have no conversation of their own and are not summarized.
+ * <p>
+ * Listing the conversations is a single query over this table, whatever the size of the history.
+ */
+public class ConversationSummaryRepository extends Repository {
+
+    /**
+     * Number of characters of the last message kept as preview.
+     */
+    public static final int PREVIEW_LENGTH = 100;
+
+    /**
+     * Statement creating the 'conversation_summary' table, used by the eighth schema migration.
+     * Messages with a message_id up to last_read_message_id are read.
+     */
+    static final String CREATE_CONVERSATION_SUMMARY_TABLE = """
+            CREATE TABLE IF NOT EXISTS conversation_summary (
+            contact_id INTEGER PRIMARY KEY NOT NULL,
+            last_message_id INTEGER,
+            last_sender_contact_id INTEGER,
+            preview TEXT,
+            last_timestamp INTEGER NOT NULL DEFAULT 0,
+            message_count INTEGER NOT NULL DEFAULT 0,
+            unread_count INTEGER NOT NULL DEFAULT 0,
+            last_read_message_id INTEGER NOT NULL DEFAULT 0,
+            FOREIGN KEY (contact_id) REFERENCES contacts(contact_id)
+            )
+            """;
+
+    /**
+     * Trigger counting a new direct message in the conversation with the participant who is not the logged-in user,
+     * as unread if that participant sent it.
+     */
+    static final String CREATE_INSERT_TRIGGER = """
+            CREATE TRIGGER IF NOT EXISTS conversation_summary_insert AFTER INSERT ON messages
+            WHEN new.receiver_contact_id IS NOT NULL BEGIN
+            INSERT INTO conversation_summary(contact_id, last_message_id, last_sender_contact_id, preview, last_timestamp,
+            message_count, unread_count)
+            SELECT p.contact_id, new.message_id, new.sender_contact_id, substr(new.content, 1, %1$d), new.timestamp, 1,
+            p.contact_id = new.sender_contact_id
+            FROM (SELECT CASE WHEN (SELECT is_me FROM contacts WHERE contact_id = new.sender_contact_id) = 1
+            THEN new.receiver_contact_id ELSE new.sender_contact_id END AS contact_id) p
+            WHERE p.contact_id IS NOT NULL
+            ON CONFLICT(contact_id) DO UPDATE SET last_message_id = excluded.last_message_id,
+            last_sender_contact_id = excluded.last_sender_contact_id, preview = excluded.preview,
+            last_timestamp = excluded.last_timestamp, message_count = message_count + 1,
+            unread_count = unread_count + excluded.unread_count;
+            END
+            """.formatted(PREVIEW_LENGTH);
+
+    /**
+     * Trigger uncounting a deleted direct message, unless it was archived, and finding the new last message of the
+     * conversation when the deleted one was the last. A conversation left without messages loses its summary.
+     */
+    static final String CREATE_DELETE_TRIGGER = """
+            CREATE TRIGGER IF NOT EXISTS conversation_summary_delete AFTER DELETE ON messages
+            WHEN old.receiver_contact_id IS NOT NULL AND NOT EXISTS (
+            SELECT 1 FROM message_archive_blocks b
+            WHERE b.contact_id IN (old.sender_contact_id, old.receiver_contact_id)
+            AND b.last_message_id >= old.message_id AND b.first_message_id <= old.message_id) BEGIN
+            UPDATE conversation_summary SET message_count = message_count - 1,
+            unread_count = unread_count - (contact_id = old.sender_contact_id AND old.message_id > last_read_message_id)
+            WHERE contact_id IN (old.sender_contact_id, old.receiver_contact_id);
+            UPDATE conversation_summary SET (last_message_id, last_sender_contact_id, preview, last_timestamp) = (
+            SELECT m.message_id, m.sender_contact_id, substr(m.content, 1, %1$d), m.timestamp FROM messages m
+            WHERE m.receiver_contact_id IS NOT NULL
+            AND (m.sender_contact_id = conversation_summary.contact_id OR m.receiver_contact_id = conversation_summary.contact_id)
+            ORDER BY m.message_id DESC LIMIT 1)
+            WHERE contact_id IN (old.sender_contact_id, old.receiver_contact_id) AND last_message_id = old.message_id;
+            DELETE FROM conversation_summary
+            WHERE contact_id IN (old.sender_contact_id, old.receiver_contact_id) AND message_count <= 0;
+            END
+            """.formatted(PREVIEW_LENGTH);
+
+    /**
+     * Statement summarizing the conversations of an existing database from its messages, every message being read.
+     */
+    static final String SUMMARIZE_MESSAGES = """
+            INSERT OR REPLACE INTO conversation_summary(contact_id, last_message_id, last_sender_contact_id, preview,
+            last_timestamp, message_count, unread_count, last_read_message_id)
+            SELECT c.contact_id, m.message_id, m.sender_contact_id, substr(m.content, 1, %1$d), m.timestamp,
+            c.message_count, 0, m.message_id
+            FROM (SELECT CASE WHEN s.is_me = 1 THEN x.receiver_contact_id ELSE x.sender_contact_id END AS contact_id,
+            MAX(x.message_id) AS last_message_id, COUNT(*) AS message_count
+            FROM messages x LEFT JOIN contacts s ON s.contact_id = x.sender_contact_id
+            WHERE x.receiver_contact_id IS NOT NULL
+            GROUP BY 1) c
+            JOIN messages m ON m.message_id = c.last_message_id
+            WHERE c.contact_id IS NOT NULL
+            """.formatted(PREVIEW_LENGTH);
+
+    /**
+     * Statement adding the archived messages to the summaries created by {@link #SUMMARIZE_MESSAGES}.
+     */
+    static final String SUMMARIZE_ARCHIVED_MESSAGES = """
+            UPDATE conversation_summary SET message_count = message_count + (
+            SELECT COALESCE(SUM(b.message_count), 0) FROM message_archive_blocks b WHERE b.contact_id = conversation_summary.contact_id)
+            """;
+
+    /**
+     * Statement summarizing the conversations whose messages are all archived.
+     */
+    static final String SUMMARIZE_ARCHIVED_CONVERSATIONS = """
+            INSERT OR IGNORE INTO conversation_summary(contact_id, last_timestamp, message_count, last_read_message_id)
+            SELECT contact_id, MAX(last_timestamp), SUM(message_count), MAX(last_message_id)
+            FROM message_archive_blocks
+            GROUP BY contact_id
+            """;
+
+    private static final String SELECT_SUMMARIES = """
+            SELECT s.contact_id, c.username, c.is_me, s.last_message_id, s.last_sender_contact_id, s.preview,
+            s.last_timestamp, s.message_count, s.unread_count
+            FROM conversation_summary s JOIN contacts c ON c.contact_id = s.contact_id
+            """;
+
+    /**
+     * Retrieves the summaries of every direct conversation, in a single query.
+     *
+     * @return The summaries, the conversation with the latest message first.
+     */
+    public List<ConversationSummary> getConversationSummaries() {
+        MessageRepository.getInstance().flush();
+        return sqLiteConnector.query(SELECT_SUMMARIES + "ORDER BY s.last_timestamp DESC, s.contact_id",
+                SQLiteConnector.NO_PARAMETERS, ConversationSummaryRepository::mapSummary);
+    }
+
+    /**
+     * Retrieves the summary of the conversation with a specified contact.
+     *
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @return An Optional containing the summary, or empty if the conversation has no messages.
+     */
+    public Optional<ConversationSummary> getConversationSummary(Integer contactId) {
+        MessageRepository.getInstance().flush();
+        return sqLiteConnector.queryForObject(SELECT_SUMMARIES + "WHERE s.contact_id = ?", ps -> ps.setInt(1, contactId),
+                ConversationSummaryRepository::mapSummary);
+    }
+
+    /**
+     * Marks every message of the conversation with a specified contact as read.
+     *
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @return The number of messages that were unread, 0 if execution failed.
+     */
+    public int markConversationRead(Integer contactId) {
+        MessageRepository.getInstance().flush();
+        Integer unread = sqLiteConnector.inTransaction(transaction -> {
+            List<Integer> unreadCounts = transaction.query("SELECT unread_count FROM conversation_summary WHERE contact_id = ?",
+                    ps -> ps.setInt(1, contactId), rs -> rs.getInt("unread_count"));
+            if (unreadCounts.isEmpty() || unreadCounts.get(0) == 0) {
+                return 0;
+            }
+            transaction.update("""
+                    UPDATE conversation_summary SET unread_count = 0,
+                    last_read_message_id = MAX(last_read_message_id, COALESCE(last_message_id, 0))
+                    WHERE contact_id = ?
+                    """, ps -> ps.setInt(1, contactId));
+            return unreadCounts.get(0);
+        });
+        return unread == null ? 0 : unread;
+    }
+
+    private static ConversationSummary mapSummary(ResultSet rs) throws SQLException {
+        Contact contact = new Contact(rs.getInt("contact_id"), rs.getString("username"), rs.getInt("is_me"));
+        Integer lastMessageId = rs.getInt("last_message_id");
+        if (rs.wasNull()) {
+            lastMessageId = null;
+        }
+        Integer lastSenderContactId = rs.getInt("last_sender_contact_id");
+        if (rs.wasNull()) {
+            lastSenderContactId = null;
+        }
+        return new ConversationSummary(contact, lastMessageId, lastSenderContactId, rs.getString("preview"),
+                rs.getLong("last_timestamp"), rs.getInt("message_count"), rs.getInt("unread_count"));
+    }
+
+}
@@ -0,0 +1,121 @@
+package fr.insa.chatsystem.model.repository;
+
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+/**
+ * The DatabaseProfile enum defines named sets of SQLite PRAGMAs applied to every connection when it is opened.
+ * <p>
+ * Every profile uses write-ahead logging, so readers do not block the writer and the writer does not block readers,
+ * and a busy timeout, so a connection waits for a lock instead of failing. The profiles differ in durability:
+ * <ul>
+ *     <li>DURABLE syncs the WAL on every commit, a committed message survives a power loss.</li>
+ *     <li>BALANCED syncs at checkpoints only, a power loss can lose the last commits but never corrupts the database.</li>
+ *     <li>THROUGHPUT never syncs and leaves it to the operating system, for benchmarks and throwaway databases.</li>
+ * </ul>
+ * The profile is selected with the "chatsystem.db.profile" system property, BALANCED by default or if the value names
+ * no profile.
+ * <p>
+ * New databases are created with incremental vacuum, so the space freed by the retention rules can be given back
+ * to the file system a few pages at a time by the MaintenanceScheduler.
+ */
+public enum DatabaseProfile {
+
+    DURABLE("FULL", -2_000, 0, "DEFAULT"),
+    BALANCED("NORMAL", -8_192, 64L * 1024 * 1024, "MEMORY"),
+    THROUGHPUT("OFF", -32_768, 256L * 1024 * 1024, "MEMORY");
+
+    /**
+     * Time in milliseconds a connection waits for a lock held by another connection.
+     */
+    public static final int BUSY_TIMEOUT_MILLIS = 5000;
+
+    private static final Logger LOGGER = LogManager.getLogger(DatabaseProfile.class);
+
+    /**
+     * A value of the "chatsystem.db.profile" system property and the profile it selects.
+     */
+    private record Selection(String value, DatabaseProfile profile) {
+    }
+
+    private static volatile Selection selected;
+
+    private final String synchronous;
+    private final int cacheSize;
+    private final long mmapSize;
+    private final String tempStore;
+
+    /**
+     * @param synchronous The synchronous level.
+     * @param cacheSize   The page cache size, in KiB when negative.
+     * @param mmapSize    The number of bytes of the database file accessed through memory mapping.
+     * @param tempStore   Where temporary tables and indices are stored.
+     */
+    DatabaseProfile(String synchronous, int cacheSize, long mmapSize, String tempStore) {
+        this.synchronous = synchronous;
+        this.cacheSize = cacheSize;
+        this.mmapSize = mmapSize;
+        this.tempStore = tempStore;
+    }
+
+    /**
+     * Returns the profile selected by the "chatsystem.db.profile" system property.
+     * The value is parsed once and the result kept until the property changes, so an invalid value is logged once.
+     *
+     * @return The selected profile, BALANCED if the property is not set or names no profile.
+     */
+    public static DatabaseProfile current() {
+        String value = System.getProperty("chatsystem.db.profile", BALANCED.name());
+        Selection selection = selected;
+        if (selection == null || !selection.value().equals(value)) {
+            selection = new Selection(value, parse(value));
+            selected = selection;
+        }
+        return selection.profile();
+    }
+
+    private static DatabaseProfile parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LOGGER.error(ErrorMessages.INVALID_PROPERTY, "chatsystem.db.profile", value, BALANCED);
+            return BALANCED;
+        }
+    }
+
+    /**
+     * Applies the PRAGMAs of this profile to a newly opened connection.
+     *
+     * @param connection The connection.
+     * @throws SQLException If a PRAGMA can not be applied.
+     */
+    public void apply(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MILLIS);
+            // Only takes effect on a new database, and only before the WAL mode writes its header. On an existing
+            // database it would wait for the write lock, so a connection opened during a write transaction would fail
+            if (isEmpty(statement)) {
+                statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            }
+            statement.execute("PRAGMA journal_mode = WAL");
+            statement.execute("PRAGMA synchronous = " + synchronous);
+            statement.execute("PRAGMA cache_size = " + cacheSize);
+            statement.execute("PRAGMA mmap_size = " + mmapSize);
+            statement.execute("PRAGMA temp_store = " + tempStore);
+        }
+    }
+
+    private static boolean isEmpty(Statement statement) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("PRAGMA page_count")) {
+            return rs.next() && rs.getLong(1) == 0;
+        }
+    }
+
+}
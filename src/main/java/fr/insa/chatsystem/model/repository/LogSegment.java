@@ -0,0 +1,183 @@
+package fr.insa.chatsystem.model.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The LogSegment class is one file of a {@link SegmentLogMessageStore}, mapped in memory in full.
+ * <p>
+ * Records are appended one after the other from the start of the file. A record is the length of its payload,
+ * the CRC32 of its payload, then the payload. The payload is written first and the length last, so a record whose
+ * length is still zero was never appended; the file is created at its full size, filled with zeros, so the first
+ * zero length marks the end of the records. A record torn by a crash has a checksum that does not match its payload,
+ * the scan made when the segment is opened stops there and the next record is appended in its place.
+ */
+final class LogSegment {
+
+    /**
+     * Size of the length and the checksum written before every payload.
+     */
+    static final int RECORD_HEADER_BYTES = 8;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final CRC32 crc = new CRC32();
+    private int writePosition;
+
+    /**
+     * Visitor of the records found when a segment is opened.
+     */
+    interface RecordVisitor {
+        /**
+         * Called for every valid record, in order.
+         *
+         * @param offset  The offset of the record in the segment.
+         * @param payload The payload of the record, a read-only view of the mapping.
+         */
+        void visit(int offset, ByteBuffer payload);
+    }
+
+    private LogSegment(Path path, FileChannel channel, int capacity) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Creates a new empty segment.
+     *
+     * @param path     The path of the segment file, which must not exist.
+     * @param capacity The size of the segment in bytes.
+     * @return The segment, ready for appends.
+     * @throws IOException If the file can not be created or mapped.
+     */
+    static LogSegment create(Path path, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new LogSegment(path, channel, capacity);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing segment and scans its records, stopping at the end of the records or at the first one
+     * whose checksum does not match. Appends start at that point.
+     *
+     * @param path    The path of the segment file.
+     * @param visitor The visitor called for every valid record.
+     * @return The segment, ready for appends.
+     * @throws IOException If the file can not be opened or mapped.
+     */
+    static LogSegment open(Path path, RecordVisitor visitor) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        LogSegment segment;
+        try {
+            segment = new LogSegment(path, channel, (int) Math.min(channel.size(), Integer.MAX_VALUE));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        segment.recover(visitor);
+        return segment;
+    }
+
+    private void recover(RecordVisitor visitor) {
+        int position = 0;
+        while (position + RECORD_HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > buffer.capacity() - position - RECORD_HEADER_BYTES) {
+                break;
+            }
+            ByteBuffer payload = payload(position);
+            if (checksum(payload.duplicate()) != buffer.getInt(position + 4)) {
+                break;
+            }
+            visitor.visit(position, payload);
+            position += RECORD_HEADER_BYTES + length;
+        }
+        writePosition = position;
+        if (position + RECORD_HEADER_BYTES <= buffer.capacity()) {
+            // Forget a torn record, so a later scan stops here until the next append overwrites it
+            buffer.putInt(position, 0);
+        }
+    }
+
+    /**
+     * Gets the path of the segment file.
+     *
+     * @return The path of the segment file.
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Checks whether a record with a given payload size fits in the rest of the segment.
+     *
+     * @param payloadLength The size of the payload in bytes.
+     * @return True if the record can be appended, otherwise false.
+     */
+    boolean hasRoom(int payloadLength) {
+        return buffer.capacity() - writePosition >= RECORD_HEADER_BYTES + payloadLength;
+    }
+
+    /**
+     * Appends a record after the last one. The caller checks that it fits with hasRoom.
+     *
+     * @param payload The payload of the record, from its position to its limit.
+     * @return The offset of the record in the segment.
+     */
+    int append(ByteBuffer payload) {
+        int offset = writePosition;
+        int length = payload.remaining();
+        int checksum = checksum(payload.duplicate());
+        buffer.put(offset + RECORD_HEADER_BYTES, payload, payload.position(), length);
+        buffer.putInt(offset + 4, checksum);
+        buffer.putInt(offset, length);
+        writePosition = offset + RECORD_HEADER_BYTES + length;
+        return offset;
+    }
+
+    /**
+     * Returns the payload of a record without copying it.
+     *
+     * @param offset The offset of the record in the segment.
+     * @return A read-only view of the payload in the mapping.
+     */
+    ByteBuffer payload(int offset) {
+        return buffer.slice(offset + RECORD_HEADER_BYTES, buffer.getInt(offset)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the appended records to the storage device.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Writes the appended records to the storage device and closes the file. The mapping is released by the
+     * garbage collector once no payload view of it is left.
+     *
+     * @throws IOException If the file can not be closed.
+     */
+    void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private int checksum(ByteBuffer payload) {
+        crc.reset();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+}
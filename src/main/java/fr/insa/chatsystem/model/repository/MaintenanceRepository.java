@@ -0,0 +1,173 @@
+package fr.insa.chatsystem.model.repository;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The MaintenanceRepository class deletes the messages that fall out of the retention rules and gives the space
+ * they used back to the file system.
+ * <p>
+ * Every delete removes at most a given number of messages in its own short transaction, together with the receivers
+ * of the group messages among them, so the writer connection is never held for long and the messages being received
+ * are written in between. The full-text index follows through its triggers.
+ * <p>
+ * Databases are created with PRAGMA auto_vacuum = INCREMENTAL, so the pages freed by the deletes stay in the
+ * freelist until {@link #incrementalVacuum(int)} truncates the file. Databases created before have to be converted
+ * once, by a full VACUUM.
+ */
+public class MaintenanceRepository extends Repository {
+
+    /**
+     * auto_vacuum value of databases with incremental vacuum.
+     */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    /**
+     * Deletes the oldest messages whose timestamp is older than a given time, at most a batch of them.
+     *
+     * @param cutoffMillis The time before which messages are deleted, in milliseconds since the epoch.
+     * @param batchSize    The maximum number of messages deleted.
+     * @return The number of messages deleted, 0 if execution failed.
+     */
+    public int deleteMessagesBefore(long cutoffMillis, int batchSize) {
+        String query = "SELECT message_id FROM messages WHERE timestamp < ? ORDER BY timestamp LIMIT ?";
+        return deleteMessages(query, ps -> {
+            ps.setLong(1, cutoffMillis);
+            ps.setInt(2, batchSize);
+        });
+    }
+
+    /**
+     * Retrieves the number of messages of the direct conversations that have more than a given number of them.
+     *
+     * @param selfId      The contact_id of the logged-in user.
+     * @param maxMessages The number of messages above which a conversation is returned.
+     * @return The number of messages of every such conversation, by contact_id of its other participant.
+     */
+    public Map<Integer, Integer> getConversationsLargerThan(Integer selfId, int maxMessages) {
+        String query = """
+                SELECT CASE WHEN sender_contact_id = ?1 THEN receiver_contact_id ELSE sender_contact_id END AS contact_id,
+                COUNT(*) AS message_count
+                FROM messages
+                WHERE receiver_contact_id IS NOT NULL AND (sender_contact_id = ?1 OR receiver_contact_id = ?1)
+                GROUP BY contact_id
+                HAVING COUNT(*) > ?2
+                """;
+        Map<Integer, Integer> conversations = new LinkedHashMap<>();
+        sqLiteConnector.query(query, ps -> {
+            ps.setInt(1, selfId);
+            ps.setInt(2, maxMessages);
+        }, rs -> conversations.put(rs.getInt("contact_id"), rs.getInt("message_count")));
+        return conversations;
+    }
+
+    /**
+     * Deletes the oldest messages of the conversation between two contacts.
+     *
+     * @param selfId    The contact_id of the logged-in user.
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @param count     The number of messages deleted, kept to a batch by the caller.
+     * @return The number of messages deleted, 0 if execution failed.
+     */
+    public int deleteOldestMessages(Integer selfId, Integer contactId, int count) {
+        String query = """
+                SELECT message_id FROM messages
+                WHERE (sender_contact_id = ?1 AND receiver_contact_id = ?2) OR (sender_contact_id = ?2 AND receiver_contact_id = ?1)
+                ORDER BY message_id
+                LIMIT ?3
+                """;
+        return deleteMessages(query, ps -> {
+            ps.setInt(1, selfId);
+            ps.setInt(2, contactId);
+            ps.setInt(3, count);
+        });
+    }
+
+    /**
+     * Deletes the oldest messages of the database, whatever their conversation.
+     *
+     * @param count The number of messages deleted, kept to a batch by the caller.
+     * @return The number of messages deleted, 0 if execution failed.
+     */
+    public int deleteOldestMessages(int count) {
+        return deleteMessages("SELECT message_id FROM messages ORDER BY message_id LIMIT ?", ps -> ps.setInt(1, count));
+    }
+
+    /**
+     * Deletes, in one transaction, the messages whose message_id is selected by a query and their receivers.
+     */
+    private int deleteMessages(String selectQuery, SQLiteConnector.ParameterSetter parameters) {
+        MessageRepository.getInstance().flush();
+        Integer deleted = sqLiteConnector.inTransaction(transaction -> {
+            List<Integer> messageIds = transaction.query(selectQuery, parameters, rs -> rs.getInt("message_id"));
+            transaction.batchUpdate("DELETE FROM message_recipients WHERE message_id = ?", messageIds,
+                    (ps, messageId) -> ps.setInt(1, messageId));
+            transaction.batchUpdate("DELETE FROM messages WHERE message_id = ?", messageIds,
+                    (ps, messageId) -> ps.setInt(1, messageId));
+            return messageIds.size();
+        });
+        return deleted == null ? 0 : deleted;
+    }
+
+    /**
+     * Computes the size of the database without its free pages, which is the size the file shrinks to once vacuumed.
+     *
+     * @return The size in bytes of the pages in use.
+     */
+    public long getUsedBytes() {
+        return (pragma("page_count") - pragma("freelist_count")) * pragma("page_size");
+    }
+
+    /**
+     * Gets the number of pages freed by deletes and not yet given back to the file system.
+     *
+     * @return The number of free pages.
+     */
+    public long getFreePages() {
+        return pragma("freelist_count");
+    }
+
+    /**
+     * Checks whether the database was created, or converted, with incremental vacuum.
+     *
+     * @return True if the free pages can be released with {@link #incrementalVacuum(int)}, otherwise false.
+     */
+    public boolean isIncrementalVacuumEnabled() {
+        return pragma("auto_vacuum") == AUTO_VACUUM_INCREMENTAL;
+    }
+
+    /**
+     * Converts the database to incremental vacuum. This rewrites the whole database and blocks the writers meanwhile,
+     * so it is only done when the node is idle, once.
+     */
+    public void enableIncrementalVacuum() {
+        MessageRepository.getInstance().flush();
+        sqLiteConnector.execute("PRAGMA auto_vacuum = INCREMENTAL");
+        sqLiteConnector.execute("VACUUM");
+    }
+
+    /**
+     * Releases free pages at the end of the database file, truncating it.
+     *
+     * @param pages The maximum number of pages released.
+     */
+    public void incrementalVacuum(int pages) {
+        sqLiteConnector.execute("PRAGMA incremental_vacuum(" + pages + ")");
+    }
+
+    /**
+     * Copies the whole write-ahead log into the database and truncates it, waiting for the readers in progress.
+     *
+     * @return True if the log was checkpointed in full, false if a reader or the writer kept it busy.
+     */
+    public boolean checkpoint() {
+        return sqLiteConnector.queryForObject("PRAGMA wal_checkpoint(TRUNCATE)", SQLiteConnector.NO_PARAMETERS,
+                rs -> rs.getInt(1) == 0).orElse(false);
+    }
+
+    private long pragma(String name) {
+        return sqLiteConnector.queryForObject("PRAGMA " + name, SQLiteConnector.NO_PARAMETERS, rs -> rs.getLong(1)).orElse(0L);
+    }
+
+}
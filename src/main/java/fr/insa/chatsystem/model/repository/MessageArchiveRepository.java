@@ -0,0 +1,420 @@
+package fr.insa.chatsystem.model.repository;
+
+import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import fr.insa.chatsystem.model.logger.message.InfoMessages;
+import fr.insa.chatsystem.model.message.Message;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The MessageArchiveRepository class moves old messages out of the 'messages' table into compressed archive files,
+ * and reads them back.
+ * <p>
+ * Every conversation has its own archive file, named after the contact_id of the other participant, in the directory
+ * given by the "chatsystem.archive.path" system property, next to the database by default. A file is a sequence of
+ * blocks of at most {@value #BLOCK_MESSAGES} messages, each one compressed on its own, so reading a page of archived
+ * history only inflates the few blocks it comes from. The blocks are indexed in the small 'message_archive_blocks'
+ * table, by contact and by range of message_ids.
+ * <p>
+ * A block is written to its file and synced before it is indexed, and the archived messages are deleted in the same
+ * transaction as the block is indexed. A crash can leave an unindexed block at the end of a file, which is never read,
+ * but never loses nor duplicates a message. Group messages are not archived.
+ * <p>
+ * The same transaction moves the archived messages from the full-text index of 'messages' into 'archived_messages_fts',
+ * an FTS5 table that keeps their content, participants and timestamp, so the MessageSearchRepository still finds them.
+ */
+public class MessageArchiveRepository extends Repository {
+
+    private static final Logger LOGGER = LogManager.getLogger(MessageArchiveRepository.class);
+
+    /**
+     * Maximum number of messages in a block.
+     */
+    public static final int BLOCK_MESSAGES = 1000;
+
+    /**
+     * Statement creating the 'message_archive_blocks' table, used by the seventh schema migration.
+     */
+    static final String CREATE_MESSAGE_ARCHIVE_BLOCKS_TABLE = """
+            CREATE TABLE IF NOT EXISTS message_archive_blocks (
+            contact_id INTEGER NOT NULL,
+            last_message_id INTEGER NOT NULL,
+            first_message_id INTEGER NOT NULL,
+            first_timestamp INTEGER NOT NULL,
+            last_timestamp INTEGER NOT NULL,
+            message_count INTEGER NOT NULL,
+            file_offset INTEGER NOT NULL,
+            compressed_length INTEGER NOT NULL,
+            PRIMARY KEY (contact_id, last_message_id)
+            ) WITHOUT ROWID
+            """;
+
+    /**
+     * Statement creating the 'archived_messages_fts' full-text index of the archived messages, used by the tenth schema
+     * migration. The rowid is the message_id.
+     */
+    static final String CREATE_ARCHIVED_MESSAGES_FTS_TABLE = """
+            CREATE VIRTUAL TABLE IF NOT EXISTS archived_messages_fts USING fts5(
+            content, sender_contact_id UNINDEXED, receiver_contact_id UNINDEXED, timestamp UNINDEXED,
+            tokenize='unicode61 remove_diacritics 2')
+            """;
+
+    /**
+     * Held while the archive files are appended to or deleted, by every instance.
+     */
+    private static final Object FILES_LOCK = new Object();
+
+    private final ContactRepository contactRepository = new ContactRepository();
+
+    /**
+     * A block of archived messages, as indexed in 'message_archive_blocks'.
+     */
+    private record Block(int firstMessageId, int lastMessageId, long fileOffset, int compressedLength) {
+    }
+
+    /**
+     * A message read from the 'messages' table to be archived.
+     */
+    private record ArchivedMessage(int messageId, int senderId, String content, long timestamp) {
+    }
+
+    /**
+     * Moves the direct messages older than a given time into the archive files.
+     *
+     * @param selfId       The contact_id of the logged-in user.
+     * @param cutoffMillis The time before which messages are archived, in milliseconds since the epoch.
+     * @return The number of messages archived.
+     */
+    public int archiveMessagesBefore(Integer selfId, long cutoffMillis) {
+        MessageRepository.getInstance().flush();
+        long start = System.currentTimeMillis();
+        String query = """
+                SELECT DISTINCT CASE WHEN sender_contact_id = ?1 THEN receiver_contact_id ELSE sender_contact_id END AS contact_id
+                FROM messages
+                WHERE timestamp < ?2 AND receiver_contact_id IS NOT NULL AND (sender_contact_id = ?1 OR receiver_contact_id = ?1)
+                """;
+        List<Integer> contactIds = sqLiteConnector.query(query, ps -> {
+            ps.setInt(1, selfId);
+            ps.setLong(2, cutoffMillis);
+        }, rs -> rs.getInt("contact_id"));
+
+        int archived = 0;
+        for (Integer contactId : contactIds) {
+            int blockSize;
+            do {
+                synchronized (FILES_LOCK) {
+                    blockSize = archiveBlock(selfId, contactId, cutoffMillis);
+                }
+                archived += Math.max(blockSize, 0);
+            } while (blockSize == BLOCK_MESSAGES);
+        }
+        if (archived > 0) {
+            LOGGER.info(InfoMessages.MESSAGES_ARCHIVED, archived, contactIds.size(), System.currentTimeMillis() - start);
+        }
+        return archived;
+    }
+
+    /**
+     * Archives the oldest messages of a conversation older than the cutoff, at most one block.
+     *
+     * @return The number of messages archived, or -1 if the block could not be archived.
+     */
+    private int archiveBlock(Integer selfId, Integer contactId, long cutoffMillis) {
+        String query = """
+                SELECT message_id, sender_contact_id, content, timestamp FROM messages
+                WHERE ((sender_contact_id = ?1 AND receiver_contact_id = ?2) OR (sender_contact_id = ?2 AND receiver_contact_id = ?1))
+                AND timestamp < ?3
+                ORDER BY message_id
+                LIMIT ?4
+                """;
+        List<ArchivedMessage> messages = sqLiteConnector.query(query, ps -> {
+            ps.setInt(1, selfId);
+            ps.setInt(2, contactId);
+            ps.setLong(3, cutoffMillis);
+            ps.setInt(4, BLOCK_MESSAGES);
+        }, rs -> new ArchivedMessage(rs.getInt("message_id"), rs.getInt("sender_contact_id"), rs.getString("content"), rs.getLong("timestamp")));
+        if (messages.isEmpty()) {
+            return 0;
+        }
+
+        long fileOffset;
+        byte[] block;
+        Path archivePath = archivePath(contactId);
+        try {
+            block = compress(messages);
+            Files.createDirectories(archivePath.getParent());
+            try (FileChannel channel = FileChannel.open(archivePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                fileOffset = channel.size();
+                ByteBuffer buffer = ByteBuffer.wrap(block);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, fileOffset + buffer.position());
+                }
+                channel.force(true);
+            }
+        } catch (IOException e) {
+            LOGGER.error(ErrorMessages.MESSAGE_ARCHIVE_ERROR, archivePath, e.getMessage());
+            return -1;
+        }
+
+        Integer indexed = sqLiteConnector.inTransaction(transaction -> {
+            String insert = """
+                    INSERT INTO message_archive_blocks(contact_id, last_message_id, first_message_id, first_timestamp,
+                    last_timestamp, message_count, file_offset, compressed_length)
+                    VALUES(?, ?, ?, ?, ?, ?, ?, ?)
+                    """;
+            transaction.update(insert, ps -> {
+                ps.setInt(1, contactId);
+                ps.setInt(2, messages.get(messages.size() - 1).messageId());
+                ps.setInt(3, messages.get(0).messageId());
+                ps.setLong(4, messages.stream().mapToLong(ArchivedMessage::timestamp).min().orElse(0));
+                ps.setLong(5, messages.stream().mapToLong(ArchivedMessage::timestamp).max().orElse(0));
+                ps.setInt(6, messages.size());
+                ps.setLong(7, fileOffset);
+                ps.setInt(8, block.length);
+            });
+            String index = """
+                    INSERT INTO archived_messages_fts(rowid, content, sender_contact_id, receiver_contact_id, timestamp)
+                    VALUES(?, ?, ?, ?, ?)
+                    """;
+            transaction.batchUpdate(index, messages, (ps, message) -> {
+                ps.setInt(1, message.messageId());
+                ps.setString(2, message.content());
+                ps.setInt(3, message.senderId());
+                ps.setInt(4, message.senderId() == selfId ? contactId : selfId);
+                ps.setLong(5, message.timestamp());
+            });
+            transaction.batchUpdate("DELETE FROM messages WHERE message_id = ?", messages,
+                    (ps, message) -> ps.setInt(1, message.messageId()));
+            return messages.size();
+        });
+        return indexed == null ? -1 : indexed;
+    }
+
+    /**
+     * Retrieves the latest archived messages of the conversation between two contacts in a range of message_ids.
+     *
+     * @param selfId          The contact_id of the logged-in user.
+     * @param contactId       The contact_id of the other participant in the conversation.
+     * @param fromMessageId   The lowest message_id returned.
+     * @param beforeMessageId The message_id before which messages are returned.
+     * @param limit           The maximum number of messages.
+     * @return The latest archived messages of the range, ordered from the oldest to the newest.
+     */
+    public List<Message> getArchivedMessages(Integer selfId, Integer contactId, int fromMessageId, int beforeMessageId, int limit) {
+        String query = """
+                SELECT first_message_id, last_message_id, file_offset, compressed_length FROM message_archive_blocks
+                WHERE contact_id = ? AND last_message_id >= ? AND first_message_id < ?
+                ORDER BY last_message_id DESC
+                """;
+        List<Block> blocks = sqLiteConnector.query(query, ps -> {
+            ps.setInt(1, contactId);
+            ps.setInt(2, fromMessageId);
+            ps.setInt(3, beforeMessageId);
+        }, rs -> new Block(rs.getInt("first_message_id"), rs.getInt("last_message_id"), rs.getLong("file_offset"),
+                rs.getInt("compressed_length")));
+        if (blocks.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Contact self = contactRepository.getContactByContactId(selfId).orElseGet(Contact::new);
+        Contact contact = contactRepository.getContactByContactId(contactId).orElseGet(Contact::new);
+        List<Message> messages = new ArrayList<>();
+        Path archivePath = archivePath(contactId);
+        try (FileChannel channel = FileChannel.open(archivePath, StandardOpenOption.READ)) {
+            for (Block block : blocks) {
+                // Blocks are read newest first until the next one only holds messages older than the page
+                if (messages.size() >= limit && block.lastMessageId() < messages.get(limit - 1).getMessageId()) {
+                    break;
+                }
+                for (ArchivedMessage archived : decompress(channel, block)) {
+                    if (archived.messageId() < fromMessageId || archived.messageId() >= beforeMessageId) {
+                        continue;
+                    }
+                    messages.add(toMessage(archived, selfId, self, contact));
+                }
+                messages.sort(Comparator.comparing(Message::getMessageId).reversed());
+            }
+        } catch (IOException e) {
+            LOGGER.error(ErrorMessages.MESSAGE_ARCHIVE_ERROR, archivePath, e.getMessage());
+        }
+
+        List<Message> page = new ArrayList<>(messages.subList(0, Math.min(limit, messages.size())));
+        page.sort(Comparator.comparing(Message::getMessageId));
+        return page;
+    }
+
+    /**
+     * Streams every archived message of the conversation between two contacts, one block at a time: a block is only
+     * read and inflated once the messages of the previous one are consumed, so the memory used does not depend on
+     * the size of the archive. A block that can not be read is logged and skipped.
+     *
+     * @param selfId    The contact_id of the logged-in user.
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @return A stream of the archived messages, ordered from the oldest to the newest.
+     */
+    public Stream<Message> streamArchivedMessages(Integer selfId, Integer contactId) {
+        String query = """
+                SELECT first_message_id, last_message_id, file_offset, compressed_length FROM message_archive_blocks
+                WHERE contact_id = ?
+                ORDER BY last_message_id
+                """;
+        List<Block> blocks = sqLiteConnector.query(query, ps -> ps.setInt(1, contactId),
+                rs -> new Block(rs.getInt("first_message_id"), rs.getInt("last_message_id"), rs.getLong("file_offset"),
+                        rs.getInt("compressed_length")));
+        if (blocks.isEmpty()) {
+            return Stream.empty();
+        }
+
+        Contact self = contactRepository.getContactByContactId(selfId).orElseGet(Contact::new);
+        Contact contact = contactRepository.getContactByContactId(contactId).orElseGet(Contact::new);
+        Path archivePath = archivePath(contactId);
+        return blocks.stream().flatMap(block -> {
+            try (FileChannel channel = FileChannel.open(archivePath, StandardOpenOption.READ)) {
+                return decompress(channel, block).stream().map(archived -> toMessage(archived, selfId, self, contact));
+            } catch (IOException e) {
+                LOGGER.error(ErrorMessages.MESSAGE_ARCHIVE_ERROR, archivePath, e.getMessage());
+                return Stream.empty();
+            }
+        });
+    }
+
+    private static Message toMessage(ArchivedMessage archived, Integer selfId, Contact self, Contact contact) {
+        Message message = new Message(archived.messageId(), archived.content());
+        message.setTimestamp(archived.timestamp());
+        message.setSenderContact(archived.senderId() == selfId ? self : contact);
+        message.setReceiverContact(archived.senderId() == selfId ? contact : self);
+        return message;
+    }
+
+    /**
+     * Deletes the archived blocks whose messages are all older than a given time. A conversation left without blocks
+     * has its archive file deleted; otherwise the space of the deleted blocks stays in the file.
+     *
+     * @param cutoffMillis The time before which archived messages are deleted, in milliseconds since the epoch.
+     * @return The number of archived messages deleted.
+     */
+    public int deleteBlocksBefore(long cutoffMillis) {
+        synchronized (FILES_LOCK) {
+            return deleteBlocksBeforeLocked(cutoffMillis);
+        }
+    }
+
+    private int deleteBlocksBeforeLocked(long cutoffMillis) {
+        String query = """
+                SELECT contact_id, SUM(message_count) AS message_count FROM message_archive_blocks
+                WHERE last_timestamp < ?
+                GROUP BY contact_id
+                """;
+        Map<Integer, Integer> deletedMessages = new LinkedHashMap<>();
+        sqLiteConnector.query(query, ps -> ps.setLong(1, cutoffMillis),
+                rs -> deletedMessages.put(rs.getInt("contact_id"), rs.getInt("message_count")));
+        if (deletedMessages.isEmpty()) {
+            return 0;
+        }
+        Integer deleted = sqLiteConnector.inTransaction(transaction -> {
+            String unindex = """
+                    DELETE FROM archived_messages_fts WHERE rowid IN (
+                    SELECT f.rowid FROM message_archive_blocks b
+                    JOIN archived_messages_fts f ON f.rowid BETWEEN b.first_message_id AND b.last_message_id
+                    WHERE b.last_timestamp < ? AND (f.sender_contact_id = b.contact_id OR f.receiver_contact_id = b.contact_id))
+                    """;
+            transaction.update(unindex, ps -> ps.setLong(1, cutoffMillis));
+            transaction.update("DELETE FROM message_archive_blocks WHERE last_timestamp < ?", ps -> ps.setLong(1, cutoffMillis));
+            // The deleted archived messages leave the conversation summaries, which the triggers on 'messages' do not see
+            String summaryUpdate = """
+                    UPDATE conversation_summary SET message_count = message_count - ?1,
+                    unread_count = MIN(unread_count, message_count - ?1)
+                    WHERE contact_id = ?2
+                    """;
+            transaction.batchUpdate(summaryUpdate, deletedMessages.entrySet(), (ps, entry) -> {
+                ps.setInt(1, entry.getValue());
+                ps.setInt(2, entry.getKey());
+            });
+            transaction.update("DELETE FROM conversation_summary WHERE message_count <= 0", SQLiteConnector.NO_PARAMETERS);
+            return deletedMessages.values().stream().mapToInt(Integer::intValue).sum();
+        });
+        if (deleted == null) {
+            return 0;
+        }
+
+        for (Integer contactId : deletedMessages.keySet()) {
+            boolean empty = sqLiteConnector.queryForObject("SELECT 1 FROM message_archive_blocks WHERE contact_id = ? LIMIT 1",
+                    ps -> ps.setInt(1, contactId), rs -> rs.getInt(1)).isEmpty();
+            Path archivePath = archivePath(contactId);
+            try {
+                if (empty) {
+                    Files.deleteIfExists(archivePath);
+                }
+            } catch (IOException e) {
+                LOGGER.error(ErrorMessages.MESSAGE_ARCHIVE_ERROR, archivePath, e.getMessage());
+            }
+        }
+        return deleted;
+    }
+
+    private static byte[] compress(List<ArchivedMessage> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeInt(messages.size());
+            for (ArchivedMessage message : messages) {
+                byte[] content = message.content().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(message.messageId());
+                out.writeInt(message.senderId());
+                out.writeLong(message.timestamp());
+                out.writeInt(content.length);
+                out.write(content);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<ArchivedMessage> decompress(FileChannel channel, Block block) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(block.compressedLength());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, block.fileOffset() + buffer.position()) < 0) {
+                throw new IOException("truncated block at offset " + block.fileOffset());
+            }
+        }
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(buffer.array())))) {
+            int count = in.readInt();
+            List<ArchivedMessage> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int messageId = in.readInt();
+                int senderId = in.readInt();
+                long timestamp = in.readLong();
+                byte[] content = in.readNBytes(in.readInt());
+                messages.add(new ArchivedMessage(messageId, senderId, new String(content, StandardCharsets.UTF_8), timestamp));
+            }
+            return messages;
+        }
+    }
+
+    private static Path archivePath(Integer contactId) {
+        String archivePath = System.getProperty("chatsystem.archive.path");
+        Path directory = Paths.get(archivePath != null ? archivePath : ConnectionManager.getInstance().getDatabasePath() + ".archive");
+        return directory.resolve("contact-" + contactId + ".archive");
+    }
+
+}
@@ -1,227 +1,500 @@
 package fr.insa.chatsystem.model.repository;
 
 import fr.insa.chatsystem.model.contact.Contact;
-import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import fr.insa.chatsystem.model.message.DeliveryStatus;
 import fr.insa.chatsystem.model.message.Message;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
 
 /**
  * The MessageRepository class provides methods to interact with the SQLite database for managing messages.
  * It includes methods for creating a messages table, inserting messages, and retrieving conversation history.
+ * It is the default MessageStore.
  */
-public class MessageRepository extends Repository {
-    private static final Logger LOGGER = LogManager.getLogger(MessageRepository.class);
+public class MessageRepository extends Repository implements MessageStore {
     private static final MessageRepository INSTANCE = new MessageRepository();
 
     public static MessageRepository getInstance() {
         return INSTANCE;
     }
 
-    /**
-     * Interface for classes that want to observe incoming messages.
-     */
-    public interface Observer {
-        /**
-         * Called when a new message is received and inserted into the database.
-         */
-        void messageInserted(Message message);
-    }
-
-    private final List<Observer> observers = new ArrayList<>();
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
+    private final MessageWriter messageWriter = new MessageWriter(sqLiteConnector, this::notifyObservers);
 
     /**
      * Adds an observer to the list of observers.
      *
      * @param observer The observer to be added.
      */
-    public synchronized void addObserver(Observer observer) {
+    @Override
+    public void addObserver(Observer observer) {
         this.observers.add(observer);
     }
 
+    /**
+     * Statement creating the 'messages' table, also used by the first schema migration.
+     */
+    static final String CREATE_MESSAGES_TABLE = """
+            CREATE TABLE IF NOT EXISTS messages (
+            message_id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+            sender_contact_id INTEGER,
+            receiver_contact_id INTEGER,
+            content TEXT,
+            FOREIGN KEY(sender_contact_id) REFERENCES contacts(contact_id),
+            FOREIGN KEY(receiver_contact_id) REFERENCES contacts(contact_id))
+            """;
+
+    /**
+     * Statement creating the 'message_recipients' table, also used by the second schema migration.
+     */
+    static final String CREATE_MESSAGE_RECIPIENTS_TABLE = """
+            CREATE TABLE IF NOT EXISTS message_recipients (
+            message_id INTEGER NOT NULL,
+            receiver_contact_id INTEGER NOT NULL,
+            status TEXT NOT NULL,
+            PRIMARY KEY(message_id, receiver_contact_id),
+            FOREIGN KEY(message_id) REFERENCES messages(message_id),
+            FOREIGN KEY(receiver_contact_id) REFERENCES contacts(contact_id))
+            """;
+
+    /**
+     * Statements giving the messages the globally unique identifier chosen by their sender, used by the ninth schema
+     * migration. Messages stored before have no uid; they never conflict with each other in the unique index.
+     */
+    static final String ADD_MESSAGE_UID_COLUMN = "ALTER TABLE messages ADD COLUMN message_uid TEXT";
+
+    static final String CREATE_MESSAGE_UID_INDEX = "CREATE UNIQUE INDEX IF NOT EXISTS idx_messages_uid ON messages(message_uid)";
+
     /**
      * Creates the 'messages' table in the SQLite database to store message information.
      * The table includes columns for message_id (auto-incremented primary key), sender_contact_id,
      * receiver_contact_id, and content. Foreign key constraints reference the 'contacts' table.
+     * The timestamp column is added by a later schema migration.
+     * The SchemaMigrator creates it when the database is opened, this method is kept for databases managed by hand.
      */
     public void createMessagesTable() {
-        sqLiteConnector.connectDatabase();
-        sqLiteConnector.createStatement();
-
-        String query = """
-                CREATE TABLE messages (
-                message_id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
-                sender_contact_id INTEGER,
-                receiver_contact_id INTEGER,
-                content TEXT,
-                FOREIGN KEY(sender_contact_id) REFERENCES contacts(contact_id),
-                FOREIGN KEY(receiver_contact_id) REFERENCES contacts(contact_id))
-                """;
+        sqLiteConnector.execute(CREATE_MESSAGES_TABLE);
+    }
 
-        sqLiteConnector.statementExecuteUpdate(query);
-        sqLiteConnector.closeStatement();
-        sqLiteConnector.disconnectDatabase();
+    /**
+     * Creates the 'message_recipients' table in the SQLite database to store the receivers of group messages.
+     * A group message is stored once in the 'messages' table without a receiver_contact_id,
+     * and the table holds one row per receiver with the delivery status of the message.
+     * The SchemaMigrator creates it when the database is opened, this method is kept for databases managed by hand.
+     */
+    public void createMessageRecipientsTable() {
+        sqLiteConnector.execute(CREATE_MESSAGE_RECIPIENTS_TABLE);
     }
 
     /**
-     * Inserts a new message into the 'messages' table.
+     * Queues a new message to be inserted into the 'messages' table.
+     * Messages are written in the background in batched transactions; the messageId is set and the observers are
+     * notified once the message is committed. Reads of this repository wait for the messages queued before them.
+     * A message whose uid is already stored is not inserted again: it gets the messageId of the stored one and the
+     * observers are not notified.
      *
      * @param message The Message object to be inserted.
      */
+    @Override
     public void insertMessage(Message message) {
-        sqLiteConnector.connectDatabase();
-
-        String query = """
-                INSERT INTO messages(sender_contact_id, receiver_contact_id, content)
-                VALUES(?, ?, ?);
-                """;
+        messageWriter.enqueue(message);
+    }
 
-        sqLiteConnector.createPreparedStatement(query);
-        sqLiteConnector.preparedStatementSetString(1, message.getSenderContact().getContactId().toString());
-        sqLiteConnector.preparedStatementSetString(2, message.getReceiverContact().getContactId().toString());
-        sqLiteConnector.preparedStatementSetString(3, message.getContent());
+    /**
+     * Waits until every queued message has been committed.
+     */
+    @Override
+    public void flush() {
+        messageWriter.flush();
+    }
 
-        sqLiteConnector.preparedStatementExecuteUpdate();
-        sqLiteConnector.closePreparedStatement();
-        sqLiteConnector.disconnectDatabase();
+    /**
+     * Commits the queued messages and stops the background writer.
+     */
+    @Override
+    public void shutdown() {
+        messageWriter.shutdown();
+    }
 
+    private void notifyObservers(Message message) {
         for (Observer observer : observers) {
             observer.messageInserted(message);
         }
     }
 
     /**
-     * Retrieves the conversation history between two contacts from the 'messages' table.
+     * Inserts a group message into the 'messages' table and its receivers into the 'message_recipients' table,
+     * in a single transaction.
+     * Observers are notified once per receiver, with a message addressed to that receiver.
      *
-     * @param selfId    The contact_id of the logged-in user.
-     * @param contactId The contact_id of the other participant in the conversation.
-     * @return A List of Message objects representing the conversation history.
+     * @param message  The Message object to be inserted, its receiverContact is ignored.
+     * @param outcomes The delivery status of the message for each receiver.
+     * @return The message_id of the inserted message, or null if it could not be inserted.
      */
-    public List<Message> getConversationHistory(Integer selfId, Integer contactId) {
-        List<Message> conversationHistory = new ArrayList<>();
-        try {
-            sqLiteConnector.connectDatabase();
-
+    public Integer insertGroupMessage(Message message, Map<Contact, DeliveryStatus> outcomes) {
+        messageWriter.flush();
+        Integer messageId = sqLiteConnector.inTransaction(transaction -> {
             String query = """
-                    SELECT * FROM contacts WHERE contact_id == ?
+                    INSERT INTO messages(sender_contact_id, receiver_contact_id, content, timestamp, message_uid)
+                    VALUES(?, NULL, ?, ?, ?);
                     """;
-            sqLiteConnector.createPreparedStatement(query);
-            sqLiteConnector.preparedStatementSetString(1, selfId.toString());
-
-            ResultSet rs = sqLiteConnector.preparedStatementExecuteQuery();
-            Contact self = new Contact();
-            while (rs.next()) {
-                self = new Contact(rs.getInt("contact_id"), rs.getString("username"), rs.getInt("is_me"));
-            }
-            rs.close();
-            sqLiteConnector.closePreparedStatement();
+            Integer insertedId = transaction.insert(query, ps -> {
+                ps.setInt(1, message.getSenderContact().getContactId());
+                ps.setString(2, message.getContent());
+                ps.setLong(3, message.getTimestamp());
+                ps.setString(4, message.getUid());
+            });
 
             query = """
-                    SELECT * FROM contacts WHERE contact_id == ?
+                    INSERT INTO message_recipients(message_id, receiver_contact_id, status)
+                    VALUES(?, ?, ?);
                     """;
-            sqLiteConnector.createPreparedStatement(query);
-            sqLiteConnector.preparedStatementSetString(1, contactId.toString());
+            transaction.batchUpdate(query, outcomes.entrySet(), (ps, outcome) -> {
+                ps.setInt(1, insertedId);
+                ps.setInt(2, outcome.getKey().getContactId());
+                ps.setString(3, outcome.getValue().name());
+            });
+            return insertedId;
+        });
+
+        if (messageId == null) {
+            return null;
+        }
 
-            rs = sqLiteConnector.preparedStatementExecuteQuery();
-            Contact contact = new Contact();
-            while (rs.next()) {
-                contact = new Contact(rs.getInt("contact_id"), rs.getString("username"), rs.getInt("is_me"));
+        for (Contact receiver : outcomes.keySet()) {
+            Message receiverMessage = new Message(messageId, message.getContent());
+            receiverMessage.setSenderContact(message.getSenderContact());
+            receiverMessage.setReceiverContact(receiver);
+            receiverMessage.setTimestamp(message.getTimestamp());
+            receiverMessage.setUid(message.getUid());
+            for (Observer observer : observers) {
+                observer.messageInserted(receiverMessage);
             }
-            rs.close();
-            sqLiteConnector.closePreparedStatement();
+        }
 
-            query = """
-                    SELECT * FROM messages
-                    WHERE (sender_contact_id = ? OR sender_contact_id = ?)
-                    AND (receiver_contact_id = ? OR receiver_contact_id = ?)
-                    """;
-            sqLiteConnector.createPreparedStatement(query);
-            sqLiteConnector.preparedStatementSetString(1, selfId.toString());
-            sqLiteConnector.preparedStatementSetString(2, contactId.toString());
-            sqLiteConnector.preparedStatementSetString(3, selfId.toString());
-            sqLiteConnector.preparedStatementSetString(4, contactId.toString());
-
-            rs = sqLiteConnector.preparedStatementExecuteQuery();
-            while (rs.next()) {
-                Message message = new Message(rs.getInt("message_id"), rs.getString("content"));
-
-                if (selfId == rs.getInt("sender_contact_id")) {
-                    message.setSenderContact(self);
-                    message.setReceiverContact(contact);
-                } else {
-                    message.setSenderContact(contact);
-                    message.setReceiverContact(self);
-                }
-
-                conversationHistory.add(message);
-            }
-            rs.close();
-            sqLiteConnector.closePreparedStatement();
+        return messageId;
+    }
 
-            sqLiteConnector.disconnectDatabase();
-        } catch (SQLException | NullPointerException e) {
-            LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
+    /**
+     * Retrieves the receivers of a group message and the delivery status of the message for each of them.
+     *
+     * @param messageId The message_id of the group message.
+     * @return A Map from the contact_id of each receiver to its delivery status.
+     */
+    public Map<Integer, DeliveryStatus> getMessageRecipients(Integer messageId) {
+        messageWriter.flush();
+        Map<Integer, DeliveryStatus> recipients = new LinkedHashMap<>();
+        String query = """
+                SELECT receiver_contact_id, status FROM message_recipients WHERE message_id = ?
+                """;
+        List<Map.Entry<Integer, DeliveryStatus>> rows = sqLiteConnector.query(query, ps -> ps.setInt(1, messageId),
+                rs -> Map.entry(rs.getInt("receiver_contact_id"), DeliveryStatus.valueOf(rs.getString("status"))));
+        for (Map.Entry<Integer, DeliveryStatus> row : rows) {
+            recipients.put(row.getKey(), row.getValue());
         }
 
-        return conversationHistory;
+        return recipients;
     }
 
-    public List<Message> getMessagesByContactId(Integer contactId) {
-        List<Message> messages = new ArrayList<>();
-        try {
-            sqLiteConnector.connectDatabase();
+    /**
+     * Retrieves the conversation history between two contacts from the 'messages' table.
+     * Group messages sent by the logged-in user to the contact are included.
+     * <p>
+     * The messages and both participants are read by a single query. The two contacts are read first, by primary key
+     * and once for the whole query, then the messages are found through the conversation indexes; the left joins keep
+     * the messages of a contact that no longer exists. All the messages share the two Contact objects.
+     * The rows are returned in message_id order, so the callers do not sort them.
+     *
+     * @param selfId    The contact_id of the logged-in user.
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @return A List of Message objects representing the conversation history, ordered from the oldest to the newest.
+     */
+    @Override
+    public List<Message> getConversationHistory(Integer selfId, Integer contactId) {
+        messageWriter.flush();
+        String query = """
+                SELECT m.message_id, m.sender_contact_id, m.content, m.timestamp, m.message_uid,
+                s.username AS self_username, s.is_me AS self_is_me, c.username AS contact_username, c.is_me AS contact_is_me
+                FROM (SELECT ?1 AS self_id, ?2 AS contact_id) p
+                LEFT JOIN contacts s ON s.contact_id = p.self_id
+                LEFT JOIN contacts c ON c.contact_id = p.contact_id
+                JOIN messages m ON ((m.sender_contact_id = ?1 OR m.sender_contact_id = ?2)
+                AND (m.receiver_contact_id = ?1 OR m.receiver_contact_id = ?2))
+                OR (m.sender_contact_id = ?1 AND m.receiver_contact_id IS NULL AND m.message_id IN
+                (SELECT message_id FROM message_recipients WHERE receiver_contact_id = ?2))
+                ORDER BY m.message_id
+                """;
+        return sqLiteConnector.query(query, ps -> {
+            ps.setInt(1, selfId);
+            ps.setInt(2, contactId);
+        }, conversationRowMapper(selfId, contactId));
+    }
 
-            String query = """
-                    SELECT * FROM contacts WHERE contact_id == ?
-                    """;
-            sqLiteConnector.createPreparedStatement(query);
-            sqLiteConnector.preparedStatementSetString(1, contactId.toString());
+    /**
+     * Streams the whole conversation between two contacts, group messages included, for exports and analyses
+     * of histories too long to be held in memory.
+     * <p>
+     * The rows are read one at a time as the stream is consumed; every kind of message is read in message_id order
+     * from the conversation indexes and SQLite merges them, so no part of the history is sorted or held in memory.
+     * All the messages share the two Contact objects of the participants. The stream must be consumed by the calling
+     * thread and closed, preferably with try-with-resources.
+     *
+     * @param selfId    The contact_id of the logged-in user.
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @return A stream of the messages, ordered from the oldest to the newest.
+     */
+    @Override
+    public Stream<Message> streamConversationHistory(Integer selfId, Integer contactId) {
+        messageWriter.flush();
+        String query = withParticipants("""
+                SELECT message_id, sender_contact_id, content, timestamp, message_uid FROM messages
+                WHERE sender_contact_id = ?1 AND receiver_contact_id = ?2
+                UNION ALL
+                SELECT message_id, sender_contact_id, content, timestamp, message_uid FROM messages
+                WHERE sender_contact_id = ?2 AND receiver_contact_id = ?1
+                UNION ALL
+                SELECT r.message_id, m.sender_contact_id, m.content, m.timestamp, m.message_uid FROM message_recipients r
+                JOIN messages m ON m.message_id = r.message_id
+                WHERE r.receiver_contact_id = ?2 AND m.sender_contact_id = ?1
+                ORDER BY message_id
+                """, "h.message_id");
+        return sqLiteConnector.stream(query, ps -> {
+            ps.setInt(1, selfId);
+            ps.setInt(2, contactId);
+        }, conversationRowMapper(selfId, contactId));
+    }
 
-            ResultSet rs = sqLiteConnector.preparedStatementExecuteQuery();
-            Contact contact = new Contact();
-            while (rs.next()) {
-                contact = new Contact(rs.getInt("contact_id"), rs.getString("username"), rs.getInt("is_me"));
-            }
-            rs.close();
-            sqLiteConnector.closePreparedStatement();
+    /**
+     * Retrieves the latest messages of the conversation between two contacts, group messages included.
+     *
+     * @param selfId    The contact_id of the logged-in user.
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @param limit     The maximum number of messages.
+     * @return The latest messages, ordered from the oldest to the newest.
+     */
+    @Override
+    public List<Message> getLatestMessages(Integer selfId, Integer contactId, int limit) {
+        return getMessagesBefore(selfId, contactId, Integer.MAX_VALUE, limit);
+    }
 
-            query = """
-                    SELECT * FROM messages
-                    WHERE sender_contact_id = ? OR receiver_contact_id = ?
-                    """;
-            sqLiteConnector.createPreparedStatement(query);
-            sqLiteConnector.preparedStatementSetString(1, contactId.toString());
-            sqLiteConnector.preparedStatementSetString(2, contactId.toString());
-
-            rs = sqLiteConnector.preparedStatementExecuteQuery();
-            while (rs.next()) {
-                Message message = new Message(rs.getInt("message_id"), rs.getString("content"));
-                messages.add(message);
+    /**
+     * Retrieves the messages of the conversation between two contacts that precede a given message,
+     * group messages included.
+     * <p>
+     * The query is a keyset query: each of the three kinds of messages (sent, received, sent to a group) is read
+     * backwards from the conversation indexes starting at the given message_id, and at most "limit" rows are read
+     * from each, so the cost of a page does not depend on the length of the history.
+     *
+     * @param selfId          The contact_id of the logged-in user.
+     * @param contactId       The contact_id of the other participant in the conversation.
+     * @param beforeMessageId The message_id of the oldest message already displayed.
+     * @param limit           The maximum number of messages.
+     * @return The messages preceding beforeMessageId, ordered from the oldest to the newest.
+     */
+    @Override
+    public List<Message> getMessagesBefore(Integer selfId, Integer contactId, int beforeMessageId, int limit) {
+        messageWriter.flush();
+        String query = withParticipants("""
+                SELECT * FROM (SELECT message_id, sender_contact_id, content, timestamp, message_uid FROM messages
+                WHERE sender_contact_id = ?1 AND receiver_contact_id = ?2 AND message_id < ?3
+                ORDER BY message_id DESC LIMIT ?4)
+                UNION ALL
+                SELECT * FROM (SELECT message_id, sender_contact_id, content, timestamp, message_uid FROM messages
+                WHERE sender_contact_id = ?2 AND receiver_contact_id = ?1 AND message_id < ?3
+                ORDER BY message_id DESC LIMIT ?4)
+                UNION ALL
+                SELECT * FROM (SELECT m.message_id, m.sender_contact_id, m.content, m.timestamp, m.message_uid FROM message_recipients r
+                JOIN messages m ON m.message_id = r.message_id
+                WHERE r.receiver_contact_id = ?2 AND r.message_id < ?3 AND m.sender_contact_id = ?1
+                ORDER BY r.message_id DESC LIMIT ?4)
+                ORDER BY message_id DESC LIMIT ?4
+                """, "h.message_id");
+        return sqLiteConnector.query(query, ps -> {
+            ps.setInt(1, selfId);
+            ps.setInt(2, contactId);
+            ps.setInt(3, beforeMessageId);
+            ps.setInt(4, limit);
+        }, conversationRowMapper(selfId, contactId));
+    }
+
+    /**
+     * Retrieves the messages of the conversation between two contacts sent or received in a time range,
+     * group messages included.
+     * <p>
+     * The direct messages are found through the index on (sender_contact_id, receiver_contact_id, timestamp),
+     * so only the messages of the range are read.
+     *
+     * @param selfId     The contact_id of the logged-in user.
+     * @param contactId  The contact_id of the other participant in the conversation.
+     * @param fromMillis The start of the range, included, in milliseconds since the epoch.
+     * @param toMillis   The end of the range, excluded, in milliseconds since the epoch.
+     * @return The messages of the range, ordered by timestamp.
+     */
+    public List<Message> getMessagesBetween(Integer selfId, Integer contactId, long fromMillis, long toMillis) {
+        messageWriter.flush();
+        String query = withParticipants("""
+                SELECT message_id, sender_contact_id, content, timestamp, message_uid FROM messages
+                WHERE sender_contact_id = ?1 AND receiver_contact_id = ?2 AND timestamp >= ?3 AND timestamp < ?4
+                UNION ALL
+                SELECT message_id, sender_contact_id, content, timestamp, message_uid FROM messages
+                WHERE sender_contact_id = ?2 AND receiver_contact_id = ?1 AND timestamp >= ?3 AND timestamp < ?4
+                UNION ALL
+                SELECT m.message_id, m.sender_contact_id, m.content, m.timestamp, m.message_uid FROM message_recipients r
+                CROSS JOIN messages m ON m.message_id = r.message_id
+                WHERE r.receiver_contact_id = ?2 AND m.sender_contact_id = ?1 AND m.timestamp >= ?3 AND m.timestamp < ?4
+                ORDER BY timestamp, message_id
+                """, "h.timestamp, h.message_id");
+        return sqLiteConnector.query(query, ps -> {
+            ps.setInt(1, selfId);
+            ps.setInt(2, contactId);
+            ps.setLong(3, fromMillis);
+            ps.setLong(4, toMillis);
+        }, conversationRowMapper(selfId, contactId));
+    }
+
+    /**
+     * Retrieves every message sent or received since a given time, whatever the conversation, to catch up
+     * with what happened since then. The messages are found through the index on timestamp, and their participants
+     * are joined by the same query, one Contact object per contact.
+     * Group messages are returned once, without a receiverContact.
+     *
+     * @param sinceMillis The start of the range, included, in milliseconds since the epoch.
+     * @return The messages sent or received since sinceMillis, ordered by timestamp.
+     */
+    public List<Message> getMessagesSince(long sinceMillis) {
+        messageWriter.flush();
+        String query = """
+                SELECT m.message_id, m.content, m.timestamp, m.message_uid,
+                m.sender_contact_id, s.username AS sender_username, s.is_me AS sender_is_me,
+                m.receiver_contact_id, r.username AS receiver_username, r.is_me AS receiver_is_me
+                FROM messages m
+                LEFT JOIN contacts s ON s.contact_id = m.sender_contact_id
+                LEFT JOIN contacts r ON r.contact_id = m.receiver_contact_id
+                WHERE m.timestamp >= ?
+                ORDER BY m.timestamp, m.message_id
+                """;
+        return sqLiteConnector.query(query, ps -> ps.setLong(1, sinceMillis), participantsRowMapper());
+    }
+
+    /**
+     * Adds the two participants of a conversation to the rows of a query on its messages, so that the messages and
+     * their contacts are read in a single round trip. The query is flattened into the join, so its ordered index
+     * scans are kept; the contacts are joined by primary key on ?1, the logged-in user, and ?2, the other
+     * participant, and the left joins keep the messages of a contact that no longer exists.
+     *
+     * @param messagesQuery A query returning message_id, sender_contact_id, content, timestamp and message_uid.
+     * @param orderBy       The order of the messages, on the columns of the query prefixed with "h.".
+     */
+    private static String withParticipants(String messagesQuery, String orderBy) {
+        return "SELECT h.message_id, h.sender_contact_id, h.content, h.timestamp, h.message_uid,"
+                + " s.username AS self_username, s.is_me AS self_is_me, c.username AS contact_username, c.is_me AS contact_is_me"
+                + " FROM (" + messagesQuery + ") h"
+                + " LEFT JOIN contacts s ON s.contact_id = ?1"
+                + " LEFT JOIN contacts c ON c.contact_id = ?2"
+                + " ORDER BY " + orderBy;
+    }
+
+    /**
+     * Returns a row mapper building the messages of a conversation from rows carrying the self_* and contact_*
+     * columns of its participants. The two Contact objects of
+     * the participants are built from the first row and shared by all the messages.
+     */
+    private SQLiteConnector.RowMapper<Message> conversationRowMapper(Integer selfId, Integer contactId) {
+        Contact[] participants = new Contact[2];
+
+        return rs -> {
+            if (participants[0] == null) {
+                participants[0] = toContact(selfId, rs.getString("self_username"), rs.getInt("self_is_me"));
+                participants[1] = toContact(contactId, rs.getString("contact_username"), rs.getInt("contact_is_me"));
+            }
+            Contact self = participants[0];
+            Contact contact = participants[1];
+
+            Message message = new Message(rs.getInt("message_id"), rs.getString("content"));
+            message.setTimestamp(rs.getLong("timestamp"));
+            message.setUid(rs.getString("message_uid"));
+
+            if (selfId == rs.getInt("sender_contact_id")) {
+                message.setSenderContact(self);
+                message.setReceiverContact(contact);
+            } else {
+                message.setSenderContact(contact);
+                message.setReceiverContact(self);
             }
-            rs.close();
-            sqLiteConnector.closePreparedStatement();
 
-            sqLiteConnector.disconnectDatabase();
-        } catch (SQLException | NullPointerException e) {
-            LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
-        }
+            return message;
+        };
+    }
 
-        return messages;
+    /**
+     * Returns a row mapper building messages whose sender and receiver are joined as sender_* and receiver_* columns.
+     * Each contact is built once and shared by all its messages; group messages get no receiverContact.
+     */
+    private SQLiteConnector.RowMapper<Message> participantsRowMapper() {
+        Map<Integer, Contact> contacts = new HashMap<>();
+
+        return rs -> {
+            Message message = new Message(rs.getInt("message_id"), rs.getString("content"));
+            message.setTimestamp(rs.getLong("timestamp"));
+            message.setUid(rs.getString("message_uid"));
+            int senderId = rs.getInt("sender_contact_id");
+            String senderUsername = rs.getString("sender_username");
+            int senderIsMe = rs.getInt("sender_is_me");
+            message.setSenderContact(contacts.computeIfAbsent(senderId, id -> toContact(id, senderUsername, senderIsMe)));
+            int receiverId = rs.getInt("receiver_contact_id");
+            if (!rs.wasNull()) {
+                String receiverUsername = rs.getString("receiver_username");
+                int receiverIsMe = rs.getInt("receiver_is_me");
+                message.setReceiverContact(contacts.computeIfAbsent(receiverId, id -> toContact(id, receiverUsername, receiverIsMe)));
+            }
+            return message;
+        };
     }
 
-    public void deleteMessage(Integer messageId) {
-        sqLiteConnector.connectDatabase();
+    /**
+     * Builds a participant read by a left join, or an empty Contact if the contact no longer exists.
+     */
+    private static Contact toContact(Integer contactId, String username, int isMe) {
+        return username == null ? new Contact() : new Contact(contactId, username, isMe);
+    }
 
-        String query = "DELETE FROM messages WHERE message_id = ?";
-        sqLiteConnector.createPreparedStatement(query);
-        sqLiteConnector.preparedStatementSetString(1, messageId.toString());
+    /**
+     * Retrieves every message sent or received by a contact, group messages included, with their participants.
+     *
+     * @param contactId The contact_id of the contact.
+     * @return The messages of the contact, ordered by message_id.
+     */
+    public List<Message> getMessagesByContactId(Integer contactId) {
+        messageWriter.flush();
+        String query = """
+                SELECT m.message_id, m.content, m.timestamp, m.message_uid,
+                m.sender_contact_id, s.username AS sender_username, s.is_me AS sender_is_me,
+                m.receiver_contact_id, r.username AS receiver_username, r.is_me AS receiver_is_me
+                FROM messages m
+                LEFT JOIN contacts s ON s.contact_id = m.sender_contact_id
+                LEFT JOIN contacts r ON r.contact_id = m.receiver_contact_id
+                WHERE m.sender_contact_id = ?1 OR m.receiver_contact_id = ?1
+                OR m.message_id IN (SELECT message_id FROM message_recipients WHERE receiver_contact_id = ?1)
+                ORDER BY m.message_id
+                """;
+        return sqLiteConnector.query(query, ps -> ps.setInt(1, contactId), participantsRowMapper());
+    }
 
-        sqLiteConnector.preparedStatementExecuteUpdate();
+    /**
+     * Deletes a message and, for a group message, its receivers, in a single transaction.
+     *
+     * @param messageId The message_id of the message.
+     */
+    public void deleteMessage(Integer messageId) {
+        messageWriter.flush();
+        sqLiteConnector.inTransaction(transaction -> {
+            transaction.update("DELETE FROM message_recipients WHERE message_id = ?", ps -> ps.setInt(1, messageId));
+            return transaction.update("DELETE FROM messages WHERE message_id = ?", ps -> ps.setInt(1, messageId));
+        });
     }
 
 }
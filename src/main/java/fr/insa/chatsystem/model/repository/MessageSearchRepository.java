@@ -0,0 +1,159 @@
+package fr.insa.chatsystem.model.repository;
+
+import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.logger.message.InfoMessages;
+import fr.insa.chatsystem.model.message.Message;
+import fr.insa.chatsystem.model.message.MessageSearchResult;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The MessageSearchRepository class provides full-text search over the content of the messages.
+ * <p>
+ * The contents are indexed in 'messages_fts', an FTS5 table that stores no text of its own and reads it from the
+ * 'messages' table. Triggers on 'messages' keep the index up to date on every insert, update and delete, so a
+ * search never scans the messages: it reads the index entries of the searched terms and reads only the messages of
+ * the requested page. Accents and case are ignored.
+ * <p>
+ * Computing the BM25 relevance of every match of a common word costs as much as reading the whole index, so only
+ * the newest "chatsystem.search.candidates" matches are ranked. The index returns them newest first and stops there,
+ * which bounds the cost of a search whatever the size of the history.
+ * <p>
+ * The messages moved to the archive files are searched as well, in 'archived_messages_fts', which the
+ * MessageArchiveRepository fills as it archives them; its newest matches are ranked together with those of
+ * 'messages_fts'. Archived messages are returned without their uid, which the archive files do not keep.
+ */
+public class MessageSearchRepository extends Repository {
+
+    private static final Logger LOGGER = LogManager.getLogger(MessageSearchRepository.class);
+
+    /**
+     * Statement creating the 'messages_fts' full-text index, used by the sixth schema migration.
+     */
+    static final String CREATE_MESSAGES_FTS_TABLE = """
+            CREATE VIRTUAL TABLE IF NOT EXISTS messages_fts USING fts5(
+            content, content='messages', content_rowid='message_id', tokenize='unicode61 remove_diacritics 2')
+            """;
+
+    static final String CREATE_INSERT_TRIGGER = """
+            CREATE TRIGGER IF NOT EXISTS messages_fts_insert AFTER INSERT ON messages BEGIN
+            INSERT INTO messages_fts(rowid, content) VALUES (new.message_id, new.content);
+            END
+            """;
+
+    static final String CREATE_DELETE_TRIGGER = """
+            CREATE TRIGGER IF NOT EXISTS messages_fts_delete AFTER DELETE ON messages BEGIN
+            INSERT INTO messages_fts(messages_fts, rowid, content) VALUES ('delete', old.message_id, old.content);
+            END
+            """;
+
+    static final String CREATE_UPDATE_TRIGGER = """
+            CREATE TRIGGER IF NOT EXISTS messages_fts_update AFTER UPDATE OF content ON messages BEGIN
+            INSERT INTO messages_fts(messages_fts, rowid, content) VALUES ('delete', old.message_id, old.content);
+            INSERT INTO messages_fts(rowid, content) VALUES (new.message_id, new.content);
+            END
+            """;
+
+    /**
+     * Statement indexing again every message, for databases whose index was lost or never built.
+     */
+    static final String REBUILD_INDEX = "INSERT INTO messages_fts(messages_fts) VALUES ('rebuild')";
+
+    /**
+     * Default number of the newest matches ranked by a search.
+     */
+    public static final int DEFAULT_CANDIDATES = 10_000;
+
+    private final ContactRepository contactRepository = new ContactRepository();
+
+    /**
+     * Searches the messages whose content matches a full-text query, the most relevant first.
+     * The matches are ranked among the newest "chatsystem.search.candidates" ones.
+     *
+     * @param matchQuery  The FTS5 query, see {@code MessageSearchService} to build one from the words typed by a user.
+     * @param contactId   The contact_id of the contact whose conversation is searched, or null to search every conversation.
+     * @param fromMillis  The start of the time range searched, included, in milliseconds since the epoch.
+     * @param toMillis    The end of the time range searched, excluded, in milliseconds since the epoch.
+     * @param limit       The maximum number of results.
+     * @param offset      The number of results skipped, to read the following pages.
+     * @return The matching messages with their snippets, ordered by relevance, or an empty list if the query is invalid.
+     */
+    public List<MessageSearchResult> search(String matchQuery, Integer contactId, long fromMillis, long toMillis, int limit, int offset) {
+        MessageRepository.getInstance().flush();
+        // The snippets are only built for the page, by matching again the few messages it holds
+        String query = """
+                WITH candidates AS (
+                    SELECT * FROM (SELECT messages_fts.rowid AS message_id, bm25(messages_fts) AS rank
+                    FROM messages_fts CROSS JOIN messages m ON m.message_id = messages_fts.rowid
+                    WHERE messages_fts MATCH ?1
+                    AND (?2 IS NULL OR m.sender_contact_id = ?2 OR m.receiver_contact_id = ?2
+                    OR m.message_id IN (SELECT message_id FROM message_recipients WHERE receiver_contact_id = ?2))
+                    AND m.timestamp >= ?3 AND m.timestamp < ?4
+                    ORDER BY messages_fts.rowid DESC LIMIT ?7)
+                    UNION ALL
+                    SELECT * FROM (SELECT rowid AS message_id, bm25(archived_messages_fts) AS rank
+                    FROM archived_messages_fts
+                    WHERE archived_messages_fts MATCH ?1
+                    AND (?2 IS NULL OR sender_contact_id = ?2 OR receiver_contact_id = ?2)
+                    AND timestamp >= ?3 AND timestamp < ?4
+                    ORDER BY rowid DESC LIMIT ?7)),
+                page AS (SELECT message_id, rank FROM candidates ORDER BY rank LIMIT ?5 OFFSET ?6)
+                SELECT m.message_id, m.sender_contact_id, m.receiver_contact_id, m.content, m.timestamp, m.message_uid,
+                snippet(messages_fts, 0, '[', ']', '...', 16) AS snippet, page.rank AS rank
+                FROM page CROSS JOIN messages m ON m.message_id = page.message_id
+                CROSS JOIN messages_fts ON messages_fts.rowid = page.message_id
+                WHERE messages_fts MATCH ?1
+                UNION ALL
+                SELECT archived_messages_fts.rowid, sender_contact_id, receiver_contact_id, content, timestamp, NULL,
+                snippet(archived_messages_fts, 0, '[', ']', '...', 16), page.rank
+                FROM page CROSS JOIN archived_messages_fts ON archived_messages_fts.rowid = page.message_id
+                WHERE archived_messages_fts MATCH ?1
+                ORDER BY rank
+                """;
+        Map<Integer, Contact> contacts = new HashMap<>();
+        return sqLiteConnector.query(query, ps -> {
+            ps.setString(1, matchQuery);
+            SQLiteConnector.setInt(ps, 2, contactId);
+            ps.setLong(3, fromMillis);
+            ps.setLong(4, toMillis);
+            ps.setInt(5, limit);
+            ps.setInt(6, offset);
+            ps.setInt(7, Integer.getInteger("chatsystem.search.candidates", DEFAULT_CANDIDATES));
+        }, rs -> {
+            Message message = new Message(rs.getInt("message_id"), rs.getString("content"));
+            message.setTimestamp(rs.getLong("timestamp"));
+            message.setUid(rs.getString("message_uid"));
+            message.setSenderContact(getContact(contacts, rs.getInt("sender_contact_id")));
+            int receiverId = rs.getInt("receiver_contact_id");
+            if (!rs.wasNull()) {
+                message.setReceiverContact(getContact(contacts, receiverId));
+            }
+            return new MessageSearchResult(message, rs.getString("snippet"), rs.getDouble("rank"));
+        });
+    }
+
+    /**
+     * Builds the full-text index again from the content of every message.
+     * The index is built when the database is migrated and then kept up to date by triggers, so this is only needed
+     * if it was damaged or if messages were written by a program that does not know the triggers.
+     */
+    public void rebuildIndex() {
+        MessageRepository.getInstance().flush();
+        long start = System.currentTimeMillis();
+        if (sqLiteConnector.update(REBUILD_INDEX, SQLiteConnector.NO_PARAMETERS) >= 0) {
+            LOGGER.info(InfoMessages.SEARCH_INDEX_REBUILT, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Returns the contact with a given contact_id, reading it only the first time it is asked for.
+     */
+    private Contact getContact(Map<Integer, Contact> contacts, int contactId) {
+        return contacts.computeIfAbsent(contactId, id -> contactRepository.getContactByContactId(id).orElseGet(Contact::new));
+    }
+
+}
@@ -0,0 +1,109 @@
+package fr.insa.chatsystem.model.repository;
+
+import fr.insa.chatsystem.model.message.Message;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * The MessageStore interface defines where the messages of the conversations are written and read from.
+ * <p>
+ * Two implementations exist, selected with the "chatsystem.message.store" system property:
+ * <ul>
+ *     <li>"sqlite", the default, stores the messages in the 'messages' table through the {@link MessageRepository}.</li>
+ *     <li>"log" appends them to the memory-mapped segments of a {@link SegmentLogMessageStore}, for nodes that
+ *     receive more messages than SQLite inserts comfortably.</li>
+ * </ul>
+ * Contacts, group messages, the time-range queries and the full-text index always use the SQLite database, so with
+ * the "log" store they only see the group messages.
+ */
+public interface MessageStore {
+
+    /**
+     * Interface for classes that want to observe incoming messages.
+     */
+    interface Observer {
+        /**
+         * Called when a new message is received and inserted into the store.
+         */
+        void messageInserted(Message message);
+    }
+
+    /**
+     * Returns the store selected by the "chatsystem.message.store" system property.
+     *
+     * @return The SegmentLogMessageStore if the property is "log", otherwise the MessageRepository.
+     */
+    static MessageStore getInstance() {
+        if ("log".equals(System.getProperty("chatsystem.message.store", "sqlite").toLowerCase(Locale.ROOT))) {
+            return SegmentLogMessageStore.getInstance();
+        }
+        return MessageRepository.getInstance();
+    }
+
+    /**
+     * Adds an observer notified of every message inserted into the store.
+     *
+     * @param observer The observer to be added.
+     */
+    void addObserver(Observer observer);
+
+    /**
+     * Inserts a new message exchanged between two contacts. The messageId is set once the message is stored.
+     *
+     * @param message The Message object to be inserted, with its sender and receiver.
+     */
+    void insertMessage(Message message);
+
+    /**
+     * Retrieves the conversation history between two contacts.
+     *
+     * @param selfId    The contact_id of the logged-in user.
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @return A List of Message objects representing the conversation history, ordered from the oldest to the newest.
+     */
+    List<Message> getConversationHistory(Integer selfId, Integer contactId);
+
+    /**
+     * Streams the whole conversation between two contacts, from the oldest message to the newest.
+     * The stream must be consumed by the calling thread and closed.
+     *
+     * @param selfId    The contact_id of the logged-in user.
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @return A stream of the messages.
+     */
+    Stream<Message> streamConversationHistory(Integer selfId, Integer contactId);
+
+    /**
+     * Retrieves the latest messages of the conversation between two contacts.
+     *
+     * @param selfId    The contact_id of the logged-in user.
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @param limit     The maximum number of messages.
+     * @return The latest messages, ordered from the oldest to the newest.
+     */
+    List<Message> getLatestMessages(Integer selfId, Integer contactId, int limit);
+
+    /**
+     * Retrieves the messages of the conversation between two contacts that precede a given message.
+     *
+     * @param selfId          The contact_id of the logged-in user.
+     * @param contactId       The contact_id of the other participant in the conversation.
+     * @param beforeMessageId The message_id of the oldest message already displayed.
+     * @param limit           The maximum number of messages.
+     * @return The messages preceding beforeMessageId, ordered from the oldest to the newest.
+     */
+    List<Message> getMessagesBefore(Integer selfId, Integer contactId, int beforeMessageId, int limit);
+
+    /**
+     * Waits until every inserted message is durably stored.
+     */
+    void flush();
+
+    /**
+     * Stores the pending messages and releases the resources of the store.
+     */
+    void shutdown();
+
+}
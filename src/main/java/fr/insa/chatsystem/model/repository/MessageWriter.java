@@ -0,0 +1,262 @@
+package fr.insa.chatsystem.model.repository;
+
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import fr.insa.chatsystem.model.logger.message.TraceMessages;
+import fr.insa.chatsystem.model.message.Message;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The MessageWriter class persists messages in the background, committing them in batched transactions.
+ * <p>
+ * Messages are put in a bounded queue; when it is full, the caller waits until the writer catches up.
+ * The writer thread takes the first waiting message, then gathers more for at most "chatsystem.db.batch.millis"
+ * milliseconds or until "chatsystem.db.batch.size" messages are gathered, and inserts them all in one transaction,
+ * so the cost of a commit is shared by the whole batch. Every message gets its message_id and is handed to the
+ * committed callback once the transaction is committed. A flush commits the gathered messages without waiting
+ * for the end of the batch window.
+ * <p>
+ * A batch that can not be committed is written again one message per transaction, so a message that can not be
+ * stored is the only one lost and logged; a failure never stops the writer thread, so later messages are still written
+ * and flushes never wait for a writer that is gone.
+ * <p>
+ * The insert is idempotent: a message whose uid is already stored, in the database or earlier in the same batch,
+ * is not inserted again. It gets the message_id of the stored message and is not handed to the callback, so a
+ * message received twice is neither stored nor shown twice, and no query is needed beforehand to detect it.
+ */
+class MessageWriter {
+
+    private static final Logger LOGGER = LogManager.getLogger(MessageWriter.class);
+
+    /**
+     * Default maximum number of messages committed in one transaction.
+     */
+    static final int DEFAULT_BATCH_SIZE = 256;
+
+    /**
+     * Default time in milliseconds the writer waits for more messages before committing a batch.
+     */
+    static final int DEFAULT_BATCH_MILLIS = 10;
+
+    /**
+     * Default capacity of the queue of messages waiting to be written.
+     */
+    static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+    private static final String INSERT_MESSAGE_QUERY = """
+            INSERT INTO messages(sender_contact_id, receiver_contact_id, content, timestamp, message_uid)
+            VALUES(?, ?, ?, ?, ?)
+            ON CONFLICT(message_uid) DO NOTHING;
+            """;
+
+    private static final String SELECT_MESSAGE_ID_QUERY = "SELECT message_id FROM messages WHERE message_uid = ?";
+
+    /**
+     * Marker put in the queue by a flush, to commit the batch being gathered right away.
+     */
+    private static final Message FLUSH = new Message(null, null, null);
+
+    private final SQLiteConnector sqLiteConnector;
+    private final Consumer<Message> committed;
+    private final BlockingQueue<Message> queue;
+    private final int batchSize;
+    private final long batchNanos;
+    private final Object progress = new Object();
+    private long enqueuedCount;
+    private long writtenCount;
+    private volatile boolean running = true;
+    private final Thread writer;
+
+    /**
+     * Constructs and starts a new MessageWriter.
+     *
+     * @param sqLiteConnector The connector used to write the messages.
+     * @param committed       Called with every message once it is committed, from the writer thread.
+     */
+    MessageWriter(SQLiteConnector sqLiteConnector, Consumer<Message> committed) {
+        this.sqLiteConnector = sqLiteConnector;
+        this.committed = committed;
+        this.queue = new ArrayBlockingQueue<>(Integer.getInteger("chatsystem.db.queue", DEFAULT_QUEUE_CAPACITY));
+        this.batchSize = Integer.getInteger("chatsystem.db.batch.size", DEFAULT_BATCH_SIZE);
+        this.batchNanos = TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("chatsystem.db.batch.millis", DEFAULT_BATCH_MILLIS));
+        this.writer = new Thread(this::write, "message-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a message to be written, waiting for room if the queue is full.
+     *
+     * @param message The message to be written, its messageId is set once it is committed.
+     */
+    void enqueue(Message message) {
+        synchronized (progress) {
+            enqueuedCount++;
+        }
+        try {
+            queue.put(message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
+            messagesWritten(1);
+        }
+    }
+
+    /**
+     * Waits until every message queued before the call has been written, so the caller reads its own writes.
+     * Returns immediately when nothing is waiting.
+     */
+    void flush() {
+        if (Thread.currentThread() == writer) {
+            return;
+        }
+        synchronized (progress) {
+            long target = enqueuedCount;
+            if (writtenCount < target) {
+                queue.offer(FLUSH);
+            }
+            while (writtenCount < target && writer.isAlive()) {
+                try {
+                    progress.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the waiting messages and stops the writer thread.
+     */
+    void shutdown() {
+        flush();
+        running = false;
+        writer.interrupt();
+    }
+
+    /**
+     * Takes batches of messages out of the queue and writes them until the writer is shut down.
+     */
+    private void write() {
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Message next = queue.take();
+                long deadline = System.nanoTime() + batchNanos;
+                while (next != null && next != FLUSH) {
+                    batch.add(next);
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                queue.drainTo(batch);
+                batch.removeIf(message -> message == FLUSH);
+            }
+
+            if (!batch.isEmpty()) {
+                try {
+                    writeBatch(batch);
+                } catch (Throwable e) {
+                    LOGGER.error(ErrorMessages.MESSAGE_BATCH_NOT_WRITTEN, batch.size(), e.toString());
+                } finally {
+                    messagesWritten(batch.size());
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a batch in one transaction, or one message per transaction if the batch can not be committed.
+     */
+    private void writeBatch(List<Message> batch) {
+        List<Message> inserted = null;
+        try {
+            inserted = sqLiteConnector.inTransaction(transaction -> insertAll(transaction, batch));
+        } catch (Throwable e) {
+            LOGGER.error(ErrorMessages.MESSAGE_BATCH_NOT_WRITTEN, batch.size(), e.toString());
+        }
+        if (inserted == null && batch.size() > 1) {
+            inserted = new ArrayList<>(batch.size());
+            for (Message message : batch) {
+                inserted.addAll(writeOne(message));
+            }
+        }
+
+        if (inserted != null) {
+            for (Message message : inserted) {
+                try {
+                    committed.accept(message);
+                } catch (RuntimeException e) {
+                    LOGGER.error(ErrorMessages.COMMITTED_MESSAGE_NOT_HANDLED, message.getUid(), e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a single message of a batch that could not be committed, in its own transaction.
+     *
+     * @return The message if it was inserted, or an empty list if it is a duplicate or could not be written.
+     */
+    private List<Message> writeOne(Message message) {
+        message.setMessageId(null);
+        try {
+            List<Message> inserted = sqLiteConnector.inTransaction(transaction -> insertAll(transaction, List.of(message)));
+            if (inserted != null) {
+                return inserted;
+            }
+            LOGGER.error(ErrorMessages.MESSAGE_NOT_WRITTEN, message.getUid(), ErrorMessages.TRANSACTION_ROLLBACK_ONLY);
+        } catch (Throwable e) {
+            LOGGER.error(ErrorMessages.MESSAGE_NOT_WRITTEN, message.getUid(), e.toString());
+        }
+        message.setMessageId(null);
+        return List.of();
+    }
+
+    private static List<Message> insertAll(SQLiteConnector.Transaction transaction, List<Message> messages) throws SQLException {
+        List<Message> insertedMessages = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            Integer messageId = transaction.insert(INSERT_MESSAGE_QUERY, ps -> {
+                SQLiteConnector.setInt(ps, 1, message.getSenderContact().getContactId());
+                SQLiteConnector.setInt(ps, 2, message.getReceiverContact().getContactId());
+                ps.setString(3, message.getContent());
+                ps.setLong(4, message.getTimestamp());
+                ps.setString(5, message.getUid());
+            });
+            if (messageId != null) {
+                message.setMessageId(messageId);
+                insertedMessages.add(message);
+                continue;
+            }
+            // The uid is already stored, the message is a duplicate
+            List<Integer> storedIds = transaction.query(SELECT_MESSAGE_ID_QUERY, ps -> ps.setString(1, message.getUid()),
+                    rs -> rs.getInt("message_id"));
+            if (!storedIds.isEmpty()) {
+                message.setMessageId(storedIds.get(0));
+            }
+            LOGGER.trace(TraceMessages.DUPLICATE_MESSAGE_IGNORED, message.getUid(), message.getMessageId());
+        }
+        return insertedMessages;
+    }
+
+    private void messagesWritten(int count) {
+        synchronized (progress) {
+            writtenCount += count;
+            progress.notifyAll();
+        }
+    }
+
+}
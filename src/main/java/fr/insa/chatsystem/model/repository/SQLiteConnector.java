@@ -4,163 +4,460 @@ import fr.insa.chatsystem.model.logger.message.ErrorMessages;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.sql.*;
-
-import static fr.insa.chatsystem.Main.self;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * The SQLiteConnector class provides methods for connecting to an SQLite database, executing SQL statements,
- * and managing database connections and transactions.
+ * The SQLiteConnector class provides methods for executing SQL statements on the SQLite database
+ * and managing transactions.
+ * <p>
+ * Every call takes its statement from the StatementCache of its connection and closes its result set before
+ * returning, so calls from different threads never share a statement and hot statements are prepared only once. Reads run on the connection of the calling thread.
+ * Writes run on the single writer connection of the ConnectionManager, one at a time behind a write lock;
+ * a thread that holds the write lock also reads through the writer connection, so it sees its own uncommitted rows,
+ * except through a stream, which outlives the lock and always reads on the connection of the thread.
+ * <p>
+ * Errors are logged and reported by an empty result, as the repositories have always done.
  */
 public class SQLiteConnector {
 
-    private static Connection connection;
-    private static Statement statement;
-    private static PreparedStatement preparedStatement;
     private static final Logger LOGGER = LogManager.getLogger(SQLiteConnector.class);
+    private static final ReentrantLock WRITE_LOCK = new ReentrantLock();
+    private static boolean rollbackOnly;   // guarded by WRITE_LOCK
 
     /**
-     * Connects to the SQLite database using the JDBC driver and the specified database URL.
-     * Exits the system if an error occurs during the connection.
+     * Default number of rows the driver is asked to fetch at a time by a streamed query.
      */
-    public void connectDatabase() {
-        try {
-            Class.forName("org.sqlite.JDBC");
-            String databaseUrl = "jdbc:sqlite:database-" + self.getAddress().getHostAddress() + ".db";
-            connection = DriverManager.getConnection(databaseUrl);
-        } catch (SQLException | ClassNotFoundException e) {
-            LOGGER.error(ErrorMessages.DATABASE_CONNECTION_MESSAGE_ERROR + e.getMessage());
-            System.exit(0);
-        }
+    public static final int DEFAULT_FETCH_SIZE = 256;
+
+    /**
+     * Parameter setter for statements without parameters.
+     */
+    public static final ParameterSetter NO_PARAMETERS = preparedStatement -> {
+    };
+
+    /**
+     * Sets the parameters of a prepared statement.
+     */
+    @FunctionalInterface
+    public interface ParameterSetter {
+        void setParameters(PreparedStatement preparedStatement) throws SQLException;
     }
 
     /**
-     * Disconnects from the SQLite database. Logs an error message if disconnection fails.
+     * Maps the current row of a result set to an object.
      */
-    public void disconnectDatabase() {
-        try {
-            connection.close();
-        } catch (SQLException e) {
-            LOGGER.error(ErrorMessages.DATABASE_CONNECTION_MESSAGE_ERROR + e.getMessage());
-        }
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T mapRow(ResultSet rs) throws SQLException;
     }
 
     /**
-     * Creates an SQL statement for executing queries or updates.
-     * Logs an error message if statement creation fails.
+     * Statements executed together in one transaction.
      */
-    public void createStatement() {
-        try {
-            statement = connection.createStatement();
-        } catch (SQLException e) {
-            LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
+    @FunctionalInterface
+    public interface TransactionWork<T> {
+        T execute(Transaction transaction) throws SQLException;
+    }
+
+    /**
+     * Gives access to the writer connection during a transaction. Errors are thrown so the transaction is rolled back.
+     */
+    public static final class Transaction {
+
+        private final StatementCache statements;
+
+        private Transaction(StatementCache statements) {
+            this.statements = statements;
+        }
+
+        /**
+         * Executes an update statement.
+         *
+         * @return The number of rows changed.
+         */
+        public int update(String query, ParameterSetter parameters) throws SQLException {
+            PreparedStatement preparedStatement = statements.prepare(query);
+            parameters.setParameters(preparedStatement);
+            return preparedStatement.executeUpdate();
+        }
+
+        /**
+         * Executes an insert statement.
+         *
+         * @return The rowid of the inserted row, or null if the statement inserted no row, such as an insert whose
+         * conflict is ignored.
+         */
+        public Integer insert(String query, ParameterSetter parameters) throws SQLException {
+            return update(query, parameters) > 0 ? lastInsertRowId(statements) : null;
+        }
+
+        /**
+         * Executes the same update statement once for every set of parameters, as a JDBC batch.
+         */
+        public <T> void batchUpdate(String query, Iterable<T> items, BatchParameterSetter<T> parameters) throws SQLException {
+            PreparedStatement preparedStatement = statements.prepare(query);
+            try {
+                for (T item : items) {
+                    parameters.setParameters(preparedStatement, item);
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+            } finally {
+                preparedStatement.clearBatch();
+            }
+        }
+
+        /**
+         * Executes a query and maps every row of the result.
+         */
+        public <T> List<T> query(String query, ParameterSetter parameters, RowMapper<T> rowMapper) throws SQLException {
+            return SQLiteConnector.query(statements, query, parameters, rowMapper);
         }
     }
 
     /**
-     * Executes an SQL update statement. Logs an error message if execution fails.
+     * Sets the parameters of a prepared statement for one item of a batch.
+     */
+    @FunctionalInterface
+    public interface BatchParameterSetter<T> {
+        void setParameters(PreparedStatement preparedStatement, T item) throws SQLException;
+    }
+
+    /**
+     * Executes a statement without parameters, such as a CREATE TABLE, on the writer connection.
+     * Logs an error message if execution fails.
      *
-     * @param query The SQL query to be executed.
+     * @param query The SQL statement to be executed.
      */
-    public void statementExecuteUpdate(String query) {
-        try {
+    public void execute(String query) {
+        WRITE_LOCK.lock();
+        try (Statement statement = ConnectionManager.getInstance().getWriterConnection().createStatement()) {
             statement.executeUpdate(query);
         } catch (SQLException e) {
             LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
+            revalidate();
+        } finally {
+            WRITE_LOCK.unlock();
         }
     }
 
     /**
-     * Executes an SQL query and returns the result set. Logs an error message if execution fails.
+     * Executes an update statement on the writer connection. Logs an error message if execution fails.
      *
-     * @param query The SQL query to be executed.
-     * @return The result set obtained from executing the query.
+     * @param query      The parameterized SQL statement.
+     * @param parameters Sets the parameters of the statement.
+     * @return The number of rows changed, or -1 if execution failed.
      */
-    public ResultSet statementExecuteQuery(String query) {
-        try {
-            return statement.executeQuery(query);
-        } catch (SQLException e) {
-            LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
-        }
-        return null;
+    public int update(String query, ParameterSetter parameters) {
+        Integer changed = inTransactionOrAutoCommit(transaction -> transaction.update(query, parameters), false);
+        return changed == null ? -1 : changed;
     }
 
     /**
-     * Closes the SQL statement. Logs an error message if closure fails.
+     * Executes an insert statement on the writer connection. Logs an error message if execution fails.
+     *
+     * @param query      The parameterized SQL statement.
+     * @param parameters Sets the parameters of the statement.
+     * @return The rowid of the inserted row, or null if execution failed or inserted no row.
      */
-    public void closeStatement() {
-        try {
-            statement.close();
-        } catch (SQLException e) {
-            LOGGER.error(ErrorMessages.DATABASE_CONNECTION_MESSAGE_ERROR + e.getMessage());
-        }
+    public Integer insert(String query, ParameterSetter parameters) {
+        return inTransactionOrAutoCommit(transaction -> transaction.insert(query, parameters), false);
     }
 
     /**
-     * Creates a prepared statement for executing parameterized queries.
-     * Logs an error message if statement creation fails.
+     * Executes a query and maps every row of the result. Logs an error message if execution fails.
      *
-     * @param query The parameterized SQL query.
+     * @param query      The parameterized SQL query.
+     * @param parameters Sets the parameters of the query.
+     * @param rowMapper  Maps a row of the result.
+     * @return The mapped rows, or an empty list if execution failed.
      */
-    public void createPreparedStatement(String query) {
+    public <T> List<T> query(String query, ParameterSetter parameters, RowMapper<T> rowMapper) {
         try {
-            preparedStatement = connection.prepareStatement(query);
+            return query(readStatements(), query, parameters, rowMapper);
         } catch (SQLException e) {
             LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
+            revalidate();
         }
+        return new ArrayList<>();
     }
 
     /**
-     * Sets a string parameter in the prepared statement.
+     * Executes a query and maps the first row of the result. Logs an error message if execution fails.
      *
-     * @param index The parameter index.
-     * @param value The string value to be set.
+     * @param query      The parameterized SQL query.
+     * @param parameters Sets the parameters of the query.
+     * @param rowMapper  Maps a row of the result.
+     * @return The mapped row, or an empty Optional if there is none or if execution failed.
      */
-    public void preparedStatementSetString(Integer index, String value) {
+    public <T> Optional<T> queryForObject(String query, ParameterSetter parameters, RowMapper<T> rowMapper) {
         try {
-            preparedStatement.setString(index, value);
+            PreparedStatement preparedStatement = readStatements().prepare(query);
+            parameters.setParameters(preparedStatement);
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                return rs.next() ? Optional.ofNullable(rowMapper.mapRow(rs)) : Optional.empty();
+            }
         } catch (SQLException e) {
             LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
+            revalidate();
         }
-
+        return Optional.empty();
     }
 
     /**
-     * Executes an SQL update statement using the prepared statement.
-     * Logs an error message if execution fails.
+     * Executes a query and maps its rows lazily, one at a time, as the returned stream is consumed.
+     * <p>
+     * Unlike {@link #query}, the rows are never gathered in a list, so the memory used does not depend on the
+     * number of rows. The query gets its own statement instead of a cached one, and the driver fetches
+     * "chatsystem.db.fetchsize" rows at a time. The stream must be consumed by the calling thread, which owns the
+     * connection, and closed, preferably with try-with-resources; the result set and the statement are also
+     * closed as soon as the last row is read. Until then the read transaction stays open, so streams should not
+     * be kept open longer than needed. An error is logged and ends the stream.
+     * <p>
+     * The query always runs on the connection of the calling thread, even while it holds the write lock, as the
+     * stream may be consumed after the lock is released: a stream does not see the uncommitted rows of the thread.
+     *
+     * @param query      The parameterized SQL query.
+     * @param parameters Sets the parameters of the query.
+     * @param rowMapper  Maps a row of the result.
+     * @return A stream of the mapped rows, empty if execution failed.
      */
-    public void preparedStatementExecuteUpdate() {
+    public <T> Stream<T> stream(String query, ParameterSetter parameters, RowMapper<T> rowMapper) {
+        PreparedStatement preparedStatement = null;
         try {
-            preparedStatement.executeUpdate();
+            preparedStatement = ConnectionManager.getInstance().getConnection().prepareStatement(query);
+            preparedStatement.setFetchSize(Integer.getInteger("chatsystem.db.fetchsize", DEFAULT_FETCH_SIZE));
+            parameters.setParameters(preparedStatement);
+            Cursor<T> cursor = new Cursor<>(preparedStatement, preparedStatement.executeQuery(), rowMapper);
+            return StreamSupport.stream(cursor, false).onClose(cursor::close);
         } catch (SQLException e) {
             LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
+            if (preparedStatement != null) {
+                closeQuietly(preparedStatement);
+            }
+            ConnectionManager.getInstance().revalidate(false);
         }
+        return Stream.empty();
     }
 
     /**
-     * Executes an SQL query using the prepared statement and returns the result set.
-     * Logs an error message if execution fails.
+     * Walks an open result set for a stream, closing it with its statement once exhausted or when the stream is closed.
+     */
+    private static final class Cursor<T> extends Spliterators.AbstractSpliterator<T> {
+
+        private final PreparedStatement preparedStatement;
+        private final ResultSet rs;
+        private final RowMapper<T> rowMapper;
+        private boolean closed;
+
+        private Cursor(PreparedStatement preparedStatement, ResultSet rs, RowMapper<T> rowMapper) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.preparedStatement = preparedStatement;
+            this.rs = rs;
+            this.rowMapper = rowMapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
+            T row;
+            try {
+                if (!rs.next()) {
+                    close();
+                    return false;
+                }
+                row = rowMapper.mapRow(rs);
+            } catch (SQLException e) {
+                LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
+                close();
+                return false;
+            }
+            action.accept(row);
+            return true;
+        }
+
+        private void close() {
+            if (!closed) {
+                closed = true;
+                closeQuietly(preparedStatement);
+            }
+        }
+    }
+
+    /**
+     * Executes statements in a single transaction on the writer connection.
+     * The transaction is rolled back and an error message is logged if one of the statements fails, including a
+     * statement run by another call of this connector inside the work. An unchecked exception thrown by the work also
+     * rolls the transaction back, and is rethrown.
      *
-     * @return The result set obtained from executing the prepared statement.
+     * @param work The statements to be executed.
+     * @return The result of the work, or null if the transaction was rolled back.
+     */
+    public <T> T inTransaction(TransactionWork<T> work) {
+        return inTransactionOrAutoCommit(work, true);
+    }
+
+    /**
+     * Runs work on the writer connection while holding the write lock, in a transaction when asked to.
+     * A failed statement has the writer connection validated, like a failed read does for its own connection.
+     * <p>
+     * Work run by a thread that is already inside a transaction joins that transaction. A failure of joined work
+     * marks the transaction rollback-only, so the outermost work can not commit the statements that did succeed.
+     * The transaction is rolled back whatever the failure; unchecked exceptions and errors are rethrown once it is.
+     * If the rollback itself fails, the writer connection is discarded, which rolls the transaction back as well.
      */
-    public ResultSet preparedStatementExecuteQuery() {
+    private <T> T inTransactionOrAutoCommit(TransactionWork<T> work, boolean transactional) {
+        WRITE_LOCK.lock();
         try {
-            return preparedStatement.executeQuery();
+            StatementCache statements = ConnectionManager.getInstance().getWriterStatementCache();
+            Connection connection = statements.getConnection();
+            boolean joined = !connection.getAutoCommit();
+            boolean outermost = transactional && !joined;
+            if (outermost) {
+                connection.setAutoCommit(false);
+            }
+            boolean ended = false;
+            try {
+                T result = work.execute(new Transaction(statements));
+                if (outermost) {
+                    if (rollbackOnly) {
+                        LOGGER.error(ErrorMessages.TRANSACTION_ROLLBACK_ONLY);
+                        connection.rollback();
+                        ended = true;
+                        return null;
+                    }
+                    connection.commit();
+                    ended = true;
+                }
+                return result;
+            } catch (SQLException e) {
+                LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
+                if (outermost) {
+                    connection.rollback();
+                    ended = true;
+                } else if (joined) {
+                    rollbackOnly = true;
+                }
+                revalidate();
+            } catch (Throwable t) {
+                if (outermost) {
+                    try {
+                        connection.rollback();
+                        ended = true;
+                    } catch (SQLException e) {
+                        t.addSuppressed(e);
+                    }
+                } else if (joined) {
+                    rollbackOnly = true;
+                }
+                throw t;
+            } finally {
+                if (outermost) {
+                    rollbackOnly = false;
+                    endTransaction(connection, ended);
+                }
+            }
         } catch (SQLException e) {
-            LOGGER.error(ErrorMessages.CAN_NOT_EXECUTE_SQL_STATEMENT + e.getMessage());
+            LOGGER.error(ErrorMessages.DATABASE_CONNECTION_MESSAGE_ERROR + e.getMessage());
+            revalidate();
+        } finally {
+            WRITE_LOCK.unlock();
         }
         return null;
     }
 
     /**
-     * Closes the prepared statement. Logs an error message if closure fails.
+     * Puts the writer connection back in auto-commit mode after a transaction that was committed or rolled back.
+     * A transaction that could not be ended is never committed by this: the writer connection is discarded instead.
+     */
+    private static void endTransaction(Connection connection, boolean ended) {
+        if (ended) {
+            try {
+                connection.setAutoCommit(true);
+                return;
+            } catch (SQLException e) {
+                LOGGER.error(ErrorMessages.DATABASE_CONNECTION_MESSAGE_ERROR + e.getMessage());
+            }
+        }
+        ConnectionManager.getInstance().discardWriterConnection();
+    }
+
+    /**
+     * Has the connection on which a statement of the calling thread just failed validated, and reopened if needed.
+     */
+    private static void revalidate() {
+        ConnectionManager.getInstance().revalidate(WRITE_LOCK.isHeldByCurrentThread());
+    }
+
+    /**
+     * Returns the statements of the connection on which the calling thread reads: the writer connection while it
+     * holds the write lock, its own connection otherwise.
+     */
+    private StatementCache readStatements() throws SQLException {
+        if (WRITE_LOCK.isHeldByCurrentThread()) {
+            return ConnectionManager.getInstance().getWriterStatementCache();
+        }
+        return ConnectionManager.getInstance().getStatementCache();
+    }
+
+    private static <T> List<T> query(StatementCache statements, String query, ParameterSetter parameters, RowMapper<T> rowMapper) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        PreparedStatement preparedStatement = statements.prepare(query);
+        parameters.setParameters(preparedStatement);
+        try (ResultSet rs = preparedStatement.executeQuery()) {
+            while (rs.next()) {
+                rows.add(rowMapper.mapRow(rs));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Closes a statement and its result set, logging an error message if it fails.
      */
-    public void closePreparedStatement() {
+    private static void closeQuietly(Statement statement) {
         try {
-            preparedStatement.close();
+            statement.close();
         } catch (SQLException e) {
             LOGGER.error(ErrorMessages.DATABASE_CONNECTION_MESSAGE_ERROR + e.getMessage());
         }
     }
 
+    private static Integer lastInsertRowId(StatementCache statements) throws SQLException {
+        try (ResultSet rs = statements.prepare("SELECT last_insert_rowid()").executeQuery()) {
+            return rs.next() ? rs.getInt(1) : null;
+        }
+    }
+
+    /**
+     * Sets an integer parameter of a prepared statement, or SQL NULL if the value is null.
+     *
+     * @param preparedStatement The prepared statement.
+     * @param index             The parameter index.
+     * @param value             The integer value to be set.
+     */
+    public static void setInt(PreparedStatement preparedStatement, int index, Integer value) throws SQLException {
+        if (value == null) {
+            preparedStatement.setNull(index, Types.INTEGER);
+        } else {
+            preparedStatement.setInt(index, value);
+        }
+    }
+
 }
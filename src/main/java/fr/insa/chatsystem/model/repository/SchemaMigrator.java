@@ -0,0 +1,145 @@
+package fr.insa.chatsystem.model.repository;
+
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import fr.insa.chatsystem.model.logger.message.InfoMessages;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * The SchemaMigrator class brings the schema of a database up to date, in place.
+ * <p>
+ * The version of the schema is stored in the database with PRAGMA user_version. Migrations are numbered from 1 and
+ * applied in order, each one in its own transaction together with the new version number, so a database is never
+ * left between two versions. Databases created before versioning have version 0; the first migrations only create
+ * what is missing, so they apply to those databases as well as to new ones.
+ * <p>
+ * The ConnectionManager migrates every database the first time it opens it.
+ */
+public class SchemaMigrator {
+
+    private static final Logger LOGGER = LogManager.getLogger(SchemaMigrator.class);
+
+    /**
+     * The migrations, the one at index i brings the schema from version i to version i + 1.
+     */
+    private static final List<List<String>> MIGRATIONS = List.of(
+            // 1: base tables
+            List.of(ContactRepository.CREATE_CONTACTS_TABLE, MessageRepository.CREATE_MESSAGES_TABLE),
+            // 2: receivers of group messages
+            List.of(MessageRepository.CREATE_MESSAGE_RECIPIENTS_TABLE),
+            // 3: conversation indexes, a conversation is read by (sender, receiver) pairs in message_id order
+            List.of(
+                    "CREATE INDEX IF NOT EXISTS idx_messages_sender_receiver ON messages(sender_contact_id, receiver_contact_id, message_id)",
+                    "CREATE INDEX IF NOT EXISTS idx_messages_receiver_sender ON messages(receiver_contact_id, sender_contact_id, message_id)",
+                    "CREATE INDEX IF NOT EXISTS idx_message_recipients_receiver ON message_recipients(receiver_contact_id, message_id)"),
+            // 4: unique usernames, duplicates are merged into the contact with the lowest contact_id
+            List.of(
+                    """
+                    CREATE TEMP TABLE duplicate_contacts AS
+                    SELECT c.contact_id AS duplicate_id, (SELECT MIN(k.contact_id) FROM contacts k WHERE k.username = c.username) AS kept_id
+                    FROM contacts c
+                    WHERE c.contact_id > (SELECT MIN(k.contact_id) FROM contacts k WHERE k.username = c.username)
+                    """,
+                    """
+                    UPDATE contacts SET is_me = 1
+                    WHERE contact_id IN (SELECT d.kept_id FROM duplicate_contacts d JOIN contacts c ON c.contact_id = d.duplicate_id WHERE c.is_me = 1)
+                    """,
+                    """
+                    UPDATE messages SET sender_contact_id = (SELECT kept_id FROM duplicate_contacts WHERE duplicate_id = sender_contact_id)
+                    WHERE sender_contact_id IN (SELECT duplicate_id FROM duplicate_contacts)
+                    """,
+                    """
+                    UPDATE messages SET receiver_contact_id = (SELECT kept_id FROM duplicate_contacts WHERE duplicate_id = receiver_contact_id)
+                    WHERE receiver_contact_id IN (SELECT duplicate_id FROM duplicate_contacts)
+                    """,
+                    """
+                    UPDATE OR IGNORE message_recipients SET receiver_contact_id = (SELECT kept_id FROM duplicate_contacts WHERE duplicate_id = receiver_contact_id)
+                    WHERE receiver_contact_id IN (SELECT duplicate_id FROM duplicate_contacts)
+                    """,
+                    "DELETE FROM message_recipients WHERE receiver_contact_id IN (SELECT duplicate_id FROM duplicate_contacts)",
+                    "DELETE FROM contacts WHERE contact_id IN (SELECT duplicate_id FROM duplicate_contacts)",
+                    "DROP TABLE duplicate_contacts",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS idx_contacts_username ON contacts(username)"),
+            // 5: message timestamps, older messages get the time of the migration so they stay before the new ones
+            List.of(
+                    "ALTER TABLE messages ADD COLUMN timestamp INTEGER NOT NULL DEFAULT 0",
+                    "UPDATE messages SET timestamp = CAST(strftime('%s', 'now') AS INTEGER) * 1000",
+                    "CREATE INDEX IF NOT EXISTS idx_messages_timestamp ON messages(timestamp)",
+                    "CREATE INDEX IF NOT EXISTS idx_messages_sender_receiver_timestamp ON messages(sender_contact_id, receiver_contact_id, timestamp)"),
+            // 6: full-text index of the contents, kept in sync with the messages by triggers
+            List.of(MessageSearchRepository.CREATE_MESSAGES_FTS_TABLE,
+                    MessageSearchRepository.CREATE_INSERT_TRIGGER,
+                    MessageSearchRepository.CREATE_DELETE_TRIGGER,
+                    MessageSearchRepository.CREATE_UPDATE_TRIGGER,
+                    MessageSearchRepository.REBUILD_INDEX),
+            // 7: index of the blocks of the archive files
+            List.of(MessageArchiveRepository.CREATE_MESSAGE_ARCHIVE_BLOCKS_TABLE),
+            // 8: summaries of the conversations, kept in sync with the messages by triggers, existing messages are read
+            List.of(ConversationSummaryRepository.CREATE_CONVERSATION_SUMMARY_TABLE,
+                    ConversationSummaryRepository.CREATE_INSERT_TRIGGER,
+                    ConversationSummaryRepository.CREATE_DELETE_TRIGGER,
+                    ConversationSummaryRepository.SUMMARIZE_MESSAGES,
+                    ConversationSummaryRepository.SUMMARIZE_ARCHIVED_MESSAGES,
+                    ConversationSummaryRepository.SUMMARIZE_ARCHIVED_CONVERSATIONS),
+            // 9: globally unique identifiers of the messages, chosen by their sender
+            List.of(MessageRepository.ADD_MESSAGE_UID_COLUMN, MessageRepository.CREATE_MESSAGE_UID_INDEX),
+            // 10: full-text index of the archived messages, filled by the archiver
+            List.of(MessageArchiveRepository.CREATE_ARCHIVED_MESSAGES_FTS_TABLE)
+    );
+
+    /**
+     * The version of the schema once every migration is applied.
+     */
+    public static final int CURRENT_VERSION = MIGRATIONS.size();
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Applies the migrations the database has not received yet.
+     *
+     * @param connection A connection to the database, in auto-commit mode.
+     * @throws SQLException If a migration fails, the database then stays at the version of the last successful one.
+     */
+    public static void migrate(Connection connection) throws SQLException {
+        int version = getVersion(connection);
+        for (; version < CURRENT_VERSION; version++) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                for (String query : MIGRATIONS.get(version)) {
+                    statement.executeUpdate(query);
+                }
+                statement.executeUpdate("PRAGMA user_version = " + (version + 1));
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                LOGGER.error(ErrorMessages.SCHEMA_MIGRATION_FAILED, version + 1, e.getMessage());
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            LOGGER.info(InfoMessages.SCHEMA_MIGRATED, version + 1);
+        }
+    }
+
+    /**
+     * Reads the version of the schema of a database.
+     *
+     * @param connection A connection to the database.
+     * @return The version of the schema, 0 for a new database or one created before versioning.
+     * @throws SQLException If the version can not be read.
+     */
+    public static int getVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+}
@@ -0,0 +1,359 @@
+package fr.insa.chatsystem.model.repository;
+
+import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import fr.insa.chatsystem.model.logger.message.InfoMessages;
+import fr.insa.chatsystem.model.message.Message;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * The SegmentLogMessageStore class stores the messages in an append-only log of memory-mapped segment files.
+ * <p>
+ * Every message is a record appended after the previous one, so writing a message is a sequential write into the
+ * mapping of the last segment. When the last segment is full, it is written to the storage device and a new one is
+ * created, of "chatsystem.log.segment.bytes" bytes, named after the message_id of its first message. The segments
+ * are stored in the directory given by the "chatsystem.log.path" system property, next to the database by default.
+ * <p>
+ * Every conversation has an index of the positions of its messages in the segments, in message_id order, so a page
+ * of history reads only the records it returns, straight from the mappings and without copying them. Every record
+ * holds the uid of its message, and an index of the uids makes a message received twice be stored once, as the
+ * 'messages' table does with its unique index. The indexes are kept in memory and rebuilt when the log is opened, by
+ * scanning the segments; the scan checks the checksum of every record and stops at the first torn one, so a crash
+ * loses at most the messages that were not written to the device.
+ * The records are written to the device when a segment is full, on flush and on shutdown, and after every message
+ * with the DURABLE database profile.
+ */
+public class SegmentLogMessageStore implements MessageStore {
+
+    private static final Logger LOGGER = LogManager.getLogger(SegmentLogMessageStore.class);
+    private static final SegmentLogMessageStore INSTANCE = new SegmentLogMessageStore();
+
+    /**
+     * Default size of a segment in bytes.
+     */
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    /**
+     * Size of the message_id, sender and receiver contact_ids, timestamp and length of the uid written before the uid
+     * and the content of a message.
+     */
+    private static final int PAYLOAD_HEADER_BYTES = 22;
+
+    /**
+     * Returns the singleton instance of SegmentLogMessageStore.
+     *
+     * @return The singleton instance of SegmentLogMessageStore.
+     */
+    public static SegmentLogMessageStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The messages of one conversation, as parallel arrays of message_ids and positions in the segments.
+     * A position is the index of the segment in its high 32 bits and the offset of the record in its low 32 bits.
+     */
+    private static final class ConversationIndex {
+        private int[] messageIds = new int[16];
+        private long[] positions = new long[16];
+        private int size;
+
+        private void add(int messageId, long position) {
+            if (size == messageIds.length) {
+                messageIds = Arrays.copyOf(messageIds, size * 2);
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            messageIds[size] = messageId;
+            positions[size] = position;
+            size++;
+        }
+
+        /**
+         * Returns the number of messages whose message_id is lower than a given one.
+         */
+        private int countBefore(int messageId) {
+            int index = Arrays.binarySearch(messageIds, 0, size, messageId);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
+    private final ContactRepository contactRepository = new ContactRepository();
+    private final boolean durable = DatabaseProfile.current() == DatabaseProfile.DURABLE;
+
+    private List<LogSegment> segments;
+    private Map<Long, ConversationIndex> conversations;
+    private Map<String, Integer> uids;
+    private int nextMessageId;
+    private ByteBuffer encoder = ByteBuffer.allocate(1024);
+
+    SegmentLogMessageStore() {
+    }
+
+    @Override
+    public void addObserver(Observer observer) {
+        observers.add(observer);
+    }
+
+    /**
+     * Appends a new message to the last segment and to the index of its conversation.
+     * The messageId is set and the observers are notified once the message is appended.
+     * A message whose uid is already stored is not appended again: it gets the messageId of the stored one and the
+     * observers are not notified.
+     *
+     * @param message The Message object to be inserted, with its sender and receiver.
+     */
+    @Override
+    public void insertMessage(Message message) {
+        if (append(message)) {
+            for (Observer observer : observers) {
+                observer.messageInserted(message);
+            }
+        }
+    }
+
+    private synchronized boolean append(Message message) {
+        if (!open()) {
+            return false;
+        }
+        String uid = message.getUid();
+        Integer storedMessageId = uid == null ? null : uids.get(uid);
+        if (storedMessageId != null) {
+            message.setMessageId(storedMessageId);
+            return false;
+        }
+        int senderId = message.getSenderContact().getContactId();
+        int receiverId = message.getReceiverContact().getContactId();
+        byte[] uidBytes = uid == null ? new byte[0] : uid.getBytes(StandardCharsets.UTF_8);
+        byte[] content = message.getContent().getBytes(StandardCharsets.UTF_8);
+        int payloadLength = PAYLOAD_HEADER_BYTES + uidBytes.length + content.length;
+        if (encoder.capacity() < payloadLength) {
+            encoder = ByteBuffer.allocate(Math.max(payloadLength, encoder.capacity() * 2));
+        }
+        encoder.clear();
+        encoder.putInt(nextMessageId).putInt(senderId).putInt(receiverId).putLong(message.getTimestamp())
+                .putShort((short) uidBytes.length).put(uidBytes).put(content).flip();
+
+        LogSegment segment = segments.get(segments.size() - 1);
+        try {
+            if (!segment.hasRoom(payloadLength)) {
+                segment.force();
+                segment = LogSegment.create(segmentPath(nextMessageId),
+                        Math.max(Integer.getInteger("chatsystem.log.segment.bytes", DEFAULT_SEGMENT_BYTES), LogSegment.RECORD_HEADER_BYTES + payloadLength));
+                segments.add(segment);
+            }
+        } catch (IOException e) {
+            LOGGER.error(ErrorMessages.MESSAGE_LOG_ERROR, logDirectory(), e.getMessage());
+            return false;
+        }
+        int offset = segment.append(encoder);
+        if (durable) {
+            segment.force();
+        }
+
+        long position = ((long) (segments.size() - 1) << 32) | offset;
+        conversations.computeIfAbsent(conversationKey(senderId, receiverId), key -> new ConversationIndex()).add(nextMessageId, position);
+        if (uid != null) {
+            uids.put(uid, nextMessageId);
+        }
+        message.setMessageId(nextMessageId++);
+        return true;
+    }
+
+    @Override
+    public List<Message> getConversationHistory(Integer selfId, Integer contactId) {
+        return new ArrayList<>(read(selfId, contactId, Integer.MAX_VALUE, Integer.MAX_VALUE).toList());
+    }
+
+    @Override
+    public Stream<Message> streamConversationHistory(Integer selfId, Integer contactId) {
+        return read(selfId, contactId, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Message> getLatestMessages(Integer selfId, Integer contactId, int limit) {
+        return read(selfId, contactId, Integer.MAX_VALUE, limit).toList();
+    }
+
+    @Override
+    public List<Message> getMessagesBefore(Integer selfId, Integer contactId, int beforeMessageId, int limit) {
+        return read(selfId, contactId, beforeMessageId, limit).toList();
+    }
+
+    /**
+     * Returns the latest messages of a conversation preceding a given message. The positions are taken from the
+     * index under the lock, the records are then decoded as the stream is consumed, from the mappings.
+     */
+    private Stream<Message> read(Integer selfId, Integer contactId, int beforeMessageId, int limit) {
+        long[] positions;
+        LogSegment[] segmentsSnapshot;
+        synchronized (this) {
+            if (!open()) {
+                return Stream.empty();
+            }
+            ConversationIndex index = conversations.get(conversationKey(selfId, contactId));
+            if (index == null) {
+                return Stream.empty();
+            }
+            int end = index.countBefore(beforeMessageId);
+            positions = Arrays.copyOfRange(index.positions, Math.max(0, end - limit), end);
+            segmentsSnapshot = segments.toArray(new LogSegment[0]);
+        }
+        if (positions.length == 0) {
+            return Stream.empty();
+        }
+
+        Contact self = contactRepository.getContactByContactId(selfId).orElseGet(Contact::new);
+        Contact contact = contactRepository.getContactByContactId(contactId).orElseGet(Contact::new);
+        return Arrays.stream(positions).mapToObj(position -> {
+            ByteBuffer payload = segmentsSnapshot[(int) (position >>> 32)].payload((int) position);
+            int contentStart = PAYLOAD_HEADER_BYTES + uidLength(payload);
+            Message message = new Message(payload.getInt(0),
+                    StandardCharsets.UTF_8.decode(payload.slice(contentStart, payload.limit() - contentStart)).toString());
+            message.setTimestamp(payload.getLong(12));
+            message.setUid(uid(payload));
+            if (selfId == payload.getInt(4)) {
+                message.setSenderContact(self);
+                message.setReceiverContact(contact);
+            } else {
+                message.setSenderContact(contact);
+                message.setReceiverContact(self);
+            }
+            return message;
+        });
+    }
+
+    /**
+     * Writes the appended messages to the storage device.
+     */
+    @Override
+    public synchronized void flush() {
+        if (segments != null) {
+            segments.get(segments.size() - 1).force();
+        }
+    }
+
+    /**
+     * Writes the appended messages to the storage device and closes the segments.
+     * The log is opened again by the next call.
+     */
+    @Override
+    public synchronized void shutdown() {
+        if (segments == null) {
+            return;
+        }
+        for (LogSegment segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                LOGGER.error(ErrorMessages.MESSAGE_LOG_ERROR, segment.getPath(), e.getMessage());
+            }
+        }
+        segments = null;
+        conversations = null;
+        uids = null;
+    }
+
+    /**
+     * Opens the segments and rebuilds the indexes of the conversations, the first time the log is used.
+     *
+     * @return True if the log is open, false if it could not be opened.
+     */
+    private boolean open() {
+        if (segments != null) {
+            return true;
+        }
+        long start = System.currentTimeMillis();
+        Path directory = logDirectory();
+        List<LogSegment> openedSegments = new ArrayList<>();
+        Map<Long, ConversationIndex> indexes = new HashMap<>();
+        Map<String, Integer> uidIndex = new HashMap<>();
+        int[] lastMessageId = {0};
+        try {
+            Files.createDirectories(directory);
+            List<Path> paths;
+            try (Stream<Path> files = Files.list(directory)) {
+                paths = files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+            }
+            for (Path path : paths) {
+                long segmentIndex = openedSegments.size();
+                openedSegments.add(LogSegment.open(path, (offset, payload) -> {
+                    int messageId = payload.getInt(0);
+                    indexes.computeIfAbsent(conversationKey(payload.getInt(4), payload.getInt(8)), key -> new ConversationIndex())
+                            .add(messageId, (segmentIndex << 32) | offset);
+                    String uid = uid(payload);
+                    if (uid != null) {
+                        uidIndex.put(uid, messageId);
+                    }
+                    lastMessageId[0] = Math.max(lastMessageId[0], messageId);
+                }));
+            }
+            if (openedSegments.isEmpty()) {
+                openedSegments.add(LogSegment.create(segmentPath(1),
+                        Integer.getInteger("chatsystem.log.segment.bytes", DEFAULT_SEGMENT_BYTES)));
+            }
+        } catch (IOException e) {
+            LOGGER.error(ErrorMessages.MESSAGE_LOG_ERROR, directory, e.getMessage());
+            for (LogSegment segment : openedSegments) {
+                try {
+                    segment.close();
+                } catch (IOException ignored) {
+                    // The segment was only read
+                }
+            }
+            return false;
+        }
+
+        segments = openedSegments;
+        conversations = indexes;
+        uids = uidIndex;
+        nextMessageId = lastMessageId[0] + 1;
+        LOGGER.info(InfoMessages.MESSAGE_LOG_OPENED, directory, nextMessageId - 1, segments.size(), System.currentTimeMillis() - start);
+        return true;
+    }
+
+    private static Path logDirectory() {
+        String logPath = System.getProperty("chatsystem.log.path");
+        return Paths.get(logPath != null ? logPath : ConnectionManager.getInstance().getDatabasePath() + ".log");
+    }
+
+    private static Path segmentPath(int firstMessageId) {
+        return logDirectory().resolve(String.format("%020d", firstMessageId) + SEGMENT_SUFFIX);
+    }
+
+    private static int uidLength(ByteBuffer payload) {
+        return Short.toUnsignedInt(payload.getShort(20));
+    }
+
+    /**
+     * Decodes the uid of the message of a record, null if it has none.
+     */
+    private static String uid(ByteBuffer payload) {
+        int uidLength = uidLength(payload);
+        return uidLength == 0 ? null : StandardCharsets.UTF_8.decode(payload.slice(PAYLOAD_HEADER_BYTES, uidLength)).toString();
+    }
+
+    /**
+     * Returns the same key for both directions of a conversation.
+     */
+    private static long conversationKey(int firstContactId, int secondContactId) {
+        return ((long) Math.min(firstContactId, secondContactId) << 32) | Math.max(firstContactId, secondContactId);
+    }
+
+}
@@ -0,0 +1,135 @@
+package fr.insa.chatsystem.model.repository;
+
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The StatementCache class keeps the prepared statements of one connection, keyed by their SQL text,
+ * so that SQLite parses and plans every statement once instead of once per call.
+ * <p>
+ * The cache holds at most "chatsystem.db.statementcache" statements and closes the least recently used one
+ * when it is full. It belongs to the connection it was created with and is used by one thread at a time.
+ * Hits, misses and evictions of every cache are counted together.
+ */
+public class StatementCache {
+
+    private static final Logger LOGGER = LogManager.getLogger(StatementCache.class);
+
+    /**
+     * Default number of statements kept per connection.
+     */
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+
+    /**
+     * Constructs a new empty StatementCache for a connection.
+     *
+     * @param connection The connection on which the statements are prepared.
+     */
+    StatementCache(Connection connection) {
+        this(connection, Integer.getInteger("chatsystem.db.statementcache", DEFAULT_CAPACITY));
+    }
+
+    StatementCache(Connection connection, int capacity) {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                EVICTIONS.increment();
+                close(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets the connection on which the statements are prepared.
+     *
+     * @return The connection of this cache.
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns the prepared statement for an SQL text, preparing it on a miss.
+     * The statement must not be closed by the caller, its parameters are cleared before it is returned.
+     *
+     * @param query The SQL text of the statement.
+     * @return The prepared statement.
+     * @throws SQLException If the statement can not be prepared.
+     */
+    public PreparedStatement prepare(String query) throws SQLException {
+        PreparedStatement preparedStatement = statements.get(query);
+        if (preparedStatement != null && !preparedStatement.isClosed()) {
+            HITS.increment();
+            preparedStatement.clearParameters();
+            return preparedStatement;
+        }
+        MISSES.increment();
+        preparedStatement = connection.prepareStatement(query);
+        statements.put(query, preparedStatement);
+        return preparedStatement;
+    }
+
+    /**
+     * Closes every cached statement.
+     */
+    void clear() {
+        statements.values().forEach(StatementCache::close);
+        statements.clear();
+    }
+
+    /**
+     * Gets the number of statements found in a cache, over every connection.
+     *
+     * @return The number of cache hits.
+     */
+    public static long getHits() {
+        return HITS.sum();
+    }
+
+    /**
+     * Gets the number of statements that had to be prepared, over every connection.
+     *
+     * @return The number of cache misses.
+     */
+    public static long getMisses() {
+        return MISSES.sum();
+    }
+
+    /**
+     * Gets the number of statements closed to make room for another one, over every connection.
+     *
+     * @return The number of evictions.
+     */
+    public static long getEvictions() {
+        return EVICTIONS.sum();
+    }
+
+    private static void close(PreparedStatement preparedStatement) {
+        try {
+            preparedStatement.close();
+        } catch (SQLException e) {
+            LOGGER.error(ErrorMessages.DATABASE_CONNECTION_MESSAGE_ERROR + e.getMessage());
+        }
+    }
+
+}
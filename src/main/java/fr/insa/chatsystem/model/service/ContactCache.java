@@ -0,0 +1,210 @@
+package fr.insa.chatsystem.model.service;
+
+import fr.insa.chatsystem.model.contact.Contact;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ContactCache class keeps the contacts read from the database in memory, so that the contact services
+ * do not query the database for every received or sent message.
+ * <p>
+ * Contacts are found by contact_id or by username. The cache holds at most "chatsystem.contact.cache" contacts
+ * and forgets the least recently used one when it is full. Callers change the contacts they get, for instance to
+ * set their address, so the cache keeps copies of the contacts it is given and returns copies of the ones it holds.
+ * <p>
+ * The cache can also hold the set of every username of the database, so that checking whether a username is taken
+ * never queries the database. The set is complete or absent: it is loaded at once, kept up to date when a contact is
+ * put or invalidated, and dropped when a change can not be applied to it, to be loaded again on the next check.
+ * <p>
+ * It is shared by every ContactService and can be used from any thread.
+ */
+public class ContactCache {
+
+    private static final ContactCache INSTANCE = new ContactCache(Integer.getInteger("chatsystem.contact.cache", 1024));
+
+    /**
+     * Returns the singleton instance of ContactCache.
+     *
+     * @return The singleton instance of ContactCache.
+     */
+    public static ContactCache getInstance() {
+        return INSTANCE;
+    }
+
+    private final Map<Integer, Contact> contactsById;
+    private final Map<String, Integer> contactIdsByUsername = new HashMap<>();
+    private Set<String> usernames;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs a new empty ContactCache.
+     *
+     * @param capacity The maximum number of contacts kept.
+     */
+    ContactCache(int capacity) {
+        this.contactsById = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Contact> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                contactIdsByUsername.remove(eldest.getValue().getUsername());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a copy of the contact with a given username.
+     *
+     * @param username The username of the contact.
+     * @return The contact, or an empty Optional if it is not in the cache.
+     */
+    public synchronized Optional<Contact> getByUsername(String username) {
+        Integer contactId = contactIdsByUsername.get(username);
+        return count(contactId == null ? null : contactsById.get(contactId));
+    }
+
+    /**
+     * Returns a copy of the contact with a given contact_id.
+     *
+     * @param contactId The contact_id of the contact.
+     * @return The contact, or an empty Optional if it is not in the cache.
+     */
+    public synchronized Optional<Contact> getByContactId(Integer contactId) {
+        return count(contactsById.get(contactId));
+    }
+
+    /**
+     * Stores a copy of a contact read from or written to the database, replacing the previous version of the contact
+     * and any other contact that had its username.
+     *
+     * @param contact The contact, with its contact_id.
+     */
+    public synchronized void put(Contact contact) {
+        Contact previous = remove(contact.getContactId());
+        if (previous != null && usernames != null) {
+            usernames.remove(previous.getUsername());
+        }
+        Integer previousOwner = contactIdsByUsername.remove(contact.getUsername());
+        if (previousOwner != null) {
+            contactsById.remove(previousOwner);
+        }
+        contactsById.put(contact.getContactId(), copy(contact));
+        contactIdsByUsername.put(contact.getUsername(), contact.getContactId());
+        if (usernames != null) {
+            usernames.add(contact.getUsername());
+        }
+    }
+
+    /**
+     * Forgets the contact with a given contact_id, under its current username.
+     * The username is removed from the set of usernames too, or the set is dropped if the contact was not cached.
+     *
+     * @param contactId The contact_id of the contact.
+     */
+    public synchronized void invalidate(Integer contactId) {
+        Contact removed = remove(contactId);
+        if (removed == null) {
+            usernames = null;
+        } else if (usernames != null) {
+            usernames.remove(removed.getUsername());
+        }
+    }
+
+    private Contact remove(Integer contactId) {
+        Contact removed = contactsById.remove(contactId);
+        if (removed != null) {
+            contactIdsByUsername.remove(removed.getUsername());
+        }
+        return removed;
+    }
+
+    /**
+     * Forgets every contact and the set of usernames, when the database is replaced.
+     */
+    public synchronized void clear() {
+        contactsById.clear();
+        contactIdsByUsername.clear();
+        usernames = null;
+    }
+
+    /**
+     * Checks whether the set of every username of the database is loaded.
+     *
+     * @return True if usernameExists can be used, otherwise false.
+     */
+    public synchronized boolean hasUsernames() {
+        return usernames != null;
+    }
+
+    /**
+     * Loads the set of every username of the database.
+     *
+     * @param allUsernames Every username of the 'contacts' table.
+     */
+    public synchronized void loadUsernames(Collection<String> allUsernames) {
+        usernames = new HashSet<>(allUsernames);
+    }
+
+    /**
+     * Checks whether a username belongs to a contact of the database, once the set of usernames is loaded.
+     *
+     * @param username The username to check.
+     * @return True if a contact has this username, false otherwise or if the set is not loaded.
+     */
+    public synchronized boolean usernameExists(String username) {
+        return usernames != null && usernames.contains(username);
+    }
+
+    /**
+     * Gets the number of contacts found in the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of contacts that had to be read from the database.
+     *
+     * @return The number of cache misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the share of the lookups answered by the cache.
+     *
+     * @return The hit rate, between 0 and 1, or 0 if there was no lookup.
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    private Optional<Contact> count(Contact contact) {
+        if (contact == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(copy(contact));
+    }
+
+    private static Contact copy(Contact contact) {
+        return new Contact(contact.getContactId(), contact.getUsername(), contact.getIsMe());
+    }
+
+}
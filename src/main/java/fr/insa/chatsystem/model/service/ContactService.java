@@ -6,19 +6,36 @@ import fr.insa.chatsystem.model.repository.ContactRepository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import static fr.insa.chatsystem.Main.self;
 
 /**
  * The ContactService class provides methods to interact with contacts,
  * including operations related to the contact repository and active contacts.
+ * Contacts are looked up in the shared ContactCache before the database, and every contact written to the
+ * database is written to the cache too.
+ * The methods used by the user interface also have asynchronous variants, run on the DatabaseExecutor.
  */
 public class ContactService {
 
+    /**
+     * Default maximum number of usernames kept in memory to check whether a username exists.
+     */
+    public static final int DEFAULT_USERNAME_SET_LIMIT = 100_000;
+
     ContactRepository contactRepository;
+    private final ContactCache contactCache;
+    private final ConversationCache conversationCache;
 
     public ContactService(ContactRepository contactRepository){
+        this(contactRepository, ContactCache.getInstance(), ConversationCache.getInstance());
+    }
+
+    ContactService(ContactRepository contactRepository, ContactCache contactCache, ConversationCache conversationCache) {
         this.contactRepository = contactRepository;
+        this.contactCache = contactCache;
+        this.conversationCache = conversationCache;
     }
 
     /**
@@ -30,13 +47,36 @@ public class ContactService {
 
     /**
      * Checks if a contact with the given username exists in the database.
+     * The username is looked up in the set of usernames of the ContactCache, loaded on the first check, or, when the
+     * database has more than "chatsystem.contact.usernames" contacts, in the index on username.
      *
      * @param username The username to check.
      * @return True if the contact exists in the database and is not the logged-in user, otherwise false.
      */
     public boolean contactExistsInDatabase(String username) {
-        List<Contact> databaseContacts = contactRepository.getAllContacts();
-        return databaseContacts.stream().anyMatch(contact -> contact.getUsername().equals(username) && !contact.getUsername().equals(self.getUsername()));
+        if (username == null || username.equals(self.getUsername())) {
+            return false;
+        }
+        if (!contactCache.hasUsernames()) {
+            int limit = Integer.getInteger("chatsystem.contact.usernames", DEFAULT_USERNAME_SET_LIMIT);
+            List<String> usernames = contactRepository.getUsernames(limit + 1);
+            if (usernames.size() > limit) {
+                return contactRepository.contactExistsByUsername(username);
+            }
+            contactCache.loadUsernames(usernames);
+        }
+        return contactCache.usernameExists(username);
+    }
+
+    /**
+     * Checks on the database thread if a contact with the given username exists, see
+     * {@link #contactExistsInDatabase(String)}.
+     *
+     * @param username The username to check.
+     * @return A future completed with the result, on the database thread.
+     */
+    public CompletableFuture<Boolean> contactExistsInDatabaseAsync(String username) {
+        return DatabaseExecutor.getInstance().supply(() -> contactExistsInDatabase(username));
     }
 
     /**
@@ -66,16 +106,34 @@ public class ContactService {
      */
     public void deleteContact(Integer contactId) {
         contactRepository.deleteContact(contactId);
+        contactCache.invalidate(contactId);
+        conversationCache.invalidate(contactId);
     }
 
     /**
-     * Retrieves a contact by its username from the 'contacts' table.
+     * Retrieves a contact by its username, from the cache or else from the 'contacts' table.
      *
      * @param username The username of the desired contact.
      * @return An Optional containing the Contact object if found, otherwise an empty Optional.
      */
     public Optional<Contact> getContactByUsername(String username) {
-        return contactRepository.getContactByUsername(username);
+        Optional<Contact> cachedContact = contactCache.getByUsername(username);
+        if (cachedContact.isPresent()) {
+            return cachedContact;
+        }
+        Optional<Contact> contact = contactRepository.getContactByUsername(username);
+        contact.ifPresent(contactCache::put);
+        return contact;
+    }
+
+    /**
+     * Retrieves a contact by its username on the database thread, see {@link #getContactByUsername(String)}.
+     *
+     * @param username The username of the desired contact.
+     * @return A future completed with the contact if found, on the database thread.
+     */
+    public CompletableFuture<Optional<Contact>> getContactByUsernameAsync(String username) {
+        return DatabaseExecutor.getInstance().supply(() -> getContactByUsername(username));
     }
 
     /**
@@ -85,7 +143,19 @@ public class ContactService {
      * @return An Optional containing the Contact object representing the newly inserted contact.
      */
     public Optional<Contact> insertContact(Contact contact) {
-        return contactRepository.insertContact(contact);
+        Optional<Contact> insertedContact = contactRepository.insertContact(contact);
+        insertedContact.ifPresent(contactCache::put);
+        return insertedContact;
+    }
+
+    /**
+     * Inserts a new contact on the database thread, see {@link #insertContact(Contact)}.
+     *
+     * @param contact The Contact object to be inserted.
+     * @return A future completed with the inserted contact, on the database thread.
+     */
+    public CompletableFuture<Optional<Contact>> insertContactAsync(Contact contact) {
+        return DatabaseExecutor.getInstance().supply(() -> insertContact(contact));
     }
 
     /**
@@ -97,14 +167,43 @@ public class ContactService {
         return contactRepository.getSelf();
     }
 
+    /**
+     * Retrieves the self contact on the database thread, see {@link #getSelf()}.
+     *
+     * @return A future completed with the self contact if found, on the database thread.
+     */
+    public CompletableFuture<Optional<Contact>> getSelfAsync() {
+        return DatabaseExecutor.getInstance().supply(this::getSelf);
+    }
+
     /**
      * Updates an existing contact in the 'contacts' table.
+     * The cache forgets the contact under its previous username, so a renamed contact is only found by its new one.
+     * The cached conversations that show the previous username are forgotten too.
      *
      * @param contact The Contact object with updated information.
      * @return An Optional containing the Contact object representing the updated contact.
      */
     public Optional<Contact> updateContact(Contact contact) {
-        return contactRepository.updateContact(contact);
+        contactCache.invalidate(contact.getContactId());
+        if (Integer.valueOf(1).equals(contact.getIsMe())) {
+            conversationCache.clear();
+        } else {
+            conversationCache.invalidate(contact.getContactId());
+        }
+        Optional<Contact> updatedContact = contactRepository.updateContact(contact);
+        updatedContact.ifPresent(contactCache::put);
+        return updatedContact;
+    }
+
+    /**
+     * Updates an existing contact on the database thread, see {@link #updateContact(Contact)}.
+     *
+     * @param contact The Contact object with updated information.
+     * @return A future completed with the updated contact, on the database thread.
+     */
+    public CompletableFuture<Optional<Contact>> updateContactAsync(Contact contact) {
+        return DatabaseExecutor.getInstance().supply(() -> updateContact(contact));
     }
 
 }
@@ -0,0 +1,287 @@
+package fr.insa.chatsystem.model.service;
+
+import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.message.Message;
+import fr.insa.chatsystem.model.repository.MessageStore;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static fr.insa.chatsystem.Main.self;
+
+/**
+ * The ConversationCache class keeps the latest messages of the recently opened conversations in memory, so that
+ * the chat view is drawn again on every new message without reading the database.
+ * <p>
+ * Every conversation, identified by the contact_id of the other participant, keeps its latest
+ * "chatsystem.conversation.cache.size" messages in a ring buffer: a new message is appended and pushes out the
+ * oldest one. A conversation enters the cache when it is read from the database and then follows every message
+ * committed to the stores of the MessageServices: the cache observes the stores and appends a message once the store
+ * notifies it, so a cached message always has its messageId and a message that was rolled back is never cached.
+ * The conversations share a budget of "chatsystem.conversation.cache.bytes"
+ * bytes, estimated from the length of the contents; the least recently used conversations are forgotten to stay
+ * within it.
+ * <p>
+ * It is shared by every MessageService and can be used from any thread.
+ */
+public class ConversationCache implements MessageStore.Observer {
+
+    /**
+     * Default number of messages kept per conversation.
+     */
+    public static final int DEFAULT_SIZE = 100;
+
+    /**
+     * Default number of bytes the cached messages may use.
+     */
+    public static final long DEFAULT_BUDGET_BYTES = 8L * 1024 * 1024;
+
+    /**
+     * Estimated size of a message without its content: the object, its fields and its place in the buffer.
+     */
+    private static final int MESSAGE_OVERHEAD_BYTES = 96;
+
+    private static final ConversationCache INSTANCE = new ConversationCache(
+            Integer.getInteger("chatsystem.conversation.cache.size", DEFAULT_SIZE),
+            Long.getLong("chatsystem.conversation.cache.bytes", DEFAULT_BUDGET_BYTES));
+
+    /**
+     * Returns the singleton instance of ConversationCache.
+     *
+     * @return The singleton instance of ConversationCache.
+     */
+    public static ConversationCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The latest messages of one conversation, from the oldest to the newest.
+     */
+    private static final class Conversation {
+        private final ArrayDeque<Message> messages;
+        private long bytes;
+
+        private Conversation(int size) {
+            messages = new ArrayDeque<>(size);
+        }
+    }
+
+    private final int size;
+    private final long budgetBytes;
+    private final Map<Integer, Conversation> conversations = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<MessageStore> followedStores = ConcurrentHashMap.newKeySet();
+    private long bytes;
+    private long appends;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs a new empty ConversationCache.
+     *
+     * @param size        The number of messages kept per conversation.
+     * @param budgetBytes The number of bytes the cached messages may use.
+     */
+    ConversationCache(int size, long budgetBytes) {
+        this.size = size;
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Gets the number of messages kept per conversation.
+     *
+     * @return The size of the ring buffer of a conversation.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Follows the messages committed to a store, once whatever the number of MessageServices using the store.
+     *
+     * @param messageStore The store whose committed messages are appended to their conversations.
+     */
+    public void follow(MessageStore messageStore) {
+        if (followedStores.add(messageStore)) {
+            messageStore.addObserver(this);
+        }
+    }
+
+    /**
+     * Appends a committed message to the conversation with its participant who is not the logged-in user.
+     *
+     * @param message The committed message, with its messageId.
+     */
+    @Override
+    public void messageInserted(Message message) {
+        Contact sender = message.getSenderContact();
+        Contact otherParticipant = sender != null && Objects.equals(sender.getContactId(), self.getContactId()) ? message.getReceiverContact() : sender;
+        if (otherParticipant != null) {
+            append(otherParticipant.getContactId(), message);
+        }
+    }
+
+    /**
+     * Returns the latest messages of a conversation if it is cached.
+     *
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @param limit     The maximum number of messages, at most the size of the cache.
+     * @return The latest messages, ordered from the oldest to the newest, or an empty Optional if the conversation
+     * is not cached or if more messages are asked for than the cache keeps.
+     */
+    public synchronized Optional<List<Message>> getLatestMessages(Integer contactId, int limit) {
+        Conversation conversation = conversations.get(contactId);
+        if (conversation == null || limit > size) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        List<Message> messages = new ArrayList<>(Math.min(limit, conversation.messages.size()));
+        Iterator<Message> iterator = conversation.messages.iterator();
+        for (int skipped = conversation.messages.size() - limit; skipped > 0; skipped--) {
+            iterator.next();
+        }
+        iterator.forEachRemaining(messages::add);
+        return Optional.of(messages);
+    }
+
+    /**
+     * Returns a stamp to be given to {@link #put} with the messages read from the database after it.
+     *
+     * @return The number of messages appended and of clears so far.
+     */
+    public synchronized long stamp() {
+        return appends;
+    }
+
+    /**
+     * Caches the latest messages of a conversation read from the database, unless a message was appended or the
+     * cache was cleared since the stamp was taken, in which case the messages read may already be outdated and are
+     * not cached.
+     *
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @param messages  The latest messages of the conversation, at most the size of the cache, from the oldest.
+     * @param stamp     The stamp taken before the messages were read.
+     */
+    public synchronized void put(Integer contactId, List<Message> messages, long stamp) {
+        if (stamp != appends) {
+            return;
+        }
+        invalidate(contactId);
+        Conversation conversation = new Conversation(size);
+        conversations.put(contactId, conversation);
+        for (Message message : messages) {
+            add(conversation, message);
+        }
+        evict(contactId);
+    }
+
+    /**
+     * Appends a new message to its conversation, if the conversation is cached and the message is not already in it.
+     * A message received twice has the same uid, and the duplicate is among the latest messages.
+     *
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @param message   The new message.
+     */
+    public synchronized void append(Integer contactId, Message message) {
+        appends++;
+        Conversation conversation = conversations.get(contactId);
+        if (conversation != null && !containsUid(conversation, message.getUid())) {
+            add(conversation, message);
+            evict(contactId);
+        }
+    }
+
+    private static boolean containsUid(Conversation conversation, String uid) {
+        if (uid == null) {
+            return false;
+        }
+        Iterator<Message> iterator = conversation.messages.descendingIterator();
+        while (iterator.hasNext()) {
+            if (uid.equals(iterator.next().getUid())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets a conversation, when its messages or its participant change.
+     *
+     * @param contactId The contact_id of the other participant in the conversation.
+     */
+    public synchronized void invalidate(Integer contactId) {
+        Conversation removed = conversations.remove(contactId);
+        if (removed != null) {
+            bytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * Forgets every conversation, when the logged-in user changes, the database is replaced or messages are deleted.
+     * The messages being read from the database when the cache is cleared are not cached.
+     */
+    public synchronized void clear() {
+        conversations.clear();
+        bytes = 0;
+        appends++;
+    }
+
+    /**
+     * Gets the number of conversations read from the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of conversations that had to be read from the database.
+     *
+     * @return The number of cache misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private void add(Conversation conversation, Message message) {
+        if (conversation.messages.size() == size) {
+            long removedBytes = estimateBytes(conversation.messages.removeFirst());
+            conversation.bytes -= removedBytes;
+            bytes -= removedBytes;
+        }
+        conversation.messages.addLast(message);
+        long addedBytes = estimateBytes(message);
+        conversation.bytes += addedBytes;
+        bytes += addedBytes;
+    }
+
+    /**
+     * Forgets the least recently used conversations until the budget is met, except the one being used.
+     */
+    private void evict(Integer usedContactId) {
+        Iterator<Map.Entry<Integer, Conversation>> iterator = conversations.entrySet().iterator();
+        while (bytes > budgetBytes && iterator.hasNext()) {
+            Map.Entry<Integer, Conversation> eldest = iterator.next();
+            if (!eldest.getKey().equals(usedContactId)) {
+                bytes -= eldest.getValue().bytes;
+                iterator.remove();
+            }
+        }
+    }
+
+    private static long estimateBytes(Message message) {
+        String content = message.getContent();
+        return MESSAGE_OVERHEAD_BYTES + (content == null ? 0 : 2L * content.length());
+    }
+
+}
@@ -0,0 +1,95 @@
+package fr.insa.chatsystem.model.service;
+
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The DatabaseExecutor class runs the database work of the user interface on a dedicated thread, so the Swing event
+ * dispatch thread never waits for the disk.
+ * <p>
+ * The work is run by a single thread, in the order it was submitted, so a read submitted after a write sees it.
+ * The asynchronous methods of the services complete on that thread; callers that update the user interface
+ * continue on the event dispatch thread, with thenAcceptAsync(action, SwingUtilities::invokeLater).
+ */
+public class DatabaseExecutor implements Executor {
+
+    private static final Logger LOGGER = LogManager.getLogger(DatabaseExecutor.class);
+    private static final DatabaseExecutor INSTANCE = new DatabaseExecutor();
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Returns the singleton instance of DatabaseExecutor.
+     *
+     * @return The singleton instance of DatabaseExecutor.
+     */
+    public static DatabaseExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "database");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private DatabaseExecutor() {
+    }
+
+    /**
+     * Runs a task on the database thread.
+     *
+     * @param task The task.
+     */
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Computes a value on the database thread. A failure is logged and completes the future exceptionally.
+     *
+     * @param task Computes the value.
+     * @return A future completed with the value, on the database thread.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, this).whenComplete((result, e) -> {
+            if (e != null) {
+                LOGGER.error(ErrorMessages.DATABASE_TASK_FAILED, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Runs a task on the database thread. A failure is logged and completes the future exceptionally.
+     *
+     * @param task The task.
+     * @return A future completed once the task has run, on the database thread.
+     */
+    public CompletableFuture<Void> run(Runnable task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the tasks already submitted, then stops the database thread.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
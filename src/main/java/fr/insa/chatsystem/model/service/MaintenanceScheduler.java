@@ -0,0 +1,260 @@
+package fr.insa.chatsystem.model.service;
+
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import fr.insa.chatsystem.model.logger.message.InfoMessages;
+import fr.insa.chatsystem.model.message.Message;
+import fr.insa.chatsystem.model.repository.MaintenanceRepository;
+import fr.insa.chatsystem.model.repository.MessageArchiveRepository;
+import fr.insa.chatsystem.model.repository.MessageRepository;
+import fr.insa.chatsystem.model.repository.MessageStore;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+import static fr.insa.chatsystem.Main.self;
+
+/**
+ * The MaintenanceScheduler class keeps the database of a long-running node bounded, in the background.
+ * <p>
+ * Every "chatsystem.maintenance.interval.minutes" minutes, on a low-priority thread, it deletes the messages that
+ * fall out of the {@link RetentionPolicy}, "chatsystem.maintenance.batch.size" messages per transaction with a short
+ * pause in between, so the messages being received are never held up for long. When a retention rule is enabled and
+ * no message was inserted for "chatsystem.maintenance.idle.seconds" seconds, it then gives the free pages back to the
+ * file system with incremental vacuum, a few at a time, and checkpoints the write-ahead log so it is truncated.
+ * A database created before incremental vacuum keeps its free pages for new messages, unless
+ * "chatsystem.maintenance.vacuum.convert" is true: it is then converted by a full VACUUM, which rewrites the whole
+ * file, the first time the node is idle.
+ * <p>
+ * The conversation cache is cleared whenever messages are deleted.
+ */
+public class MaintenanceScheduler implements MessageStore.Observer {
+
+    private static final Logger LOGGER = LogManager.getLogger(MaintenanceScheduler.class);
+    private static final MaintenanceScheduler INSTANCE = new MaintenanceScheduler(new MaintenanceRepository(),
+            new MessageArchiveRepository(), ConversationCache.getInstance());
+
+    /**
+     * Default time in minutes between two runs.
+     */
+    public static final int DEFAULT_INTERVAL_MINUTES = 15;
+
+    /**
+     * Default time in seconds without inserted messages after which the node is idle.
+     */
+    public static final int DEFAULT_IDLE_SECONDS = 60;
+
+    /**
+     * Default maximum number of messages deleted per transaction.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * Maximum number of pages released per incremental vacuum.
+     */
+    private static final int VACUUM_PAGES = 1024;
+
+    private static final long BATCH_PAUSE_MILLIS = 20;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Returns the singleton instance of MaintenanceScheduler.
+     *
+     * @return The singleton instance of MaintenanceScheduler.
+     */
+    public static MaintenanceScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    private final MaintenanceRepository maintenanceRepository;
+    private final MessageArchiveRepository messageArchiveRepository;
+    private final ConversationCache conversationCache;
+    private ScheduledExecutorService executor;
+    private boolean observing;
+    private volatile boolean stopping;
+    private volatile long lastActivityMillis = System.currentTimeMillis();
+
+    MaintenanceScheduler(MaintenanceRepository maintenanceRepository, MessageArchiveRepository messageArchiveRepository,
+                         ConversationCache conversationCache) {
+        this.maintenanceRepository = maintenanceRepository;
+        this.messageArchiveRepository = messageArchiveRepository;
+        this.conversationCache = conversationCache;
+    }
+
+    /**
+     * Starts the maintenance in the background, unless it is already started.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        if (!observing) {
+            MessageRepository.getInstance().addObserver(this);
+            observing = true;
+        }
+        stopping = false;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "database-maintenance");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        long interval = Integer.getInteger("chatsystem.maintenance.interval.minutes", DEFAULT_INTERVAL_MINUTES);
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                maintain(RetentionPolicy.fromSystemProperties());
+            } catch (RuntimeException e) {
+                LOGGER.error(ErrorMessages.MAINTENANCE_FAILED, e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Records the activity of the node, which postpones the vacuum and the checkpoint.
+     *
+     * @param message The inserted message.
+     */
+    @Override
+    public void messageInserted(Message message) {
+        lastActivityMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Deletes now the messages that fall out of a retention policy, then compacts the database if the node is idle
+     * and the policy has a rule enabled.
+     *
+     * @param policy The retention policy.
+     * @return The number of messages deleted.
+     */
+    public int maintain(RetentionPolicy policy) {
+        long start = System.currentTimeMillis();
+        int deleted = enforce(policy);
+        if (deleted > 0) {
+            conversationCache.clear();
+            LOGGER.info(InfoMessages.RETENTION_ENFORCED, deleted, System.currentTimeMillis() - start);
+        }
+        if (policy.isEnabled() && isIdle()) {
+            compact();
+        }
+        return deleted;
+    }
+
+    private int enforce(RetentionPolicy policy) {
+        int batchSize = Integer.getInteger("chatsystem.maintenance.batch.size", DEFAULT_BATCH_SIZE);
+        int deleted = 0;
+        if (policy.maxAgeDays() >= 0) {
+            long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(policy.maxAgeDays());
+            deleted += deleteInBatches(batchSize, Integer.MAX_VALUE, count -> maintenanceRepository.deleteMessagesBefore(cutoff, count));
+            deleted += messageArchiveRepository.deleteBlocksBefore(cutoff);
+        }
+        if (policy.maxMessagesPerContact() >= 0 && self != null && self.getContactId() != null) {
+            Integer selfId = self.getContactId();
+            Map<Integer, Integer> conversations = maintenanceRepository.getConversationsLargerThan(selfId, policy.maxMessagesPerContact());
+            for (Map.Entry<Integer, Integer> conversation : conversations.entrySet()) {
+                deleted += deleteInBatches(batchSize, conversation.getValue() - policy.maxMessagesPerContact(),
+                        count -> maintenanceRepository.deleteOldestMessages(selfId, conversation.getKey(), count));
+            }
+        }
+        if (policy.maxDatabaseBytes() >= 0) {
+            while (!stopping && maintenanceRepository.getUsedBytes() > policy.maxDatabaseBytes()) {
+                int batch = maintenanceRepository.deleteOldestMessages(batchSize);
+                deleted += batch;
+                if (batch == 0 || !pause()) {
+                    break;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes messages one batch at a time until a batch is not full, the total is reached or the scheduler stops.
+     *
+     * @param delete Deletes at most the given number of messages and returns the number deleted.
+     */
+    private int deleteInBatches(int batchSize, int total, IntUnaryOperator delete) {
+        int deleted = 0;
+        while (!stopping && deleted < total) {
+            int count = Math.min(batchSize, total - deleted);
+            int batch = delete.applyAsInt(count);
+            deleted += batch;
+            if (batch < count || !pause()) {
+                break;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Releases the free pages and checkpoints the write-ahead log, stopping as soon as the node is busy again.
+     * The free pages of a database without incremental vacuum are left for the next messages.
+     */
+    private void compact() {
+        long start = System.currentTimeMillis();
+        long released = 0;
+        boolean incremental = maintenanceRepository.isIncrementalVacuumEnabled();
+        if (!incremental && Boolean.getBoolean("chatsystem.maintenance.vacuum.convert")) {
+            maintenanceRepository.enableIncrementalVacuum();
+            incremental = true;
+            LOGGER.info(InfoMessages.INCREMENTAL_VACUUM_ENABLED, System.currentTimeMillis() - start);
+        }
+        long freePages = incremental ? maintenanceRepository.getFreePages() : 0;
+        while (freePages > 0 && !stopping && isIdle()) {
+            maintenanceRepository.incrementalVacuum(VACUUM_PAGES);
+            long remaining = maintenanceRepository.getFreePages();
+            released += freePages - remaining;
+            if (remaining >= freePages || !pause()) {
+                break;
+            }
+            freePages = remaining;
+        }
+        if (!stopping && isIdle()) {
+            maintenanceRepository.checkpoint();
+        }
+        if (released > 0) {
+            LOGGER.info(InfoMessages.DATABASE_COMPACTED, released, System.currentTimeMillis() - start);
+        }
+    }
+
+    private boolean isIdle() {
+        long idleMillis = TimeUnit.SECONDS.toMillis(Integer.getInteger("chatsystem.maintenance.idle.seconds", DEFAULT_IDLE_SECONDS));
+        return System.currentTimeMillis() - lastActivityMillis >= idleMillis;
+    }
+
+    /**
+     * Leaves the writer connection to the messages being received between two batches.
+     *
+     * @return False if the thread was interrupted, otherwise true.
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(BATCH_PAUSE_MILLIS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Stops the maintenance, after the batch in progress.
+     */
+    public synchronized void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        stopping = true;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+}
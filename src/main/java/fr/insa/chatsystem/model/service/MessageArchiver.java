@@ -0,0 +1,105 @@
+package fr.insa.chatsystem.model.service;
+
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import fr.insa.chatsystem.model.repository.MessageArchiveRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static fr.insa.chatsystem.Main.self;
+
+/**
+ * The MessageArchiver class moves the old messages of the logged-in user into the archive files in the background.
+ * <p>
+ * Once started, it archives the messages older than "chatsystem.archive.age.days" days every
+ * "chatsystem.archive.interval.minutes" minutes, the first time one minute after it starts. A negative age disables it.
+ * Archived messages stay readable through the MessageService.
+ */
+public class MessageArchiver {
+
+    private static final Logger LOGGER = LogManager.getLogger(MessageArchiver.class);
+    private static final MessageArchiver INSTANCE = new MessageArchiver(new MessageArchiveRepository());
+
+    /**
+     * Default age in days after which messages are archived.
+     */
+    public static final int DEFAULT_AGE_DAYS = 90;
+
+    /**
+     * Default time in minutes between two runs.
+     */
+    public static final int DEFAULT_INTERVAL_MINUTES = 60;
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Returns the singleton instance of MessageArchiver.
+     *
+     * @return The singleton instance of MessageArchiver.
+     */
+    public static MessageArchiver getInstance() {
+        return INSTANCE;
+    }
+
+    private final MessageArchiveRepository messageArchiveRepository;
+    private ScheduledExecutorService executor;
+
+    MessageArchiver(MessageArchiveRepository messageArchiveRepository) {
+        this.messageArchiveRepository = messageArchiveRepository;
+    }
+
+    /**
+     * Starts archiving in the background, unless it is disabled or already started.
+     */
+    public synchronized void start() {
+        if (executor != null || Integer.getInteger("chatsystem.archive.age.days", DEFAULT_AGE_DAYS) < 0) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Integer.getInteger("chatsystem.archive.interval.minutes", DEFAULT_INTERVAL_MINUTES);
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                archive();
+            } catch (RuntimeException e) {
+                LOGGER.error(ErrorMessages.MESSAGE_ARCHIVER_FAILED, e.getMessage());
+            }
+        }, 1, interval, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Archives now the messages older than the configured age.
+     *
+     * @return The number of messages archived, 0 if no user is logged in.
+     */
+    public int archive() {
+        if (self == null || self.getContactId() == null) {
+            return 0;
+        }
+        long age = TimeUnit.DAYS.toMillis(Integer.getInteger("chatsystem.archive.age.days", DEFAULT_AGE_DAYS));
+        return messageArchiveRepository.archiveMessagesBefore(self.getContactId(), System.currentTimeMillis() - age);
+    }
+
+    /**
+     * Stops archiving, letting a run in progress finish.
+     */
+    public synchronized void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+}
@@ -0,0 +1,86 @@
+package fr.insa.chatsystem.model.service;
+
+import fr.insa.chatsystem.model.message.MessageSearchResult;
+import fr.insa.chatsystem.model.repository.MessageSearchRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The MessageSearchService class provides methods to search the chat history,
+ * including operations related to the message search repository.
+ */
+public class MessageSearchService {
+
+    private final MessageSearchRepository messageSearchRepository;
+
+    public MessageSearchService(MessageSearchRepository messageSearchRepository) {
+        this.messageSearchRepository = messageSearchRepository;
+    }
+
+    /**
+     * Searches every conversation for the messages containing the words typed by the user.
+     *
+     * @param text     The words searched, a message matches if it contains all of them, a word ending with '*' is a prefix.
+     * @param pageSize The number of results per page.
+     * @param page     The page of results, starting from 0.
+     * @return The matching messages with their snippets, the most relevant first.
+     */
+    public List<MessageSearchResult> search(String text, int pageSize, int page) {
+        return search(text, null, 0, Long.MAX_VALUE, pageSize, page);
+    }
+
+    /**
+     * Searches the messages containing the words typed by the user, in one conversation and time range.
+     *
+     * @param text       The words searched, a message matches if it contains all of them, a word ending with '*' is a prefix.
+     * @param contactId  The contact_id of the contact whose conversation is searched, or null to search every conversation.
+     * @param fromMillis The start of the time range searched, included, in milliseconds since the epoch.
+     * @param toMillis   The end of the time range searched, excluded, in milliseconds since the epoch.
+     * @param pageSize   The number of results per page.
+     * @param page       The page of results, starting from 0.
+     * @return The matching messages with their snippets, the most relevant first.
+     */
+    public List<MessageSearchResult> search(String text, Integer contactId, long fromMillis, long toMillis, int pageSize, int page) {
+        String matchQuery = toMatchQuery(text);
+        if (matchQuery.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return messageSearchRepository.search(matchQuery, contactId, fromMillis, toMillis, pageSize, page * pageSize);
+    }
+
+    /**
+     * Builds the full-text search index again from every message of the database.
+     */
+    public void rebuildIndex() {
+        messageSearchRepository.rebuildIndex();
+    }
+
+    /**
+     * Turns the words typed by a user into an FTS5 query.
+     * Every word is quoted, so characters such as '-' or ':' are searched instead of being read as operators.
+     * A word ending with '*' is searched as a prefix; prefixes are only used when asked for, because the index
+     * has to gather every word starting with the prefix, which is much slower than finding a whole word.
+     *
+     * @param text The words typed by the user.
+     * @return The FTS5 query, empty if the text has no word.
+     */
+    static String toMatchQuery(String text) {
+        if (text == null || text.isBlank()) {
+            return "";
+        }
+        return Stream.of(text.trim().split("\\s+"))
+                .filter(word -> !word.equals("*"))
+                .map(word -> word.length() > 1 && word.endsWith("*")
+                        ? quote(word.substring(0, word.length() - 1)) + "*"
+                        : quote(word))
+                .collect(Collectors.joining(" "));
+    }
+
+    private static String quote(String word) {
+        return "\"" + word.replace("\"", "\"\"") + "\"";
+    }
+
+}
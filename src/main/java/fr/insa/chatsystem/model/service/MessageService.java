@@ -1,25 +1,63 @@
 package fr.insa.chatsystem.model.service;
 
 import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.message.ConversationSummary;
+import fr.insa.chatsystem.model.message.DeliveryStatus;
 import fr.insa.chatsystem.model.message.Message;
 import fr.insa.chatsystem.model.network.UDPSenderWrapper;
+import fr.insa.chatsystem.model.repository.ConversationSummaryRepository;
+import fr.insa.chatsystem.model.repository.MessageArchiveRepository;
 import fr.insa.chatsystem.model.repository.MessageRepository;
+import fr.insa.chatsystem.model.repository.MessageStore;
 
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 import static fr.insa.chatsystem.Main.self;
 
 /**
  * The MessageService class provides methods for managing messages,
  * including sending chat messages, retrieving message history, and interacting with the message repository.
+ * The messages of the conversations are written to and read from a MessageStore, the message repository itself
+ * unless another store is given; group messages, time ranges and the tables always go through the repository.
+ * The messages moved to the archive files by the MessageArchiver are merged back into the history and its pages.
+ * The latest messages of the open conversations are read from the shared ConversationCache, which follows
+ * every message committed to the stores of the MessageServices.
+ * The list of the conversations, with their last message and unread count, is read from the summaries the database
+ * keeps up to date on every insert, without reading the messages.
+ * The reads used by the user interface also have asynchronous variants, run on the DatabaseExecutor.
  */
 public class MessageService {
 
     private final MessageRepository messageRepository;
+    private final MessageStore messageStore;
+    private final MessageArchiveRepository messageArchiveRepository;
+    private final ConversationCache conversationCache;
+    private final ConversationSummaryRepository conversationSummaryRepository;
 
     public MessageService(MessageRepository messageRepository) {
+        this(messageRepository, messageRepository);
+    }
+
+    public MessageService(MessageRepository messageRepository, MessageStore messageStore) {
+        this(messageRepository, messageStore, new MessageArchiveRepository(), ConversationCache.getInstance(),
+                new ConversationSummaryRepository());
+    }
+
+    MessageService(MessageRepository messageRepository, MessageStore messageStore,
+                   MessageArchiveRepository messageArchiveRepository, ConversationCache conversationCache,
+                   ConversationSummaryRepository conversationSummaryRepository) {
         this.messageRepository = messageRepository;
+        this.messageStore = messageStore;
+        this.messageArchiveRepository = messageArchiveRepository;
+        this.conversationCache = conversationCache;
+        this.conversationSummaryRepository = conversationSummaryRepository;
+        conversationCache.follow(messageRepository);
+        conversationCache.follow(messageStore);
     }
 
     /**
@@ -30,20 +68,231 @@ public class MessageService {
      */
     public void sendChatMessage(Contact receiverContact, String content) {
         Message message = new Message(self, receiverContact, content);
-        messageRepository.insertMessage(message);
+        insertMessage(message);
         UDPSenderWrapper.sendChatMessage(message);
     }
 
+    /**
+     * Sends one chat message to several receiver contacts.
+     * The message is encoded once and fanned out to the address of every connected receiver,
+     * then stored once in the database together with the delivery status for each receiver.
+     *
+     * @param receiverContacts The Contact objects representing the message receivers, with their addresses if connected.
+     * @param content          The content of the chat message.
+     * @return The delivery status of the message for each receiver.
+     */
+    public Map<Contact, DeliveryStatus> sendGroupChatMessage(List<Contact> receiverContacts, String content) {
+        Message message = new Message(self, null, content);
+        Map<Contact, DeliveryStatus> outcomes = UDPSenderWrapper.sendGroupChatMessage(message, receiverContacts);
+        messageRepository.insertGroupMessage(message, outcomes);
+        return outcomes;
+    }
+
     /**
      * Retrieves the message history between the logged-in user and a specified contact.
      *
+     * The archived messages and the messages of the store are both read in message_id order, and merged.
+     *
      * @param contactId The contact_id of the other participant in the conversation.
-     * @return A List of Message objects representing the conversation history.
+     * @return A List of Message objects representing the conversation history, ordered from the oldest to the newest.
      */
     public List<Message> getMessageHistory(Integer contactId) {
-        List<Message> conversationHistory = messageRepository.getConversationHistory(self.getContactId(), contactId);
-        conversationHistory.sort(Comparator.comparing(Message::getMessageId));
-        return conversationHistory;
+        List<Message> archivedMessages = messageArchiveRepository.getArchivedMessages(self.getContactId(), contactId,
+                0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        List<Message> messages = messageStore.getConversationHistory(self.getContactId(), contactId);
+        return archivedMessages.isEmpty() ? messages : merge(archivedMessages, messages);
+    }
+
+    /**
+     * Retrieves the message history on the database thread, see {@link #getMessageHistory(Integer)}.
+     *
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @return A future completed with the messages, on the database thread.
+     */
+    public CompletableFuture<List<Message>> getMessageHistoryAsync(Integer contactId) {
+        return DatabaseExecutor.getInstance().supply(() -> getMessageHistory(contactId));
+    }
+
+    /**
+     * Streams the whole message history between the logged-in user and a specified contact, without holding it
+     * in memory: the archived messages are read one block at a time, then the messages of the store row by row.
+     * The stream must be consumed by the calling thread and closed.
+     *
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @return A stream of the messages, ordered from the oldest to the newest.
+     */
+    public Stream<Message> streamMessageHistory(Integer contactId) {
+        return Stream.concat(messageArchiveRepository.streamArchivedMessages(self.getContactId(), contactId),
+                messageStore.streamConversationHistory(self.getContactId(), contactId));
+    }
+
+    /**
+     * Retrieves the messages exchanged between the logged-in user and a specified contact in a time range.
+     *
+     * @param contactId  The contact_id of the other participant in the conversation.
+     * @param fromMillis The start of the range, included, in milliseconds since the epoch.
+     * @param toMillis   The end of the range, excluded, in milliseconds since the epoch.
+     * @return The messages of the range, ordered by timestamp.
+     */
+    public List<Message> getMessagesBetween(Integer contactId, long fromMillis, long toMillis) {
+        return messageRepository.getMessagesBetween(self.getContactId(), contactId, fromMillis, toMillis);
+    }
+
+    /**
+     * Retrieves every message sent or received since a given time, whatever the conversation.
+     *
+     * @param sinceMillis The start of the range, included, in milliseconds since the epoch.
+     * @return The messages sent or received since sinceMillis, ordered by timestamp.
+     */
+    public List<Message> getMessagesSince(long sinceMillis) {
+        return messageRepository.getMessagesSince(sinceMillis);
+    }
+
+    /**
+     * Retrieves the latest messages exchanged between the logged-in user and a specified contact.
+     * The messages come from the ConversationCache when the conversation is cached and no more messages are asked
+     * for than it keeps; otherwise a page as large as the cache is read from the database and cached.
+     *
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @param limit     The maximum number of messages.
+     * @return The latest messages, ordered from the oldest to the newest.
+     */
+    public List<Message> getLatestMessages(Integer contactId, int limit) {
+        Optional<List<Message>> cachedMessages = conversationCache.getLatestMessages(contactId, limit);
+        if (cachedMessages.isPresent()) {
+            return cachedMessages.get();
+        }
+        if (limit > conversationCache.getSize()) {
+            return withArchivedMessages(messageStore.getLatestMessages(self.getContactId(), contactId, limit),
+                    contactId, Integer.MAX_VALUE, limit);
+        }
+
+        long stamp = conversationCache.stamp();
+        List<Message> messages = withArchivedMessages(messageStore.getLatestMessages(self.getContactId(), contactId, conversationCache.getSize()),
+                contactId, Integer.MAX_VALUE, conversationCache.getSize());
+        conversationCache.put(contactId, messages, stamp);
+        return messages.size() > limit ? messages.subList(messages.size() - limit, messages.size()) : messages;
+    }
+
+    /**
+     * Retrieves the latest messages on the database thread, see {@link #getLatestMessages(Integer, int)}.
+     *
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @param limit     The maximum number of messages.
+     * @return A future completed with the messages, on the database thread.
+     */
+    public CompletableFuture<List<Message>> getLatestMessagesAsync(Integer contactId, int limit) {
+        return DatabaseExecutor.getInstance().supply(() -> getLatestMessages(contactId, limit));
+    }
+
+    /**
+     * Retrieves the messages exchanged between the logged-in user and a specified contact before a given message,
+     * to page backwards through the history.
+     *
+     * @param contactId       The contact_id of the other participant in the conversation.
+     * @param beforeMessageId The message_id of the oldest message already retrieved.
+     * @param limit           The maximum number of messages.
+     * @return The messages preceding beforeMessageId, ordered from the oldest to the newest.
+     */
+    public List<Message> getMessagesBefore(Integer contactId, int beforeMessageId, int limit) {
+        return withArchivedMessages(messageStore.getMessagesBefore(self.getContactId(), contactId, beforeMessageId, limit),
+                contactId, beforeMessageId, limit);
+    }
+
+    /**
+     * Retrieves the messages before a given message on the database thread, see
+     * {@link #getMessagesBefore(Integer, int, int)}.
+     *
+     * @param contactId       The contact_id of the other participant in the conversation.
+     * @param beforeMessageId The message_id of the oldest message already retrieved.
+     * @param limit           The maximum number of messages.
+     * @return A future completed with the messages, on the database thread.
+     */
+    public CompletableFuture<List<Message>> getMessagesBeforeAsync(Integer contactId, int beforeMessageId, int limit) {
+        return DatabaseExecutor.getInstance().supply(() -> getMessagesBefore(contactId, beforeMessageId, limit));
+    }
+
+    /**
+     * Completes a page of messages read from the store with the archived messages that belong to it.
+     * Once the page is full, only the archived messages newer than its oldest message are looked for, which is
+     * a lookup of the index of the archive finding no block until the user scrolls back to the archived history.
+     */
+    private List<Message> withArchivedMessages(List<Message> messages, Integer contactId, int beforeMessageId, int limit) {
+        int fromMessageId = messages.size() >= limit ? messages.get(0).getMessageId() : 0;
+        List<Message> archivedMessages = messageArchiveRepository.getArchivedMessages(self.getContactId(), contactId,
+                fromMessageId, beforeMessageId, limit);
+        if (archivedMessages.isEmpty()) {
+            return messages;
+        }
+        List<Message> page = merge(archivedMessages, messages);
+        return page.size() > limit ? new ArrayList<>(page.subList(page.size() - limit, page.size())) : page;
+    }
+
+    /**
+     * Merges two lists of messages ordered by message_id into one, in a single pass.
+     */
+    private static List<Message> merge(List<Message> first, List<Message> second) {
+        List<Message> merged = new ArrayList<>(first.size() + second.size());
+        int i = 0;
+        int j = 0;
+        while (i < first.size() && j < second.size()) {
+            if (first.get(i).getMessageId() <= second.get(j).getMessageId()) {
+                merged.add(first.get(i++));
+            } else {
+                merged.add(second.get(j++));
+            }
+        }
+        merged.addAll(first.subList(i, first.size()));
+        merged.addAll(second.subList(j, second.size()));
+        return merged;
+    }
+
+    /**
+     * Retrieves the summaries of every direct conversation of the logged-in user, in a single query.
+     *
+     * @return The summaries, the conversation with the latest message first.
+     */
+    public List<ConversationSummary> getConversationSummaries() {
+        return conversationSummaryRepository.getConversationSummaries();
+    }
+
+    /**
+     * Retrieves the summaries of the conversations on the database thread, see {@link #getConversationSummaries()}.
+     *
+     * @return A future completed with the summaries, on the database thread.
+     */
+    public CompletableFuture<List<ConversationSummary>> getConversationSummariesAsync() {
+        return DatabaseExecutor.getInstance().supply(this::getConversationSummaries);
+    }
+
+    /**
+     * Retrieves the summary of the conversation between the logged-in user and a specified contact.
+     *
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @return An Optional containing the summary, or empty if the conversation has no messages.
+     */
+    public Optional<ConversationSummary> getConversationSummary(Integer contactId) {
+        return conversationSummaryRepository.getConversationSummary(contactId);
+    }
+
+    /**
+     * Marks every message received from a specified contact as read.
+     *
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @return The number of messages that were unread.
+     */
+    public int markConversationRead(Integer contactId) {
+        return conversationSummaryRepository.markConversationRead(contactId);
+    }
+
+    /**
+     * Marks the messages of a conversation as read on the database thread, see {@link #markConversationRead(Integer)}.
+     *
+     * @param contactId The contact_id of the other participant in the conversation.
+     * @return A future completed with the number of messages that were unread, on the database thread.
+     */
+    public CompletableFuture<Integer> markConversationReadAsync(Integer contactId) {
+        return DatabaseExecutor.getInstance().supply(() -> markConversationRead(contactId));
     }
 
     /**
@@ -63,12 +312,29 @@ public class MessageService {
     }
 
     /**
-     * Inserts a new message into the 'messages' table.
+     * Creates the 'message_recipients' table in the database for storing the receivers of group messages.
+     */
+    public void createMessageRecipientsTable() {
+        messageRepository.createMessageRecipientsTable();
+    }
+
+    /**
+     * Checks if the 'message_recipients' table exists in the database.
+     *
+     * @return True if the 'message_recipients' table exists, otherwise false.
+     */
+    public boolean tableMessageRecipientsExists() {
+        return messageRepository.tableExistsByTableName("message_recipients");
+    }
+
+    /**
+     * Inserts a new message into the message store. The ConversationCache appends it to its conversation once the
+     * store has committed it, in the order of the store.
      *
      * @param message The Message object to be inserted.
      */
     public void insertMessage(Message message) {
-        messageRepository.insertMessage(message);
+        messageStore.insertMessage(message);
     }
 
 }
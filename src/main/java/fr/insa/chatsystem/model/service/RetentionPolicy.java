@@ -0,0 +1,39 @@
+package fr.insa.chatsystem.model.service;
+
+/**
+ * The RetentionPolicy record holds the rules deciding which messages the MaintenanceScheduler deletes.
+ * A negative value disables a rule; every rule is disabled by default, so messages are kept forever.
+ *
+ * @param maxAgeDays            Messages older than this number of days are deleted, archived ones included.
+ * @param maxMessagesPerContact The oldest messages of a direct conversation are deleted beyond this number.
+ * @param maxDatabaseBytes      The oldest messages are deleted while the database uses more bytes than this.
+ */
+public record RetentionPolicy(int maxAgeDays, int maxMessagesPerContact, long maxDatabaseBytes) {
+
+    /**
+     * Policy keeping every message.
+     */
+    public static final RetentionPolicy KEEP_ALL = new RetentionPolicy(-1, -1, -1);
+
+    /**
+     * Returns the policy set by the "chatsystem.retention.age.days", "chatsystem.retention.messages.per.contact" and
+     * "chatsystem.retention.database.bytes" system properties.
+     *
+     * @return The configured policy, KEEP_ALL if no property is set.
+     */
+    public static RetentionPolicy fromSystemProperties() {
+        return new RetentionPolicy(Integer.getInteger("chatsystem.retention.age.days", -1),
+                Integer.getInteger("chatsystem.retention.messages.per.contact", -1),
+                Long.getLong("chatsystem.retention.database.bytes", -1));
+    }
+
+    /**
+     * Checks whether the policy deletes messages at all.
+     *
+     * @return True if at least one rule is enabled, otherwise false.
+     */
+    public boolean isEnabled() {
+        return maxAgeDays >= 0 || maxMessagesPerContact >= 0 || maxDatabaseBytes >= 0;
+    }
+
+}
@@ -0,0 +1,132 @@
+package fr.insa.chatsystem.model.transfer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents a file transfer between the logged-in user and a contact, as seen by the observers of the
+ * FileTransferManager.
+ */
+public class FileTransfer {
+
+    /**
+     * Enum representing the direction of a file transfer.
+     */
+    public enum Direction {
+        INCOMING, OUTGOING
+    }
+
+    private final long transferId;
+    private final Direction direction;
+    private final String contactUsername;
+    private final String fileName;
+    private final long fileSize;
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private volatile int reportedPercent = -1;
+
+    /**
+     * Constructs a FileTransfer object with specified parameters.
+     *
+     * @param transferId      the identifier of the transfer, chosen by the sender
+     * @param direction       the direction of the transfer
+     * @param contactUsername the username of the other participant of the transfer
+     * @param fileName        the name of the transferred file
+     * @param fileSize        the size of the transferred file in bytes
+     */
+    public FileTransfer(long transferId, Direction direction, String contactUsername, String fileName, long fileSize) {
+        this.transferId = transferId;
+        this.direction = direction;
+        this.contactUsername = contactUsername;
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * Gets the identifier of the transfer.
+     *
+     * @return the identifier of the transfer
+     */
+    public long getTransferId() {
+        return transferId;
+    }
+
+    /**
+     * Gets the direction of the transfer.
+     *
+     * @return the direction of the transfer
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * Gets the username of the other participant of the transfer.
+     *
+     * @return the username of the contact
+     */
+    public String getContactUsername() {
+        return contactUsername;
+    }
+
+    /**
+     * Gets the name of the transferred file.
+     *
+     * @return the name of the file
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Gets the size of the transferred file.
+     *
+     * @return the size of the file in bytes
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Gets the number of bytes already transferred and acknowledged.
+     *
+     * @return the number of transferred bytes
+     */
+    public long getTransferredBytes() {
+        return transferredBytes.get();
+    }
+
+    /**
+     * Gets the progress of the transfer, as a percentage.
+     *
+     * @return the progress of the transfer, between 0 and 100
+     */
+    public int getPercent() {
+        return fileSize == 0 ? 100 : (int) (getTransferredBytes() * 100 / fileSize);
+    }
+
+    /**
+     * Adds transferred bytes to the transfer.
+     *
+     * @param bytes the number of newly transferred bytes
+     * @return true if the progress percentage changed since the last report, false otherwise
+     */
+    boolean addTransferredBytes(long bytes) {
+        transferredBytes.addAndGet(bytes);
+        int percent = getPercent();
+        if (percent != reportedPercent) {
+            reportedPercent = percent;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a string representation of the FileTransfer.
+     *
+     * @return a string representation of the FileTransfer
+     */
+    @Override
+    public String toString() {
+        return direction.name() + " " + fileName + " " + contactUsername + " " + getPercent() + "%";
+    }
+
+}
@@ -0,0 +1,425 @@
+package fr.insa.chatsystem.model.transfer;
+
+import fr.insa.chatsystem.Main;
+import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.contact.ContactList;
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import fr.insa.chatsystem.model.logger.message.InfoMessages;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static fr.insa.chatsystem.Main.self;
+
+/**
+ * The FileTransferManager class sends files to contacts and receives the files they send.
+ * <p>
+ * File transfers use their own binary protocol (see FileTransferPacket) on the FILE_TRANSFER_PORT, next to the
+ * JSON chat messages. Every outgoing transfer runs on its own thread with its own channel, and a single receiver thread
+ * handles every incoming transfer. Incoming offers are accepted automatically and the files are saved in the
+ * "downloads-[ip]" directory, as long as they come from a connected contact, at its address, and the file is not
+ * larger than "chatsystem.transfer.max.bytes" bytes.
+ * <p>
+ * Observers are notified of the progress of every transfer, from the transfer threads.
+ */
+public class FileTransferManager {
+
+    private static final Logger LOGGER = LogManager.getLogger(FileTransferManager.class);
+    private static final FileTransferManager INSTANCE = new FileTransferManager(ContactList.getInstance());
+
+    /**
+     * Default size of a chunk in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    /**
+     * Default maximum number of unacknowledged chunks of an outgoing transfer.
+     */
+    public static final int DEFAULT_WINDOW = 64;
+
+    /**
+     * Default size in bytes of the largest file accepted.
+     */
+    public static final long DEFAULT_MAX_FILE_SIZE = 1L << 30;
+
+    /**
+     * The largest number of chunks whose resume bitmap fits in one ACCEPT packet.
+     */
+    private static final int MAX_CHUNKS = (FileTransferPacket.MAX_PACKET_SIZE - FileTransferPacket.HEADER_SIZE) * 8;
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final long INCOMING_IDLE_TIMEOUT_NANOS = 30_000_000_000L;
+    private static final long SELECT_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Returns the singleton instance of FileTransferManager.
+     *
+     * @return The singleton instance of FileTransferManager.
+     */
+    public static FileTransferManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Interface for classes that want to observe the progress of file transfers.
+     */
+    public interface Observer {
+        /**
+         * Called when the progress percentage of a transfer changes.
+         */
+        void transferProgressed(FileTransfer transfer);
+
+        /**
+         * Called when every chunk of a transfer has been received.
+         */
+        void transferCompleted(FileTransfer transfer);
+
+        /**
+         * Called when a transfer is abandoned.
+         */
+        void transferFailed(FileTransfer transfer, String reason);
+    }
+
+    private final ContactList contactList;
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
+    private final Map<Long, OutgoingTransfer> outgoingTransfers = new ConcurrentHashMap<>();
+    private final Map<Long, IncomingTransfer> incomingTransfers = new HashMap<>();   // receiver thread only
+
+    private DatagramChannel channel;
+    private Selector selector;
+    private Thread receiver;
+    private ExecutorService senders;
+    private Path downloadDirectory;
+    private volatile boolean running;
+
+    FileTransferManager(ContactList contactList) {
+        this.contactList = contactList;
+    }
+
+    /**
+     * Adds an observer to the list of observers.
+     *
+     * @param observer The observer to be added.
+     */
+    public void addObserver(Observer observer) {
+        this.observers.add(observer);
+    }
+
+    /**
+     * Binds the file transfer port and starts receiving files.
+     *
+     * @param port The port on which files are received.
+     * @throws IOException If the port can not be bound.
+     */
+    public synchronized void start(int port) throws IOException {
+        if (running) {
+            return;
+        }
+        channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+        channel.bind(new InetSocketAddress(port));
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+
+        downloadDirectory = Paths.get("downloads-" + self.getAddress().getHostAddress());
+        senders = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "file-transfer-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        running = true;
+        receiver = new Thread(this::receive, "file-transfer-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Cancels the outgoing transfers, suspends the incoming ones so they can be resumed, and releases the port.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        outgoingTransfers.values().forEach(OutgoingTransfer::cancel);
+        senders.shutdown();
+        try {
+            receiver.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts sending a file to a connected contact.
+     *
+     * @param file     The file to be sent.
+     * @param receiver The receiver of the file, with its address.
+     * @return The transfer, whose progress is reported to the observers.
+     * @throws IOException If the file can not be read or is too large, or if the file transfers are not started.
+     */
+    public FileTransfer sendFile(Path file, Contact receiver) throws IOException {
+        if (!running) {
+            throw new IOException(ErrorMessages.FILE_TRANSFER_NOT_STARTED);
+        }
+        long fileSize = Files.size(file);
+        int chunkSize = Integer.getInteger("chatsystem.transfer.chunk", DEFAULT_CHUNK_SIZE);
+        if ((fileSize + chunkSize - 1) / chunkSize > MAX_CHUNKS) {
+            throw new IOException(String.format(ErrorMessages.FILE_TOO_LARGE, file));
+        }
+
+        InetSocketAddress peer = new InetSocketAddress(receiver.getAddress(), Main.FILE_TRANSFER_PORT);
+        OutgoingTransfer outgoingTransfer = new OutgoingTransfer(this, file, fileSize, peer, self.getUsername(),
+                receiver.getUsername(), chunkSize, Integer.getInteger("chatsystem.transfer.window", DEFAULT_WINDOW));
+        outgoingTransfers.put(outgoingTransfer.getTransfer().getTransferId(), outgoingTransfer);
+        senders.execute(outgoingTransfer);
+        return outgoingTransfer.getTransfer();
+    }
+
+    /**
+     * Receives the packets of every incoming transfer until the manager is stopped.
+     */
+    private void receive() {
+        ByteBuffer packet = ByteBuffer.allocateDirect(FileTransferPacket.MAX_PACKET_SIZE);
+        ByteBuffer ack = ByteBuffer.allocateDirect(FileTransferPacket.HEADER_SIZE + 4);
+        try {
+            while (running) {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                selector.selectedKeys().clear();
+
+                SocketAddress source;
+                while ((source = channel.receive(packet)) != null) {
+                    packet.flip();
+                    if (packet.remaining() >= FileTransferPacket.HEADER_SIZE) {
+                        handlePacket((InetSocketAddress) source, packet, ack);
+                    }
+                    packet.clear();
+                }
+
+                expireIdleTransfers();
+            }
+        } catch (IOException e) {
+            LOGGER.error(ErrorMessages.FILE_TRANSFER_ERROR + e.getMessage());
+        } finally {
+            for (IncomingTransfer incomingTransfer : incomingTransfers.values()) {
+                suspend(incomingTransfer, ErrorMessages.FILE_TRANSFER_CANCELLED);
+            }
+            incomingTransfers.clear();
+            try {
+                selector.close();
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.error(ErrorMessages.FILE_TRANSFER_ERROR + e.getMessage());
+            }
+        }
+    }
+
+    private void handlePacket(InetSocketAddress source, ByteBuffer packet, ByteBuffer ack) throws IOException {
+        byte type = packet.get();
+        long transferId = packet.getLong();
+        IncomingTransfer incomingTransfer = incomingTransfers.get(transferId);
+        if (incomingTransfer != null && !incomingTransfer.getPeer().equals(source)) {
+            return;   // only the sender of the offer takes part in its transfer
+        }
+
+        switch (type) {
+            case FileTransferPacket.OFFER -> {
+                if (incomingTransfer == null) {
+                    incomingTransfer = accept(source, transferId, packet);
+                    if (incomingTransfer == null) {
+                        channel.send(FileTransferPacket.control(FileTransferPacket.CANCEL, transferId), source);
+                        return;
+                    }
+                }
+                channel.send(FileTransferPacket.accept(transferId, incomingTransfer.getReceivedChunks()), source);
+                if (incomingTransfer.isComplete()) {
+                    complete(incomingTransfer);
+                }
+            }
+            case FileTransferPacket.DATA -> {
+                if (incomingTransfer == null || packet.remaining() < 8) {
+                    return;
+                }
+                int chunkIndex = packet.getInt();
+                int checksum = packet.getInt();
+                long written = incomingTransfer.writeChunk(chunkIndex, checksum, packet);
+                if (written < 0) {
+                    return;   // corrupted chunk, the sender retransmits it after its timeout
+                }
+                FileTransferPacket.putAck(ack, transferId, chunkIndex);
+                channel.send(ack, source);
+                if (written > 0 && incomingTransfer.getTransfer().addTransferredBytes(written)) {
+                    notifyProgressed(incomingTransfer.getTransfer());
+                }
+                if (incomingTransfer.isComplete()) {
+                    complete(incomingTransfer);
+                }
+            }
+            case FileTransferPacket.CANCEL -> {
+                if (incomingTransfer != null) {
+                    incomingTransfers.remove(transferId);
+                    suspend(incomingTransfer, ErrorMessages.FILE_TRANSFER_CANCELLED);
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Creates the incoming transfer described by an offer.
+     *
+     * @return The incoming transfer, or null if the offer is invalid.
+     */
+    private IncomingTransfer accept(InetSocketAddress source, long transferId, ByteBuffer offer) {
+        if (offer.remaining() < 4 + 8 + 2) {
+            return null;
+        }
+        int chunkSize = offer.getInt();
+        long fileSize = offer.getLong();
+        String fileName;
+        String senderUsername;
+        try {
+            fileName = FileTransferPacket.getString(offer);
+            senderUsername = FileTransferPacket.getString(offer);
+        } catch (RuntimeException e) {
+            return null;   // truncated offer
+        }
+
+        String name = checkOffer(source.getAddress(), senderUsername, fileName, chunkSize, fileSize);
+        if (name == null) {
+            return null;
+        }
+
+        FileTransfer transfer = new FileTransfer(transferId, FileTransfer.Direction.INCOMING, senderUsername, name, fileSize);
+        try {
+            IncomingTransfer incomingTransfer = new IncomingTransfer(transfer, source, chunkSize, downloadDirectory);
+            incomingTransfers.put(transferId, incomingTransfer);
+            notifyProgressed(transfer);
+            return incomingTransfer;
+        } catch (IOException e) {
+            LOGGER.error(ErrorMessages.FILE_TRANSFER_ERROR + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Checks an offer: the sender must be a connected contact offering from its own address, the file name must name
+     * a file of the download directory and the file must fit in the chunks and under the size limit.
+     *
+     * @param sourceAddress  The address the offer comes from.
+     * @param senderUsername The username of the sender, as offered.
+     * @param fileName       The name of the file, as offered.
+     * @param chunkSize      The size of a chunk in bytes, as offered.
+     * @param fileSize       The size of the file in bytes, as offered.
+     * @return The name under which the file is saved, or null if the offer is refused.
+     */
+    String checkOffer(InetAddress sourceAddress, String senderUsername, String fileName, int chunkSize, long fileSize) {
+        String reason = null;
+        String name = IncomingTransfer.safeFileName(fileName);
+        Contact sender = contactList.getContactByUsernameIfExists(senderUsername);
+        if (sender == null || sender.getAddress() == null || !sender.getAddress().equals(sourceAddress)) {
+            reason = ErrorMessages.FILE_OFFER_UNKNOWN_SENDER;
+        } else if (name == null) {
+            reason = ErrorMessages.FILE_OFFER_INVALID_NAME;
+        } else if (chunkSize <= 0 || chunkSize > FileTransferPacket.MAX_PACKET_SIZE - FileTransferPacket.DATA_HEADER_SIZE
+                || fileSize < 0 || fileSize > Long.getLong("chatsystem.transfer.max.bytes", DEFAULT_MAX_FILE_SIZE)
+                || (fileSize + chunkSize - 1) / chunkSize > MAX_CHUNKS) {
+            reason = ErrorMessages.FILE_OFFER_INVALID_SIZE;
+        }
+        if (reason != null) {
+            LOGGER.error(ErrorMessages.FILE_OFFER_REJECTED, fileName, sourceAddress, reason);
+            return null;
+        }
+        return name;
+    }
+
+    private void complete(IncomingTransfer incomingTransfer) throws IOException {
+        FileTransfer transfer = incomingTransfer.getTransfer();
+        incomingTransfers.remove(transfer.getTransferId());
+        incomingTransfer.complete();
+        channel.send(FileTransferPacket.control(FileTransferPacket.COMPLETE, transfer.getTransferId()), incomingTransfer.getPeer());
+        transferCompleted(transfer);
+    }
+
+    private void expireIdleTransfers() {
+        long now = System.nanoTime();
+        Iterator<IncomingTransfer> iterator = incomingTransfers.values().iterator();
+        while (iterator.hasNext()) {
+            IncomingTransfer incomingTransfer = iterator.next();
+            if (now - incomingTransfer.getLastActivityNanos() > INCOMING_IDLE_TIMEOUT_NANOS) {
+                iterator.remove();
+                suspend(incomingTransfer, ErrorMessages.FILE_TRANSFER_TIMEOUT);
+            }
+        }
+    }
+
+    private void suspend(IncomingTransfer incomingTransfer, String reason) {
+        try {
+            incomingTransfer.suspend();
+        } catch (IOException e) {
+            LOGGER.error(ErrorMessages.FILE_TRANSFER_ERROR + e.getMessage());
+        }
+        transferFailed(incomingTransfer.getTransfer(), reason);
+    }
+
+    /**
+     * Called by the transfers when new bytes have been transferred.
+     */
+    void transferProgressed(FileTransfer transfer, long bytes) {
+        if (transfer.addTransferredBytes(bytes)) {
+            notifyProgressed(transfer);
+        }
+    }
+
+    /**
+     * Called by the transfers when every chunk has been transferred.
+     */
+    void transferCompleted(FileTransfer transfer) {
+        outgoingTransfers.remove(transfer.getTransferId());
+        LOGGER.info(InfoMessages.FILE_TRANSFER_COMPLETED, transfer);
+        for (Observer observer : observers) {
+            observer.transferCompleted(transfer);
+        }
+    }
+
+    /**
+     * Called by the transfers when they are abandoned.
+     */
+    void transferFailed(FileTransfer transfer, String reason) {
+        outgoingTransfers.remove(transfer.getTransferId());
+        LOGGER.error(ErrorMessages.FILE_TRANSFER_FAILED, transfer, reason);
+        for (Observer observer : observers) {
+            observer.transferFailed(transfer, reason);
+        }
+    }
+
+    private void notifyProgressed(FileTransfer transfer) {
+        for (Observer observer : observers) {
+            observer.transferProgressed(transfer);
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package fr.insa.chatsystem.model.transfer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * The FileTransferPacket class defines the binary packets of the file transfer protocol.
+ * Every packet starts with a one byte type and the 8 byte identifier of the transfer.
+ * <ul>
+ *     <li>OFFER (sender to receiver): chunk size, file size, file name and sender username.</li>
+ *     <li>ACCEPT (receiver to sender): bitmap of the chunks the receiver already has, used to resume a transfer.</li>
+ *     <li>DATA (sender to receiver): chunk index, CRC32 of the payload, payload.</li>
+ *     <li>ACK (receiver to sender): index of a chunk written to disk.</li>
+ *     <li>COMPLETE (receiver to sender): every chunk has been received.</li>
+ *     <li>CANCEL (both ways): the transfer is abandoned.</li>
+ * </ul>
+ */
+class FileTransferPacket {
+
+    static final byte OFFER = 1;
+    static final byte ACCEPT = 2;
+    static final byte DATA = 3;
+    static final byte ACK = 4;
+    static final byte COMPLETE = 5;
+    static final byte CANCEL = 6;
+
+    /**
+     * Size of the header shared by every packet: type and transfer identifier.
+     */
+    static final int HEADER_SIZE = 1 + 8;
+
+    /**
+     * Size of the header of a DATA packet: common header, chunk index and CRC32.
+     */
+    static final int DATA_HEADER_SIZE = HEADER_SIZE + 4 + 4;
+
+    /**
+     * Largest payload of a UDP datagram over IPv4.
+     */
+    static final int MAX_PACKET_SIZE = 65507;
+
+    private FileTransferPacket() {
+    }
+
+    static ByteBuffer offer(long transferId, int chunkSize, long fileSize, String fileName, String senderUsername) {
+        byte[] name = fileName.getBytes(StandardCharsets.UTF_8);
+        byte[] username = senderUsername.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer packet = ByteBuffer.allocate(HEADER_SIZE + 4 + 8 + 2 + name.length + 2 + username.length);
+        packet.put(OFFER).putLong(transferId).putInt(chunkSize).putLong(fileSize);
+        packet.putShort((short) name.length).put(name);
+        packet.putShort((short) username.length).put(username);
+        return packet.flip();
+    }
+
+    static ByteBuffer accept(long transferId, BitSet receivedChunks) {
+        byte[] bitmap = receivedChunks.toByteArray();
+        ByteBuffer packet = ByteBuffer.allocate(HEADER_SIZE + bitmap.length);
+        packet.put(ACCEPT).putLong(transferId).put(bitmap);
+        return packet.flip();
+    }
+
+    static ByteBuffer control(byte type, long transferId) {
+        ByteBuffer packet = ByteBuffer.allocate(HEADER_SIZE);
+        packet.put(type).putLong(transferId);
+        return packet.flip();
+    }
+
+    /**
+     * Fills a reusable buffer with the header of a DATA packet.
+     */
+    static void putDataHeader(ByteBuffer header, long transferId, int chunkIndex, int crc) {
+        header.clear();
+        header.put(DATA).putLong(transferId).putInt(chunkIndex).putInt(crc);
+        header.flip();
+    }
+
+    /**
+     * Fills a reusable buffer with an ACK packet.
+     */
+    static void putAck(ByteBuffer ack, long transferId, int chunkIndex) {
+        ack.clear();
+        ack.put(ACK).putLong(transferId).putInt(chunkIndex);
+        ack.flip();
+    }
+
+    static String getString(ByteBuffer packet) {
+        byte[] bytes = new byte[packet.getShort()];
+        packet.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static BitSet getBitmap(ByteBuffer packet) {
+        return BitSet.valueOf(packet);
+    }
+
+}
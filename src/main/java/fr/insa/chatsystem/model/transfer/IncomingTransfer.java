@@ -0,0 +1,249 @@
+package fr.insa.chatsystem.model.transfer;
+
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+
+/**
+ * The IncomingTransfer class receives a file from a contact.
+ * <p>
+ * The file is preallocated to its final size under a ".part" name, and every chunk is written at its offset through
+ * the FileChannel. The chunks received so far are recorded in a resume bitmap stored next to the file, so that when
+ * the same file is offered again after an interruption, only the missing chunks are requested.
+ * <p>
+ * The names come from the network: every file is created directly in the download directory, never through a
+ * symbolic link, and a received file never replaces an existing one but is saved under a numbered name instead.
+ */
+class IncomingTransfer {
+
+    private static final int CHUNKS_BETWEEN_BITMAP_SAVES = 256;
+
+    /**
+     * Maximum number of numbered names tried for a received file whose name is taken.
+     */
+    private static final int MAX_COPIES = 1000;
+
+    private final FileTransfer transfer;
+    private final InetSocketAddress peer;
+    private final int chunkSize;
+    private final int chunkCount;
+    private final Path partFile;
+    private final Path bitmapFile;
+    private final Path targetFile;
+    private final BitSet receivedChunks;
+    private final RandomAccessFile file;
+    private final FileChannel fileChannel;
+    private final CRC32 crc = new CRC32();
+    private int receivedCount;
+    private int unsavedChunks;
+    private long lastActivityNanos = System.nanoTime();
+
+    /**
+     * Opens the ".part" file of a transfer, preallocates it and loads its resume bitmap if it belongs to an
+     * interrupted transfer of the same file.
+     *
+     * @param transfer          The transfer, as seen by the observers.
+     * @param peer              The address of the sender channel.
+     * @param chunkSize         The size of a chunk in bytes.
+     * @param downloadDirectory The directory in which the file is saved.
+     * @throws IOException If the file can not be created, would be outside the download directory or does not fit
+     *                     on the disk.
+     */
+    IncomingTransfer(FileTransfer transfer, InetSocketAddress peer, int chunkSize, Path downloadDirectory) throws IOException {
+        this.transfer = transfer;
+        this.peer = peer;
+        this.chunkSize = chunkSize;
+        this.chunkCount = (int) ((transfer.getFileSize() + chunkSize - 1) / chunkSize);
+
+        Path directory = downloadDirectory.toAbsolutePath().normalize();
+        Files.createDirectories(directory);
+        // The username may hold any character, only those that are safe in a file name are kept
+        String baseName = transfer.getContactUsername().replaceAll("[^\\p{L}\\p{N}._-]", "_") + "-" + transfer.getFileName();
+        this.partFile = resolveInside(directory, baseName + ".part");
+        this.bitmapFile = resolveInside(directory, baseName + ".part.bitmap");
+        this.targetFile = resolveInside(directory, transfer.getFileName());
+
+        long allocated = Files.exists(partFile) ? Files.size(partFile) : 0;
+        if (transfer.getFileSize() - allocated > Files.getFileStore(directory).getUsableSpace()) {
+            throw new IOException(String.format(ErrorMessages.FILE_NO_SPACE, targetFile));
+        }
+
+        BitSet resumed = new BitSet();
+        if (Files.exists(partFile) && Files.exists(bitmapFile) && Files.size(partFile) == transfer.getFileSize()) {
+            resumed = BitSet.valueOf(Files.readAllBytes(bitmapFile));
+            resumed.clear(chunkCount, Math.max(chunkCount, resumed.length()));
+        }
+        this.receivedChunks = resumed;
+        this.receivedCount = resumed.cardinality();
+
+        this.file = new RandomAccessFile(partFile.toFile(), "rw");
+        this.file.setLength(transfer.getFileSize());
+        this.fileChannel = file.getChannel();
+
+        long alreadyReceived = (long) receivedCount * chunkSize;
+        if (chunkCount > 0 && receivedChunks.get(chunkCount - 1)) {
+            alreadyReceived -= (long) chunkCount * chunkSize - transfer.getFileSize();
+        }
+        transfer.addTransferredBytes(Math.max(0, alreadyReceived));
+    }
+
+    FileTransfer getTransfer() {
+        return transfer;
+    }
+
+    InetSocketAddress getPeer() {
+        return peer;
+    }
+
+    BitSet getReceivedChunks() {
+        return receivedChunks;
+    }
+
+    boolean isComplete() {
+        return receivedCount == chunkCount;
+    }
+
+    long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    /**
+     * Checks and writes a chunk at its offset in the file.
+     *
+     * @param chunkIndex The index of the chunk.
+     * @param checksum   The CRC32 of the chunk computed by the sender.
+     * @param payload    The content of the chunk.
+     * @return The number of new bytes written, 0 if the chunk was already received, or -1 if the chunk is invalid
+     * and should not be acknowledged.
+     * @throws IOException If the chunk can not be written.
+     */
+    long writeChunk(int chunkIndex, int checksum, ByteBuffer payload) throws IOException {
+        if (chunkIndex < 0 || chunkIndex >= chunkCount) {
+            return -1;
+        }
+        lastActivityNanos = System.nanoTime();
+        if (receivedChunks.get(chunkIndex)) {
+            return 0;
+        }
+
+        long offset = (long) chunkIndex * chunkSize;
+        int expectedLength = (int) Math.min(chunkSize, transfer.getFileSize() - offset);
+        if (payload.remaining() != expectedLength) {
+            return -1;
+        }
+        crc.reset();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            return -1;
+        }
+
+        while (payload.hasRemaining()) {
+            offset += fileChannel.write(payload, offset);
+        }
+        receivedChunks.set(chunkIndex);
+        receivedCount++;
+
+        if (++unsavedChunks >= CHUNKS_BETWEEN_BITMAP_SAVES) {
+            saveBitmap();
+        }
+        return expectedLength;
+    }
+
+    /**
+     * Flushes the written chunks to disk, then writes the resume bitmap next to the ".part" file,
+     * so the bitmap never marks a chunk that is not on disk.
+     */
+    void saveBitmap() throws IOException {
+        fileChannel.force(false);
+        Files.write(bitmapFile, receivedChunks.toByteArray());
+        unsavedChunks = 0;
+    }
+
+    /**
+     * Flushes the file to disk and gives it its final name, or a numbered name if a file already has it.
+     *
+     * @return The path of the received file.
+     */
+    Path complete() throws IOException {
+        fileChannel.force(true);
+        file.close();
+        Path savedFile = targetFile;
+        for (int copy = 1; ; copy++) {
+            try {
+                Files.move(partFile, savedFile);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                if (copy > MAX_COPIES) {
+                    throw e;
+                }
+                savedFile = targetFile.resolveSibling(numberedName(transfer.getFileName(), copy));
+            }
+        }
+        Files.deleteIfExists(bitmapFile);
+        return savedFile;
+    }
+
+    /**
+     * Closes the file and keeps the ".part" file and its bitmap, so the transfer can be resumed later.
+     */
+    void suspend() throws IOException {
+        saveBitmap();
+        file.close();
+    }
+
+    /**
+     * Keeps the last component of a name received from the network, so it can only name a file of the directory it
+     * is resolved against.
+     *
+     * @param name The name of a file or a username, as received.
+     * @return The last component of the name, or null if it can not name a file.
+     */
+    static String safeFileName(String name) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        try {
+            Path fileName = Paths.get(name).getFileName();
+            if (fileName == null || fileName.toString().equals(".") || fileName.toString().equals("..")) {
+                return null;
+            }
+            return fileName.toString();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resolves a file name in a directory, making sure the file is directly in it and is not a symbolic link.
+     */
+    private static Path resolveInside(Path directory, String fileName) throws IOException {
+        Path resolved = directory.resolve(fileName).normalize();
+        if (!directory.equals(resolved.getParent()) || Files.isSymbolicLink(resolved)) {
+            throw new IOException(String.format(ErrorMessages.FILE_OUTSIDE_DOWNLOAD_DIRECTORY, resolved));
+        }
+        return resolved;
+    }
+
+    /**
+     * Numbers a file name before its extension, "report.pdf" becoming "report (1).pdf".
+     */
+    private static String numberedName(String fileName, int copy) {
+        int extension = fileName.lastIndexOf('.');
+        if (extension <= 0) {
+            return fileName + " (" + copy + ")";
+        }
+        return fileName.substring(0, extension) + " (" + copy + ")" + fileName.substring(extension);
+    }
+
+}
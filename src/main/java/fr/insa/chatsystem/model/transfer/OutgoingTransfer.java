@@ -0,0 +1,319 @@
+package fr.insa.chatsystem.model.transfer;
+
+import fr.insa.chatsystem.model.logger.message.ErrorMessages;
+import fr.insa.chatsystem.model.network.CongestionWindow;
+import fr.insa.chatsystem.model.network.Pacer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * The OutgoingTransfer class sends a file to a contact.
+ * <p>
+ * The file is memory-mapped and every chunk is sent straight from the mapping with a gathering write,
+ * so the file content is never copied onto the heap. The number of unacknowledged chunks is limited by a
+ * congestion window that grows with the acknowledgements and shrinks when chunks are lost, and every chunk goes
+ * through the shared Pacer. Chunks that are not acknowledged within the retransmission timeout are sent again.
+ * Chunks the receiver already has from an interrupted transfer are skipped.
+ */
+class OutgoingTransfer implements Runnable {
+
+    private static final int OFFER_RETRIES = 10;
+    private static final long OFFER_TIMEOUT_MILLIS = 500;
+    private static final long RETRANSMISSION_TIMEOUT_NANOS = 200_000_000L;
+    private static final long INACTIVITY_TIMEOUT_NANOS = 15_000_000_000L;
+    private static final long POLL_MILLIS = 5;
+
+    private final FileTransferManager manager;
+    private final FileTransfer transfer;
+    private final Path file;
+    private final InetSocketAddress peer;
+    private final String senderUsername;
+    private final int chunkSize;
+    private final int chunkCount;
+    private final CongestionWindow congestionWindow;
+    private final Pacer pacer = Pacer.getInstance();
+
+    private final BitSet acknowledged = new BitSet();
+    private final Map<Integer, Long> inFlight = new LinkedHashMap<>();
+    private final int[] checksums;
+    private final BitSet checksummed = new BitSet();
+    private final ByteBuffer header = ByteBuffer.allocateDirect(FileTransferPacket.DATA_HEADER_SIZE);
+    private final ByteBuffer[] packet = new ByteBuffer[2];
+    private final ByteBuffer received = ByteBuffer.allocateDirect(FileTransferPacket.MAX_PACKET_SIZE);
+    private final CRC32 crc = new CRC32();
+
+    private MappedByteBuffer[] regions;
+    private int chunksPerRegion;
+    private int nextChunk;
+    private int acknowledgedCount;
+    private boolean accepted;
+    private boolean completed;
+    private volatile boolean cancelled;
+    private long lastProgressNanos;
+    private long pacingDelayNanos;
+
+    /**
+     * Constructs a new OutgoingTransfer of a file to the specified peer.
+     *
+     * @param manager          The manager notified of the progress of the transfer.
+     * @param file             The file to be sent.
+     * @param fileSize         The size of the file in bytes.
+     * @param peer             The address and file transfer port of the receiver.
+     * @param senderUsername   The username of the logged-in user, sent in the offer.
+     * @param receiverUsername The username of the receiver.
+     * @param chunkSize        The size of a chunk in bytes.
+     * @param window           The largest congestion window, in chunks.
+     */
+    OutgoingTransfer(FileTransferManager manager, Path file, long fileSize, InetSocketAddress peer, String senderUsername,
+                     String receiverUsername, int chunkSize, int window) {
+        this.manager = manager;
+        this.file = file;
+        this.peer = peer;
+        this.senderUsername = senderUsername;
+        this.chunkSize = chunkSize;
+        this.congestionWindow = new CongestionWindow(window, RETRANSMISSION_TIMEOUT_NANOS);
+        this.chunkCount = (int) ((fileSize + chunkSize - 1) / chunkSize);
+        this.checksums = new int[chunkCount];
+        this.transfer = new FileTransfer(ThreadLocalRandom.current().nextLong(), FileTransfer.Direction.OUTGOING,
+                receiverUsername, file.getFileName().toString(), fileSize);
+    }
+
+    FileTransfer getTransfer() {
+        return transfer;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Runs the transfer: sends the offer, then streams the chunks until every chunk is acknowledged.
+     */
+    @Override
+    public void run() {
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+             DatagramChannel channel = DatagramChannel.open();
+             Selector selector = Selector.open()) {
+
+            mapFile(fileChannel);
+            channel.connect(peer);
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+
+            if (!offer(channel, selector)) {
+                manager.transferFailed(transfer, ErrorMessages.FILE_TRANSFER_NOT_ACCEPTED);
+                return;
+            }
+
+            lastProgressNanos = System.nanoTime();
+            while (!completed && acknowledgedCount < chunkCount) {
+                if (cancelled) {
+                    channel.write(FileTransferPacket.control(FileTransferPacket.CANCEL, transfer.getTransferId()));
+                    manager.transferFailed(transfer, ErrorMessages.FILE_TRANSFER_CANCELLED);
+                    return;
+                }
+                long now = System.nanoTime();
+                if (now - lastProgressNanos > INACTIVITY_TIMEOUT_NANOS) {
+                    manager.transferFailed(transfer, ErrorMessages.FILE_TRANSFER_TIMEOUT);
+                    return;
+                }
+
+                retransmitExpiredChunks(now);
+                sendNewChunks(channel, now);
+
+                selector.select(pacingDelayNanos > 0 ? Math.max(1, TimeUnit.NANOSECONDS.toMillis(pacingDelayNanos)) : POLL_MILLIS);
+                selector.selectedKeys().clear();
+                readPackets(channel);
+            }
+
+            manager.transferCompleted(transfer);
+        } catch (IOException e) {
+            manager.transferFailed(transfer, e.getMessage());
+        }
+    }
+
+    /**
+     * Maps the file in regions of at most 2 GB, each region holding a whole number of chunks.
+     */
+    private void mapFile(FileChannel fileChannel) throws IOException {
+        chunksPerRegion = Integer.MAX_VALUE / chunkSize;
+        long regionSize = (long) chunksPerRegion * chunkSize;
+        long fileSize = transfer.getFileSize();
+        regions = new MappedByteBuffer[(int) ((fileSize + regionSize - 1) / regionSize)];
+        for (int i = 0; i < regions.length; i++) {
+            long position = i * regionSize;
+            regions[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(regionSize, fileSize - position));
+        }
+    }
+
+    /**
+     * Sends the offer until the receiver accepts it, and marks the chunks the receiver already has as acknowledged.
+     *
+     * @return true if the offer was accepted, false otherwise.
+     */
+    private boolean offer(DatagramChannel channel, Selector selector) throws IOException {
+        ByteBuffer offer = FileTransferPacket.offer(transfer.getTransferId(), chunkSize, transfer.getFileSize(),
+                transfer.getFileName(), senderUsername);
+        for (int attempt = 0; attempt < OFFER_RETRIES && !accepted && !cancelled; attempt++) {
+            offer.rewind();
+            channel.write(offer);
+            selector.select(OFFER_TIMEOUT_MILLIS);
+            selector.selectedKeys().clear();
+            readPackets(channel);
+        }
+        return accepted;
+    }
+
+    private void retransmitExpiredChunks(long now) {
+        Iterator<Map.Entry<Integer, Long>> iterator = inFlight.entrySet().iterator();
+        int expired = 0;
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, Long> entry = iterator.next();
+            if (now - entry.getValue() < RETRANSMISSION_TIMEOUT_NANOS) {
+                break;   // entries are ordered by send time
+            }
+            iterator.remove();
+            expired++;
+        }
+        if (expired > 0) {
+            congestionWindow.packetLost(now);
+        }
+        // expired chunks go back to the window, starting from the lowest missing one
+        if (expired > 0) {
+            nextChunk = Math.min(nextChunk, acknowledged.nextClearBit(0));
+        }
+    }
+
+    private void sendNewChunks(DatagramChannel channel, long now) throws IOException {
+        pacingDelayNanos = 0;
+        while (inFlight.size() < congestionWindow.getWindow()) {
+            int chunkIndex = nextUnsentChunk();
+            if (chunkIndex < 0) {
+                return;
+            }
+            int packetSize = FileTransferPacket.DATA_HEADER_SIZE + chunkLength(chunkIndex);
+            pacingDelayNanos = pacer.tryAcquire(packetSize);
+            if (pacingDelayNanos > 0) {
+                return;
+            }
+            if (!sendChunk(channel, chunkIndex)) {
+                pacer.release(packetSize);
+                return;   // socket send buffer is full, try again after the next poll
+            }
+            inFlight.put(chunkIndex, now);
+            nextChunk = chunkIndex + 1;
+        }
+    }
+
+    /**
+     * Finds the next chunk that is neither acknowledged nor in flight.
+     *
+     * @return The index of the chunk, or -1 if there is none.
+     */
+    private int nextUnsentChunk() {
+        int chunkIndex = acknowledged.nextClearBit(nextChunk);
+        while (chunkIndex < chunkCount && inFlight.containsKey(chunkIndex)) {
+            chunkIndex = acknowledged.nextClearBit(chunkIndex + 1);
+        }
+        return chunkIndex < chunkCount ? chunkIndex : -1;
+    }
+
+    private boolean sendChunk(DatagramChannel channel, int chunkIndex) throws IOException {
+        ByteBuffer payload = chunk(chunkIndex);
+        if (!checksummed.get(chunkIndex)) {
+            crc.reset();
+            crc.update(payload);
+            payload.rewind();
+            checksums[chunkIndex] = (int) crc.getValue();
+            checksummed.set(chunkIndex);
+        }
+
+        FileTransferPacket.putDataHeader(header, transfer.getTransferId(), chunkIndex, checksums[chunkIndex]);
+        packet[0] = header;
+        packet[1] = payload;
+        return channel.write(packet) > 0;
+    }
+
+    /**
+     * Returns a view of a chunk inside the mapped file.
+     */
+    private ByteBuffer chunk(int chunkIndex) {
+        MappedByteBuffer region = regions[chunkIndex / chunksPerRegion];
+        int offset = (chunkIndex % chunksPerRegion) * chunkSize;
+        return region.slice(offset, Math.min(chunkSize, region.capacity() - offset));
+    }
+
+    /**
+     * Reads every packet waiting on the channel: ACCEPT, ACK, COMPLETE and CANCEL.
+     */
+    private void readPackets(DatagramChannel channel) throws IOException {
+        while (true) {
+            received.clear();
+            if (channel.read(received) <= 0) {
+                return;
+            }
+            received.flip();
+            if (received.remaining() < FileTransferPacket.HEADER_SIZE) {
+                continue;
+            }
+            byte type = received.get();
+            if (received.getLong() != transfer.getTransferId()) {
+                continue;
+            }
+
+            switch (type) {
+                case FileTransferPacket.ACCEPT -> {
+                    if (!accepted) {
+                        BitSet alreadyReceived = FileTransferPacket.getBitmap(received);
+                        alreadyReceived.stream().filter(chunkIndex -> chunkIndex < chunkCount).forEach(this::acknowledge);
+                        accepted = true;
+                    }
+                }
+                case FileTransferPacket.ACK -> {
+                    int chunkIndex = received.getInt();
+                    if (chunkIndex >= 0 && chunkIndex < chunkCount) {
+                        if (inFlight.remove(chunkIndex) != null) {
+                            congestionWindow.packetAcknowledged();
+                        }
+                        acknowledge(chunkIndex);
+                    }
+                }
+                case FileTransferPacket.COMPLETE -> completed = true;
+                case FileTransferPacket.CANCEL -> cancelled = true;
+                default -> {
+                }
+            }
+        }
+    }
+
+    private void acknowledge(int chunkIndex) {
+        if (acknowledged.get(chunkIndex)) {
+            return;
+        }
+        acknowledged.set(chunkIndex);
+        acknowledgedCount++;
+        lastProgressNanos = System.nanoTime();
+        manager.transferProgressed(transfer, chunkLength(chunkIndex));
+    }
+
+    private int chunkLength(int chunkIndex) {
+        return (int) Math.min(chunkSize, transfer.getFileSize() - (long) chunkIndex * chunkSize);
+    }
+
+}
@@ -3,12 +3,16 @@ package fr.insa.chatsystem.view;
 import fr.insa.chatsystem.controller.CommandController;
 import fr.insa.chatsystem.model.contact.Contact;
 import fr.insa.chatsystem.model.contact.ContactList;
+import fr.insa.chatsystem.model.exception.ContactDoesNotExistException;
 import fr.insa.chatsystem.model.logger.message.ErrorMessages;
 import fr.insa.chatsystem.model.message.Message;
 import fr.insa.chatsystem.model.repository.ContactRepository;
 import fr.insa.chatsystem.model.repository.MessageRepository;
+import fr.insa.chatsystem.model.repository.MessageStore;
 import fr.insa.chatsystem.model.service.ContactService;
 import fr.insa.chatsystem.model.service.MessageService;
+import fr.insa.chatsystem.model.transfer.FileTransfer;
+import fr.insa.chatsystem.model.transfer.FileTransferManager;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -18,36 +22,69 @@ import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import static fr.insa.chatsystem.Main.self;
 
 /**
  * The main view class for the ChatSystem program.
+ * The view never reads nor writes the database on the event dispatch thread: it uses the asynchronous methods of
+ * the services, run on the DatabaseExecutor, and updates the components once they complete, back on the event
+ * dispatch thread.
  */
-public class View extends JFrame implements MessageRepository.Observer, ContactList.Observer {
+public class View extends JFrame implements MessageStore.Observer, ContactList.Observer, FileTransferManager.Observer {
 
     private static final Logger LOGGER = LogManager.getLogger(View.class);
 
+    /**
+     * Number of the latest messages of a conversation shown when the chat view is opened.
+     */
+    private static final int HISTORY_PAGE_SIZE = 100;
+
+    /**
+     * Runs the continuations of the asynchronous database work that update the components.
+     */
+    private static final Executor EVENT_DISPATCH_THREAD = SwingUtilities::invokeLater;
+
+    /**
+     * Runs the connection, which waits for the responses of the other users, on a thread of its own.
+     */
+    private static final Executor CONNECT_THREAD = task -> {
+        Thread thread = new Thread(task, "connect");
+        thread.setDaemon(true);
+        thread.start();
+    };
+    private static final String USERNAME_TAKEN_NOTE = "Username is taken. Please choose another one.";
+    private static final String DATABASE_ERROR_NOTE = "The database could not be read. Please try again.";
+    private static final String HISTORY_ERROR_NOTE = "The conversation could not be read.";
+    private static final String USERNAME_ERROR_NOTE = "The username could not be saved. Please try again.";
+
     private final ContactService contactService = new ContactService(new ContactRepository());
-    private final MessageService messageService = new MessageService(MessageRepository.getInstance());
+    private final MessageService messageService = new MessageService(MessageRepository.getInstance(), MessageStore.getInstance());
 
     private boolean isInContactListView = false;
     private boolean isInChatView = false;
     private String usernameOfTheContactYouAreChattingWith = "";
 
+    /**
+     * Messages are committed by a background writer thread, so the chat view is refreshed on the event dispatch thread.
+     */
     @Override
     public void messageInserted(Message message) {
-        if (isInChatView) {
-            if (message.getSenderContact().getUsername().equals(usernameOfTheContactYouAreChattingWith)) {
-                generateChatView(message.getSenderContact().getUsername());
-            } else if (message.getReceiverContact().getUsername().equals(usernameOfTheContactYouAreChattingWith)) {
-                generateChatView(message.getReceiverContact().getUsername());
+        SwingUtilities.invokeLater(() -> {
+            if (isInChatView) {
+                if (message.getSenderContact().getUsername().equals(usernameOfTheContactYouAreChattingWith)) {
+                    generateChatView(message.getSenderContact().getUsername(), false);
+                } else if (message.getReceiverContact().getUsername().equals(usernameOfTheContactYouAreChattingWith)) {
+                    generateChatView(message.getReceiverContact().getUsername(), false);
+                }
             }
-        }
+        });
     }
 
     @Override
@@ -74,6 +111,31 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
         }
     }
 
+    @Override
+    public void transferProgressed(FileTransfer transfer) {
+        showTransferStatus(transfer, transfer.getPercent() + "%");
+    }
+
+    @Override
+    public void transferCompleted(FileTransfer transfer) {
+        showTransferStatus(transfer, "completed");
+    }
+
+    @Override
+    public void transferFailed(FileTransfer transfer, String reason) {
+        showTransferStatus(transfer, "failed");
+    }
+
+    /**
+     * Shows the state of a file transfer in the title of the window.
+     * Transfers notify their observers from their own threads, so the window is updated on the event dispatch thread.
+     */
+    private void showTransferStatus(FileTransfer transfer, String status) {
+        String direction = transfer.getDirection() == FileTransfer.Direction.OUTGOING ? " to " : " from ";
+        String title = "ChatSystem - " + transfer.getFileName() + direction + transfer.getContactUsername() + ": " + status;
+        SwingUtilities.invokeLater(() -> setTitle(title));
+    }
+
     /**
      * Interface for classes that want to observe window events.
      */
@@ -87,15 +149,17 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
          * Called when a new username is set.
          *
          * @param username The selected username.
+         * @return A future completed once the username is stored, or exceptionally if it could not be.
          */
-        void usernameSet(String username);
+        CompletableFuture<Void> usernameSet(String username);
 
         /**
          * Called when a username is changed.
          *
          * @param username The selected username.
+         * @return A future completed once the username is stored, or exceptionally if it could not be.
          */
-        void usernameChanged(String username);
+        CompletableFuture<Void> usernameChanged(String username);
 
         /**
          * Called when the disconnect button is clicked.
@@ -105,6 +169,14 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
          * Called when the send message button is clicked.
          */
         void sendButtonClicked(String message, String username);
+
+        /**
+         * Called when a file is chosen to be sent.
+         *
+         * @param file     The file to be sent.
+         * @param username The username of the receiver.
+         */
+        void sendFileButtonClicked(Path file, String username);
     }
 
     private final List<Observer> observers = new ArrayList<>();
@@ -124,12 +196,17 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
     public static void initialize() {
         SwingUtilities.invokeLater(() -> {
             View view = new View();
-            CommandController commandController = new CommandController(new ContactService(new ContactRepository()), new MessageService(MessageRepository.getInstance()));
+            CommandController commandController = new CommandController(new ContactService(new ContactRepository()), new MessageService(MessageRepository.getInstance(), MessageStore.getInstance()));
             view.addObserver(commandController);
             MessageRepository messageRepository = MessageRepository.getInstance();
             messageRepository.addObserver(view);
+            MessageStore messageStore = MessageStore.getInstance();
+            if (messageStore != messageRepository) {
+                messageStore.addObserver(view);
+            }
             ContactList contactList = ContactList.getInstance();
             contactList.addObserver(view);
+            FileTransferManager.getInstance().addObserver(view);
             view.setVisible(true);
         });
     }
@@ -182,12 +259,21 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
         addButtonToGridBag(connectButton, mainPanel, 0);
         connectButton.addActionListener(e -> {
 
-            for (Observer observer : View.this.observers) {
-                observer.connectButtonClicked();
-            }
-
-            cleanView();
-            generateSetUsernameView();
+            // Connecting waits for the responses of the other users, the button stays disabled meanwhile
+            connectButton.setEnabled(false);
+            CompletableFuture.runAsync(() -> {
+                for (Observer observer : View.this.observers) {
+                    observer.connectButtonClicked();
+                }
+            }, CONNECT_THREAD).thenCompose(connected -> contactService.getSelfAsync()).whenCompleteAsync((selfContact, exception) -> {
+                if (exception != null) {
+                    handleFailure(exception);
+                    connectButton.setEnabled(true);
+                    return;
+                }
+                cleanView();
+                generateSetUsernameView(selfContact.isPresent());
+            }, EVENT_DISPATCH_THREAD);
 
         });
 
@@ -195,11 +281,12 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
 
     /**
      * Generates a view for initially selecting a username.
+     *
+     * @param isSelfUserPresentInTheDatabase Whether the user already has a username in the database.
      */
-    private void generateSetUsernameView() {
+    private void generateSetUsernameView(boolean isSelfUserPresentInTheDatabase) {
 
-        AtomicBoolean isSelfUserPresentInTheDatabase = new AtomicBoolean((contactService.tableContactsExists() && contactService.getSelf().isPresent()));
-        if (isSelfUserPresentInTheDatabase.get() && !CommandController.isUsernameChangeNeeded.get()) {
+        if (isSelfUserPresentInTheDatabase && !CommandController.isUsernameChangeNeeded.get()) {
             generateCommandSelectionView();
             return;
         }
@@ -229,20 +316,37 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
 
             String selectedUsername = usernameField.getText();
 
-            boolean usernameAvailable = contactService.contactExistsInActiveContacts(selectedUsername) || contactService.contactExistsInDatabase(selectedUsername);
-            if (!usernameAvailable) {
+            selectButton.setEnabled(false);
+            contactService.contactExistsInDatabaseAsync(selectedUsername).whenCompleteAsync((existsInDatabase, failure) -> {
 
-                for (Observer observer : observers) {
-                    observer.usernameSet(selectedUsername);
+                if (failure != null) {
+                    selectButton.setEnabled(true);
+                    showErrorNote(innerPanel, DATABASE_ERROR_NOTE);
+                    return;
+                }
+                boolean usernameAvailable = contactService.contactExistsInActiveContacts(selectedUsername) || existsInDatabase;
+                if (!usernameAvailable) {
+
+                    // The view changes once the username is stored, the button stays disabled meanwhile
+                    CompletableFuture<?>[] stored = observers.stream()
+                            .map(observer -> observer.usernameSet(selectedUsername)).toArray(CompletableFuture[]::new);
+                    CompletableFuture.allOf(stored).whenCompleteAsync((done, storeFailure) -> {
+                        if (storeFailure != null) {
+                            selectButton.setEnabled(true);
+                            showErrorNote(innerPanel, USERNAME_ERROR_NOTE);
+                            return;
+                        }
+                        cleanView();
+                        generateCommandSelectionView();
+                    }, EVENT_DISPATCH_THREAD);
+
+                } else {
+                    selectButton.setEnabled(true);
+                    showErrorNote(innerPanel, USERNAME_TAKEN_NOTE);
+                    usernameField.setText("");
                 }
 
-                cleanView();
-                generateCommandSelectionView();
-
-            } else {
-                showUsernameTakenErrorNote(innerPanel);
-                usernameField.setText("");
-            }
+            }, EVENT_DISPATCH_THREAD);
 
         });
 
@@ -327,7 +431,7 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
                 isInContactListView = false;
 
                 cleanView();
-                generateChatView(stringList.getSelectedValue());
+                generateChatView(stringList.getSelectedValue(), true);
 
             }
         });
@@ -382,20 +486,37 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
 
             String selectedUsername = usernameField.getText();
 
-            boolean usernameAvailable = contactService.contactExistsInActiveContacts(selectedUsername) || contactService.contactExistsInDatabase(selectedUsername);
-            if (!usernameAvailable) {
+            selectButton.setEnabled(false);
+            contactService.contactExistsInDatabaseAsync(selectedUsername).whenCompleteAsync((existsInDatabase, failure) -> {
 
-                for (Observer observer : observers) {
-                    observer.usernameChanged(selectedUsername);
+                if (failure != null) {
+                    selectButton.setEnabled(true);
+                    showErrorNote(innerPanel, DATABASE_ERROR_NOTE);
+                    return;
+                }
+                boolean usernameAvailable = contactService.contactExistsInActiveContacts(selectedUsername) || existsInDatabase;
+                if (!usernameAvailable) {
+
+                    // The view changes once the username is stored, the button stays disabled meanwhile
+                    CompletableFuture<?>[] stored = observers.stream()
+                            .map(observer -> observer.usernameChanged(selectedUsername)).toArray(CompletableFuture[]::new);
+                    CompletableFuture.allOf(stored).whenCompleteAsync((done, storeFailure) -> {
+                        if (storeFailure != null) {
+                            selectButton.setEnabled(true);
+                            showErrorNote(innerPanel, USERNAME_ERROR_NOTE);
+                            return;
+                        }
+                        cleanView();
+                        generateCommandSelectionView();
+                    }, EVENT_DISPATCH_THREAD);
+
+                } else {
+                    selectButton.setEnabled(true);
+                    showErrorNote(innerPanel, USERNAME_TAKEN_NOTE);
+                    usernameField.setText("");
                 }
 
-                cleanView();
-                generateCommandSelectionView();
-
-            } else {
-                showUsernameTakenErrorNote(innerPanel);
-                usernameField.setText("");
-            }
+            }, EVENT_DISPATCH_THREAD);
 
         });
 
@@ -414,8 +535,11 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
 
     /**
      * Generates a view for chatting with a contact.
+     *
+     * @param username The username of the contact.
+     * @param opened   Whether the user opens the conversation, rather than the view being refreshed by a new message.
      */
-    private void generateChatView(String username) {
+    private void generateChatView(String username, boolean opened) {
 
         Container cp = getContentPane();
 
@@ -424,13 +548,13 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
             JPanel mainPanel = generateAndAddMainPanel();
             mainPanel.setLayout(new BorderLayout());
             generateChatViewTopPanel(mainPanel, username);
-            generateChatViewCenterPanel(mainPanel, username);
+            generateChatViewCenterPanel(mainPanel, username, opened);
             generateChatViewBottomPanel(mainPanel, username);
         } else {
             JPanel mainPanel = (JPanel) cp.getComponents()[1];
             Component[] mainPanelComponents = mainPanel.getComponents();
             mainPanel.remove(mainPanelComponents[1]);
-            generateChatViewCenterPanel(mainPanel, username);
+            generateChatViewCenterPanel(mainPanel, username, opened);
         }
 
         usernameOfTheContactYouAreChattingWith = username;
@@ -455,25 +579,13 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
 
     /**
      * Generates middle part of the view for chatting with a contact.
+     * The list is added empty and filled once the history is read from the database.
+     * The conversation is marked as read when the user opens it, if its summary counts unread messages.
      */
-    private void generateChatViewCenterPanel(JPanel mainPanel, String username) {
-
-        Optional<Contact> contact = contactService.getContactByUsername(username);
-        if (contact.isEmpty()) {
-            LOGGER.error(String.format(ErrorMessages.CONTACT_DOES_NOT_EXIST_USERNAME, username));
-            System.exit(1);
-        }
-        List<Message> chatHistory = messageService.getMessageHistory(contact.get().getContactId());
-
-        List<String> messages = new ArrayList<>();
-
-        for (Message message : chatHistory) {
-            String senderUsername = message.getSenderContact().getUsername();
-            String text = message.getContent();
-            messages.add(senderUsername + ": " + text);
-        }
+    private void generateChatViewCenterPanel(JPanel mainPanel, String username, boolean opened) {
 
-        JList<String> stringList = new JList<>(messages.toArray(new String[0]));
+        DefaultListModel<String> messages = new DefaultListModel<>();
+        JList<String> stringList = new JList<>(messages);
         JScrollPane scrollPane = new JScrollPane(stringList);
 
         if (mainPanel.getComponentCount() == 1) {
@@ -486,8 +598,41 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
                 (new EmptyBorder(5, 40, 0, 40),
                         BorderFactory.createMatteBorder(1, 1, 1, 1, Color.BLACK)));
         revalidate();
-        JScrollBar vertical = scrollPane.getVerticalScrollBar();
-        vertical.setValue(vertical.getMaximum());
+
+        contactService.getContactByUsernameAsync(username).thenCompose(contact -> {
+            if (contact.isEmpty()) {
+                return CompletableFuture.<List<Message>>failedFuture(
+                        new ContactDoesNotExistException(String.format(ErrorMessages.CONTACT_DOES_NOT_EXIST_USERNAME, username)));
+            }
+            Integer contactId = contact.get().getContactId();
+            if (!opened) {
+                return messageService.getLatestMessagesAsync(contactId, HISTORY_PAGE_SIZE);
+            }
+            // The conversation is read once its latest messages are shown
+            return messageService.getLatestMessagesAsync(contactId, HISTORY_PAGE_SIZE).thenApply(chatHistory -> {
+                messageService.getConversationSummary(contactId)
+                        .filter(summary -> summary.getUnreadCount() > 0)
+                        .ifPresent(summary -> messageService.markConversationRead(contactId));
+                return chatHistory;
+            });
+        }).whenCompleteAsync((chatHistory, failure) -> {
+
+            if (failure != null) {
+                handleFailure(failure);
+                messages.addElement(HISTORY_ERROR_NOTE);
+                return;
+            }
+            for (Message message : chatHistory) {
+                String senderUsername = message.getSenderContact().getUsername();
+                String text = message.getContent();
+                messages.addElement(senderUsername + ": " + text);
+            }
+
+            scrollPane.validate();
+            JScrollBar vertical = scrollPane.getVerticalScrollBar();
+            vertical.setValue(vertical.getMaximum());
+
+        }, EVENT_DISPATCH_THREAD);
 
     }
 
@@ -520,6 +665,17 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
             }
         });
 
+        JButton sendFileButton = new JButton("Send file");
+        bottomMessagePanel.add(sendFileButton);
+        sendFileButton.addActionListener(e -> {
+            JFileChooser fileChooser = new JFileChooser();
+            if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                for (Observer observer : View.this.observers) {
+                    observer.sendFileButtonClicked(fileChooser.getSelectedFile().toPath(), username);
+                }
+            }
+        });
+
         JPanel bottomBackButtonPanel = new JPanel();
         bottomPanel.add(bottomBackButtonPanel, BorderLayout.SOUTH);
 
@@ -599,12 +755,27 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
         panel.add(button, gbc);
     }
 
+    /**
+     * Handles a failure of the database work of the interface, on the event dispatch thread. A contact missing from
+     * the database ends the program, from this thread so that the shutdown hook does not wait for the database thread.
+     *
+     * @param failure The failure the database work completed with.
+     */
+    private static void handleFailure(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof ContactDoesNotExistException) {
+            System.exit(1);
+        }
+        LOGGER.error(ErrorMessages.INTERFACE_TASK_FAILED, cause.toString());
+    }
+
     /**
      * Displays an error note in the specified panel.
      *
      * @param innerPanel The panel in which to display the error note.
+     * @param note       The text of the error note.
      */
-    private void showUsernameTakenErrorNote(JPanel innerPanel) {
+    private void showErrorNote(JPanel innerPanel, String note) {
 
         Component[] components = innerPanel.getComponents();
         for (Component component : components) {
@@ -613,7 +784,7 @@ public class View extends JFrame implements MessageRepository.Observer, ContactL
             }
         }
 
-        JLabel errorLabel = new JLabel("Username is taken. Please choose another one.");
+        JLabel errorLabel = new JLabel(note);
         innerPanel.add(errorLabel, innerPanel.getComponentCount() - 1);
         errorLabel.setForeground(Color.RED);
 
@@ -15,6 +15,7 @@ import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import static fr.insa.chatsystem.Main.self;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -153,11 +154,11 @@ class CommandControllerTest {
     void testUsernameSet() {
         String username = self.getUsername();
 
-        when(contactService.insertContact(self)).thenReturn(Optional.of(self));
-        commandController.usernameSet("username");
+        when(contactService.insertContactAsync(self)).thenReturn(CompletableFuture.completedFuture(Optional.of(self)));
+        commandController.usernameSet("username").join();
 
         assertNotEquals(username, self.getUsername());
-        verify(contactService, times(1)).insertContact(self);
+        verify(contactService, times(1)).insertContactAsync(self);
     }
 
     /**
@@ -174,11 +175,11 @@ class CommandControllerTest {
     void testUsernameChanged() {
         String username = self.getUsername();
 
-        when(contactService.updateContact(self)).thenReturn(Optional.of(self));
-        commandController.usernameChanged("changed username");
+        when(contactService.updateContactAsync(self)).thenReturn(CompletableFuture.completedFuture(Optional.of(self)));
+        commandController.usernameChanged("changed username").join();
 
         assertEquals(username, self.getPreviousUsername());
-        verify(contactService, times(1)).updateContact(self);
+        verify(contactService, times(1)).updateContactAsync(self);
     }
 
     /**
@@ -197,10 +198,10 @@ class CommandControllerTest {
         ContactList contactList = ContactList.getInstance();
         contactList.addContact(contact);
 
-        when(contactService.getContactByUsername(contact.getUsername())).thenReturn(Optional.of(contact));
+        when(contactService.getContactByUsernameAsync(contact.getUsername())).thenReturn(CompletableFuture.completedFuture(Optional.of(contact)));
         commandController.sendButtonClicked("message", contact.getUsername());
 
-        verify(contactService, times(1)).getContactByUsername(contact.getUsername());
+        verify(contactService, times(1)).getContactByUsernameAsync(contact.getUsername());
         verify(messageService, times(1)).sendChatMessage(contact, "message");
     }
 }
\ No newline at end of file
@@ -1,8 +1,10 @@
 package fr.insa.chatsystem.controller;
 
+import com.google.gson.Gson;
 import fr.insa.chatsystem.model.contact.Contact;
 import fr.insa.chatsystem.model.contact.ContactList;
 import fr.insa.chatsystem.model.message.Message;
+import fr.insa.chatsystem.model.message.MessageUid;
 import fr.insa.chatsystem.model.network.UDPMessage;
 import fr.insa.chatsystem.model.network.UDPMessageType;
 import fr.insa.chatsystem.model.service.ContactService;
@@ -249,6 +251,30 @@ class NetworkControllerTest {
         verify(messageService, times(1)).insertMessage(any(Message.class));
     }
 
+    /**
+     * Test method for {@link NetworkController#messageReceived(UDPMessage)} when a chat message is received twice.
+     * <p>
+     * This test verifies that the uid chosen by the sender is kept through the packet encoding and given to the
+     * received message, both times, so the MessageService can store it once.
+     * </p>
+     *
+     * @throws UnknownHostException If an error occurs while creating the InetAddress.
+     */
+    @Test
+    void testChatMessageReceivedTwiceKeepsSenderUid() throws UnknownHostException {
+        Contact contact = new Contact(2, "username", 0);
+        contact.setAddress(generateRandomIPv4Address());
+        String uid = MessageUid.generate();
+        String packetData = new Gson().toJson(new UDPMessage(contact.getAddress(), contact.getUsername(), UDPMessageType.CHAT_MESSAGE, "test", uid));
+        UDPMessage udpMessage = new UDPMessage(contact.getAddress(), packetData);
+
+        when(contactService.getContactByUsername(udpMessage.getSenderUsername())).thenReturn(Optional.of(contact));
+        networkController.messageReceived(udpMessage);
+        networkController.messageReceived(udpMessage);
+
+        verify(messageService, times(2)).insertMessage(argThat(message -> uid.equals(message.getUid())));
+    }
+
     /**
      * Helper method to generate a random IPv4 address.
      *
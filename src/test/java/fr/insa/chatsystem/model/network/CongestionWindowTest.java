@@ -0,0 +1,89 @@
+package fr.insa.chatsystem.model.network;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * JUnit test class for the {@link CongestionWindow} class.
+ *
+ * <p>
+ * The tests cover the growth of the window in slow start and in congestion avoidance, its reduction on losses and
+ * its bounds.
+ * </p>
+ */
+class CongestionWindowTest {
+    private static final long LOSS_INTERVAL = 1_000_000;
+
+    /**
+     * Tests that the window grows by one packet per acknowledgement until the first loss, up to its maximum.
+     */
+    @Test
+    void testSlowStart() {
+        CongestionWindow congestionWindow = new CongestionWindow(64, LOSS_INTERVAL);
+        assertEquals(4, congestionWindow.getWindow());
+        for (int i = 0; i < 4; i++) {
+            congestionWindow.packetAcknowledged();
+        }
+        assertEquals(8, congestionWindow.getWindow());
+
+        for (int i = 0; i < 100; i++) {
+            congestionWindow.packetAcknowledged();
+        }
+        assertEquals(64, congestionWindow.getWindow());
+    }
+
+    /**
+     * Tests that a loss halves the window, which then grows by about one packet per window of acknowledgements.
+     */
+    @Test
+    void testAdditiveIncreaseAfterLoss() {
+        CongestionWindow congestionWindow = grownWindow(32);
+        congestionWindow.packetLost(0);
+        assertEquals(16, congestionWindow.getWindow());
+
+        for (int i = 0; i < 16; i++) {
+            congestionWindow.packetAcknowledged();
+        }
+        assertEquals(16, congestionWindow.getWindow(), "the window grows by less than one packet per round trip");
+        congestionWindow.packetAcknowledged();
+        assertEquals(17, congestionWindow.getWindow());
+    }
+
+    /**
+     * Tests that the losses of one retransmission timeout halve the window once.
+     */
+    @Test
+    void testOneReductionPerLossInterval() {
+        CongestionWindow congestionWindow = grownWindow(32);
+        congestionWindow.packetLost(10);
+        congestionWindow.packetLost(10 + LOSS_INTERVAL - 1);
+        assertEquals(16, congestionWindow.getWindow());
+
+        congestionWindow.packetLost(10 + LOSS_INTERVAL);
+        assertEquals(8, congestionWindow.getWindow());
+    }
+
+    /**
+     * Tests that the window is never smaller than 2 packets, even with a smaller maximum.
+     */
+    @Test
+    void testMinimumWindow() {
+        CongestionWindow congestionWindow = new CongestionWindow(64, LOSS_INTERVAL);
+        for (int i = 0; i < 10; i++) {
+            congestionWindow.packetLost(i * LOSS_INTERVAL);
+        }
+        assertEquals(2, congestionWindow.getWindow());
+
+        assertEquals(2, new CongestionWindow(1, LOSS_INTERVAL).getWindow());
+    }
+
+    private static CongestionWindow grownWindow(int window) {
+        CongestionWindow congestionWindow = new CongestionWindow(64, LOSS_INTERVAL);
+        while (congestionWindow.getWindow() < window) {
+            congestionWindow.packetAcknowledged();
+        }
+        return congestionWindow;
+    }
+
+}
@@ -0,0 +1,94 @@
+package fr.insa.chatsystem.model.network;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JUnit test class for the {@link Pacer} class.
+ *
+ * <p>
+ * The tests drive the token bucket with a manual clock, so that its burst, its refill and its waiting times are
+ * checked without sleeping.
+ * </p>
+ */
+class PacerTest {
+    private static final long RATE = 1_000_000;   // 1 byte per microsecond
+    private static final long BURST = 10_000;
+
+    private long now;
+    private Pacer pacer;
+
+    @BeforeEach
+    void setUp() {
+        now = 0;
+        pacer = new Pacer(RATE, BURST, () -> now);
+    }
+
+    /**
+     * Tests that a full bucket lets one burst through at once, then asks to wait for the missing tokens.
+     */
+    @Test
+    void testBurst() {
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, pacer.tryAcquire(1000));
+        }
+        assertEquals(1000_000, pacer.tryAcquire(1000));
+    }
+
+    /**
+     * Tests that the bucket is refilled at the rate, and never beyond its size.
+     */
+    @Test
+    void testRefill() {
+        assertEquals(0, pacer.tryAcquire((int) BURST));
+        now += 500_000;
+        assertEquals(0, pacer.tryAcquire(500));
+        assertEquals(1_000_000, pacer.tryAcquire(1000));
+
+        now += 1_000_000_000;
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, pacer.tryAcquire(1000));
+        }
+        assertTrue(pacer.tryAcquire(1000) > 0);
+    }
+
+    /**
+     * Tests that a packet larger than the bucket is let through once the bucket is full, and paid back before the next one.
+     */
+    @Test
+    void testPacketLargerThanBurst() {
+        assertEquals(0, pacer.tryAcquire((int) BURST * 2));
+        assertEquals(20_000_000, pacer.tryAcquire((int) BURST * 2));
+        now += 20_000_000;
+        assertEquals(0, pacer.tryAcquire((int) BURST * 2));
+    }
+
+    /**
+     * Tests that the tokens of a packet that could not be sent are given back, without overfilling the bucket.
+     */
+    @Test
+    void testRelease() {
+        assertEquals(0, pacer.tryAcquire((int) BURST));
+        pacer.release((int) BURST);
+        assertEquals(0, pacer.tryAcquire((int) BURST));
+
+        pacer.release((int) BURST * 3);
+        assertEquals(0, pacer.tryAcquire((int) BURST));
+        assertTrue(pacer.tryAcquire(1) > 0);
+    }
+
+    /**
+     * Tests that a rate of 0 disables pacing.
+     */
+    @Test
+    void testDisabled() {
+        Pacer disabled = new Pacer(0, BURST, () -> now);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, disabled.tryAcquire((int) BURST));
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package fr.insa.chatsystem.model.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JUnit test class for the {@link ConnectionManager} class.
+ *
+ * <p>
+ * The tests cover the connections confined to a thread: reused by the thread, and closed once the thread has ended.
+ * </p>
+ */
+class ConnectionManagerTest {
+
+    /**
+     * Points the database at a temporary file.
+     */
+    @BeforeEach
+    void setUp(@TempDir Path directory) {
+        System.setProperty("chatsystem.db.path", directory.resolve("connections.db").toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        ConnectionManager.getInstance().shutdown();
+        System.clearProperty("chatsystem.db.path");
+    }
+
+    /**
+     * Tests that a thread gets the same connection on every call.
+     */
+    @Test
+    void testConnectionReused() throws SQLException {
+        Connection connection = ConnectionManager.getInstance().getConnection();
+
+        assertSame(connection, ConnectionManager.getInstance().getConnection());
+        assertFalse(connection.isClosed());
+    }
+
+    /**
+     * Tests that the connection of a thread that has ended is closed when another thread opens its connection,
+     * while the connection of a running thread stays open.
+     */
+    @Test
+    void testConnectionOfEndedThreadClosed() throws Exception {
+        Connection running = ConnectionManager.getInstance().getConnection();
+        AtomicReference<Connection> ended = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                ended.set(ConnectionManager.getInstance().getConnection());
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertNotNull(ended.get());
+        assertFalse(ended.get().isClosed());
+
+        Thread opener = new Thread(() -> {
+            try {
+                ConnectionManager.getInstance().getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        opener.start();
+        opener.join();
+
+        assertTrue(ended.get().isClosed());
+        assertFalse(running.isClosed());
+    }
+
+}
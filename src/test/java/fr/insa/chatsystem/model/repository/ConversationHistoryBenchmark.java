@@ -0,0 +1,109 @@
+package fr.insa.chatsystem.model.repository;
+
+import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.message.Message;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Benchmark of the latency of loading a whole conversation, for conversations of 10, 1 000 and 100 000 messages.
+ *
+ * <p>
+ * It compares the single query of {@link MessageRepository#getConversationHistory}, which joins the two participants,
+ * with the three round trips it replaced: one query per participant, then one for the messages.
+ * It is not a JUnit test and is not run by the build. Run it from the IDE, or with
+ * {@code mvn test-compile exec:java -Dexec.mainClass=fr.insa.chatsystem.model.repository.ConversationHistoryBenchmark
+ * -Dexec.classpathScope=test}. The database is created in a temporary directory.
+ * The number of loads of each conversation can be set with the "benchmark.reads" system property.
+ * </p>
+ */
+public class ConversationHistoryBenchmark {
+
+    private static final int[] CONVERSATION_SIZES = {10, 1_000, 100_000};
+    private static final int READS = Integer.getInteger("benchmark.reads", 50);
+
+    private static final String CONTACT_QUERY = "SELECT * FROM contacts WHERE contact_id == ?";
+    private static final String MESSAGES_QUERY = """
+            SELECT * FROM messages
+            WHERE ((sender_contact_id = ? OR sender_contact_id = ?)
+            AND (receiver_contact_id = ? OR receiver_contact_id = ?))
+            OR (sender_contact_id = ? AND receiver_contact_id IS NULL AND message_id IN
+            (SELECT message_id FROM message_recipients WHERE receiver_contact_id = ?))
+            """;
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("chatsystem-benchmark");
+        System.setProperty("chatsystem.db.path", directory.resolve("history.db").toString());
+        ConnectionManager.getInstance().shutdown();
+
+        ContactRepository contactRepository = new ContactRepository();
+        MessageRepository messageRepository = MessageRepository.getInstance();
+        Contact self = contactRepository.insertContact(new Contact("self", true)).orElseThrow();
+
+        System.out.printf("Average latency of %d loads of a whole conversation%n", READS);
+        System.out.printf("%-10s %20s %20s%n", "messages", "three queries (ms)", "single query (ms)");
+
+        for (int size : CONVERSATION_SIZES) {
+            Contact contact = contactRepository.insertContact(new Contact("contact" + size, false)).orElseThrow();
+            for (int i = 0; i < size; i++) {
+                Message message = i % 2 == 0 ? new Message(self, contact, "message " + i) : new Message(contact, self, "message " + i);
+                messageRepository.insertMessage(message);
+            }
+            messageRepository.flush();
+
+            // Warm up both paths so that the statements are prepared and the pages cached
+            loadWithThreeQueries(messageRepository, self.getContactId(), contact.getContactId());
+            messageRepository.getConversationHistory(self.getContactId(), contact.getContactId());
+
+            long start = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                loadWithThreeQueries(messageRepository, self.getContactId(), contact.getContactId());
+            }
+            double threeQueriesMillis = (System.nanoTime() - start) / 1e6 / READS;
+
+            start = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                messageRepository.getConversationHistory(self.getContactId(), contact.getContactId());
+            }
+            double singleQueryMillis = (System.nanoTime() - start) / 1e6 / READS;
+
+            System.out.printf("%-10d %20.3f %20.3f%n", size, threeQueriesMillis, singleQueryMillis);
+        }
+
+        ConnectionManager.getInstance().shutdown();
+    }
+
+    /**
+     * Loads a conversation the way getConversationHistory did before it joined the participants.
+     */
+    private static List<Message> loadWithThreeQueries(MessageRepository messageRepository, Integer selfId, Integer contactId) {
+        SQLiteConnector sqLiteConnector = messageRepository.sqLiteConnector;
+        Contact self = sqLiteConnector.queryForObject(CONTACT_QUERY, ps -> ps.setInt(1, selfId), ContactRepository.CONTACT_ROW_MAPPER)
+                .orElseGet(Contact::new);
+        Contact contact = sqLiteConnector.queryForObject(CONTACT_QUERY, ps -> ps.setInt(1, contactId), ContactRepository.CONTACT_ROW_MAPPER)
+                .orElseGet(Contact::new);
+        return sqLiteConnector.query(MESSAGES_QUERY, ps -> {
+            ps.setInt(1, selfId);
+            ps.setInt(2, contactId);
+            ps.setInt(3, selfId);
+            ps.setInt(4, contactId);
+            ps.setInt(5, selfId);
+            ps.setInt(6, contactId);
+        }, rs -> {
+            Message message = new Message(rs.getInt("message_id"), rs.getString("content"));
+            message.setTimestamp(rs.getLong("timestamp"));
+            if (selfId == rs.getInt("sender_contact_id")) {
+                message.setSenderContact(self);
+                message.setReceiverContact(contact);
+            } else {
+                message.setSenderContact(contact);
+                message.setReceiverContact(self);
+            }
+            return message;
+        });
+    }
+
+}
@@ -0,0 +1,64 @@
+package fr.insa.chatsystem.model.repository;
+
+import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.message.Message;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Benchmark of the message insert and history read rates of the repositories under every {@link DatabaseProfile}.
+ *
+ * <p>
+ * It is not a JUnit test and is not run by the build. Run it from the IDE, or with
+ * {@code mvn test-compile exec:java -Dexec.mainClass=fr.insa.chatsystem.model.repository.DatabaseProfileBenchmark
+ * -Dexec.classpathScope=test}. Every profile gets a fresh database in a temporary directory.
+ * The number of messages and history reads can be set with the "benchmark.messages" and "benchmark.reads"
+ * system properties.
+ * </p>
+ */
+public class DatabaseProfileBenchmark {
+
+    private static final int MESSAGES = Integer.getInteger("benchmark.messages", 5000);
+    private static final int READS = Integer.getInteger("benchmark.reads", 200);
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("chatsystem-benchmark");
+        System.out.printf("%d messages inserted one by one, then %d full history reads%n", MESSAGES, READS);
+        System.out.printf("%-10s %15s %15s%n", "profile", "inserts/s", "histories/s");
+
+        for (DatabaseProfile profile : DatabaseProfile.values()) {
+            System.setProperty("chatsystem.db.profile", profile.name());
+            System.setProperty("chatsystem.db.path", directory.resolve(profile.name() + ".db").toString());
+            ConnectionManager.getInstance().shutdown();
+
+            ContactRepository contactRepository = new ContactRepository();
+            MessageRepository messageRepository = MessageRepository.getInstance();
+            contactRepository.createContactsTable();
+            messageRepository.createMessagesTable();
+            messageRepository.createMessageRecipientsTable();
+            Contact self = contactRepository.insertContact(new Contact("self", true)).orElseThrow();
+            Contact contact = contactRepository.insertContact(new Contact("contact", false)).orElseThrow();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < MESSAGES; i++) {
+                Message message = i % 2 == 0 ? new Message(self, contact, "message " + i) : new Message(contact, self, "message " + i);
+                messageRepository.insertMessage(message);
+            }
+            messageRepository.flush();
+            double insertSeconds = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                messageRepository.getConversationHistory(self.getContactId(), contact.getContactId());
+            }
+            double readSeconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%-10s %15.0f %15.1f%n", profile, MESSAGES / insertSeconds, READS / readSeconds);
+        }
+
+        ConnectionManager.getInstance().shutdown();
+    }
+
+}
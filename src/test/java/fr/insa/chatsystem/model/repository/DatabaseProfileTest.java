@@ -0,0 +1,52 @@
+package fr.insa.chatsystem.model.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * JUnit test class for the {@link DatabaseProfile} class.
+ *
+ * <p>
+ * The tests cover the selection of the profile by the "chatsystem.db.profile" system property.
+ * </p>
+ */
+class DatabaseProfileTest {
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("chatsystem.db.profile");
+    }
+
+    /**
+     * Tests that BALANCED is selected when the property is not set.
+     */
+    @Test
+    void testDefaultProfile() {
+        assertEquals(DatabaseProfile.BALANCED, DatabaseProfile.current());
+    }
+
+    /**
+     * Tests that the property selects a profile whatever its case, and that a change of the property is seen.
+     */
+    @Test
+    void testSelectedProfile() {
+        System.setProperty("chatsystem.db.profile", "durable");
+        assertEquals(DatabaseProfile.DURABLE, DatabaseProfile.current());
+
+        System.setProperty("chatsystem.db.profile", "THROUGHPUT");
+        assertEquals(DatabaseProfile.THROUGHPUT, DatabaseProfile.current());
+    }
+
+    /**
+     * Tests that a value that names no profile falls back to BALANCED instead of failing.
+     */
+    @Test
+    void testInvalidProfileFallsBack() {
+        System.setProperty("chatsystem.db.profile", "durabel");
+        assertEquals(DatabaseProfile.BALANCED, DatabaseProfile.current());
+        assertEquals(DatabaseProfile.BALANCED, DatabaseProfile.current());
+    }
+
+}
@@ -0,0 +1,150 @@
+package fr.insa.chatsystem.model.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JUnit test class for the {@link LogSegment} class.
+ *
+ * <p>
+ * The tests append records to segment files in a temporary directory, then open them again as after a restart or
+ * a crash, and check which records the scan finds and where the next record is appended.
+ * </p>
+ */
+class LogSegmentTest {
+    private static final int CAPACITY = 1024;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that the records appended to a segment are found again, in order, when it is opened.
+     */
+    @Test
+    void testAppendAndOpen() throws IOException {
+        Path path = directory.resolve("first.segment");
+        LogSegment segment = LogSegment.create(path, CAPACITY);
+        List<Integer> offsets = new ArrayList<>();
+        for (String record : List.of("first", "second", "third")) {
+            offsets.add(segment.append(encode(record)));
+        }
+        assertEquals("second", decode(segment.payload(offsets.get(1))));
+        segment.close();
+
+        List<Integer> scannedOffsets = new ArrayList<>();
+        List<String> scanned = new ArrayList<>();
+        LogSegment opened = LogSegment.open(path, (offset, payload) -> {
+            scannedOffsets.add(offset);
+            scanned.add(decode(payload));
+        });
+
+        assertEquals(List.of("first", "second", "third"), scanned);
+        assertEquals(offsets, scannedOffsets);
+        assertEquals(offsets.get(2) + LogSegment.RECORD_HEADER_BYTES + "third".length(), opened.append(encode("fourth")));
+        opened.close();
+    }
+
+    /**
+     * Tests that a torn last record, whose payload does not match its checksum, is dropped when the segment is
+     * opened, and that the next record is appended in its place.
+     */
+    @Test
+    void testTornRecordTruncated() throws IOException {
+        Path path = directory.resolve("torn.segment");
+        LogSegment segment = LogSegment.create(path, CAPACITY);
+        segment.append(encode("first"));
+        segment.append(encode("second"));
+        int tornOffset = segment.append(encode("third"));
+        segment.close();
+        corrupt(path, tornOffset + LogSegment.RECORD_HEADER_BYTES + 1);
+
+        List<String> scanned = new ArrayList<>();
+        LogSegment opened = LogSegment.open(path, (offset, payload) -> scanned.add(decode(payload)));
+        assertEquals(List.of("first", "second"), scanned);
+        assertEquals(tornOffset, opened.append(encode("replacement")));
+        opened.close();
+
+        scanned.clear();
+        LogSegment reopened = LogSegment.open(path, (offset, payload) -> scanned.add(decode(payload)));
+        assertEquals(List.of("first", "second", "replacement"), scanned);
+        reopened.close();
+    }
+
+    /**
+     * Tests that a torn record is forgotten even if nothing is appended after it, so that a later scan still stops
+     * before it, and that a length running past the end of the segment ends the scan.
+     */
+    @Test
+    void testTornRecordForgotten() throws IOException {
+        Path path = directory.resolve("forgotten.segment");
+        LogSegment segment = LogSegment.create(path, CAPACITY);
+        segment.append(encode("first"));
+        int tornOffset = segment.append(encode("second"));
+        segment.close();
+        corrupt(path, tornOffset + 4);
+
+        LogSegment.open(path, (offset, payload) -> {
+        }).close();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            channel.read(length, tornOffset);
+            assertEquals(0, length.flip().getInt());
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, CAPACITY), tornOffset);
+        }
+        List<String> scanned = new ArrayList<>();
+        LogSegment.open(path, (offset, payload) -> scanned.add(decode(payload))).close();
+        assertEquals(List.of("first"), scanned);
+    }
+
+    /**
+     * Tests that a segment accepts records until its capacity is used up.
+     */
+    @Test
+    void testHasRoom() throws IOException {
+        LogSegment segment = LogSegment.create(directory.resolve("full.segment"), 64);
+        assertTrue(segment.hasRoom(64 - LogSegment.RECORD_HEADER_BYTES));
+        assertFalse(segment.hasRoom(64 - LogSegment.RECORD_HEADER_BYTES + 1));
+
+        segment.append(ByteBuffer.allocate(24));
+        assertTrue(segment.hasRoom(24));
+        assertFalse(segment.hasRoom(25));
+        segment.close();
+    }
+
+    private static ByteBuffer encode(String record) {
+        return ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(ByteBuffer payload) {
+        return StandardCharsets.UTF_8.decode(payload.duplicate()).toString();
+    }
+
+    /**
+     * Flips the bits of one byte of a segment file, as a write interrupted by a crash would leave it.
+     */
+    private static void corrupt(Path path, int position) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer octet = ByteBuffer.allocate(1);
+            channel.read(octet, position);
+            octet.put(0, (byte) ~octet.get(0)).rewind();
+            channel.write(octet, position);
+        }
+    }
+
+}
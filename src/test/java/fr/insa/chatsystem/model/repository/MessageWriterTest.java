@@ -0,0 +1,149 @@
+package fr.insa.chatsystem.model.repository;
+
+import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.message.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * JUnit test class for the {@link MessageWriter} class.
+ *
+ * <p>
+ * The tests write messages in a temporary database and check which messages are stored and handed to the committed
+ * callback, when a batch holds a message that can not be written.
+ * </p>
+ */
+class MessageWriterTest {
+    private final List<Message> committed = new CopyOnWriteArrayList<>();
+    private SQLiteConnector sqLiteConnector;
+    private MessageWriter messageWriter;
+    private Contact sender;
+    private Contact receiver;
+
+    /**
+     * Sets up a temporary database with two contacts, and a writer whose batches stay open long enough to gather
+     * every message of a test.
+     */
+    @BeforeEach
+    void setUp(@TempDir Path directory) {
+        System.setProperty("chatsystem.db.path", directory.resolve("writer.db").toString());
+        System.setProperty("chatsystem.db.batch.millis", "10000");
+        ContactRepository contactRepository = new ContactRepository();
+        sender = contactRepository.insertContact(new Contact("sender", true)).orElseThrow();
+        receiver = contactRepository.insertContact(new Contact("receiver", false)).orElseThrow();
+        sqLiteConnector = new SQLiteConnector();
+        messageWriter = new MessageWriter(sqLiteConnector, committed::add);
+    }
+
+    @AfterEach
+    void tearDown() {
+        messageWriter.shutdown();
+        ConnectionManager.getInstance().shutdown();
+        System.clearProperty("chatsystem.db.batch.millis");
+        System.clearProperty("chatsystem.db.path");
+    }
+
+    /**
+     * Tests that the messages of a batch are committed together and handed to the callback with their messageId.
+     */
+    @Test
+    void testWriteBatch() {
+        Message first = new Message(sender, receiver, "first");
+        Message second = new Message(receiver, sender, "second");
+        messageWriter.enqueue(first);
+        messageWriter.enqueue(second);
+        messageWriter.flush();
+
+        assertEquals(List.of("first", "second"), storedContents());
+        assertEquals(List.of(first, second), committed);
+        assertNotNull(first.getMessageId());
+        assertNotNull(second.getMessageId());
+    }
+
+    /**
+     * Tests that a message that can not be written is the only message of its batch that is lost, and that the
+     * writer goes on writing the messages queued after it.
+     */
+    @Test
+    void testBadMessageDoesNotStopLaterInserts() {
+        Message before = new Message(sender, receiver, "before");
+        Message bad = new Message(null, receiver, "bad");
+        Message after = new Message(sender, receiver, "after");
+        messageWriter.enqueue(before);
+        messageWriter.enqueue(bad);
+        messageWriter.enqueue(after);
+        messageWriter.flush();
+
+        assertEquals(List.of("before", "after"), storedContents());
+        assertEquals(List.of(before, after), committed);
+        assertNull(bad.getMessageId());
+
+        messageWriter.enqueue(new Message(null, receiver, "bad again"));
+        messageWriter.flush();
+        Message later = new Message(receiver, sender, "later");
+        messageWriter.enqueue(later);
+        messageWriter.flush();
+
+        assertEquals(List.of("before", "after", "later"), storedContents());
+        assertEquals(List.of(before, after, later), committed);
+    }
+
+    /**
+     * Tests that a callback that fails for a message does not stop the writer.
+     */
+    @Test
+    void testFailingCallback() {
+        MessageWriter failingWriter = new MessageWriter(sqLiteConnector, message -> {
+            throw new IllegalStateException("observer failure");
+        });
+        try {
+            failingWriter.enqueue(new Message(sender, receiver, "first"));
+            failingWriter.flush();
+            failingWriter.enqueue(new Message(sender, receiver, "second"));
+            failingWriter.flush();
+
+            assertEquals(List.of("first", "second"), storedContents());
+        } finally {
+            failingWriter.shutdown();
+        }
+    }
+
+    /**
+     * Tests that a message whose uid is already stored, earlier in the same batch or in an earlier one, is not stored
+     * again, gets the messageId of the stored message and is not handed to the callback.
+     */
+    @Test
+    void testSameUidStoredOnce() {
+        Message message = new Message(sender, receiver, "message");
+        Message sameBatch = new Message(sender, receiver, "message");
+        sameBatch.setUid(message.getUid());
+        messageWriter.enqueue(message);
+        messageWriter.enqueue(sameBatch);
+        messageWriter.flush();
+        Message laterBatch = new Message(sender, receiver, "message");
+        laterBatch.setUid(message.getUid());
+        messageWriter.enqueue(laterBatch);
+        messageWriter.flush();
+
+        assertEquals(List.of("message"), storedContents());
+        assertEquals(List.of(message), committed);
+        assertEquals(message.getMessageId(), sameBatch.getMessageId());
+        assertEquals(message.getMessageId(), laterBatch.getMessageId());
+    }
+
+    private List<String> storedContents() {
+        return sqLiteConnector.query("SELECT content FROM messages ORDER BY message_id", SQLiteConnector.NO_PARAMETERS,
+                rs -> rs.getString("content"));
+    }
+
+}
@@ -0,0 +1,167 @@
+package fr.insa.chatsystem.model.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * JUnit test class for the {@link SQLiteConnector} class.
+ *
+ * <p>
+ * The tests cover the transactions run on the writer connection: what is committed, and what is rolled back when
+ * a statement fails or the work throws, and the connection streamed queries run on.
+ * </p>
+ */
+class SQLiteConnectorTest {
+    private static final String INSERT = "INSERT INTO items(name) VALUES (?)";
+
+    private SQLiteConnector sqLiteConnector;
+
+    /**
+     * Sets up an empty table in a temporary database.
+     */
+    @BeforeEach
+    void setUp(@TempDir Path directory) {
+        System.setProperty("chatsystem.db.path", directory.resolve("connector.db").toString());
+        sqLiteConnector = new SQLiteConnector();
+        sqLiteConnector.execute("CREATE TABLE items (name TEXT NOT NULL UNIQUE)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ConnectionManager.getInstance().shutdown();
+        System.clearProperty("chatsystem.db.path");
+    }
+
+    /**
+     * Tests that the statements of a transaction are committed together.
+     */
+    @Test
+    void testCommit() {
+        Integer result = sqLiteConnector.inTransaction(transaction -> {
+            transaction.update(INSERT, ps -> ps.setString(1, "a"));
+            transaction.update(INSERT, ps -> ps.setString(1, "b"));
+            return 2;
+        });
+
+        assertEquals(2, result);
+        assertEquals(List.of("a", "b"), names());
+    }
+
+    /**
+     * Tests that a failed statement rolls back the statements run before it.
+     */
+    @Test
+    void testRollbackOnSQLException() {
+        Integer result = sqLiteConnector.inTransaction(transaction -> {
+            transaction.update(INSERT, ps -> ps.setString(1, "a"));
+            transaction.update(INSERT, ps -> ps.setString(1, "a"));
+            return 2;
+        });
+
+        assertNull(result);
+        assertEquals(List.of(), names());
+    }
+
+    /**
+     * Tests that an unchecked exception thrown by the work rolls the transaction back and is rethrown, and that the
+     * writer connection is back in auto-commit mode afterwards.
+     */
+    @Test
+    void testRollbackOnRuntimeException() {
+        IllegalStateException failure = new IllegalStateException("failure");
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> sqLiteConnector.inTransaction(transaction -> {
+            transaction.update(INSERT, ps -> ps.setString(1, "a"));
+            throw failure;
+        }));
+
+        assertSame(failure, thrown);
+        assertEquals(List.of(), names());
+        assertEquals(1, sqLiteConnector.update(INSERT, ps -> ps.setString(1, "b")));
+        assertEquals(List.of("b"), names());
+    }
+
+    /**
+     * Tests that a failure of work that joined a transaction rolls back the whole transaction, even though the
+     * outermost work went on.
+     */
+    @Test
+    void testJoinedFailureRollsBackTransaction() {
+        Integer result = sqLiteConnector.inTransaction(transaction -> {
+            transaction.update(INSERT, ps -> ps.setString(1, "a"));
+            assertEquals(-1, sqLiteConnector.update(INSERT, ps -> ps.setString(1, "a")));
+            assertNull(sqLiteConnector.inTransaction(joined -> joined.update(INSERT, ps -> ps.setString(1, "a"))));
+            transaction.update(INSERT, ps -> ps.setString(1, "b"));
+            return 2;
+        });
+
+        assertNull(result);
+        assertEquals(List.of(), names());
+
+        Integer changed = sqLiteConnector.inTransaction(transaction -> transaction.update(INSERT, ps -> ps.setString(1, "c")));
+        assertEquals(1, changed);
+        assertEquals(List.of("c"), names());
+    }
+
+    /**
+     * Tests that an unchecked exception thrown by joined work rolls back the whole transaction, even if the outermost
+     * work catches it.
+     */
+    @Test
+    void testJoinedRuntimeExceptionRollsBackTransaction() {
+        Integer result = sqLiteConnector.inTransaction(transaction -> {
+            transaction.update(INSERT, ps -> ps.setString(1, "a"));
+            assertThrows(IllegalStateException.class, () -> sqLiteConnector.inTransaction(joined -> {
+                throw new IllegalStateException("failure");
+            }));
+            return 1;
+        });
+
+        assertNull(result);
+        assertEquals(List.of(), names());
+    }
+
+    /**
+     * Tests that a stream opened while holding the write lock reads on the connection of the thread, not on the
+     * writer connection, so it does not see the uncommitted rows and can be consumed once the lock is released.
+     */
+    @Test
+    void testStreamReadsOnThreadConnection() {
+        sqLiteConnector.update(INSERT, ps -> ps.setString(1, "b"));
+        Stream<String> stream = sqLiteConnector.inTransaction(transaction -> {
+            transaction.update(INSERT, ps -> ps.setString(1, "a"));
+            try (Stream<String> uncommitted = streamNames()) {
+                assertEquals(List.of("b"), uncommitted.toList());
+            }
+            return streamNames();
+        });
+
+        try (stream) {
+            assertEquals("b", stream.reduce((first, last) -> last).orElseThrow());
+        }
+        try (Stream<String> committed = streamNames()) {
+            assertEquals(List.of("a", "b"), committed.toList());
+        }
+    }
+
+    private Stream<String> streamNames() {
+        return sqLiteConnector.stream("SELECT name FROM items ORDER BY name", SQLiteConnector.NO_PARAMETERS,
+                rs -> rs.getString("name"));
+    }
+
+    private List<String> names() {
+        return sqLiteConnector.query("SELECT name FROM items ORDER BY name", SQLiteConnector.NO_PARAMETERS,
+                rs -> rs.getString("name"));
+    }
+
+}
@@ -0,0 +1,215 @@
+package fr.insa.chatsystem.model.repository;
+
+import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.message.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JUnit test class for the {@link SegmentLogMessageStore} class.
+ *
+ * <p>
+ * The tests store messages in small segments in a temporary directory, the contacts being read from a temporary
+ * database, and check the messages read back through the indexes, before and after the log is opened again.
+ * </p>
+ */
+class SegmentLogMessageStoreTest {
+    private static final int SEGMENT_BYTES = 256;
+
+    @TempDir
+    Path directory;
+
+    private SegmentLogMessageStore messageStore;
+    private Contact self;
+    private Contact first;
+    private Contact second;
+
+    /**
+     * Sets up a log of small segments and three contacts.
+     */
+    @BeforeEach
+    void setUp() {
+        System.setProperty("chatsystem.db.path", directory.resolve("log.db").toString());
+        System.setProperty("chatsystem.log.path", directory.resolve("log").toString());
+        System.setProperty("chatsystem.log.segment.bytes", String.valueOf(SEGMENT_BYTES));
+        ContactRepository contactRepository = new ContactRepository();
+        self = contactRepository.insertContact(new Contact("self", true)).orElseThrow();
+        first = contactRepository.insertContact(new Contact("first", false)).orElseThrow();
+        second = contactRepository.insertContact(new Contact("second", false)).orElseThrow();
+        messageStore = new SegmentLogMessageStore();
+    }
+
+    @AfterEach
+    void tearDown() {
+        messageStore.shutdown();
+        ConnectionManager.getInstance().shutdown();
+        System.clearProperty("chatsystem.log.segment.bytes");
+        System.clearProperty("chatsystem.log.path");
+        System.clearProperty("chatsystem.db.path");
+    }
+
+    /**
+     * Tests that the messages of two interleaved conversations are numbered in order and read back per conversation,
+     * with their sender and receiver.
+     */
+    @Test
+    void testInsertAndRead() {
+        List<Message> observed = new ArrayList<>();
+        messageStore.addObserver(observed::add);
+        Message sent = new Message(self, first, "to first");
+        Message other = new Message(second, self, "from second");
+        Message received = new Message(first, self, "from first");
+        messageStore.insertMessage(sent);
+        messageStore.insertMessage(other);
+        messageStore.insertMessage(received);
+
+        assertEquals(List.of(1, 2, 3), List.of(sent.getMessageId(), other.getMessageId(), received.getMessageId()));
+        assertEquals(List.of(sent, other, received), observed);
+        List<Message> history = messageStore.getConversationHistory(self.getContactId(), first.getContactId());
+        assertEquals(List.of("to first", "from first"), contents(history));
+        assertEquals("self", history.get(0).getSenderContact().getUsername());
+        assertEquals("first", history.get(0).getReceiverContact().getUsername());
+        assertEquals("first", history.get(1).getSenderContact().getUsername());
+        assertEquals(received.getTimestamp(), history.get(1).getTimestamp());
+        assertEquals(List.of("from second"), contents(messageStore.getConversationHistory(self.getContactId(), second.getContactId())));
+    }
+
+    /**
+     * Tests that the log rolls to a new segment when the last one is full, and that a conversation spread over
+     * several segments is read back whole.
+     */
+    @Test
+    void testSegmentRoll() throws IOException {
+        List<String> expected = insert(40);
+
+        assertTrue(segmentCount() > 1);
+        assertEquals(expected, contents(messageStore.getConversationHistory(self.getContactId(), first.getContactId())));
+        try (Stream<Message> messages = messageStore.streamConversationHistory(self.getContactId(), first.getContactId())) {
+            assertEquals(expected, contents(messages.toList()));
+        }
+
+        Message large = new Message(self, first, "x".repeat(SEGMENT_BYTES * 2));
+        messageStore.insertMessage(large);
+        assertEquals(41, large.getMessageId());
+        assertEquals(large.getContent(), messageStore.getLatestMessages(self.getContactId(), first.getContactId(), 1).get(0).getContent());
+    }
+
+    /**
+     * Tests that the indexes are rebuilt from the segments when the log is opened again, and that the numbering of
+     * the messages goes on from the last one.
+     */
+    @Test
+    void testReopen() throws IOException {
+        List<String> expected = insert(40);
+        int segments = segmentCount();
+        messageStore.shutdown();
+
+        SegmentLogMessageStore reopened = new SegmentLogMessageStore();
+        try {
+            assertEquals(expected, contents(reopened.getConversationHistory(self.getContactId(), first.getContactId())));
+            Message next = new Message(first, self, "after reopen");
+            reopened.insertMessage(next);
+            assertEquals(41, next.getMessageId());
+            assertEquals(segments, segmentCount());
+        } finally {
+            reopened.shutdown();
+        }
+    }
+
+    /**
+     * Tests paging backwards through a conversation: every page holds the messages just before the oldest message
+     * of the previous page, whether or not that message_id belongs to the conversation.
+     */
+    @Test
+    void testPaging() {
+        List<Message> conversation = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Message message = new Message(self, first, "message " + i);
+            messageStore.insertMessage(message);
+            conversation.add(message);
+            messageStore.insertMessage(new Message(second, self, "other " + i));
+        }
+
+        List<Message> page = messageStore.getLatestMessages(self.getContactId(), first.getContactId(), 4);
+        assertEquals(List.of("message 6", "message 7", "message 8", "message 9"), contents(page));
+        page = messageStore.getMessagesBefore(self.getContactId(), first.getContactId(), page.get(0).getMessageId(), 4);
+        assertEquals(List.of("message 2", "message 3", "message 4", "message 5"), contents(page));
+        page = messageStore.getMessagesBefore(self.getContactId(), first.getContactId(), page.get(0).getMessageId(), 4);
+        assertEquals(List.of("message 0", "message 1"), contents(page));
+        page = messageStore.getMessagesBefore(self.getContactId(), first.getContactId(), page.get(0).getMessageId(), 4);
+        assertEquals(List.of(), page);
+
+        int otherMessageId = conversation.get(5).getMessageId() + 1;
+        assertEquals(List.of("message 4", "message 5"),
+                contents(messageStore.getMessagesBefore(self.getContactId(), first.getContactId(), otherMessageId, 2)));
+        assertEquals(List.of(), messageStore.getLatestMessages(first.getContactId(), second.getContactId(), 4));
+    }
+
+    /**
+     * Tests that a message inserted twice with the same uid is appended once, also after the log is opened again,
+     * and that the messages read back carry their uid.
+     */
+    @Test
+    void testSameUidStoredOnce() {
+        List<Message> observed = new ArrayList<>();
+        messageStore.addObserver(observed::add);
+        Message received = new Message(first, self, "content");
+        Message duplicate = new Message(first, self, "content");
+        duplicate.setUid(received.getUid());
+        messageStore.insertMessage(received);
+        messageStore.insertMessage(duplicate);
+
+        assertEquals(List.of(received), observed);
+        assertEquals(received.getMessageId(), duplicate.getMessageId());
+        List<Message> history = messageStore.getConversationHistory(self.getContactId(), first.getContactId());
+        assertEquals(1, history.size());
+        assertEquals(received.getUid(), history.get(0).getUid());
+        assertEquals("content", history.get(0).getContent());
+        messageStore.shutdown();
+
+        SegmentLogMessageStore reopened = new SegmentLogMessageStore();
+        try {
+            Message retransmitted = new Message(first, self, "content");
+            retransmitted.setUid(received.getUid());
+            reopened.insertMessage(retransmitted);
+
+            assertEquals(received.getMessageId(), retransmitted.getMessageId());
+            assertEquals(1, reopened.getConversationHistory(self.getContactId(), first.getContactId()).size());
+        } finally {
+            reopened.shutdown();
+        }
+    }
+
+    private List<String> insert(int count) {
+        List<String> contents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Message message = i % 2 == 0 ? new Message(self, first, "message " + i) : new Message(first, self, "message " + i);
+            messageStore.insertMessage(message);
+            contents.add(message.getContent());
+        }
+        return contents;
+    }
+
+    private int segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory.resolve("log"))) {
+            return (int) files.count();
+        }
+    }
+
+    private static List<String> contents(List<Message> messages) {
+        return messages.stream().map(Message::getContent).toList();
+    }
+
+}
@@ -5,6 +5,7 @@ import fr.insa.chatsystem.model.contact.ContactList;
 import fr.insa.chatsystem.model.repository.ContactRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -18,6 +19,7 @@ import java.util.Optional;
 import static fr.insa.chatsystem.Main.self;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.*;
 
 /**
@@ -55,7 +57,7 @@ public class ContactServiceTest {
             throw new RuntimeException(e);
         }
 
-        contactService = new ContactService(contactRepository);
+        contactService = new ContactService(contactRepository, new ContactCache(16), new ConversationCache(16, 1024));
     }
 
     /**
@@ -74,13 +76,51 @@ public class ContactServiceTest {
      */
     @Test
     void testContactExistsInDatabase() {
-        Contact contact = new Contact("Existing Contact", false);
-        List<Contact> contacts = List.of(self, contact);
+        when(contactRepository.getUsernames(anyInt())).thenReturn(List.of(self.getUsername(), "Existing Contact"));
 
-        when(contactRepository.getAllContacts()).thenReturn(contacts);
+        assertTrue(contactService.contactExistsInDatabase("Existing Contact"));
+        assertFalse(contactService.contactExistsInDatabase("NonExisting Contact"));
+        assertFalse(contactService.contactExistsInDatabase(self.getUsername()));
+        verify(contactRepository, times(1)).getUsernames(anyInt());
+    }
+
+    /**
+     * Tests the existence check of a contact inserted or renamed after the usernames were loaded.
+     * Verifies that the set of usernames follows the changes made through the ContactService.
+     */
+    @Test
+    void testContactExistsInDatabaseAfterChanges() {
+        when(contactRepository.getUsernames(anyInt())).thenReturn(List.of("Existing Contact"));
+        when(contactRepository.getContactByUsername("Existing Contact")).thenReturn(Optional.of(new Contact(2, "Existing Contact", 0)));
+        assertFalse(contactService.contactExistsInDatabase("New Contact"));
+
+        Contact newContact = new Contact("New Contact", false);
+        when(contactRepository.insertContact(newContact)).thenReturn(Optional.of(new Contact(3, "New Contact", 0)));
+        contactService.insertContact(newContact);
+        assertTrue(contactService.contactExistsInDatabase("New Contact"));
+
+        Contact renamedContact = contactService.getContactByUsername("Existing Contact").orElseThrow();
+        renamedContact.setUsername("Renamed Contact");
+        when(contactRepository.updateContact(renamedContact)).thenReturn(Optional.of(new Contact(2, "Renamed Contact", 0)));
+        contactService.updateContact(renamedContact);
+        assertTrue(contactService.contactExistsInDatabase("Renamed Contact"));
+        assertFalse(contactService.contactExistsInDatabase("Existing Contact"));
+        verify(contactRepository, times(1)).getUsernames(anyInt());
+    }
+
+    /**
+     * Tests the existence check of a contact when the database has too many contacts to keep their usernames in memory.
+     * Verifies that the ContactService asks the database instead.
+     */
+    @Test
+    void testContactExistsInLargeDatabase() {
+        List<String> usernames = java.util.Collections.nCopies(ContactService.DEFAULT_USERNAME_SET_LIMIT + 1, "Contact");
+        when(contactRepository.getUsernames(anyInt())).thenReturn(usernames);
+        when(contactRepository.contactExistsByUsername("Existing Contact")).thenReturn(true);
 
         assertTrue(contactService.contactExistsInDatabase("Existing Contact"));
         assertFalse(contactService.contactExistsInDatabase("NonExisting Contact"));
+        verify(contactRepository, times(1)).contactExistsByUsername("NonExisting Contact");
     }
 
     /**
@@ -180,4 +220,63 @@ public class ContactServiceTest {
         assertEquals(contact.getUsername(), updatedContact.get().getUsername());
         assertEquals(contact.getContactId(), updatedContact.get().getContactId());
     }
+
+    /**
+     * Tests the lookup of a contact that was already read.
+     * Verifies that the ContactService reads it from the database once and that callers get their own copies.
+     */
+    @Test
+    void testGetContactByUsernameIsCached() {
+        when(contactRepository.getContactByUsername("Cached Contact")).thenReturn(Optional.of(new Contact(2, "Cached Contact", 0)));
+
+        Contact first = contactService.getContactByUsername("Cached Contact").orElseThrow();
+        first.setUsername("Changed by the caller");
+        Contact second = contactService.getContactByUsername("Cached Contact").orElseThrow();
+
+        assertEquals("Cached Contact", second.getUsername());
+        assertEquals(2, second.getContactId());
+        verify(contactRepository, times(1)).getContactByUsername("Cached Contact");
+    }
+
+    /**
+     * Tests the lookup of a contact after it was renamed.
+     * Verifies that the contact is found under its new username without reading the database,
+     * and is no longer found under its previous one.
+     */
+    @Test
+    void testRenamedContactIsInvalidated() {
+        when(contactRepository.getContactByUsername("Previous Name")).thenReturn(Optional.of(new Contact(2, "Previous Name", 0)));
+        Contact contact = contactService.getContactByUsername("Previous Name").orElseThrow();
+
+        contact.setUsername("New Name");
+        when(contactRepository.updateContact(contact)).thenReturn(Optional.of(new Contact(2, "New Name", 0)));
+        contactService.updateContact(contact);
+        when(contactRepository.getContactByUsername("Previous Name")).thenReturn(Optional.empty());
+
+        assertEquals(2, contactService.getContactByUsername("New Name").orElseThrow().getContactId());
+        assertFalse(contactService.getContactByUsername("Previous Name").isPresent());
+        verify(contactRepository, never()).getContactByUsername("New Name");
+    }
+
+    /**
+     * Tests the asynchronous retrieval of a contact by username.
+     * Verifies that a contact missing from the cache is read on the database thread, in the order the work was
+     * submitted.
+     */
+    @Test
+    void testGetContactByUsernameAsync() {
+        when(contactRepository.insertContact(any())).thenReturn(Optional.of(new Contact(3, "Inserted Contact", 0)));
+        when(contactRepository.getContactByUsername("Async Contact")).thenAnswer(invocation -> {
+            assertEquals("database", Thread.currentThread().getName());
+            return Optional.of(new Contact(2, "Async Contact", 0));
+        });
+
+        contactService.insertContactAsync(new Contact("Inserted Contact", false));
+        Optional<Contact> contact = contactService.getContactByUsernameAsync("Async Contact").join();
+
+        assertEquals(2, contact.orElseThrow().getContactId());
+        InOrder inOrder = inOrder(contactRepository);
+        inOrder.verify(contactRepository).insertContact(any());
+        inOrder.verify(contactRepository).getContactByUsername("Async Contact");
+    }
 }
@@ -0,0 +1,159 @@
+package fr.insa.chatsystem.model.service;
+
+import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.message.Message;
+import fr.insa.chatsystem.model.repository.MaintenanceRepository;
+import fr.insa.chatsystem.model.repository.MessageArchiveRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+import java.util.Map;
+
+import static fr.insa.chatsystem.Main.self;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * JUnit test class for the {@link MaintenanceScheduler} class.
+ *
+ * <p>
+ * The tests cover the retention rules, deleted in batches, and the compaction of the database when the node is idle.
+ * </p>
+ *
+ * <p>
+ * The tests utilize Mockito to create mock objects for the MaintenanceRepository and the MessageArchiveRepository.
+ * </p>
+ */
+class MaintenanceSchedulerTest {
+    private MaintenanceScheduler maintenanceScheduler;
+    private ConversationCache conversationCache;
+    @Mock
+    private MaintenanceRepository maintenanceRepository;
+    @Mock
+    private MessageArchiveRepository messageArchiveRepository;
+
+    /**
+     * Sets up the logged-in user and a new MaintenanceScheduler before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        self = new Contact(1, "self", 1);
+        MockitoAnnotations.openMocks(this);
+        conversationCache = new ConversationCache(16, 1 << 20);
+        maintenanceScheduler = new MaintenanceScheduler(maintenanceRepository, messageArchiveRepository, conversationCache);
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("chatsystem.maintenance.idle.seconds");
+        System.clearProperty("chatsystem.maintenance.vacuum.convert");
+    }
+
+    /**
+     * Tests that messages older than the maximum age are deleted in batches, archived ones included, and that the
+     * conversation cache is cleared.
+     */
+    @Test
+    void testMaintainMaxAge() {
+        conversationCache.put(2, List.of(new Message(1, "content")), conversationCache.stamp());
+        when(maintenanceRepository.deleteMessagesBefore(anyLong(), anyInt())).thenReturn(500, 500, 120);
+        when(messageArchiveRepository.deleteBlocksBefore(anyLong())).thenReturn(1000);
+
+        int deleted = maintenanceScheduler.maintain(new RetentionPolicy(30, -1, -1));
+
+        assertEquals(2120, deleted);
+        verify(maintenanceRepository, times(3)).deleteMessagesBefore(anyLong(), eq(MaintenanceScheduler.DEFAULT_BATCH_SIZE));
+        assertTrue(conversationCache.getLatestMessages(2, 1).isEmpty());
+    }
+
+    /**
+     * Tests that only the messages beyond the maximum of a conversation are deleted.
+     */
+    @Test
+    void testMaintainMaxMessagesPerContact() {
+        when(maintenanceRepository.getConversationsLargerThan(1, 100)).thenReturn(Map.of(2, 1200));
+        when(maintenanceRepository.deleteOldestMessages(eq(1), eq(2), anyInt())).thenAnswer(invocation -> invocation.getArgument(2));
+
+        int deleted = maintenanceScheduler.maintain(new RetentionPolicy(-1, 100, -1));
+
+        assertEquals(1100, deleted);
+        verify(maintenanceRepository, times(2)).deleteOldestMessages(1, 2, 500);
+        verify(maintenanceRepository).deleteOldestMessages(1, 2, 100);
+        verify(maintenanceRepository, never()).deleteMessagesBefore(anyLong(), anyInt());
+    }
+
+    /**
+     * Tests that the free pages are released and the write-ahead log checkpointed when the node is idle, and that
+     * nothing is done while messages are being inserted.
+     */
+    @Test
+    void testCompactWhenIdle() {
+        RetentionPolicy policy = new RetentionPolicy(30, -1, -1);
+        when(maintenanceRepository.isIncrementalVacuumEnabled()).thenReturn(true);
+        when(maintenanceRepository.getFreePages()).thenReturn(2500L, 1476L, 452L, 0L);
+
+        maintenanceScheduler.messageInserted(new Message(1, "content"));
+        maintenanceScheduler.maintain(policy);
+        verify(maintenanceRepository, never()).incrementalVacuum(anyInt());
+        verify(maintenanceRepository, never()).checkpoint();
+
+        System.setProperty("chatsystem.maintenance.idle.seconds", "0");
+        maintenanceScheduler.maintain(policy);
+        verify(maintenanceRepository, times(3)).incrementalVacuum(anyInt());
+        verify(maintenanceRepository).checkpoint();
+        verify(maintenanceRepository, never()).enableIncrementalVacuum();
+    }
+
+    /**
+     * Tests that the database is left alone when no retention rule is enabled, even if the node is idle.
+     */
+    @Test
+    void testNoCompactionWithoutRetention() {
+        System.setProperty("chatsystem.maintenance.idle.seconds", "0");
+        when(maintenanceRepository.getFreePages()).thenReturn(2500L);
+
+        assertEquals(0, maintenanceScheduler.maintain(RetentionPolicy.KEEP_ALL));
+        verifyNoInteractions(maintenanceRepository, messageArchiveRepository);
+    }
+
+    /**
+     * Tests that a database created before incremental vacuum is only converted when the conversion is enabled.
+     */
+    @Test
+    void testConversionOptIn() {
+        RetentionPolicy policy = new RetentionPolicy(30, -1, -1);
+        System.setProperty("chatsystem.maintenance.idle.seconds", "0");
+        when(maintenanceRepository.isIncrementalVacuumEnabled()).thenReturn(false);
+        when(maintenanceRepository.getFreePages()).thenReturn(2500L, 0L);
+
+        maintenanceScheduler.maintain(policy);
+        verify(maintenanceRepository, never()).enableIncrementalVacuum();
+        verify(maintenanceRepository, never()).incrementalVacuum(anyInt());
+        verify(maintenanceRepository).checkpoint();
+
+        System.setProperty("chatsystem.maintenance.vacuum.convert", "true");
+        maintenanceScheduler.maintain(policy);
+        verify(maintenanceRepository).enableIncrementalVacuum();
+        verify(maintenanceRepository).incrementalVacuum(anyInt());
+    }
+
+    /**
+     * Tests that messages read from the database while the cache is cleared are not cached.
+     */
+    @Test
+    void testClearInvalidatesStamp() {
+        long stamp = conversationCache.stamp();
+        conversationCache.clear();
+        conversationCache.put(2, List.of(new Message(1, "content")), stamp);
+
+        assertTrue(conversationCache.getLatestMessages(2, 1).isEmpty());
+    }
+
+}
@@ -0,0 +1,131 @@
+package fr.insa.chatsystem.model.service;
+
+import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.message.Message;
+import fr.insa.chatsystem.model.message.MessageSearchResult;
+import fr.insa.chatsystem.model.repository.ConnectionManager;
+import fr.insa.chatsystem.model.repository.ContactRepository;
+import fr.insa.chatsystem.model.repository.MessageArchiveRepository;
+import fr.insa.chatsystem.model.repository.MessageRepository;
+import fr.insa.chatsystem.model.repository.MessageSearchRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * JUnit test class for the {@link MessageSearchService} class.
+ *
+ * <p>
+ * The tests cover the translation of the words typed by the user into a full-text query, the paging of the results
+ * and the search of the archived messages.
+ * </p>
+ *
+ * <p>
+ * The tests utilize Mockito to create a mock object for the MessageSearchRepository, allowing controlled testing
+ * of the MessageSearchService's behavior.
+ * </p>
+ */
+class MessageSearchServiceTest {
+    private MessageSearchService messageSearchService;
+    @Mock
+    private MessageSearchRepository messageSearchRepository;
+
+    /**
+     * Sets up the necessary instances before each test.
+     * Creates a new instance of MessageSearchService and initializes the mock MessageSearchRepository.
+     */
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        messageSearchService = new MessageSearchService(messageSearchRepository);
+    }
+
+    /**
+     * Tests the translation of the words typed by the user into a full-text query.
+     * Verifies that every word is quoted, that quotes are escaped and that only words ending with '*' are prefixes.
+     */
+    @Test
+    void testToMatchQuery() {
+        assertEquals("\"hello\"", MessageSearchService.toMatchQuery("hello"));
+        assertEquals("\"see\" \"you\" \"to-mor\"*", MessageSearchService.toMatchQuery("  see you\tto-mor* "));
+        assertEquals("\"\"\"quoted\"\"\"", MessageSearchService.toMatchQuery("\"quoted\""));
+        assertEquals("\"a*b\"", MessageSearchService.toMatchQuery("a*b *"));
+        assertEquals("", MessageSearchService.toMatchQuery("   "));
+    }
+
+    /**
+     * Tests the paging of the search results.
+     * Verifies that the MessageSearchService skips the results of the previous pages.
+     */
+    @Test
+    void testSearchPage() {
+        List<MessageSearchResult> results = List.of(new MessageSearchResult(new Message(1, "hello"), "[hello]", -1.0));
+        when(messageSearchRepository.search("\"hello\"", 2, 0, Long.MAX_VALUE, 20, 40)).thenReturn(results);
+
+        assertEquals(results, messageSearchService.search("hello", 2, 0, Long.MAX_VALUE, 20, 2));
+    }
+
+    /**
+     * Tests searching a message after it was moved to the archive files, in a database.
+     * Verifies that it is found with its snippet and participants, in its conversation only, and that it is no
+     * longer found once its block is deleted.
+     */
+    @Test
+    void testSearchArchivedMessage(@TempDir Path directory) {
+        System.setProperty("chatsystem.db.path", directory.resolve("search.db").toString());
+        try {
+            ContactRepository contactRepository = new ContactRepository();
+            Contact self = contactRepository.insertContact(new Contact("self", true)).orElseThrow();
+            Contact contact = contactRepository.insertContact(new Contact("contact", false)).orElseThrow();
+            Contact other = contactRepository.insertContact(new Contact("other", false)).orElseThrow();
+            Message archived = new Message(contact, self, "an archived greeting");
+            archived.setTimestamp(1000);
+            MessageRepository.getInstance().insertMessage(archived);
+            MessageRepository.getInstance().insertMessage(new Message(self, contact, "a recent message"));
+            MessageArchiveRepository messageArchiveRepository = new MessageArchiveRepository();
+            assertEquals(1, messageArchiveRepository.archiveMessagesBefore(self.getContactId(), 2000));
+            MessageSearchService searchService = new MessageSearchService(new MessageSearchRepository());
+
+            List<MessageSearchResult> results = searchService.search("greeting", 20, 0);
+
+            assertEquals(1, results.size());
+            assertEquals(archived.getMessageId(), results.get(0).getMessage().getMessageId());
+            assertEquals("an archived greeting", results.get(0).getMessage().getContent());
+            assertEquals("contact", results.get(0).getMessage().getSenderContact().getUsername());
+            assertEquals("self", results.get(0).getMessage().getReceiverContact().getUsername());
+            assertEquals("an archived [greeting]", results.get(0).getSnippet());
+            assertEquals(1, searchService.search("greeting", contact.getContactId(), 0, Long.MAX_VALUE, 20, 0).size());
+            assertTrue(searchService.search("greeting", other.getContactId(), 0, Long.MAX_VALUE, 20, 0).isEmpty());
+            assertTrue(searchService.search("greeting", contact.getContactId(), 2000, Long.MAX_VALUE, 20, 0).isEmpty());
+            assertEquals(1, searchService.search("recent", 20, 0).size());
+
+            assertEquals(1, messageArchiveRepository.deleteBlocksBefore(2000));
+            assertTrue(searchService.search("greeting", 20, 0).isEmpty());
+        } finally {
+            ConnectionManager.getInstance().shutdown();
+            System.clearProperty("chatsystem.db.path");
+        }
+    }
+
+    /**
+     * Tests a search without any word.
+     * Verifies that the MessageSearchService does not query the repository.
+     */
+    @Test
+    void testSearchBlankText() {
+        assertTrue(messageSearchService.search(" ", 20, 0).isEmpty());
+        verify(messageSearchRepository, never()).search(any(), any(), anyLong(), anyLong(), anyInt(), anyInt());
+    }
+}
@@ -1,10 +1,19 @@
 package fr.insa.chatsystem.model.service;
 
 import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.message.ConversationSummary;
+import fr.insa.chatsystem.model.message.DeliveryStatus;
 import fr.insa.chatsystem.model.message.Message;
+import fr.insa.chatsystem.model.repository.ConnectionManager;
+import fr.insa.chatsystem.model.repository.ContactRepository;
+import fr.insa.chatsystem.model.repository.ConversationSummaryRepository;
+import fr.insa.chatsystem.model.repository.MessageArchiveRepository;
 import fr.insa.chatsystem.model.repository.MessageRepository;
+import fr.insa.chatsystem.model.repository.MessageStore;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -12,12 +21,18 @@ import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import static fr.insa.chatsystem.Main.self;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -37,6 +52,10 @@ class MessageServiceTest {
     private MessageService messageService;
     @Mock
     private MessageRepository messageRepository;
+    @Mock
+    private MessageArchiveRepository messageArchiveRepository;
+    @Mock
+    private ConversationSummaryRepository conversationSummaryRepository;
 
     /**
      * Sets up the necessary instances and environment before each test.
@@ -53,7 +72,8 @@ class MessageServiceTest {
         }
 
         MockitoAnnotations.openMocks(this);
-        messageService = new MessageService(messageRepository);
+        messageService = new MessageService(messageRepository, messageRepository, messageArchiveRepository, new ConversationCache(2, 1 << 20),
+                conversationSummaryRepository);
     }
 
     /**
@@ -74,6 +94,156 @@ class MessageServiceTest {
         assertEquals(conversationHistory.get(1).getMessageId(), retrievedConversationHistory.get(1).getMessageId());
     }
 
+    /**
+     * Tests that the archived messages are merged with the messages of the store in message_id order,
+     * when the two interleave.
+     */
+    @Test
+    void testGetMessageHistoryWithArchive() {
+        Message first = new Message(1, "first");
+        Message second = new Message(2, "second");
+        Message third = new Message(3, "third");
+        Message fourth = new Message(4, "fourth");
+        Message fifth = new Message(5, "fifth");
+        when(messageArchiveRepository.getArchivedMessages(self.getContactId(), 2, 0, Integer.MAX_VALUE, Integer.MAX_VALUE))
+                .thenReturn(new java.util.ArrayList<>(List.of(first, fourth)));
+        when(messageRepository.getConversationHistory(self.getContactId(), 2)).thenReturn(List.of(second, third, fifth));
+
+        assertEquals(List.of(first, second, third, fourth, fifth), messageService.getMessageHistory(2));
+    }
+
+    /**
+     * Tests the retrieval of the latest page of a conversation and of the page before it.
+     * Verifies that the MessageService pages through the conversation between self and the contact.
+     */
+    @Test
+    void testGetMessagesByPage() {
+        List<Message> latest = List.of(new Message(3, "content"), new Message(4, "content"));
+        List<Message> before = List.of(new Message(1, "content"), new Message(2, "content"));
+
+        when(messageRepository.getLatestMessages(self.getContactId(), 2, 2)).thenReturn(latest);
+        when(messageRepository.getMessagesBefore(self.getContactId(), 2, 3, 2)).thenReturn(before);
+
+        assertEquals(latest, messageService.getLatestMessages(2, 2));
+        assertEquals(before, messageService.getMessagesBefore(2, 3, 2));
+    }
+
+    /**
+     * Tests that the latest page of a conversation is read from the database once and then follows the new messages.
+     * Verifies that a message inserted through the MessageService is appended to the cached page once the store
+     * notifies that it is committed, and not before.
+     */
+    @Test
+    void testGetLatestMessagesCached() {
+        Contact contact = new Contact(2, "contact", 0);
+        Message first = new Message(1, "first");
+        Message second = new Message(2, "second");
+        when(messageRepository.getLatestMessages(self.getContactId(), 2, 2)).thenReturn(List.of(first, second));
+        ArgumentCaptor<MessageStore.Observer> observer = ArgumentCaptor.forClass(MessageStore.Observer.class);
+        verify(messageRepository).addObserver(observer.capture());
+
+        assertEquals(List.of(first, second), messageService.getLatestMessages(2, 2));
+        assertEquals(List.of(second), messageService.getLatestMessages(2, 1));
+
+        Message received = new Message(contact, self, "third");
+        messageService.insertMessage(received);
+        assertEquals(List.of(first, second), messageService.getLatestMessages(2, 2));
+
+        received.setMessageId(3);
+        observer.getValue().messageInserted(received);
+
+        assertEquals(List.of(second, received), messageService.getLatestMessages(2, 2));
+        verify(messageRepository, times(1)).getLatestMessages(self.getContactId(), 2, 2);
+    }
+
+    /**
+     * Tests paging back from the messages of the store into the archived messages.
+     * Verifies that a page the store can not fill is completed with the latest archived messages before it.
+     */
+    @Test
+    void testGetMessagesBeforeWithArchive() {
+        Message hot = new Message(5, "content");
+        List<Message> archived = List.of(new Message(2, "content"), new Message(3, "content"));
+
+        when(messageRepository.getMessagesBefore(self.getContactId(), 2, 6, 3)).thenReturn(List.of(hot));
+        when(messageArchiveRepository.getArchivedMessages(self.getContactId(), 2, 0, 6, 3)).thenReturn(archived);
+
+        List<Message> page = messageService.getMessagesBefore(2, 6, 3);
+
+        assertEquals(List.of(2, 3, 5), page.stream().map(Message::getMessageId).toList());
+    }
+
+    /**
+     * Tests the streaming of the message history for a given contact.
+     * Verifies that the MessageService streams the conversation between self and the contact.
+     */
+    @Test
+    void testStreamMessageHistory() {
+        List<Message> conversationHistory = List.of(new Message(1, "content"), new Message(2, "content"));
+
+        when(messageRepository.streamConversationHistory(self.getContactId(), 2)).thenReturn(conversationHistory.stream());
+
+        try (Stream<Message> streamedHistory = messageService.streamMessageHistory(2)) {
+            assertEquals(conversationHistory, streamedHistory.toList());
+        }
+    }
+
+    /**
+     * Tests streaming a message history whose archived part spans several blocks, in a database.
+     * Verifies that the archived messages of every block come first, oldest first, followed by the messages still
+     * in the database.
+     */
+    @Test
+    void testStreamMessageHistoryWithArchiveBlocks(@TempDir Path directory) {
+        System.setProperty("chatsystem.db.path", directory.resolve("stream.db").toString());
+        try {
+            ContactRepository contactRepository = new ContactRepository();
+            self = contactRepository.insertContact(new Contact("self", true)).orElseThrow();
+            Contact contact = contactRepository.insertContact(new Contact("contact", false)).orElseThrow();
+            MessageRepository repository = MessageRepository.getInstance();
+            int archivedCount = MessageArchiveRepository.BLOCK_MESSAGES * 2 + 500;
+            for (int i = 0; i < archivedCount + 3; i++) {
+                Message message = i % 2 == 0 ? new Message(self, contact, "message " + i) : new Message(contact, self, "message " + i);
+                if (i < archivedCount) {
+                    message.setTimestamp(1000 + i);
+                }
+                repository.insertMessage(message);
+            }
+            MessageArchiveRepository messageArchiveRepository = new MessageArchiveRepository();
+            assertEquals(archivedCount, messageArchiveRepository.archiveMessagesBefore(self.getContactId(), 1_000_000));
+            MessageService streamService = new MessageService(repository, repository, messageArchiveRepository,
+                    new ConversationCache(2, 1 << 20), new ConversationSummaryRepository());
+
+            List<Message> streamed;
+            try (Stream<Message> history = streamService.streamMessageHistory(contact.getContactId())) {
+                streamed = history.toList();
+            }
+
+            assertEquals(archivedCount + 3, streamed.size());
+            for (int i = 0; i < streamed.size(); i++) {
+                assertEquals("message " + i, streamed.get(i).getContent());
+            }
+            assertEquals("contact", streamed.get(1).getSenderContact().getUsername());
+            assertEquals(3, repository.getConversationHistory(self.getContactId(), contact.getContactId()).size());
+        } finally {
+            ConnectionManager.getInstance().shutdown();
+            System.clearProperty("chatsystem.db.path");
+        }
+    }
+
+    /**
+     * Tests the retrieval of the messages of a conversation in a time range.
+     * Verifies that the MessageService asks for the range of the conversation between self and the contact.
+     */
+    @Test
+    void testGetMessagesBetween() {
+        List<Message> messages = List.of(new Message(1, "content"));
+
+        when(messageRepository.getMessagesBetween(self.getContactId(), 2, 1000L, 2000L)).thenReturn(messages);
+
+        assertEquals(messages, messageService.getMessagesBetween(2, 1000L, 2000L));
+    }
+
     /**
      * Tests the creation of the 'messages' table in the database.
      * Verifies that the MessageService correctly creates the 'messages' table.
@@ -104,4 +274,190 @@ class MessageServiceTest {
         messageService.insertMessage(message);
         verify(messageRepository, times(1)).insertMessage(message);
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests a MessageService whose messages are kept by another store than the repository.
+     * Verifies that the messages are inserted into and read from the store, and group messages into the repository.
+     */
+    @Test
+    void testMessageStore() {
+        MessageStore messageStore = mock(MessageStore.class);
+        MessageService storeService = new MessageService(messageRepository, messageStore, messageArchiveRepository, new ConversationCache(2, 1 << 20),
+                conversationSummaryRepository);
+        Contact contact = new Contact(2, "contact", 0);
+        Message message = new Message(contact, self, "content");
+        List<Message> latest = List.of(message);
+        when(messageStore.getLatestMessages(self.getContactId(), 2, 2)).thenReturn(latest);
+
+        storeService.insertMessage(message);
+        assertEquals(latest, storeService.getLatestMessages(2, 2));
+        storeService.sendGroupChatMessage(List.of(contact), "content");
+
+        verify(messageStore, times(1)).insertMessage(message);
+        verify(messageRepository, never()).insertMessage(any(Message.class));
+        verify(messageRepository, never()).getLatestMessages(any(), any(), anyInt());
+        verify(messageRepository, times(1)).insertGroupMessage(any(Message.class), any());
+    }
+
+    /**
+     * Tests sending one message to several contacts.
+     * Verifies that contacts without an address are reported as offline and that the message is stored once.
+     */
+    @Test
+    void testSendGroupChatMessageToOfflineContacts() {
+        Contact first = new Contact(2, "first", 0);
+        Contact second = new Contact(3, "second", 0);
+
+        Map<Contact, DeliveryStatus> outcomes = messageService.sendGroupChatMessage(List.of(first, second), "content");
+
+        assertEquals(2, outcomes.size());
+        assertEquals(DeliveryStatus.OFFLINE, outcomes.get(first));
+        assertEquals(DeliveryStatus.OFFLINE, outcomes.get(second));
+        verify(messageRepository, times(1)).insertGroupMessage(any(Message.class), eq(outcomes));
+    }
+
+    /**
+     * Tests sending one message to connected contacts.
+     * Verifies that every receiver is reported as sent and that the message is stored once with these outcomes.
+     */
+    @Test
+    void testSendGroupChatMessageToOnlineContacts() throws UnknownHostException {
+        Contact first = new Contact(2, "first", 0);
+        first.setAddress(InetAddress.getLoopbackAddress());
+        Contact second = new Contact(3, "second", 0);
+        second.setAddress(InetAddress.getByName("127.0.0.2"));
+
+        Map<Contact, DeliveryStatus> outcomes = messageService.sendGroupChatMessage(List.of(first, second), "content");
+
+        assertEquals(Map.of(first, DeliveryStatus.SENT, second, DeliveryStatus.SENT), outcomes);
+        verify(messageRepository, times(1)).insertGroupMessage(any(Message.class), eq(outcomes));
+    }
+
+    /**
+     * Tests sending one message to a contact whose datagram can not be sent.
+     * Verifies that the receiver is reported as failed, the broadcast address being refused without SO_BROADCAST.
+     */
+    @Test
+    void testSendGroupChatMessageFailed() throws UnknownHostException {
+        Contact contact = new Contact(2, "contact", 0);
+        contact.setAddress(InetAddress.getByName("255.255.255.255"));
+
+        Map<Contact, DeliveryStatus> outcomes = messageService.sendGroupChatMessage(List.of(contact), "content");
+
+        assertEquals(Map.of(contact, DeliveryStatus.FAILED), outcomes);
+        verify(messageRepository, times(1)).insertGroupMessage(any(Message.class), eq(outcomes));
+    }
+
+    /**
+     * Tests sending one message to a mix of connected, unreachable and disconnected contacts, stored in a database.
+     * Verifies that the message is stored once, without receiver, and that 'message_recipients' holds one row per
+     * receiver with its delivery status.
+     */
+    @Test
+    void testSendGroupChatMessageToMixedContactsStoresRecipients(@TempDir Path directory) throws UnknownHostException {
+        System.setProperty("chatsystem.db.path", directory.resolve("group.db").toString());
+        try {
+            ContactRepository contactRepository = new ContactRepository();
+            Contact sender = contactRepository.insertContact(new Contact("self", true)).orElseThrow();
+            Contact online = contactRepository.insertContact(new Contact("online", false)).orElseThrow();
+            Contact unreachable = contactRepository.insertContact(new Contact("unreachable", false)).orElseThrow();
+            Contact offline = contactRepository.insertContact(new Contact("offline", false)).orElseThrow();
+            sender.setAddress(self.getAddress());
+            self = sender;
+            online.setAddress(InetAddress.getLoopbackAddress());
+            unreachable.setAddress(InetAddress.getByName("255.255.255.255"));
+            MessageRepository repository = MessageRepository.getInstance();
+            MessageService groupService = new MessageService(repository);
+
+            Map<Contact, DeliveryStatus> outcomes = groupService.sendGroupChatMessage(List.of(online, unreachable, offline), "content");
+
+            assertEquals(DeliveryStatus.SENT, outcomes.get(online));
+            assertEquals(DeliveryStatus.FAILED, outcomes.get(unreachable));
+            assertEquals(DeliveryStatus.OFFLINE, outcomes.get(offline));
+            List<Message> stored = repository.getMessagesSince(0);
+            assertEquals(1, stored.size());
+            assertEquals(Map.of(online.getContactId(), DeliveryStatus.SENT, unreachable.getContactId(), DeliveryStatus.FAILED,
+                    offline.getContactId(), DeliveryStatus.OFFLINE), repository.getMessageRecipients(stored.get(0).getMessageId()));
+        } finally {
+            System.clearProperty("chatsystem.db.path");
+        }
+    }
+
+    /**
+     * Tests deleting a group message stored in a database.
+     * Verifies that its receivers are deleted with it from 'message_recipients'.
+     */
+    @Test
+    void testDeleteGroupMessageDeletesRecipients(@TempDir Path directory) {
+        System.setProperty("chatsystem.db.path", directory.resolve("delete.db").toString());
+        try {
+            ContactRepository contactRepository = new ContactRepository();
+            Contact sender = contactRepository.insertContact(new Contact("self", true)).orElseThrow();
+            Contact first = contactRepository.insertContact(new Contact("first", false)).orElseThrow();
+            Contact second = contactRepository.insertContact(new Contact("second", false)).orElseThrow();
+            MessageRepository repository = MessageRepository.getInstance();
+            Integer messageId = repository.insertGroupMessage(new Message(sender, null, "content"),
+                    Map.of(first, DeliveryStatus.SENT, second, DeliveryStatus.OFFLINE));
+            assertEquals(2, repository.getMessageRecipients(messageId).size());
+
+            repository.deleteMessage(messageId);
+
+            assertTrue(repository.getMessagesSince(0).isEmpty());
+            assertTrue(repository.getMessageRecipients(messageId).isEmpty());
+        } finally {
+            System.clearProperty("chatsystem.db.path");
+        }
+    }
+
+    /**
+     * Tests inserting a received message twice, with the same uid, in a database.
+     * Verifies that it is stored once, and that the messages read back, from the database and from the cache,
+     * carry their uid.
+     */
+    @Test
+    void testInsertSameUidTwiceStoresOnce(@TempDir Path directory) {
+        System.setProperty("chatsystem.db.path", directory.resolve("uid.db").toString());
+        try {
+            ContactRepository contactRepository = new ContactRepository();
+            Contact receiver = contactRepository.insertContact(new Contact("self", true)).orElseThrow();
+            Contact sender = contactRepository.insertContact(new Contact("sender", false)).orElseThrow();
+            self = receiver;
+            MessageRepository repository = MessageRepository.getInstance();
+            MessageService uidService = new MessageService(repository, repository, new MessageArchiveRepository(),
+                    new ConversationCache(2, 1 << 20), new ConversationSummaryRepository());
+            Message received = new Message(sender, receiver, "content");
+            Message duplicate = new Message(sender, receiver, "content");
+            duplicate.setUid(received.getUid());
+
+            uidService.insertMessage(received);
+            uidService.insertMessage(duplicate);
+
+            List<Message> history = uidService.getMessageHistory(sender.getContactId());
+            assertEquals(1, history.size());
+            assertEquals(received.getUid(), history.get(0).getUid());
+            assertEquals(received.getMessageId(), duplicate.getMessageId());
+            assertEquals(received.getUid(), uidService.getLatestMessages(sender.getContactId(), 2).get(0).getUid());
+            assertEquals(received.getUid(), repository.getMessagesSince(0).get(0).getUid());
+        } finally {
+            System.clearProperty("chatsystem.db.path");
+        }
+    }
+
+    /**
+     * Tests the retrieval of the conversation summaries and the marking of a conversation as read.
+     * Verifies that both go to the summaries, without reading the messages.
+     */
+    @Test
+    void testConversationSummaries() {
+        List<ConversationSummary> summaries = List.of(
+                new ConversationSummary(new Contact(2, "first", 0), 12, 2, "latest", 1000, 7, 3),
+                new ConversationSummary(new Contact(3, "second", 0), 9, 1, "older", 500, 2, 0));
+        when(conversationSummaryRepository.getConversationSummaries()).thenReturn(summaries);
+        when(conversationSummaryRepository.markConversationRead(2)).thenReturn(3);
+
+        assertEquals(summaries, messageService.getConversationSummaries());
+        assertEquals(3, messageService.markConversationRead(2));
+        verify(messageRepository, never()).getLatestMessages(any(), any(), anyInt());
+        verify(messageRepository, never()).getConversationHistory(any(), any());
+    }
+}
@@ -0,0 +1,104 @@
+package fr.insa.chatsystem.model.transfer;
+
+import fr.insa.chatsystem.model.contact.Contact;
+import fr.insa.chatsystem.model.contact.ContactList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * JUnit test class for the {@link FileTransferManager} class.
+ *
+ * <p>
+ * The tests cover the checks of the file offers received from the network, which decide whether a file is
+ * received and under which name, and the sending of a file before the transfers are started.
+ * </p>
+ */
+class FileTransferManagerTest {
+    private FileTransferManager fileTransferManager;
+    private InetAddress senderAddress;
+
+    /**
+     * Sets up a manager whose list of connected contacts holds a single sender.
+     */
+    @BeforeEach
+    void setUp() throws UnknownHostException {
+        senderAddress = InetAddress.getByName("192.168.1.20");
+        Contact sender = new Contact("sender", senderAddress);
+        ContactList contactList = new ContactList();
+        contactList.addContact(sender);
+        fileTransferManager = new FileTransferManager(contactList);
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("chatsystem.transfer.max.bytes");
+    }
+
+    /**
+     * Tests that an offer of a connected contact, from its address, is accepted under its file name.
+     */
+    @Test
+    void testCheckOfferAccepted() {
+        assertEquals("report.pdf", fileTransferManager.checkOffer(senderAddress, "sender", "report.pdf", 8192, 100_000));
+        assertEquals("empty", fileTransferManager.checkOffer(senderAddress, "sender", "empty", 8192, 0));
+    }
+
+    /**
+     * Tests that offers of unknown usernames, or of a known username from another address, are refused.
+     */
+    @Test
+    void testCheckOfferUnknownSender() throws UnknownHostException {
+        assertNull(fileTransferManager.checkOffer(senderAddress, "stranger", "report.pdf", 8192, 100_000));
+        assertNull(fileTransferManager.checkOffer(InetAddress.getByName("192.168.1.66"), "sender", "report.pdf", 8192, 100_000));
+        assertNull(fileTransferManager.checkOffer(senderAddress, "../sender", "report.pdf", 8192, 100_000));
+    }
+
+    /**
+     * Tests that the directories of an offered file name are dropped, and that names that can not name a file are refused.
+     */
+    @Test
+    void testCheckOfferFileName() {
+        assertEquals("passwd", fileTransferManager.checkOffer(senderAddress, "sender", "../../etc/passwd", 8192, 10));
+        assertEquals("file", fileTransferManager.checkOffer(senderAddress, "sender", "/tmp/file", 8192, 10));
+        assertNull(fileTransferManager.checkOffer(senderAddress, "sender", "..", 8192, 10));
+        assertNull(fileTransferManager.checkOffer(senderAddress, "sender", "dir/.", 8192, 10));
+        assertNull(fileTransferManager.checkOffer(senderAddress, "sender", "", 8192, 10));
+        assertNull(fileTransferManager.checkOffer(senderAddress, "sender", "bad\0name", 8192, 10));
+    }
+
+    /**
+     * Tests that offers with an invalid chunk size, a negative size or a size over the limit are refused.
+     */
+    @Test
+    void testCheckOfferSize() {
+        assertNull(fileTransferManager.checkOffer(senderAddress, "sender", "file", 0, 10));
+        assertNull(fileTransferManager.checkOffer(senderAddress, "sender", "file", FileTransferPacket.MAX_PACKET_SIZE, 10));
+        assertNull(fileTransferManager.checkOffer(senderAddress, "sender", "file", 8192, -1));
+        assertNull(fileTransferManager.checkOffer(senderAddress, "sender", "file", 8192, FileTransferManager.DEFAULT_MAX_FILE_SIZE + 1));
+        assertNull(fileTransferManager.checkOffer(senderAddress, "sender", "file", 1, 10_000_000));
+
+        System.setProperty("chatsystem.transfer.max.bytes", "1000");
+        assertNull(fileTransferManager.checkOffer(senderAddress, "sender", "file", 100, 1001));
+        assertEquals("file", fileTransferManager.checkOffer(senderAddress, "sender", "file", 100, 1000));
+    }
+
+    /**
+     * Tests that sending a file before the transfers are started fails with an IOException.
+     */
+    @Test
+    void testSendFileNotStarted() {
+        Contact receiver = new Contact("receiver", senderAddress);
+        assertThrows(IOException.class, () -> fileTransferManager.sendFile(Path.of("pom.xml"), receiver));
+    }
+
+}
@@ -0,0 +1,172 @@
+package fr.insa.chatsystem.model.transfer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JUnit test class for the {@link IncomingTransfer} class.
+ *
+ * <p>
+ * The tests cover the writing of the chunks, checked by their CRC32, the resume bitmap used to resume an
+ * interrupted transfer, and the paths of the files created in the download directory.
+ * </p>
+ */
+class IncomingTransferTest {
+    private static final int CHUNK_SIZE = 100;
+    private static final InetSocketAddress PEER = new InetSocketAddress("192.168.1.20", 40000);
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that valid chunks are written at their offset and acknowledged once, and that chunks with a wrong
+     * checksum, a wrong length or an index out of the file are refused.
+     */
+    @Test
+    void testWriteChunk() throws IOException {
+        byte[] content = content(250);
+        IncomingTransfer incomingTransfer = new IncomingTransfer(transfer(1, "file.bin", content.length), PEER, CHUNK_SIZE, directory);
+
+        assertEquals(-1, incomingTransfer.writeChunk(0, checksum(content, 0) + 1, chunk(content, 0)));
+        assertEquals(-1, incomingTransfer.writeChunk(3, 0, ByteBuffer.allocate(0)));
+        assertEquals(-1, incomingTransfer.writeChunk(2, checksum(content, 1), chunk(content, 1)));
+        assertEquals(100, incomingTransfer.writeChunk(1, checksum(content, 1), chunk(content, 1)));
+        assertEquals(0, incomingTransfer.writeChunk(1, checksum(content, 1), chunk(content, 1)));
+        assertEquals(50, incomingTransfer.writeChunk(2, checksum(content, 2), chunk(content, 2)));
+        assertFalse(incomingTransfer.isComplete());
+        assertEquals(100, incomingTransfer.writeChunk(0, checksum(content, 0), chunk(content, 0)));
+        assertTrue(incomingTransfer.isComplete());
+
+        Path received = incomingTransfer.complete();
+        assertEquals(directory.resolve("file.bin").toAbsolutePath(), received);
+        assertArrayEquals(content, Files.readAllBytes(received));
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    /**
+     * Tests that a suspended transfer of the same file is resumed from its bitmap, only the missing chunks being
+     * received again.
+     */
+    @Test
+    void testResume() throws IOException {
+        byte[] content = content(250);
+        IncomingTransfer interrupted = new IncomingTransfer(transfer(1, "file.bin", content.length), PEER, CHUNK_SIZE, directory);
+        interrupted.writeChunk(0, checksum(content, 0), chunk(content, 0));
+        interrupted.writeChunk(2, checksum(content, 2), chunk(content, 2));
+        interrupted.suspend();
+
+        FileTransfer transfer = transfer(2, "file.bin", content.length);
+        IncomingTransfer resumed = new IncomingTransfer(transfer, PEER, CHUNK_SIZE, directory);
+        BitSet expected = new BitSet();
+        expected.set(0);
+        expected.set(2);
+        assertEquals(expected, resumed.getReceivedChunks());
+        assertEquals(150, transfer.getTransferredBytes());
+
+        assertEquals(100, resumed.writeChunk(1, checksum(content, 1), chunk(content, 1)));
+        assertTrue(resumed.isComplete());
+        assertArrayEquals(content, Files.readAllBytes(resumed.complete()));
+        assertFalse(Files.exists(directory.resolve("sender-file.bin.part.bitmap")));
+    }
+
+    /**
+     * Tests that a bitmap left by a transfer of a file of another size is ignored.
+     */
+    @Test
+    void testResumeOtherFileSize() throws IOException {
+        byte[] content = content(250);
+        IncomingTransfer interrupted = new IncomingTransfer(transfer(1, "file.bin", content.length), PEER, CHUNK_SIZE, directory);
+        interrupted.writeChunk(0, checksum(content, 0), chunk(content, 0));
+        interrupted.suspend();
+
+        IncomingTransfer other = new IncomingTransfer(transfer(2, "file.bin", 500), PEER, CHUNK_SIZE, directory);
+        assertTrue(other.getReceivedChunks().isEmpty());
+    }
+
+    /**
+     * Tests that a username holding directories keeps the ".part" files in the download directory.
+     */
+    @Test
+    void testPathsStayInDownloadDirectory() throws IOException {
+        FileTransfer transfer = new FileTransfer(1, FileTransfer.Direction.INCOMING, "../../evil", "file.bin", 10);
+        IncomingTransfer incomingTransfer = new IncomingTransfer(transfer, PEER, CHUNK_SIZE, directory.resolve("downloads"));
+        incomingTransfer.suspend();
+
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        try (var files = Files.list(directory.resolve("downloads"))) {
+            assertTrue(files.allMatch(file -> file.getFileName().toString().startsWith(".._.._evil-file.bin.part")));
+        }
+    }
+
+    /**
+     * Tests that a file name that would leave the download directory or go through a symbolic link is refused.
+     */
+    @Test
+    void testUnsafeFileNameRefused() throws IOException {
+        assertThrows(IOException.class, () -> new IncomingTransfer(transfer(1, "../file.bin", 10), PEER, CHUNK_SIZE, directory));
+        Files.createSymbolicLink(directory.resolve("link.bin"), directory.resolveSibling("target.bin"));
+        assertThrows(IOException.class, () -> new IncomingTransfer(transfer(1, "link.bin", 10), PEER, CHUNK_SIZE, directory));
+        assertEquals("file.bin", IncomingTransfer.safeFileName("a/b/../file.bin"));
+    }
+
+    /**
+     * Tests that a received file never replaces an existing file, but is saved under a numbered name.
+     */
+    @Test
+    void testCompleteKeepsExistingFile() throws IOException {
+        Files.write(directory.resolve("file.bin"), new byte[]{1, 2, 3});
+        Files.write(directory.resolve("file (1).bin"), new byte[]{4});
+        byte[] content = content(50);
+        IncomingTransfer incomingTransfer = new IncomingTransfer(transfer(1, "file.bin", content.length), PEER, CHUNK_SIZE, directory);
+        incomingTransfer.writeChunk(0, checksum(content, 0), chunk(content, 0));
+
+        Path received = incomingTransfer.complete();
+
+        assertEquals("file (2).bin", received.getFileName().toString());
+        assertArrayEquals(content, Files.readAllBytes(received));
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(directory.resolve("file.bin")));
+    }
+
+    private static FileTransfer transfer(long transferId, String fileName, long fileSize) {
+        return new FileTransfer(transferId, FileTransfer.Direction.INCOMING, "sender", fileName, fileSize);
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        return content;
+    }
+
+    private static ByteBuffer chunk(byte[] content, int chunkIndex) {
+        int from = chunkIndex * CHUNK_SIZE;
+        return ByteBuffer.wrap(Arrays.copyOfRange(content, from, Math.min(content.length, from + CHUNK_SIZE)));
+    }
+
+    private static int checksum(byte[] content, int chunkIndex) {
+        CRC32 crc = new CRC32();
+        crc.update(chunk(content, chunkIndex));
+        return (int) crc.getValue();
+    }
+
+}